@@ -0,0 +1,72 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.benchmark.DadosBenchmark.MixTipos;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.service.CompraService;
+import ecommerce.service.ModoPrecificacao;
+
+/**
+ * Custo de {@link CompraService#calcularCustoTotal} por tamanho de carrinho, mix de tipos,
+ * proporção de frágeis e combinação Regiao x TipoCliente.
+ *
+ * Para restringir a matriz de parâmetros: {@code -Djmh.args="-p tamanhoCarrinho=1000"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalcularCustoTotalBenchmark
+{
+	@Param({ "BIG_DECIMAL", "PONTO_FIXO" })
+	private ModoPrecificacao modoPrecificacao;
+
+	@Param({ "1", "10", "100", "1000" })
+	private int tamanhoCarrinho;
+
+	@Param({ "UM_TIPO", "TODOS_OS_TIPOS" })
+	private MixTipos mixTipos;
+
+	@Param({ "0", "50", "100" })
+	private int percentualFrageis;
+
+	@Param({ "SUDESTE", "SUL", "NORDESTE", "CENTRO_OESTE", "NORTE" })
+	private Regiao regiao;
+
+	@Param({ "BRONZE", "PRATA", "OURO" })
+	private TipoCliente tipoCliente;
+
+	private CompraService service;
+	private CarrinhoDeCompras carrinho;
+
+	@Setup
+	public void setup()
+	{
+		service = new CompraService(null, null, null, modoPrecificacao);
+		carrinho = DadosBenchmark.criarCarrinho(tamanhoCarrinho, mixTipos, percentualFrageis);
+	}
+
+	@Benchmark
+	public BigDecimal calcularCustoTotal()
+	{
+		return service.calcularCustoTotal(carrinho, regiao, tipoCliente);
+	}
+}
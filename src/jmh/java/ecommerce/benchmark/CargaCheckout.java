@@ -0,0 +1,242 @@
+package ecommerce.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import ecommerce.CompraApplication;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+import ecommerce.repository.ProdutoRepository;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Teste de carga de {@code POST /finalizar} com threads de plataforma e com threads virtuais
+ * ({@code spring.threads.virtual.enabled}), e de {@code POST /finalizar/assincrono} com poucas
+ * threads de plataforma ({@code carga.assincrono.threads} no Tomcat), usando
+ * {@link SubstitutosLentos} no lugar do estoque e do pagamento. Para cada modo e nível de
+ * concorrência (laço fechado) informa vazão, p99 e o pico de threads de plataforma da JVM; ao
+ * final do modo virtual, lista os eventos {@code jdk.VirtualThreadPinned} capturados via JFR.
+ *
+ * Propriedades: {@code carga.concorrencias} (padrão 50,200,800), {@code carga.duracao.segundos}
+ * (10), {@code carga.atraso.ms} (20) e {@code carga.assincrono.threads} (8).
+ *
+ * <pre>./mvnw -Pbenchmark compile exec:exec@carga -Dcarga.args="-Dcarga.atraso.ms=50"</pre>
+ */
+public final class CargaCheckout
+{
+	private CargaCheckout()
+	{
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int[] concorrencias = Arrays.stream(System.getProperty("carga.concorrencias", "50,200,800").split(","))
+				.map(String::trim).mapToInt(Integer::parseInt).toArray();
+		Duration duracao = Duration.ofSeconds(Long.getLong("carga.duracao.segundos", 10));
+		long atrasoMs = Long.getLong("carga.atraso.ms", 20);
+
+		int threadsAssincrono = Integer.getInteger("carga.assincrono.threads", 8);
+
+		System.out.printf("%-12s %12s %14s %10s %10s %8s %14s%n", "modo", "concorrencia", "vazao (req/s)", "p50 (ms)",
+				"p99 (ms)", "erros", "threads (pico)");
+
+		for (Modo modo : Modo.values())
+		{
+			executarModo(modo, concorrencias, duracao, atrasoMs, threadsAssincrono);
+		}
+	}
+
+	private static void executarModo(Modo modo, int[] concorrencias, Duration duracao, long atrasoMs,
+			int threadsAssincrono) throws Exception
+	{
+		boolean virtuais = modo == Modo.VIRTUAIS;
+		Map<String, Long> pinning = new HashMap<>();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		try (ConfigurableApplicationContext contexto = new SpringApplicationBuilder(CompraApplication.class,
+				SubstitutosLentos.class)
+				.properties("server.port=0", "spring.threads.virtual.enabled=" + virtuais,
+						"carga.atraso.ms=" + atrasoMs, "logging.level.root=WARN",
+						// no modo assíncrono, as threads do Tomcat só recebem e respondem
+						"server.tomcat.threads.max=" + (modo == Modo.ASSINCRONO ? threadsAssincrono : 200),
+						"server.tomcat.threads.min-spare=" + (modo == Modo.ASSINCRONO ? threadsAssincrono : 10),
+						// mede o modelo de threads, não o bulkhead: sem limite de chamadas simultâneas
+						"resilience4j.bulkhead.instances.estoque.max-concurrent-calls=100000",
+						"resilience4j.bulkhead.instances.pagamento.max-concurrent-calls=100000")
+				.run();
+				RecordingStream jfr = new RecordingStream())
+		{
+			jfr.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(1)).withStackTrace();
+			jfr.onEvent("jdk.VirtualThreadPinned", evento -> {
+				List<RecordedFrame> frames = evento.getStackTrace() == null ? List.of()
+						: evento.getStackTrace().getFrames();
+				String origem = frames.stream().map(f -> f.getMethod().getType().getName())
+						.filter(t -> !t.startsWith("java.") && !t.startsWith("jdk.")).findFirst().orElse("(jdk)");
+				synchronized (pinning)
+				{
+					pinning.merge(origem, 1L, Long::sum);
+				}
+			});
+			jfr.startAsync();
+
+			int porta = contexto.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+			URI uri = semear(contexto, porta, modo.caminho);
+
+			// aquecimento
+			medir(uri, concorrencias[0], duracao.dividedBy(2));
+
+			double melhorVazao = 0;
+			for (int concorrencia : concorrencias)
+			{
+				threads.resetPeakThreadCount();
+				Resultado r = medir(uri, concorrencia, duracao);
+				melhorVazao = Math.max(melhorVazao, r.vazao());
+				System.out.printf("%-12s %12d %14.1f %10.1f %10.1f %8d %14d%n", modo.nome, concorrencia, r.vazao(),
+						r.p50Ms(), r.p99Ms(), r.erros(), threads.getPeakThreadCount());
+			}
+			System.out.printf("%-12s vazão máxima sustentada: %.1f req/s%n", modo.nome, melhorVazao);
+		}
+
+		if (virtuais)
+		{
+			System.out.printf("%-12s eventos de pinning: %s%n", modo.nome, pinning.isEmpty() ? "nenhum" : pinning);
+		}
+	}
+
+	private static URI semear(ConfigurableApplicationContext contexto, int porta, String caminho)
+	{
+		Cliente cliente = contexto.getBean(ClienteRepository.class)
+				.save(new Cliente(null, "Cliente Carga", Regiao.SUDESTE, TipoCliente.PRATA));
+
+		ProdutoRepository produtos = contexto.getBean(ProdutoRepository.class);
+		List<ItemCompra> itens = new ArrayList<>();
+		for (int i = 0; i < 10; i++)
+		{
+			Produto produto = produtos.save(new Produto(null, "Produto " + i, null, BigDecimal.valueOf(1999 + i, 2),
+					BigDecimal.ONE, BigDecimal.TEN, BigDecimal.TEN, BigDecimal.TEN, i % 3 == 0,
+					TipoProduto.values()[i % TipoProduto.values().length]));
+			itens.add(new ItemCompra(null, produto, 1L + i % 3));
+		}
+
+		CarrinhoDeCompras carrinho = contexto.getBean(CarrinhoDeComprasRepository.class)
+				.save(new CarrinhoDeCompras(null, cliente, itens, LocalDate.now()));
+
+		return URI.create("http://localhost:" + porta + caminho + "?carrinhoId=" + carrinho.getId() + "&clienteId="
+				+ cliente.getId());
+	}
+
+	private static Resultado medir(URI uri, int concorrencia, Duration duracao) throws InterruptedException
+	{
+		HttpRequest requisicao = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.noBody()).build();
+		AtomicLong erros = new AtomicLong();
+		List<long[]> latenciasPorCliente = new ArrayList<>();
+		long fim = System.nanoTime() + duracao.toNanos();
+
+		try (HttpClient http = HttpClient.newHttpClient();
+				ExecutorService clientes = Executors.newVirtualThreadPerTaskExecutor())
+		{
+			for (int i = 0; i < concorrencia; i++)
+			{
+				synchronized (latenciasPorCliente)
+				{
+					latenciasPorCliente.add(null);
+				}
+				int indice = i;
+				clientes.submit(() -> {
+					long[] latencias = new long[1024];
+					int n = 0;
+					while (System.nanoTime() < fim)
+					{
+						long inicio = System.nanoTime();
+						try
+						{
+							HttpResponse<Void> resposta = http.send(requisicao, HttpResponse.BodyHandlers.discarding());
+							if (resposta.statusCode() != 200)
+							{
+								erros.incrementAndGet();
+							}
+						}
+						catch (Exception e)
+						{
+							erros.incrementAndGet();
+						}
+						if (n == latencias.length)
+						{
+							latencias = Arrays.copyOf(latencias, n * 2);
+						}
+						latencias[n++] = System.nanoTime() - inicio;
+					}
+					long[] medidas = Arrays.copyOf(latencias, n);
+					synchronized (latenciasPorCliente)
+					{
+						latenciasPorCliente.set(indice, medidas);
+					}
+					return null;
+				});
+			}
+			clientes.shutdown();
+			clientes.awaitTermination(duracao.toSeconds() + 60, TimeUnit.SECONDS);
+		}
+
+		long[] todas = latenciasPorCliente.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+		double vazao = todas.length / (duracao.toNanos() / 1e9);
+		return new Resultado(vazao, percentil(todas, 0.50), percentil(todas, 0.99), erros.get());
+	}
+
+	private static double percentil(long[] ordenadas, double p)
+	{
+		if (ordenadas.length == 0)
+		{
+			return Double.NaN;
+		}
+		int indice = (int) Math.ceil(p * ordenadas.length) - 1;
+		return ordenadas[Math.max(0, indice)] / 1e6;
+	}
+
+	private record Resultado(double vazao, double p50Ms, double p99Ms, long erros)
+	{
+	}
+
+	private enum Modo
+	{
+		PLATAFORMA("plataforma", "/finalizar"),
+		VIRTUAIS("virtuais", "/finalizar"),
+		ASSINCRONO("assincrono", "/finalizar/assincrono");
+
+		final String nome;
+		final String caminho;
+
+		Modo(String nome, String caminho)
+		{
+			this.nome = nome;
+			this.caminho = caminho;
+		}
+	}
+}
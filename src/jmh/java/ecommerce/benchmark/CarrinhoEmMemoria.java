@@ -0,0 +1,35 @@
+package ecommerce.benchmark;
+
+import java.util.List;
+
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.ContextoCheckout;
+
+/**
+ * Devolve as linhas da consulta de checkout já carregadas; o resumo do carrinho é montado a cada
+ * chamada, como no serviço real.
+ */
+class CarrinhoEmMemoria extends CarrinhoDeComprasService
+{
+	private final List<LinhaCheckoutDTO> linhas;
+
+	CarrinhoEmMemoria(Cliente cliente, CarrinhoDeCompras carrinho)
+	{
+		super(null, null, null);
+		this.linhas = carrinho.getItens().stream()
+				.map(i -> new LinhaCheckoutDTO(cliente.getId(), cliente.getRegiao(), cliente.getTipo(),
+						carrinho.getId(), i.getId(), i.getProduto().getId(), i.getProduto().getPreco(),
+						i.getProduto().getPesoTributavel(), i.getProduto().isFragil(), i.getProduto().getTipo(),
+						i.getQuantidade()))
+				.toList();
+	}
+
+	@Override
+	public ContextoCheckout buscarContextoCheckout(Long carrinhoId, Long clienteId)
+	{
+		return ContextoCheckout.deLinhas(clienteId, linhas);
+	}
+}
@@ -0,0 +1,168 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.service.CarrinhoPrecificado;
+
+/**
+ * Cópia do cálculo com as regras em constantes {@code static final}, como era antes das
+ * {@code RegrasPrecificacao}, nos dois modos. Serve só de referência para
+ * {@link RegrasPrecificacaoBenchmark}.
+ */
+final class ConstantesOriginais
+{
+	private static final TipoProduto[] TIPOS = TipoProduto.values();
+
+	private static final BigDecimal TAXA_FRAGIL = BigDecimal.valueOf(5.00);
+	private static final BigDecimal TAXA_MINIMA_FRETE = BigDecimal.valueOf(12.00);
+	private static final BigDecimal FRETE_FAIXA_B = BigDecimal.valueOf(2.00);
+	private static final BigDecimal FRETE_FAIXA_C = BigDecimal.valueOf(4.00);
+	private static final BigDecimal FRETE_FAIXA_D = BigDecimal.valueOf(7.00);
+
+	private static final BigDecimal LIMITE_VALOR_500 = BigDecimal.valueOf(500);
+	private static final BigDecimal LIMITE_VALOR_1000 = BigDecimal.valueOf(1000);
+	private static final BigDecimal LIMITE_PESO_FAIXA_A = BigDecimal.valueOf(5);
+	private static final BigDecimal LIMITE_PESO_FAIXA_B = BigDecimal.valueOf(10);
+	private static final BigDecimal LIMITE_PESO_FAIXA_C = BigDecimal.valueOf(50);
+	private static final BigDecimal FATOR_FRETE_PRATA = BigDecimal.valueOf(0.5);
+
+	private static final BigDecimal FATOR_DESCONTO_QTD_3 = BigDecimal.ONE.subtract(BigDecimal.valueOf(0.05));
+	private static final BigDecimal FATOR_DESCONTO_QTD_5 = BigDecimal.ONE.subtract(BigDecimal.valueOf(0.10));
+	private static final BigDecimal FATOR_DESCONTO_QTD_8 = BigDecimal.ONE.subtract(BigDecimal.valueOf(0.15));
+	private static final BigDecimal FATOR_DESCONTO_VALOR_500 = BigDecimal.ONE.subtract(BigDecimal.valueOf(0.10));
+	private static final BigDecimal FATOR_DESCONTO_VALOR_1000 = BigDecimal.ONE.subtract(BigDecimal.valueOf(0.20));
+
+	private static final long PONTOS_BASE = 10_000L;
+	private static final long LIMIAR_VALOR_500 = 500L * 100 * PONTOS_BASE;
+	private static final long LIMIAR_VALOR_1000 = 1_000L * 100 * PONTOS_BASE;
+	private static final long LIMITE_FAIXA_A = 5_000L;
+	private static final long LIMITE_FAIXA_B = 10_000L;
+	private static final long LIMITE_FAIXA_C = 50_000L;
+	private static final long[] MULTIPLICADOR_REGIAO = new long[Regiao.values().length];
+
+	static
+	{
+		for (Regiao regiao : Regiao.values())
+		{
+			MULTIPLICADOR_REGIAO[regiao.ordinal()] = regiao.getMultiplicador().movePointRight(4).longValueExact();
+		}
+	}
+
+	private ConstantesOriginais()
+	{
+	}
+
+	static BigDecimal calcularBigDecimal(CarrinhoPrecificado carrinho, Regiao regiao, TipoCliente tipoCliente)
+	{
+		validar(carrinho, regiao, tipoCliente);
+
+		BigDecimal subtotal = BigDecimal.ZERO;
+		for (TipoProduto tipo : TIPOS)
+		{
+			long quantidade = carrinho.getQuantidade(tipo);
+			if (quantidade == 0)
+			{
+				continue;
+			}
+			BigDecimal fator = quantidade >= 8 ? FATOR_DESCONTO_QTD_8
+					: quantidade >= 5 ? FATOR_DESCONTO_QTD_5 : quantidade >= 3 ? FATOR_DESCONTO_QTD_3 : BigDecimal.ONE;
+			subtotal = subtotal.add(carrinho.getSubtotal(tipo).multiply(fator));
+		}
+
+		if (subtotal.compareTo(LIMITE_VALOR_1000) > 0)
+		{
+			subtotal = subtotal.multiply(FATOR_DESCONTO_VALOR_1000);
+		}
+		else if (subtotal.compareTo(LIMITE_VALOR_500) > 0)
+		{
+			subtotal = subtotal.multiply(FATOR_DESCONTO_VALOR_500);
+		}
+
+		return subtotal.add(freteBigDecimal(carrinho, regiao, tipoCliente)).setScale(2, RoundingMode.HALF_UP);
+	}
+
+	private static BigDecimal freteBigDecimal(CarrinhoPrecificado carrinho, Regiao regiao, TipoCliente tipoCliente)
+	{
+		if (tipoCliente == TipoCliente.OURO)
+		{
+			return BigDecimal.ZERO;
+		}
+
+		BigDecimal pesoTotal = carrinho.getPesoTotal();
+		BigDecimal valorPorKg = BigDecimal.ZERO;
+		boolean temTaxaMinima = true;
+		if (pesoTotal.compareTo(LIMITE_PESO_FAIXA_A) <= 0)
+		{
+			temTaxaMinima = false;
+		}
+		else if (pesoTotal.compareTo(LIMITE_PESO_FAIXA_B) <= 0)
+		{
+			valorPorKg = FRETE_FAIXA_B;
+		}
+		else if (pesoTotal.compareTo(LIMITE_PESO_FAIXA_C) <= 0)
+		{
+			valorPorKg = FRETE_FAIXA_C;
+		}
+		else
+		{
+			valorPorKg = FRETE_FAIXA_D;
+		}
+
+		BigDecimal frete = valorPorKg.multiply(pesoTotal);
+		if (temTaxaMinima)
+		{
+			frete = frete.add(TAXA_MINIMA_FRETE);
+		}
+		if (carrinho.getQuantidadeFragil() > 0)
+		{
+			frete = frete.add(TAXA_FRAGIL.multiply(BigDecimal.valueOf(carrinho.getQuantidadeFragil())));
+		}
+		frete = frete.multiply(regiao.getMultiplicador());
+		return tipoCliente == TipoCliente.PRATA ? frete.multiply(FATOR_FRETE_PRATA) : frete;
+	}
+
+	static BigDecimal calcularPontoFixo(CarrinhoPrecificado carrinho, Regiao regiao, TipoCliente tipoCliente)
+	{
+		validar(carrinho, regiao, tipoCliente);
+
+		long subtotal = 0;
+		for (TipoProduto tipo : TIPOS)
+		{
+			long quantidade = carrinho.getQuantidade(tipo);
+			long desconto = quantidade >= 8 ? 1_500L : quantidade >= 5 ? 1_000L : quantidade >= 3 ? 500L : 0;
+			subtotal = Math.addExact(subtotal,
+					Math.multiplyExact(carrinho.getSubtotalCentavos(tipo), PONTOS_BASE - desconto));
+		}
+
+		long descontoValor = subtotal > LIMIAR_VALOR_1000 ? 2_000L : subtotal > LIMIAR_VALOR_500 ? 1_000L : 0;
+		subtotal = Math.multiplyExact(subtotal, PONTOS_BASE - descontoValor);
+
+		long frete = 0;
+		if (tipoCliente != TipoCliente.OURO)
+		{
+			long peso = carrinho.getPesoTotalGramas();
+			long porKg = peso <= LIMITE_FAIXA_A ? 0 : peso <= LIMITE_FAIXA_B ? 200L : peso <= LIMITE_FAIXA_C ? 400L : 700L;
+			frete = Math.multiplyExact(porKg, peso) + (peso <= LIMITE_FAIXA_A ? 0 : 1_200L * 1_000);
+			frete = Math.addExact(frete, Math.multiplyExact(500L * 1_000, carrinho.getQuantidadeFragil()));
+			frete = Math.multiplyExact(frete, MULTIPLICADOR_REGIAO[regiao.ordinal()]);
+			frete = Math.multiplyExact(frete, tipoCliente == TipoCliente.PRATA ? 5 : 10);
+		}
+
+		long total = Math.addExact(subtotal, frete);
+		long divisor = 100_000_000L;
+		return BigDecimal.valueOf((total + divisor / 2) / divisor, 2);
+	}
+
+	/** As mesmas verificações que o método público fazia antes de calcular. */
+	private static void validar(CarrinhoPrecificado carrinho, Regiao regiao, TipoCliente tipoCliente)
+	{
+		if (carrinho == null || carrinho.isVazio() || regiao == null || tipoCliente == null)
+		{
+			throw new IllegalArgumentException("Carrinho, região e tipo de cliente são obrigatórios.");
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+
+/**
+ * Geração determinística de carrinhos para os benchmarks.
+ */
+public final class DadosBenchmark
+{
+	/** Distribuição dos tipos de produto no carrinho. */
+	public enum MixTipos
+	{
+		UM_TIPO, TODOS_OS_TIPOS
+	}
+
+	private static final long SEMENTE = 42L;
+
+	private DadosBenchmark()
+	{
+	}
+
+	/**
+	 * Monta um carrinho com {@code tamanho} itens distintos.
+	 *
+	 * @param tamanho quantidade de {@link ItemCompra}s.
+	 * @param mix distribuição dos {@link TipoProduto}s.
+	 * @param percentualFrageis percentual (0-100) de itens frágeis.
+	 */
+	public static CarrinhoDeCompras criarCarrinho(int tamanho, MixTipos mix, int percentualFrageis)
+	{
+		Random random = new Random(SEMENTE);
+		TipoProduto[] tipos = TipoProduto.values();
+		List<ItemCompra> itens = new ArrayList<>(tamanho);
+
+		for (int i = 0; i < tamanho; i++)
+		{
+			TipoProduto tipo = mix == MixTipos.UM_TIPO ? TipoProduto.ELETRONICO : tipos[i % tipos.length];
+			boolean fragil = random.nextInt(100) < percentualFrageis;
+
+			Produto produto = new Produto((long) i + 1, "Produto " + i, null,
+					BigDecimal.valueOf(100 + random.nextInt(50_000), 2),
+					BigDecimal.valueOf(50 + random.nextInt(5_000), 3),
+					BigDecimal.valueOf(5 + random.nextInt(50)),
+					BigDecimal.valueOf(5 + random.nextInt(50)),
+					BigDecimal.valueOf(1 + random.nextInt(30)),
+					fragil, tipo);
+
+			itens.add(new ItemCompra((long) i + 1, produto, 1L + random.nextInt(5)));
+		}
+
+		CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+		carrinho.setId(1L);
+		carrinho.setItens(itens);
+		return carrinho;
+	}
+
+	public static Cliente criarCliente(Regiao regiao, TipoCliente tipo)
+	{
+		return new Cliente(1L, "Cliente Benchmark", regiao, tipo);
+	}
+}
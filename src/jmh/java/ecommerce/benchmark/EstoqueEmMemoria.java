@@ -0,0 +1,74 @@
+package ecommerce.benchmark;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.external.IEstoqueExternal;
+
+/** Estoque sempre disponível, com atraso fixo opcional por chamada para simular a rede. */
+class EstoqueEmMemoria implements IEstoqueExternal
+{
+	private static final DisponibilidadeDTO DISPONIVEL = new DisponibilidadeDTO(true, List.of());
+	private static final EstoqueBaixaDTO BAIXA_OK = new EstoqueBaixaDTO(true);
+
+	private final long atrasoNanos;
+	private final AtomicLong reservas = new AtomicLong();
+
+	EstoqueEmMemoria()
+	{
+		this(0);
+	}
+
+	EstoqueEmMemoria(long atrasoMicros)
+	{
+		this.atrasoNanos = TimeUnit.MICROSECONDS.toNanos(atrasoMicros);
+	}
+
+	@Override
+	public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		aguardar();
+		return BAIXA_OK;
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		aguardar();
+		return DISPONIVEL;
+	}
+
+	@Override
+	public ReservaEstoqueDTO reservar(List<Long> produtosIds, List<Long> produtosQuantidades, Duration validade)
+	{
+		aguardar();
+		return new ReservaEstoqueDTO(true, reservas.incrementAndGet(), List.of());
+	}
+
+	@Override
+	public EstoqueBaixaDTO confirmarReserva(Long reservaId)
+	{
+		aguardar();
+		return BAIXA_OK;
+	}
+
+	@Override
+	public void liberarReserva(Long reservaId)
+	{
+		aguardar();
+	}
+
+	private void aguardar()
+	{
+		if (atrasoNanos > 0)
+		{
+			LockSupport.parkNanos(atrasoNanos);
+		}
+	}
+}
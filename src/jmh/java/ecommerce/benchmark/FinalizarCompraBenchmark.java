@@ -0,0 +1,61 @@
+package ecommerce.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.benchmark.DadosBenchmark.MixTipos;
+import ecommerce.dto.CompraDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.service.CompraService;
+import ecommerce.service.ModoPrecificacao;
+
+/**
+ * {@link CompraService#finalizarCompra} de ponta a ponta, sem Spring nem banco: a consulta de
+ * checkout, o estoque e o pagamento são substitutos em memória que respondem imediatamente.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FinalizarCompraBenchmark
+{
+	@Param({ "1", "10", "100", "1000" })
+	private int tamanhoCarrinho;
+
+	@Param({ "BRONZE", "PRATA", "OURO" })
+	private TipoCliente tipoCliente;
+
+	private CompraService service;
+
+	@Setup
+	public void setup()
+	{
+		Cliente cliente = DadosBenchmark.criarCliente(Regiao.NORDESTE, tipoCliente);
+		CarrinhoDeCompras carrinho = DadosBenchmark.criarCarrinho(tamanhoCarrinho, MixTipos.TODOS_OS_TIPOS, 50);
+
+		service = new CompraService(new CarrinhoEmMemoria(cliente, carrinho), new EstoqueEmMemoria(),
+				new PagamentoEmMemoria(), ModoPrecificacao.BIG_DECIMAL);
+	}
+
+	@Benchmark
+	public CompraDTO finalizarCompra()
+	{
+		return service.finalizarCompra(1L, 1L);
+	}
+}
@@ -0,0 +1,85 @@
+package ecommerce.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.benchmark.DadosBenchmark.MixTipos;
+import ecommerce.dto.CompraDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.service.CompraService;
+import ecommerce.service.FonteRegrasPrecificacao;
+import ecommerce.service.MetricasCheckout;
+import ecommerce.service.ModoBaixa;
+import ecommerce.service.ModoExecucao;
+import ecommerce.service.ModoPrecificacao;
+import ecommerce.service.RegrasPrecificacao;
+
+/**
+ * Latência de {@link CompraService#finalizarCompra} com um estoque que demora
+ * {@code atrasoEstoqueMicros} por chamada, comparando {@link ModoExecucao#SEQUENCIAL} (estoque e
+ * depois cálculo) com {@link ModoExecucao#CONCORRENTE} (cálculo sobreposto à reserva de estoque).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FinalizarCompraLatenciaBenchmark
+{
+	@Param({ "SEQUENCIAL", "CONCORRENTE" })
+	private ModoExecucao modoExecucao;
+
+	@Param({ "0", "200", "1000" })
+	private long atrasoEstoqueMicros;
+
+	@Param({ "100", "1000" })
+	private int tamanhoCarrinho;
+
+	private ExecutorService executor;
+	private CompraService service;
+
+	@Setup
+	public void setup()
+	{
+		Cliente cliente = DadosBenchmark.criarCliente(Regiao.NORDESTE, TipoCliente.PRATA);
+		CarrinhoDeCompras carrinho = DadosBenchmark.criarCarrinho(tamanhoCarrinho, MixTipos.TODOS_OS_TIPOS, 50);
+
+		executor = Executors.newFixedThreadPool(4);
+		service = new CompraService(new CarrinhoEmMemoria(cliente, carrinho),
+				new EstoqueEmMemoria(atrasoEstoqueMicros), new PagamentoEmMemoria(), ModoPrecificacao.BIG_DECIMAL,
+				modoExecucao, executor, Duration.ofMinutes(2),
+				new FonteRegrasPrecificacao(RegrasPrecificacao.padrao()), MetricasCheckout.desligadas(),
+				ModoBaixa.SINCRONA, null, null);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public CompraDTO finalizarCompra()
+	{
+		return service.finalizarCompra(1L, 1L);
+	}
+}
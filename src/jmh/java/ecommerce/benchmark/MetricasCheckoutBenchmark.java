@@ -0,0 +1,104 @@
+package ecommerce.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.benchmark.DadosBenchmark.MixTipos;
+import ecommerce.dto.CompraDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.service.CompraService;
+import ecommerce.service.FonteRegrasPrecificacao;
+import ecommerce.service.MetricasCheckout;
+import ecommerce.service.ModoBaixa;
+import ecommerce.service.ModoExecucao;
+import ecommerce.service.ModoPrecificacao;
+import ecommerce.service.RegrasPrecificacao;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Custo das {@link MetricasCheckout} em {@link CompraService#finalizarCompra}: o mesmo checkout em
+ * memória de {@link FinalizarCompraBenchmark} com as métricas descartadas, só com o histograma de
+ * percentis e também com os percentis locais que {@code application.properties} liga.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricasCheckoutBenchmark
+{
+	public enum Metricas
+	{
+		DESLIGADAS, HISTOGRAMA, PERCENTIS
+	}
+
+	@Param({ "DESLIGADAS", "HISTOGRAMA", "PERCENTIS" })
+	private Metricas metricas;
+
+	@Param({ "1", "100" })
+	private int tamanhoCarrinho;
+
+	private CompraService service;
+
+	@Setup
+	public void setup()
+	{
+		Cliente cliente = DadosBenchmark.criarCliente(Regiao.NORDESTE, TipoCliente.PRATA);
+		CarrinhoDeCompras carrinho = DadosBenchmark.criarCarrinho(tamanhoCarrinho, MixTipos.TODOS_OS_TIPOS, 50);
+
+		service = new CompraService(new CarrinhoEmMemoria(cliente, carrinho), new EstoqueEmMemoria(),
+				new PagamentoEmMemoria(), ModoPrecificacao.BIG_DECIMAL, ModoExecucao.SEQUENCIAL, null,
+				Duration.ofMinutes(2), new FonteRegrasPrecificacao(RegrasPrecificacao.padrao()), criarMetricas(),
+				ModoBaixa.SINCRONA, null, null);
+	}
+
+	private MetricasCheckout criarMetricas()
+	{
+		if (metricas == Metricas.DESLIGADAS)
+		{
+			return MetricasCheckout.desligadas();
+		}
+
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		if (metricas == Metricas.PERCENTIS)
+		{
+			// O mesmo que management.metrics.distribution.percentiles.compra.checkout
+			registry.config().meterFilter(new MeterFilter()
+			{
+				@Override
+				public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config)
+				{
+					return id.getName().startsWith("compra.checkout")
+							? DistributionStatisticConfig.builder().percentiles(0.5, 0.95, 0.99).build().merge(config)
+							: config;
+				}
+			});
+		}
+		return new MetricasCheckout(registry);
+	}
+
+	@Benchmark
+	public CompraDTO finalizarCompra()
+	{
+		return service.finalizarCompra(1L, 1L);
+	}
+}
@@ -0,0 +1,21 @@
+package ecommerce.benchmark;
+
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.IPagamentoExternal;
+
+/** Pagamento sempre autorizado, sem atraso. */
+class PagamentoEmMemoria implements IPagamentoExternal
+{
+	private static final PagamentoDTO AUTORIZADO = new PagamentoDTO(true, 1L);
+
+	@Override
+	public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal)
+	{
+		return AUTORIZADO;
+	}
+
+	@Override
+	public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId)
+	{
+	}
+}
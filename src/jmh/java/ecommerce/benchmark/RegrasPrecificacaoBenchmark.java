@@ -0,0 +1,84 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.benchmark.DadosBenchmark.MixTipos;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.service.CarrinhoPrecificado;
+import ecommerce.service.CompraService;
+import ecommerce.service.ModoPrecificacao;
+
+/**
+ * Regras compiladas ({@code RegrasPrecificacao}, lidas a cada cálculo da fonte em vigor) contra as
+ * antigas constantes {@code static final} ({@link ConstantesOriginais}), no mesmo carrinho já
+ * resumido. O setup confere que os dois caminhos dão o mesmo total.
+ *
+ * Em ponto fixo as regras compiladas continuam mais lentas que as constantes: cerca de 40 a 49
+ * ns/op contra 25 a 33 (JDK 21, uma CPU), porque os limiares e tabelas vêm da memória em vez de
+ * entrarem no código compilado. Antes das tabelas de fatores e da linha única de frete por
+ * combinação a diferença era de 15 a 20 ns/op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegrasPrecificacaoBenchmark
+{
+	@Param({ "BIG_DECIMAL", "PONTO_FIXO" })
+	private ModoPrecificacao modoPrecificacao;
+
+	@Param({ "1", "10", "100" })
+	private int tamanhoCarrinho;
+
+	@Param({ "BRONZE", "PRATA", "OURO" })
+	private TipoCliente tipoCliente;
+
+	private final Regiao regiao = Regiao.NORDESTE;
+
+	private CompraService service;
+	private CarrinhoPrecificado carrinho;
+
+	@Setup
+	public void setup()
+	{
+		service = new CompraService(null, null, null, modoPrecificacao);
+		carrinho = CarrinhoPrecificado
+				.de(DadosBenchmark.criarCarrinho(tamanhoCarrinho, MixTipos.TODOS_OS_TIPOS, 50).getItens());
+
+		if (regrasCompiladas().compareTo(constantesOriginais()) != 0)
+		{
+			throw new IllegalStateException("Regras compiladas e constantes divergem: " + regrasCompiladas() + " x "
+					+ constantesOriginais());
+		}
+	}
+
+	@Benchmark
+	public BigDecimal regrasCompiladas()
+	{
+		return service.calcularCustoTotalPrecificado(carrinho, regiao, tipoCliente);
+	}
+
+	@Benchmark
+	public BigDecimal constantesOriginais()
+	{
+		return modoPrecificacao == ModoPrecificacao.PONTO_FIXO
+				? ConstantesOriginais.calcularPontoFixo(carrinho, regiao, tipoCliente)
+				: ConstantesOriginais.calcularBigDecimal(carrinho, regiao, tipoCliente);
+	}
+}
@@ -0,0 +1,165 @@
+package ecommerce.benchmark;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IEstoqueExternalAssincrono;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.IPagamentoExternalAssincrono;
+
+/**
+ * Estoque e pagamento locais que bloqueiam a thread por {@code carga.atraso.ms} em cada chamada,
+ * como um serviço remoto lento; as versões assíncronas respondem depois do mesmo atraso sem prender
+ * thread nenhuma. Registrado explicitamente por {@link CargaCheckout} (não é
+ * {@code @Configuration} para não entrar na varredura de componentes da aplicação).
+ */
+public class SubstitutosLentos
+{
+	@Bean
+	@Primary
+	public IEstoqueExternal estoqueLento(@Value("${carga.atraso.ms:20}") long atrasoMs)
+	{
+		AtomicLong reservas = new AtomicLong();
+		return new IEstoqueExternal()
+		{
+			@Override
+			public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades)
+			{
+				dormir(atrasoMs);
+				return new EstoqueBaixaDTO(true);
+			}
+
+			@Override
+			public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades)
+			{
+				dormir(atrasoMs);
+				return new DisponibilidadeDTO(true, List.of());
+			}
+
+			@Override
+			public ReservaEstoqueDTO reservar(List<Long> produtosIds, List<Long> produtosQuantidades,
+					Duration validade)
+			{
+				dormir(atrasoMs);
+				return new ReservaEstoqueDTO(true, reservas.incrementAndGet(), List.of());
+			}
+
+			@Override
+			public EstoqueBaixaDTO confirmarReserva(Long reservaId)
+			{
+				dormir(atrasoMs);
+				return new EstoqueBaixaDTO(true);
+			}
+
+			@Override
+			public void liberarReserva(Long reservaId)
+			{
+				dormir(atrasoMs);
+			}
+		};
+	}
+
+	@Bean
+	@Primary
+	public IPagamentoExternal pagamentoLento(@Value("${carga.atraso.ms:20}") long atrasoMs)
+	{
+		AtomicLong transacoes = new AtomicLong();
+		return new IPagamentoExternal()
+		{
+			@Override
+			public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal)
+			{
+				dormir(atrasoMs);
+				return new PagamentoDTO(true, transacoes.incrementAndGet());
+			}
+
+			@Override
+			public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId)
+			{
+				dormir(atrasoMs);
+			}
+		};
+	}
+
+	@Bean
+	@Primary
+	public IEstoqueExternalAssincrono estoqueLentoAssincrono(@Value("${carga.atraso.ms:20}") long atrasoMs)
+	{
+		AtomicLong reservas = new AtomicLong();
+		return new IEstoqueExternalAssincrono()
+		{
+			@Override
+			public CompletableFuture<ReservaEstoqueDTO> reservar(List<Long> produtosIds,
+					List<Long> produtosQuantidades, Duration validade)
+			{
+				return depois(atrasoMs, () -> new ReservaEstoqueDTO(true, reservas.incrementAndGet(), List.of()));
+			}
+
+			@Override
+			public CompletableFuture<EstoqueBaixaDTO> confirmarReserva(Long reservaId)
+			{
+				return depois(atrasoMs, () -> new EstoqueBaixaDTO(true));
+			}
+
+			@Override
+			public CompletableFuture<Void> liberarReserva(Long reservaId)
+			{
+				return depois(atrasoMs, () -> null);
+			}
+		};
+	}
+
+	@Bean
+	@Primary
+	public IPagamentoExternalAssincrono pagamentoLentoAssincrono(@Value("${carga.atraso.ms:20}") long atrasoMs)
+	{
+		AtomicLong transacoes = new AtomicLong();
+		return new IPagamentoExternalAssincrono()
+		{
+			@Override
+			public CompletableFuture<PagamentoDTO> autorizarPagamento(Long clienteId, Double custoTotal)
+			{
+				return depois(atrasoMs, () -> new PagamentoDTO(true, transacoes.incrementAndGet()));
+			}
+
+			@Override
+			public CompletableFuture<Void> cancelarPagamento(Long clienteId, Long pagamentoTransacaoId)
+			{
+				return depois(atrasoMs, () -> null);
+			}
+		};
+	}
+
+	/** Completa na thread do temporizador do JDK, sem executor próprio. */
+	private static <T> CompletableFuture<T> depois(long ms, Supplier<T> resposta)
+	{
+		Executor atraso = CompletableFuture.delayedExecutor(ms, TimeUnit.MILLISECONDS, Runnable::run);
+		return CompletableFuture.supplyAsync(resposta, atraso);
+	}
+
+	private static void dormir(long ms)
+	{
+		try
+		{
+			Thread.sleep(ms);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
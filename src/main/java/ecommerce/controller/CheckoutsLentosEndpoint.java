@@ -0,0 +1,40 @@
+package ecommerce.controller;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import ecommerce.dto.CheckoutLentoDTO;
+import ecommerce.service.RegistroCheckoutsLentos;
+
+/**
+ * {@code GET /actuator/checkoutslentos}: os checkouts unitários mais recentes acima do limiar, do
+ * mais recente para o mais antigo, com o tempo de cada etapa.
+ */
+@Component
+@Endpoint(id = "checkoutslentos")
+public class CheckoutsLentosEndpoint
+{
+	private final RegistroCheckoutsLentos registro;
+
+	public CheckoutsLentosEndpoint(RegistroCheckoutsLentos registro)
+	{
+		this.registro = registro;
+	}
+
+	@ReadOperation
+	public CheckoutsLentos listar()
+	{
+		return new CheckoutsLentos(registro.getLimiar().toMillis(), registro.getCapacidade(),
+				registro.getRegistrados(), registro.listar());
+	}
+
+	/**
+	 * @param registrados checkouts lentos desde a subida, inclusive os que já saíram do buffer
+	 */
+	public record CheckoutsLentos(long limiarMs, int capacidade, long registrados, List<CheckoutLentoDTO> checkouts)
+	{
+	}
+}
@@ -1,12 +1,21 @@
 package ecommerce.controller;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import ecommerce.dto.CompraDTO;
+import ecommerce.dto.PedidoCheckoutDTO;
+import ecommerce.external.ServicoIndisponivelException;
+import ecommerce.service.CompraAssincronaService;
 import ecommerce.service.CompraService;
+import ecommerce.service.RegistroIdempotencia;
+import ecommerce.service.RegistroIdempotencia.ChaveReutilizadaException;
+import ecommerce.service.RegistroIdempotencia.RegistroCheioException;
 
 @RestController
 @RequestMapping("/")
@@ -14,33 +23,166 @@ public class CompraController
 {
 
 	private final CompraService compraService;
+	private final CompraAssincronaService compraAssincronaService;
+	private final RegistroIdempotencia registroIdempotencia;
 
 	@Autowired
-	public CompraController(CompraService compraService)
+	public CompraController(CompraService compraService, CompraAssincronaService compraAssincronaService,
+			RegistroIdempotencia registroIdempotencia)
 	{
 		this.compraService = compraService;
+		this.compraAssincronaService = compraAssincronaService;
+		this.registroIdempotencia = registroIdempotencia;
 	}
 
+	/**
+	 * Com o cabeçalho {@code Idempotency-Key}, repetições da mesma requisição (mesma chave, carrinho
+	 * e cliente) recebem a resposta da primeira, sem nova autorização de pagamento; se a primeira
+	 * ainda está em andamento, a repetição espera por ela. Respostas 5xx não são guardadas. Chave
+	 * reutilizada com outro pedido: 422; chave nova com o registro cheio de checkouts em andamento: 503.
+	 */
 	@PostMapping("/finalizar")
-	public ResponseEntity<CompraDTO> finalizarCompra(@RequestParam Long carrinhoId, @RequestParam Long clienteId)
+	public ResponseEntity<CompraDTO> finalizarCompra(@RequestParam Long carrinhoId, @RequestParam Long clienteId,
+			@RequestHeader(value = "Idempotency-Key", required = false) String chaveIdempotencia)
+	{
+		if (chaveIdempotencia == null || chaveIdempotencia.isBlank())
+		{
+			return finalizar(carrinhoId, clienteId);
+		}
+
+		try
+		{
+			return registroIdempotencia.executar(chaveIdempotencia, carrinhoId + ":" + clienteId, () -> {
+				ResponseEntity<CompraDTO> resposta = finalizar(carrinhoId, clienteId);
+				if (resposta.getStatusCode().is5xxServerError())
+				{
+					// Falha transitória: a repetição deve tentar de novo, então não fica guardada
+					throw new RespostaNaoGuardada(resposta);
+				}
+				return resposta;
+			});
+		}
+		catch (RespostaNaoGuardada e)
+		{
+			return e.resposta;
+		}
+		catch (ChaveReutilizadaException e)
+		{
+			return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(new CompraDTO(false, null, e.getMessage()));
+		}
+		catch (RegistroCheioException e)
+		{
+			return erro(e);
+		}
+	}
+
+	private ResponseEntity<CompraDTO> finalizar(Long carrinhoId, Long clienteId)
 	{
 		try
 		{
 			CompraDTO compraDTO = compraService.finalizarCompra(carrinhoId, clienteId);
 			return ResponseEntity.ok(compraDTO);
 		}
-		catch (IllegalArgumentException e)
+		catch (Exception e)
+		{
+			return erro(e);
+		}
+	}
+
+	/**
+	 * O mesmo checkout de {@code /finalizar}, com as mesmas respostas e o mesmo tratamento de
+	 * {@code Idempotency-Key}, sem prender a thread da requisição: ela é devolvida ao servidor
+	 * enquanto estoque e pagamento respondem, e a resposta é escrita quando o checkout termina.
+	 */
+	@PostMapping("/finalizar/assincrono")
+	public CompletableFuture<ResponseEntity<CompraDTO>> finalizarCompraAssincrona(@RequestParam Long carrinhoId,
+			@RequestParam Long clienteId,
+			@RequestHeader(value = "Idempotency-Key", required = false) String chaveIdempotencia)
+	{
+		if (chaveIdempotencia == null || chaveIdempotencia.isBlank())
+		{
+			return finalizarAssincrono(carrinhoId, clienteId);
+		}
+
+		try
+		{
+			return registroIdempotencia
+					.executarAssincrono(chaveIdempotencia, carrinhoId + ":" + clienteId,
+							() -> finalizarAssincrono(carrinhoId, clienteId).thenApply(resposta -> {
+								if (resposta.getStatusCode().is5xxServerError())
+								{
+									throw new RespostaNaoGuardada(resposta);
+								}
+								return resposta;
+							}))
+					.exceptionally(e -> CompraAssincronaService.causa(e) instanceof RespostaNaoGuardada naoGuardada
+							? naoGuardada.resposta
+							: erro(CompraAssincronaService.causa(e)));
+		}
+		catch (ChaveReutilizadaException e)
+		{
+			return CompletableFuture.completedFuture(
+					ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(new CompraDTO(false, null, e.getMessage())));
+		}
+		catch (RegistroCheioException e)
+		{
+			return CompletableFuture.completedFuture(erro(e));
+		}
+	}
+
+	private CompletableFuture<ResponseEntity<CompraDTO>> finalizarAssincrono(Long carrinhoId, Long clienteId)
+	{
+		return compraAssincronaService.finalizarCompra(carrinhoId, clienteId).handle(
+				(compraDTO, e) -> e == null ? ResponseEntity.ok(compraDTO) : erro(CompraAssincronaService.causa(e)));
+	}
+
+	private static ResponseEntity<CompraDTO> erro(Throwable e)
+	{
+		if (e instanceof IllegalArgumentException)
 		{
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, e.getMessage()));
 		}
-		catch (IllegalStateException e)
+		if (e instanceof ServicoIndisponivelException || e instanceof RegistroCheioException)
+		{
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new CompraDTO(false, null, e.getMessage()));
+		}
+		if (e instanceof IllegalStateException)
 		{
 			return ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, e.getMessage()));
 		}
+		return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+				.body(new CompraDTO(false, null, "Erro ao processar compra."));
+	}
+
+	/**
+	 * Finaliza vários carrinhos em uma requisição. Responde 200 com um {@link CompraDTO} por pedido,
+	 * na mesma ordem; o sucesso ou a falha de cada carrinho está no próprio DTO.
+	 */
+	@PostMapping("/finalizar/lote")
+	public ResponseEntity<List<CompraDTO>> finalizarCompras(@RequestBody List<PedidoCheckoutDTO> pedidos)
+	{
+		try
+		{
+			return ResponseEntity.ok(compraService.finalizarCompras(pedidos));
+		}
 		catch (Exception e)
 		{
+			CompraDTO erro = new CompraDTO(false, null, "Erro ao processar compra.");
 			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-					.body(new CompraDTO(false, null, "Erro ao processar compra."));
+					.body(pedidos.stream().map(p -> erro).toList());
+		}
+	}
+
+	private static class RespostaNaoGuardada extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final transient ResponseEntity<CompraDTO> resposta;
+
+		RespostaNaoGuardada(ResponseEntity<CompraDTO> resposta)
+		{
+			super(null, null, false, false);
+			this.resposta = resposta;
 		}
 	}
 }
@@ -0,0 +1,61 @@
+package ecommerce.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import ecommerce.dto.CotacaoDTO;
+import ecommerce.service.CotacaoService;
+import ecommerce.service.PrecificacaoEmLote;
+import jakarta.servlet.http.HttpServletResponse;
+
+@RestController
+@RequestMapping("/")
+public class CotacaoController
+{
+
+	private final CotacaoService cotacaoService;
+	private final PrecificacaoEmLote precificacaoEmLote;
+
+	@Autowired
+	public CotacaoController(CotacaoService cotacaoService, PrecificacaoEmLote precificacaoEmLote)
+	{
+		this.cotacaoService = cotacaoService;
+		this.precificacaoEmLote = precificacaoEmLote;
+	}
+
+	/** Custo total do carrinho sem finalizar a compra (somente leitura, com cache por conteúdo). */
+	@GetMapping("/cotacao")
+	public ResponseEntity<CotacaoDTO> cotar(@RequestParam Long carrinhoId, @RequestParam Long clienteId)
+	{
+		try
+		{
+			return ResponseEntity.ok(cotacaoService.cotar(carrinhoId, clienteId));
+		}
+		catch (IllegalArgumentException e)
+		{
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+	}
+
+	/**
+	 * Custo total de carrinhos avulsos em NDJSON: uma linha
+	 * {@code {"id":..,"regiao":..,"tipoCliente":..,"itens":[{"produtoId":..,"quantidade":..}]}} por
+	 * carrinho na entrada, uma linha {@code {"id":..,"custoTotal":..}} ou {@code {"id":..,"erro":..}}
+	 * por carrinho na resposta, na mesma ordem. A resposta é escrita enquanto a entrada é lida, na
+	 * própria thread da requisição (sem o tempo limite das requisições assíncronas).
+	 */
+	@PostMapping(value = "/cotacao/lote", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+	public void cotarEmLote(InputStream corpo, HttpServletResponse resposta) throws IOException
+	{
+		resposta.setStatus(HttpStatus.OK.value());
+		resposta.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+		resposta.setCharacterEncoding("UTF-8");
+		precificacaoEmLote.precificar(corpo, resposta.getOutputStream());
+	}
+}
@@ -0,0 +1,9 @@
+package ecommerce.dto;
+
+import java.time.Instant;
+import java.util.Map;
+
+public record CheckoutLentoDTO(long sequencia, Instant instante, Long carrinhoId, Long clienteId, int produtos,
+		String resultado, double duracaoMs, Map<String, Double> etapasMs)
+{
+}
@@ -0,0 +1,9 @@
+package ecommerce.dto;
+
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+
+/** Atributos de um cliente que entram no custo do carrinho. */
+public record ClientePrecificacaoDTO(Long id, Regiao regiao, TipoCliente tipo)
+{
+}
@@ -0,0 +1,11 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/** Resposta de uma linha da precificação em lote: {@code custoTotal} ou {@code erro}. */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CustoCarrinhoDTO(String id, BigDecimal custoTotal, String erro)
+{
+}
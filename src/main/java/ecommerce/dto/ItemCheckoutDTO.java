@@ -0,0 +1,10 @@
+package ecommerce.dto;
+
+/**
+ * Item da consulta de checkout, só com ids e quantidade: os atributos de preço do cliente vêm do
+ * {@code ClienteService} e os do produto, do {@code CatalogoProdutos}. {@code itemId} é nulo quando
+ * o carrinho não tem itens.
+ */
+public record ItemCheckoutDTO(Long clienteId, Long carrinhoId, Long itemId, Long produtoId, Long quantidade)
+{
+}
@@ -0,0 +1,5 @@
+package ecommerce.dto;
+
+public record ItemPrecificacaoDTO(Long produtoId, Long quantidade)
+{
+}
@@ -0,0 +1,18 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+
+/**
+ * Linha da consulta de checkout: atributos de preço do cliente repetidos em cada item do carrinho.
+ * {@code carrinhoId} é nulo quando o carrinho não existe para o cliente e {@code itemId} é nulo
+ * quando o carrinho não tem itens.
+ */
+public record LinhaCheckoutDTO(Long clienteId, Regiao regiao, TipoCliente tipoCliente, Long carrinhoId, Long itemId,
+		Long produtoId, BigDecimal preco, BigDecimal pesoTributavel, Boolean fragil, TipoProduto tipoProduto,
+		Long quantidade)
+{
+}
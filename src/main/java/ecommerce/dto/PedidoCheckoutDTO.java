@@ -0,0 +1,5 @@
+package ecommerce.dto;
+
+public record PedidoCheckoutDTO(Long carrinhoId, Long clienteId)
+{
+}
@@ -0,0 +1,11 @@
+package ecommerce.dto;
+
+import java.util.List;
+
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+
+/** Uma linha da precificação em lote: carrinho avulso, identificado só por quem envia. */
+public record PrecificacaoCarrinhoDTO(String id, Regiao regiao, TipoCliente tipoCliente, List<ItemPrecificacaoDTO> itens)
+{
+}
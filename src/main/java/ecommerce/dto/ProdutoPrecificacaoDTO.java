@@ -0,0 +1,22 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+
+/** Atributos de um produto que entram no custo do carrinho. */
+public record ProdutoPrecificacaoDTO(Long id, BigDecimal preco, BigDecimal pesoTributavel, Boolean fragil,
+		TipoProduto tipo)
+{
+	/**
+	 * Para a projeção: produto gravado antes do peso tributável existir tem a coluna nula e recebe o
+	 * peso calculado das dimensões, como em {@link Produto#getPesoTributavel()}.
+	 */
+	public ProdutoPrecificacaoDTO(Long id, BigDecimal preco, BigDecimal pesoTributavel, BigDecimal pesoFisico,
+			BigDecimal comprimento, BigDecimal largura, BigDecimal altura, Boolean fragil, TipoProduto tipo)
+	{
+		this(id, preco, pesoTributavel != null ? pesoTributavel
+				: Produto.calcularPesoTributavel(pesoFisico, comprimento, largura, altura), fragil, tipo);
+	}
+}
@@ -0,0 +1,7 @@
+package ecommerce.dto;
+
+import java.util.List;
+
+public record ReservaEstoqueDTO(Boolean reservada, Long reservaId, List<Long> idsProdutosIndisponiveis)
+{
+}
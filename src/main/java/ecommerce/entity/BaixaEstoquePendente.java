@@ -0,0 +1,61 @@
+package ecommerce.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Registro do outbox de baixas de estoque: confirmar a reserva {@code reservaId} da {@link Compra}
+ * {@code compraId}. Gravado na mesma transação da compra e removido quando a baixa é feita ou a
+ * compra é cancelada.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_baixa_estoque_pendente_proxima", columnList = "proximaTentativa"))
+public class BaixaEstoquePendente extends RegistroPendente
+{
+
+	private Long compraId;
+
+	private Long reservaId;
+
+	private Long clienteId;
+
+	private Long transacaoPagamentoId;
+
+	public BaixaEstoquePendente()
+	{
+	}
+
+	public BaixaEstoquePendente(Long compraId, Long reservaId, Long clienteId, Long transacaoPagamentoId,
+			Instant criadaEm)
+	{
+		super(criadaEm);
+		this.compraId = compraId;
+		this.reservaId = reservaId;
+		this.clienteId = clienteId;
+		this.transacaoPagamentoId = transacaoPagamentoId;
+	}
+
+	// Getters e Setters
+	public Long getCompraId()
+	{
+		return compraId;
+	}
+
+	public Long getReservaId()
+	{
+		return reservaId;
+	}
+
+	public Long getClienteId()
+	{
+		return clienteId;
+	}
+
+	public Long getTransacaoPagamentoId()
+	{
+		return transacaoPagamentoId;
+	}
+}
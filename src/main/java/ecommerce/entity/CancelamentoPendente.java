@@ -0,0 +1,45 @@
+package ecommerce.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Cancelamento de pagamento ainda não aceito pelo serviço de pagamento. Há no máximo um por
+ * transação; é removido quando o cancelamento dá certo.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_cancelamento_pendente_proxima", columnList = "proximaTentativa"))
+public class CancelamentoPendente extends RegistroPendente
+{
+
+	private Long clienteId;
+
+	@Column(unique = true, nullable = false)
+	private Long transacaoPagamentoId;
+
+	public CancelamentoPendente()
+	{
+	}
+
+	public CancelamentoPendente(Long clienteId, Long transacaoPagamentoId, Instant criadaEm)
+	{
+		super(criadaEm);
+		this.clienteId = clienteId;
+		this.transacaoPagamentoId = transacaoPagamentoId;
+	}
+
+	// Getters e Setters
+	public Long getClienteId()
+	{
+		return clienteId;
+	}
+
+	public Long getTransacaoPagamentoId()
+	{
+		return transacaoPagamentoId;
+	}
+}
@@ -0,0 +1,6 @@
+package ecommerce.entity;
+
+/** Publicado quando um cliente é alterado ou removido no banco. */
+public record ClienteAlteradoEvent(Long clienteId)
+{
+}
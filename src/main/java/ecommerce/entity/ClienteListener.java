@@ -0,0 +1,29 @@
+package ecommerce.entity;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Listener JPA de {@link Cliente} (instanciado pelo Spring via Hibernate) que publica
+ * {@link ClienteAlteradoEvent} para quem guarda dados de cliente em memória.
+ */
+@Component
+public class ClienteListener
+{
+	private final ApplicationEventPublisher publisher;
+
+	public ClienteListener(ApplicationEventPublisher publisher)
+	{
+		this.publisher = publisher;
+	}
+
+	@PostUpdate
+	@PostRemove
+	public void alterado(Cliente cliente)
+	{
+		publisher.publishEvent(new ClienteAlteradoEvent(cliente.getId()));
+	}
+}
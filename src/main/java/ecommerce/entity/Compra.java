@@ -0,0 +1,89 @@
+package ecommerce.entity;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+
+/** Compra com pagamento autorizado, registrada quando a baixa de estoque vai para o outbox. */
+@Entity
+public class Compra
+{
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	private Long carrinhoId;
+
+	private Long clienteId;
+
+	private Long transacaoPagamentoId;
+
+	private BigDecimal custoTotal;
+
+	@Enumerated(EnumType.STRING)
+	private SituacaoCompra situacao;
+
+	private Instant criadaEm;
+
+	public Compra()
+	{
+	}
+
+	public Compra(Long carrinhoId, Long clienteId, Long transacaoPagamentoId, BigDecimal custoTotal, Instant criadaEm)
+	{
+		this.carrinhoId = carrinhoId;
+		this.clienteId = clienteId;
+		this.transacaoPagamentoId = transacaoPagamentoId;
+		this.custoTotal = custoTotal;
+		this.situacao = SituacaoCompra.CONFIRMADA;
+		this.criadaEm = criadaEm;
+	}
+
+	// Getters e Setters
+	public Long getId()
+	{
+		return id;
+	}
+
+	public Long getCarrinhoId()
+	{
+		return carrinhoId;
+	}
+
+	public Long getClienteId()
+	{
+		return clienteId;
+	}
+
+	public Long getTransacaoPagamentoId()
+	{
+		return transacaoPagamentoId;
+	}
+
+	public BigDecimal getCustoTotal()
+	{
+		return custoTotal;
+	}
+
+	public SituacaoCompra getSituacao()
+	{
+		return situacao;
+	}
+
+	public void setSituacao(SituacaoCompra situacao)
+	{
+		this.situacao = situacao;
+	}
+
+	public Instant getCriadaEm()
+	{
+		return criadaEm;
+	}
+}
@@ -1,18 +1,25 @@
 package ecommerce.entity;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 
 @Entity
+@EntityListeners(ProdutoListener.class)
 public class Produto
 {
 
+	private static final BigDecimal DIVISOR_PESO_CUBICO = BigDecimal.valueOf(6000);
+
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
 	private Long id;
@@ -32,6 +39,13 @@ public class Produto
 	private BigDecimal largura;
 	private BigDecimal altura;
 
+	/**
+	 * Peso tributável em quilogramas (kg): max(pesoFisico, C x L x A / 6000).
+	 * Derivado; recalculado pelos setters de peso/dimensões e ao salvar. Nulo em produtos gravados
+	 * antes do campo existir, até o backfill ou a próxima gravação.
+	 */
+	private BigDecimal pesoTributavel;
+
 	/** Indica se o produto é frágil. */
 	private Boolean fragil;
 
@@ -55,6 +69,31 @@ public class Produto
 		this.altura = altura;
 		this.fragil = fragil;
 		this.tipo = tipo;
+		this.pesoTributavel = calcularPesoTributavel(pesoFisico, comprimento, largura, altura);
+	}
+
+	/**
+	 * Peso tributável = max(peso físico, peso cúbico), com o peso cúbico arredondado para 2 casas.
+	 *
+	 * @return {@code null} se o peso ou alguma dimensão não estiver definido.
+	 */
+	public static BigDecimal calcularPesoTributavel(BigDecimal pesoFisico, BigDecimal comprimento,
+			BigDecimal largura, BigDecimal altura)
+	{
+		if (pesoFisico == null || comprimento == null || largura == null || altura == null)
+		{
+			return null;
+		}
+		BigDecimal pesoCubico = comprimento.multiply(largura).multiply(altura).divide(DIVISOR_PESO_CUBICO, 2,
+				RoundingMode.HALF_UP);
+		return pesoFisico.max(pesoCubico);
+	}
+
+	@PrePersist
+	@PreUpdate
+	public void recalcularPesoTributavel()
+	{
+		this.pesoTributavel = calcularPesoTributavel(pesoFisico, comprimento, largura, altura);
 	}
 
 	// Getters e Setters
@@ -106,6 +145,7 @@ public class Produto
 	public void setPesoFisico(BigDecimal pesoFisico)
 	{
 		this.pesoFisico = pesoFisico;
+		recalcularPesoTributavel();
 	}
 
 	public BigDecimal getComprimento()
@@ -116,6 +156,7 @@ public class Produto
 	public void setComprimento(BigDecimal comprimento)
 	{
 		this.comprimento = comprimento;
+		recalcularPesoTributavel();
 	}
 
 	public BigDecimal getLargura()
@@ -126,6 +167,7 @@ public class Produto
 	public void setLargura(BigDecimal largura)
 	{
 		this.largura = largura;
+		recalcularPesoTributavel();
 	}
 
 	public BigDecimal getAltura()
@@ -136,6 +178,14 @@ public class Produto
 	public void setAltura(BigDecimal altura)
 	{
 		this.altura = altura;
+		recalcularPesoTributavel();
+	}
+
+	/** Calculado das dimensões enquanto a coluna estiver nula. */
+	public BigDecimal getPesoTributavel()
+	{
+		return pesoTributavel != null ? pesoTributavel
+				: calcularPesoTributavel(pesoFisico, comprimento, largura, altura);
 	}
 
 	public Boolean isFragil()
@@ -0,0 +1,6 @@
+package ecommerce.entity;
+
+/** Publicado quando um produto é alterado ou removido no banco. */
+public record ProdutoAlteradoEvent(Long produtoId)
+{
+}
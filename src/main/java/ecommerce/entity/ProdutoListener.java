@@ -0,0 +1,29 @@
+package ecommerce.entity;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Listener JPA de {@link Produto} (instanciado pelo Spring via Hibernate) que publica
+ * {@link ProdutoAlteradoEvent} para quem guarda dados de produto em memória.
+ */
+@Component
+public class ProdutoListener
+{
+	private final ApplicationEventPublisher publisher;
+
+	public ProdutoListener(ApplicationEventPublisher publisher)
+	{
+		this.publisher = publisher;
+	}
+
+	@PostUpdate
+	@PostRemove
+	public void alterado(Produto produto)
+	{
+		publisher.publishEvent(new ProdutoAlteradoEvent(produto.getId()));
+	}
+}
@@ -0,0 +1,79 @@
+package ecommerce.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.MappedSuperclass;
+
+/**
+ * Campos comuns às tabelas de trabalho pendente processadas em segundo plano
+ * ({@link BaixaEstoquePendente}, {@link CancelamentoPendente}). {@code proximaTentativa} é também o
+ * prazo de quem reivindicou o registro: se o processamento não terminar até lá, ele volta a ficar
+ * disponível.
+ */
+@MappedSuperclass
+public abstract class RegistroPendente
+{
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	private Instant criadaEm;
+
+	private Instant proximaTentativa;
+
+	/** Falhas ao processar o registro até agora. */
+	private int tentativas;
+
+	/** Quem reivindicou o registro por último. */
+	private String reivindicacao;
+
+	protected RegistroPendente()
+	{
+	}
+
+	protected RegistroPendente(Instant criadaEm)
+	{
+		this.criadaEm = criadaEm;
+		this.proximaTentativa = criadaEm;
+	}
+
+	// Getters e Setters
+	public Long getId()
+	{
+		return id;
+	}
+
+	public Instant getCriadaEm()
+	{
+		return criadaEm;
+	}
+
+	public Instant getProximaTentativa()
+	{
+		return proximaTentativa;
+	}
+
+	public void setProximaTentativa(Instant proximaTentativa)
+	{
+		this.proximaTentativa = proximaTentativa;
+	}
+
+	public int getTentativas()
+	{
+		return tentativas;
+	}
+
+	public void setTentativas(int tentativas)
+	{
+		this.tentativas = tentativas;
+	}
+
+	public String getReivindicacao()
+	{
+		return reivindicacao;
+	}
+}
@@ -0,0 +1,14 @@
+package ecommerce.entity;
+
+/** Situação de uma {@link Compra} cuja baixa de estoque é feita em segundo plano. */
+public enum SituacaoCompra
+{
+	/** Pagamento autorizado; baixa de estoque pendente. */
+	CONFIRMADA,
+
+	/** Estoque baixado. */
+	CONCLUIDA,
+
+	/** Baixa recusada ou sem sucesso após as tentativas; pagamento cancelado. */
+	CANCELADA
+}
@@ -0,0 +1,230 @@
+package ecommerce.external;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+
+/**
+ * Aplica circuit breaker, bulkhead e tempo limite às chamadas de uma interface externa. A chamada
+ * roda no {@code executor} para que quem chamou possa desistir após o tempo limite; a vaga no
+ * bulkhead só é devolvida quando a chamada de fato termina, então um serviço lento não acumula
+ * mais chamadas do que o limite. Métodos que não são da interface protegida passam direto.
+ *
+ * Métodos que já devolvem um {@link CompletableFuture} são decorados sem thread nenhuma: o proxy
+ * devolve outro future, que falha com as mesmas exceções traduzidas.
+ *
+ * Desistir não interrompe a chamada, que pode terminar depois e mudar o estado do serviço. Métodos
+ * com uma {@link Compensacao} a recebem com o resultado quando terminam com sucesso depois do tempo
+ * limite (uma autorização de pagamento é cancelada, por exemplo); métodos em {@code semTempoLimite},
+ * cujo efeito não tem como ser desfeito, esperam a resposta, limitados só pelo bulkhead e pelo
+ * circuit breaker.
+ */
+class ChamadaResiliente implements MethodInterceptor
+{
+	private static final Logger log = LoggerFactory.getLogger(ChamadaResiliente.class);
+
+	/** Desfaz o efeito de uma chamada que terminou depois de quem chamou ter desistido. */
+	@FunctionalInterface
+	interface Compensacao
+	{
+		/**
+		 * @param alvo o bean protegido, chamado diretamente
+		 * @return opcionalmente um {@link CompletionStage} da compensação, para registrar a falha dela
+		 */
+		Object compensar(Object alvo, Object[] argumentos, Object resultado) throws Throwable;
+	}
+
+	private final Class<?> interfaceProtegida;
+	private final String dependencia;
+	private final CircuitBreaker circuitBreaker;
+	private final Bulkhead bulkhead;
+	private final TimeLimiter timeLimiter;
+	private final Executor executor;
+	private final ScheduledExecutorService agendador;
+	private final Map<String, Compensacao> compensacoes;
+	private final Set<String> semTempoLimite;
+
+	private final Map<Method, Boolean> protegidos = new ConcurrentHashMap<>();
+
+	ChamadaResiliente(Class<?> interfaceProtegida, String dependencia, CircuitBreaker circuitBreaker,
+			Bulkhead bulkhead, TimeLimiter timeLimiter, Executor executor, ScheduledExecutorService agendador)
+	{
+		this(interfaceProtegida, dependencia, circuitBreaker, bulkhead, timeLimiter, executor, agendador, Map.of(),
+				Set.of());
+	}
+
+	ChamadaResiliente(Class<?> interfaceProtegida, String dependencia, CircuitBreaker circuitBreaker,
+			Bulkhead bulkhead, TimeLimiter timeLimiter, Executor executor, ScheduledExecutorService agendador,
+			Map<String, Compensacao> compensacoes, Set<String> semTempoLimite)
+	{
+		this.interfaceProtegida = interfaceProtegida;
+		this.dependencia = dependencia;
+		this.circuitBreaker = circuitBreaker;
+		this.bulkhead = bulkhead;
+		this.timeLimiter = timeLimiter;
+		this.executor = executor;
+		this.agendador = agendador;
+		this.compensacoes = compensacoes;
+		this.semTempoLimite = semTempoLimite;
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocacao) throws Throwable
+	{
+		if (!protegidos.computeIfAbsent(invocacao.getMethod(), this::daInterfaceProtegida))
+		{
+			return invocacao.proceed();
+		}
+
+		String metodo = invocacao.getMethod().getName();
+		boolean assincrona = CompletableFuture.class.isAssignableFrom(invocacao.getMethod().getReturnType());
+		AtomicReference<CompletionStage<Object>> original = new AtomicReference<>();
+		Supplier<CompletionStage<Object>> chamada = () -> {
+			CompletionStage<Object> estagio = assincrona ? prosseguirAssincrono(invocacao)
+					: CompletableFuture.supplyAsync(() -> prosseguir(invocacao), executor);
+			original.set(estagio);
+			return estagio;
+		};
+		chamada = Bulkhead.decorateCompletionStage(bulkhead, chamada);
+		if (!semTempoLimite.contains(metodo))
+		{
+			chamada = timeLimiter.decorateCompletionStage(agendador, chamada);
+		}
+		chamada = CircuitBreaker.decorateCompletionStage(circuitBreaker, chamada);
+
+		if (assincrona)
+		{
+			CompletableFuture<Object> resultado = new CompletableFuture<>();
+			chamada.get().whenComplete((valor, erro) -> {
+				if (erro == null)
+				{
+					resultado.complete(valor);
+				}
+				else
+				{
+					resultado.completeExceptionally(desistir(invocacao, original.get(),
+							erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro));
+				}
+			});
+			return resultado;
+		}
+
+		try
+		{
+			return chamada.get().toCompletableFuture().join();
+		}
+		catch (CompletionException e)
+		{
+			throw desistir(invocacao, original.get(), e.getCause() != null ? e.getCause() : e);
+		}
+	}
+
+	/** Traduz o erro e, se foi o tempo limite, compensa a chamada caso ela ainda termine com sucesso. */
+	private Throwable desistir(MethodInvocation invocacao, CompletionStage<Object> original, Throwable erro)
+	{
+		Compensacao compensacao = compensacoes.get(invocacao.getMethod().getName());
+		if (erro instanceof TimeoutException && original != null && compensacao != null)
+		{
+			original.thenAccept(resultado -> compensar(invocacao, compensacao, resultado));
+		}
+		return traduzir(erro);
+	}
+
+	private void compensar(MethodInvocation invocacao, Compensacao compensacao, Object resultado)
+	{
+		String metodo = invocacao.getMethod().getName();
+		try
+		{
+			log.warn("{} de {} terminou depois do tempo limite; desfazendo.", metodo, dependencia);
+			if (compensacao.compensar(invocacao.getThis(), invocacao.getArguments(), resultado) instanceof CompletionStage<?> estagio)
+			{
+				estagio.whenComplete((valor, erro) -> {
+					if (erro != null)
+					{
+						log.error("Não foi possível desfazer {} de {}: {}", metodo, dependencia, erro.toString());
+					}
+				});
+			}
+		}
+		catch (Throwable e)
+		{
+			log.error("Não foi possível desfazer {} de {}: {}", metodo, dependencia, e.toString());
+		}
+	}
+
+	private Throwable traduzir(Throwable erro)
+	{
+		String mensagem = "Serviço de " + dependencia + " indisponível.";
+		if (erro instanceof TimeoutException)
+		{
+			return new TempoEsgotadoException(mensagem, erro);
+		}
+		if (erro instanceof CallNotPermittedException || erro instanceof BulkheadFullException)
+		{
+			return new ServicoIndisponivelException(mensagem, erro);
+		}
+		return erro;
+	}
+
+	private static Object prosseguir(MethodInvocation invocacao)
+	{
+		try
+		{
+			return invocacao.proceed();
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new CompletionException(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static CompletionStage<Object> prosseguirAssincrono(MethodInvocation invocacao)
+	{
+		try
+		{
+			return (CompletionStage<Object>) invocacao.proceed();
+		}
+		catch (Throwable e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	private boolean daInterfaceProtegida(Method metodo)
+	{
+		try
+		{
+			interfaceProtegida.getMethod(metodo.getName(), metodo.getParameterTypes());
+			return true;
+		}
+		catch (NoSuchMethodException e)
+		{
+			return false;
+		}
+	}
+}
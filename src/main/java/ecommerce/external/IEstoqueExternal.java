@@ -1,9 +1,11 @@
 package ecommerce.external;
 
+import java.time.Duration;
 import java.util.List;
 
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
 
 public interface IEstoqueExternal
 {
@@ -12,4 +14,20 @@ public interface IEstoqueExternal
 
 	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades);
 
+	/**
+	 * Separa as quantidades de todos os produtos de uma vez (tudo ou nada). Se algum produto não
+	 * tiver saldo, nada é reservado e os ids em falta vêm em {@code idsProdutosIndisponiveis}. A
+	 * reserva expira sozinha após {@code validade} se não for confirmada nem liberada.
+	 */
+	public ReservaEstoqueDTO reservar(List<Long> produtosIds, List<Long> produtosQuantidades, Duration validade);
+
+	/**
+	 * Transforma a reserva em baixa definitiva; falha se a reserva não existe mais (expirou ou foi
+	 * liberada). Idempotente: confirmar de novo uma reserva já confirmada também tem sucesso.
+	 */
+	public EstoqueBaixaDTO confirmarReserva(Long reservaId);
+
+	/** Devolve ao saldo as quantidades reservadas; reservas inexistentes são ignoradas. */
+	public void liberarReserva(Long reservaId);
+
 }
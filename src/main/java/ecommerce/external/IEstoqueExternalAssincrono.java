@@ -0,0 +1,24 @@
+package ecommerce.external;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+
+/**
+ * Operações de reserva do {@link IEstoqueExternal} que não prendem a thread de quem chama: o
+ * resultado (ou a falha) chega pelo {@link CompletableFuture}. Mesma semântica da versão síncrona.
+ */
+public interface IEstoqueExternalAssincrono
+{
+
+	public CompletableFuture<ReservaEstoqueDTO> reservar(List<Long> produtosIds, List<Long> produtosQuantidades,
+			Duration validade);
+
+	public CompletableFuture<EstoqueBaixaDTO> confirmarReserva(Long reservaId);
+
+	public CompletableFuture<Void> liberarReserva(Long reservaId);
+
+}
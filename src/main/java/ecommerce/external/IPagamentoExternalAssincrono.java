@@ -0,0 +1,14 @@
+package ecommerce.external;
+
+import java.util.concurrent.CompletableFuture;
+
+import ecommerce.dto.PagamentoDTO;
+
+/** {@link IPagamentoExternal} sem prender a thread de quem chama; mesma semântica. */
+public interface IPagamentoExternalAssincrono
+{
+
+	CompletableFuture<PagamentoDTO> autorizarPagamento(Long clienteId, Double custoTotal);
+
+	CompletableFuture<Void> cancelarPagamento(Long clienteId, Long pagamentoTransacaoId);
+}
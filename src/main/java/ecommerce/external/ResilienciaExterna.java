@@ -0,0 +1,171 @@
+package ecommerce.external;
+
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.external.ChamadaResiliente.Compensacao;
+import ecommerce.service.FilaCancelamentoPagamento;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+
+/**
+ * Envolve todo bean de {@link IEstoqueExternal} e {@link IPagamentoExternal} (e das versões
+ * assíncronas) com {@link ChamadaResiliente}, usando as instâncias {@code estoque} e
+ * {@code pagamento} de circuit breaker, bulkhead e tempo limite configuradas em
+ * {@code resilience4j.*}; as duas versões de um serviço dividem as mesmas instâncias. O proxy
+ * mantém a classe do bean, então quem injeta a implementação concreta continua funcionando.
+ *
+ * Uma autorização de pagamento ou reserva de estoque que termina depois do tempo limite é desfeita
+ * (cancelada ou liberada), porque quem chamou já a deu como falha; o cancelamento vai para a
+ * {@link FilaCancelamentoPagamento}, como as demais compensações, e só é feito na hora sem ela. Baixas e confirmações de reserva
+ * não têm como ser desfeitas e ficam fora do tempo limite: sem isso, quem chamou cancelaria o
+ * pagamento de uma baixa que o estoque ainda pode aplicar.
+ */
+@Component
+public class ResilienciaExterna implements BeanPostProcessor, DisposableBean
+{
+	public static final String ESTOQUE = "estoque";
+	public static final String PAGAMENTO = "pagamento";
+
+	private static final Logger log = LoggerFactory.getLogger(ResilienciaExterna.class);
+
+	private static final Set<String> IRREVERSIVEIS = Set.of("darBaixa", "confirmarReserva");
+
+	private final ObjectProvider<CircuitBreakerRegistry> circuitBreakers;
+	private final ObjectProvider<BulkheadRegistry> bulkheads;
+	private final ObjectProvider<TimeLimiterRegistry> timeLimiters;
+	// Só resolvida ao compensar: a fila depende do pagamento que este processador envolve
+	private final ObjectProvider<FilaCancelamentoPagamento> cancelamentos;
+
+	// As chamadas externas só esperam I/O: uma thread virtual por chamada
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final ScheduledExecutorService agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "resiliencia-externa-tempo-limite");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public ResilienciaExterna(ObjectProvider<CircuitBreakerRegistry> circuitBreakers,
+			ObjectProvider<BulkheadRegistry> bulkheads, ObjectProvider<TimeLimiterRegistry> timeLimiters,
+			ObjectProvider<FilaCancelamentoPagamento> cancelamentos)
+	{
+		this.circuitBreakers = circuitBreakers;
+		this.bulkheads = bulkheads;
+		this.timeLimiters = timeLimiters;
+		this.cancelamentos = cancelamentos;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName)
+	{
+		if (bean instanceof IEstoqueExternal)
+		{
+			return envolver(bean, IEstoqueExternal.class, ESTOQUE);
+		}
+		if (bean instanceof IPagamentoExternal)
+		{
+			return envolver(bean, IPagamentoExternal.class, PAGAMENTO);
+		}
+		if (bean instanceof IEstoqueExternalAssincrono)
+		{
+			return envolver(bean, IEstoqueExternalAssincrono.class, ESTOQUE);
+		}
+		if (bean instanceof IPagamentoExternalAssincrono)
+		{
+			return envolver(bean, IPagamentoExternalAssincrono.class, PAGAMENTO);
+		}
+		return bean;
+	}
+
+	private Object envolver(Object bean, Class<?> interfaceProtegida, String dependencia)
+	{
+		ChamadaResiliente chamada = new ChamadaResiliente(interfaceProtegida, dependencia,
+				circuitBreakers.getObject().circuitBreaker(dependencia), bulkheads.getObject().bulkhead(dependencia),
+				timeLimiters.getObject().timeLimiter(dependencia), executor, agendador, compensacoes(interfaceProtegida),
+				ESTOQUE.equals(dependencia) ? IRREVERSIVEIS : Set.of());
+
+		Class<?> classe = bean.getClass();
+		ProxyFactory fabrica = new ProxyFactory(bean);
+		fabrica.setProxyTargetClass(!Modifier.isFinal(classe.getModifiers()) && !classe.isAnonymousClass());
+		fabrica.addAdvice(chamada);
+		return fabrica.getProxy(classe.getClassLoader());
+	}
+
+	private Map<String, Compensacao> compensacoes(Class<?> interfaceProtegida)
+	{
+		if (interfaceProtegida == IPagamentoExternal.class || interfaceProtegida == IPagamentoExternalAssincrono.class)
+		{
+			return Map.of("autorizarPagamento", (alvo, argumentos, resultado) -> {
+				if (!(resultado instanceof PagamentoDTO pagamento) || !Boolean.TRUE.equals(pagamento.autorizado()))
+				{
+					return null;
+				}
+				return cancelarPagamento(alvo, (Long) argumentos[0], pagamento.transacaoId());
+			});
+		}
+		return Map.of("reservar", (alvo, argumentos, resultado) -> {
+			if (!(resultado instanceof ReservaEstoqueDTO reserva) || !Boolean.TRUE.equals(reserva.reservada()))
+			{
+				return null;
+			}
+			if (alvo instanceof IEstoqueExternalAssincrono assincrono)
+			{
+				return assincrono.liberarReserva(reserva.reservaId());
+			}
+			((IEstoqueExternal) alvo).liberarReserva(reserva.reservaId());
+			return null;
+		});
+	}
+
+	/**
+	 * Pela fila, no {@code executor}: a gravação bloqueia, e a autorização pode ter terminado numa
+	 * thread do cliente assíncrono. Sem a fila (ou com o banco fora), cancela na hora.
+	 */
+	private CompletableFuture<Void> cancelarPagamento(Object alvo, Long clienteId, Long transacaoId)
+	{
+		FilaCancelamentoPagamento fila = cancelamentos.getIfAvailable();
+		if (fila == null)
+		{
+			return cancelarNaHora(alvo, clienteId, transacaoId);
+		}
+		return CompletableFuture.runAsync(() -> fila.enfileirar(clienteId, transacaoId), executor)
+				.exceptionallyCompose(e -> {
+					log.error("Cancelamento do pagamento {} não pôde ser enfileirado; cancelando na hora: {}", transacaoId,
+							(e.getCause() != null ? e.getCause() : e).toString());
+					return cancelarNaHora(alvo, clienteId, transacaoId);
+				});
+	}
+
+	private CompletableFuture<Void> cancelarNaHora(Object alvo, Long clienteId, Long transacaoId)
+	{
+		if (alvo instanceof IPagamentoExternalAssincrono assincrono)
+		{
+			return assincrono.cancelarPagamento(clienteId, transacaoId);
+		}
+		return CompletableFuture.runAsync(() -> ((IPagamentoExternal) alvo).cancelarPagamento(clienteId, transacaoId),
+				executor);
+	}
+
+	@Override
+	public void destroy()
+	{
+		agendador.shutdownNow();
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,20 @@
+package ecommerce.external;
+
+/**
+ * O serviço externo não pôde ser chamado ou não respondeu: circuito aberto, limite de chamadas
+ * simultâneas atingido ou tempo esgotado. A compra falha rápido, sem esperar o serviço.
+ */
+public class ServicoIndisponivelException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	public ServicoIndisponivelException(String mensagem)
+	{
+		super(mensagem);
+	}
+
+	public ServicoIndisponivelException(String mensagem, Throwable causa)
+	{
+		super(mensagem, causa);
+	}
+}
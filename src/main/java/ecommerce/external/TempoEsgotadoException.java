@@ -0,0 +1,17 @@
+package ecommerce.external;
+
+/** O serviço externo não respondeu dentro do tempo limite. */
+public class TempoEsgotadoException extends ServicoIndisponivelException
+{
+	private static final long serialVersionUID = 1L;
+
+	public TempoEsgotadoException(String mensagem)
+	{
+		super(mensagem);
+	}
+
+	public TempoEsgotadoException(String mensagem, Throwable causa)
+	{
+		super(mensagem, causa);
+	}
+}
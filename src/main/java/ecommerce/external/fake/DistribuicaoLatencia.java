@@ -0,0 +1,12 @@
+package ecommerce.external.fake;
+
+/** Forma da latência sorteada a cada chamada do {@link PagamentoSimulado}. */
+public enum DistribuicaoLatencia
+{
+	/** Sempre a média. */
+	FIXA,
+	/** Normal com a média e o desvio configurados, truncada em zero. */
+	NORMAL,
+	/** Log-normal com a mesma média e desvio: mediana abaixo da média e cauda longa à direita. */
+	CAUDA_LONGA
+}
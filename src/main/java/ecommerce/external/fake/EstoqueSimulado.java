@@ -1,28 +1,537 @@
 package ecommerce.external.fake;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
 import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IEstoqueExternalAssincrono;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
 
+/**
+ * Estoque em memória para testes locais e de carga. O saldo de cada produto fica em um
+ * {@code long[]} indexado por um índice denso atribuído ao produto; cada posição é protegida por
+ * uma de {@code listras} travas ({@code índice & (listras - 1)}). Uma operação com vários produtos
+ * trava só as listras envolvidas, sempre em ordem crescente, o que evita deadlock entre checkouts
+ * concorrentes, e aplica tudo ou nada.
+ *
+ * Reservas já descontam o saldo; as expiradas voltam ao saldo na confirmação, em
+ * {@link #expirarReservas()} ou quando falta saldo para uma nova operação. A confirmação é
+ * idempotente: a reserva confirmada é lembrada até o fim da validade, e confirmá-la de novo (quem
+ * repete uma chamada que estourou o tempo, por exemplo) também tem sucesso.
+ *
+ * {@link #assincrono()} expõe as reservas do mesmo saldo pelo {@link IEstoqueExternalAssincrono};
+ * como tudo é em memória, os futures já voltam completos.
+ */
 @Service
-public class EstoqueSimulado implements IEstoqueExternal
+public class EstoqueSimulado implements IEstoqueExternal, MeterBinder
 {
+	private static final Logger log = LoggerFactory.getLogger(EstoqueSimulado.class);
+
+	private final long[] saldos;
+	private final ReentrantLock[] listras;
+	private final int mascaraListras;
+	private final long quantidadePadrao;
+	private String arquivo;
+
+	private final ConcurrentHashMap<Long, Integer> indices = new ConcurrentHashMap<>();
+	private final AtomicInteger proximoIndice = new AtomicInteger();
+
+	private final ConcurrentHashMap<Long, Reserva> reservas = new ConcurrentHashMap<>();
+	private final AtomicLong proximaReserva = new AtomicLong();
+	private final ConcurrentHashMap<Long, Long> confirmadas = new ConcurrentHashMap<>();
+
+	private final LongAdder travamentos = new LongAdder();
+	private final LongAdder travamentosContendidos = new LongAdder();
+	private final LongAdder esperaNanos = new LongAdder();
+	private final LongAdder recusas = new LongAdder();
+
+	private final IEstoqueExternalAssincrono assincrono = new Assincrono();
+
+	public EstoqueSimulado(int capacidade, int listras)
+	{
+		this(capacidade, listras, 0);
+	}
+
+	public EstoqueSimulado(int capacidade, int listras, long quantidadePadrao)
+	{
+		if (capacidade <= 0 || listras <= 0 || quantidadePadrao < 0)
+		{
+			throw new IllegalArgumentException("Capacidade, listras e quantidade padrão inválidas.");
+		}
+
+		int potencia = Integer.highestOneBit(listras);
+		int numeroListras = potencia == listras ? listras : potencia << 1;
+
+		this.saldos = new long[capacidade];
+		this.listras = new ReentrantLock[numeroListras];
+		for (int i = 0; i < numeroListras; i++)
+		{
+			this.listras[i] = new ReentrantLock();
+		}
+		this.mascaraListras = numeroListras - 1;
+		this.quantidadePadrao = quantidadePadrao;
+	}
+
+	@Autowired
+	public EstoqueSimulado(@Value("${estoque.simulado.capacidade:65536}") int capacidade,
+			@Value("${estoque.simulado.listras:64}") int listras,
+			@Value("${estoque.simulado.quantidade-padrao:0}") long quantidadePadrao,
+			@Value("${estoque.simulado.arquivo:}") String arquivo)
+	{
+		this(capacidade, listras, quantidadePadrao);
+		this.arquivo = arquivo;
+	}
+
+	/** Carrega {@code estoque.simulado.arquivo}, se configurado, depois da construção. */
+	@PostConstruct
+	public void carregarArquivo() throws IOException
+	{
+		if (arquivo != null && !arquivo.isBlank())
+		{
+			int produtos = carregar(Path.of(arquivo));
+			log.info("Estoque simulado carregado de {} com {} produtos.", arquivo, produtos);
+		}
+	}
+
+	/**
+	 * Carrega saldos de um arquivo texto com uma linha {@code produtoId;quantidade} por produto
+	 * (também aceita vírgula). Linhas vazias e iniciadas por {@code #} são ignoradas.
+	 */
+	public int carregar(Path arquivo) throws IOException
+	{
+		List<String> linhas = Files.readAllLines(arquivo, StandardCharsets.UTF_8);
+		int produtos = 0;
+		for (int n = 0; n < linhas.size(); n++)
+		{
+			String linha = linhas.get(n).strip();
+			if (linha.isEmpty() || linha.startsWith("#"))
+			{
+				continue;
+			}
+
+			String[] campos = linha.split("[;,]");
+			if (campos.length != 2)
+			{
+				throw new IllegalArgumentException("Linha " + (n + 1) + " inválida em " + arquivo + ": " + linha);
+			}
+			try
+			{
+				definirSaldo(Long.valueOf(campos[0].strip()), Long.parseLong(campos[1].strip()));
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Linha " + (n + 1) + " inválida em " + arquivo + ": " + linha, e);
+			}
+			produtos++;
+		}
+		return produtos;
+	}
+
+	public void definirSaldo(Long produtoId, long quantidade)
+	{
+		if (produtoId == null || quantidade < 0)
+		{
+			throw new IllegalArgumentException("Produto e quantidade não negativa são obrigatórios.");
+		}
+
+		int indice = indice(produtoId, true);
+		ReentrantLock trava = listras[indice & mascaraListras];
+		trava.lock();
+		try
+		{
+			saldos[indice] = quantidade;
+		}
+		finally
+		{
+			trava.unlock();
+		}
+	}
+
+	/** Saldo disponível do produto (sem as quantidades reservadas); 0 se o produto não existe. */
+	public long saldo(Long produtoId)
+	{
+		int indice = indice(produtoId, false);
+		if (indice < 0)
+		{
+			return 0;
+		}
+
+		ReentrantLock trava = listras[indice & mascaraListras];
+		trava.lock();
+		try
+		{
+			return saldos[indice];
+		}
+		finally
+		{
+			trava.unlock();
+		}
+	}
 
 	@Override
 	public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		Pedido pedido = preparar(produtosIds, produtosQuantidades);
+		return new EstoqueBaixaDTO(debitarComExpiracao(pedido).isEmpty());
 	}
 
 	@Override
 	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		Pedido pedido = preparar(produtosIds, produtosQuantidades);
+		List<Long> indisponiveis = faltantes(pedido, false);
+		return new DisponibilidadeDTO(indisponiveis.isEmpty(), indisponiveis);
+	}
+
+	@Override
+	public ReservaEstoqueDTO reservar(List<Long> produtosIds, List<Long> produtosQuantidades, Duration validade)
+	{
+		Pedido pedido = preparar(produtosIds, produtosQuantidades);
+		List<Long> indisponiveis = debitarComExpiracao(pedido);
+		if (!indisponiveis.isEmpty())
+		{
+			return new ReservaEstoqueDTO(false, null, indisponiveis);
+		}
+
+		Long reservaId = proximaReserva.incrementAndGet();
+		reservas.put(reservaId, new Reserva(pedido, System.nanoTime() + validade.toNanos()));
+		return new ReservaEstoqueDTO(true, reservaId, List.of());
+	}
+
+	@Override
+	public EstoqueBaixaDTO confirmarReserva(Long reservaId)
+	{
+		if (reservaId == null)
+		{
+			return new EstoqueBaixaDTO(false);
+		}
+
+		// Atômico por reserva: uma confirmação concorrente só a vê ausente depois de registrada
+		long agora = System.nanoTime();
+		Reserva[] vencida = new Reserva[1];
+		reservas.computeIfPresent(reservaId, (id, reserva) -> {
+			if (reserva.expirada(agora))
+			{
+				vencida[0] = reserva;
+			}
+			else
+			{
+				confirmadas.put(id, reserva.expiraEmNanos());
+			}
+			return null;
+		});
+
+		if (vencida[0] != null)
+		{
+			creditar(vencida[0].pedido());
+			return new EstoqueBaixaDTO(false);
+		}
+		if (confirmadas.size() > saldos.length)
+		{
+			esquecerConfirmadas(agora);
+		}
+		return new EstoqueBaixaDTO(confirmadas.containsKey(reservaId));
+	}
+
+	@Override
+	public void liberarReserva(Long reservaId)
+	{
+		Reserva reserva = reservaId == null ? null : reservas.remove(reservaId);
+		if (reserva != null)
+		{
+			creditar(reserva.pedido());
+		}
+	}
+
+	public IEstoqueExternalAssincrono assincrono()
+	{
+		return assincrono;
+	}
+
+	/** Devolve ao saldo as reservas vencidas; retorna quantas foram expiradas. */
+	public int expirarReservas()
+	{
+		long agora = System.nanoTime();
+		int expiradas = 0;
+		for (Map.Entry<Long, Reserva> entrada : reservas.entrySet())
+		{
+			if (entrada.getValue().expirada(agora) && reservas.remove(entrada.getKey(), entrada.getValue()))
+			{
+				creditar(entrada.getValue().pedido());
+				expiradas++;
+			}
+		}
+		esquecerConfirmadas(agora);
+		return expiradas;
+	}
+
+	public Estatisticas estatisticas()
+	{
+		return new Estatisticas(travamentos.sum(), travamentosContendidos.sum(), esperaNanos.sum(), recusas.sum(),
+				reservas.size());
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry)
+	{
+		FunctionCounter.builder("estoque.simulado.travamentos", travamentos, LongAdder::doubleValue)
+				.description("Listras travadas pelo estoque simulado").register(registry);
+		FunctionCounter.builder("estoque.simulado.travamentos.contendidos", travamentosContendidos, LongAdder::doubleValue)
+				.description("Travamentos que precisaram esperar outra thread").register(registry);
+		FunctionCounter.builder("estoque.simulado.travamentos.espera", esperaNanos, e -> e.sum() / 1e9)
+				.baseUnit("seconds").description("Tempo total esperando travas").register(registry);
+		FunctionCounter.builder("estoque.simulado.recusas", recusas, LongAdder::doubleValue)
+				.description("Baixas e reservas recusadas por falta de saldo").register(registry);
+		Gauge.builder("estoque.simulado.reservas.ativas", reservas, Map::size).register(registry);
+	}
+
+	private void esquecerConfirmadas(long agora)
+	{
+		confirmadas.values().removeIf(expiraEmNanos -> agora - expiraEmNanos > 0);
+	}
+
+	/**
+	 * Desconta o pedido se houver saldo para tudo. Se faltar algo e houver reservas vencidas, elas
+	 * voltam ao saldo e a tentativa é repetida uma vez.
+	 */
+	private List<Long> debitarComExpiracao(Pedido pedido)
+	{
+		List<Long> indisponiveis = faltantes(pedido, true);
+		if (!indisponiveis.isEmpty() && !reservas.isEmpty() && expirarReservas() > 0)
+		{
+			indisponiveis = faltantes(pedido, true);
+		}
+		if (!indisponiveis.isEmpty())
+		{
+			recusas.increment();
+		}
+		return indisponiveis;
+	}
+
+	/** Ids sem saldo suficiente; se não faltar nada e {@code debitar}, desconta o pedido inteiro. */
+	private List<Long> faltantes(Pedido pedido, boolean debitar)
+	{
+		List<Long> indisponiveis = new ArrayList<>(pedido.desconhecidos());
+
+		travar(pedido.listras());
+		try
+		{
+			for (int i = 0; i < pedido.indices().length; i++)
+			{
+				if (saldos[pedido.indices()[i]] < pedido.quantidades()[i])
+				{
+					indisponiveis.add(pedido.produtosIds()[i]);
+				}
+			}
+			if (debitar && indisponiveis.isEmpty())
+			{
+				for (int i = 0; i < pedido.indices().length; i++)
+				{
+					saldos[pedido.indices()[i]] -= pedido.quantidades()[i];
+				}
+			}
+		}
+		finally
+		{
+			destravar(pedido.listras());
+		}
+		return indisponiveis;
+	}
+
+	private void creditar(Pedido pedido)
+	{
+		travar(pedido.listras());
+		try
+		{
+			for (int i = 0; i < pedido.indices().length; i++)
+			{
+				saldos[pedido.indices()[i]] += pedido.quantidades()[i];
+			}
+		}
+		finally
+		{
+			destravar(pedido.listras());
+		}
+	}
+
+	private void travar(int[] listrasOrdenadas)
+	{
+		for (int listra : listrasOrdenadas)
+		{
+			ReentrantLock trava = listras[listra];
+			travamentos.increment();
+			if (!trava.tryLock())
+			{
+				travamentosContendidos.increment();
+				long inicio = System.nanoTime();
+				trava.lock();
+				esperaNanos.add(System.nanoTime() - inicio);
+			}
+		}
+	}
+
+	private void destravar(int[] listrasOrdenadas)
+	{
+		for (int i = listrasOrdenadas.length - 1; i >= 0; i--)
+		{
+			listras[listrasOrdenadas[i]].unlock();
+		}
+	}
+
+	/**
+	 * Valida as listas, soma quantidades de ids repetidos e resolve os índices. Produtos sem saldo
+	 * cadastrado vão para {@code desconhecidos}, a menos que haja quantidade padrão.
+	 */
+	private Pedido preparar(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		if (produtosIds == null || produtosQuantidades == null || produtosIds.size() != produtosQuantidades.size())
+		{
+			throw new IllegalArgumentException("Listas de produtos e quantidades devem ter o mesmo tamanho.");
+		}
+
+		Map<Long, Long> agregado = new LinkedHashMap<>();
+		for (int i = 0; i < produtosIds.size(); i++)
+		{
+			Long produtoId = produtosIds.get(i);
+			Long quantidade = produtosQuantidades.get(i);
+			if (produtoId == null || quantidade == null || quantidade <= 0)
+			{
+				throw new IllegalArgumentException("Quantidade inválida para o produto " + produtoId + ".");
+			}
+			agregado.merge(produtoId, quantidade, Math::addExact);
+		}
+
+		List<Long> desconhecidos = new ArrayList<>();
+		int[] indicesPedido = new int[agregado.size()];
+		long[] quantidades = new long[agregado.size()];
+		Long[] ids = new Long[agregado.size()];
+		int n = 0;
+		for (Map.Entry<Long, Long> entrada : agregado.entrySet())
+		{
+			int indice = indice(entrada.getKey(), quantidadePadrao > 0);
+			if (indice < 0)
+			{
+				desconhecidos.add(entrada.getKey());
+				continue;
+			}
+			indicesPedido[n] = indice;
+			quantidades[n] = entrada.getValue();
+			ids[n] = entrada.getKey();
+			n++;
+		}
+
+		int[] listrasPedido = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			listrasPedido[i] = indicesPedido[i] & mascaraListras;
+		}
+		listrasPedido = Arrays.stream(listrasPedido).sorted().distinct().toArray();
+
+		return new Pedido(Arrays.copyOf(indicesPedido, n), Arrays.copyOf(quantidades, n), Arrays.copyOf(ids, n),
+				listrasPedido, desconhecidos);
+	}
+
+	private int indice(Long produtoId, boolean criar)
+	{
+		if (!criar)
+		{
+			Integer indice = indices.get(produtoId);
+			return indice == null ? -1 : indice;
+		}
+
+		return indices.computeIfAbsent(produtoId, id -> {
+			int novo = proximoIndice.getAndIncrement();
+			if (novo >= saldos.length)
+			{
+				proximoIndice.decrementAndGet();
+				throw new IllegalStateException("Capacidade do estoque simulado esgotada (" + saldos.length + ").");
+			}
+			saldos[novo] = quantidadePadrao;
+			return novo;
+		});
+	}
+
+	private static <T> CompletableFuture<T> completar(Supplier<T> operacao)
+	{
+		try
+		{
+			return CompletableFuture.completedFuture(operacao.get());
+		}
+		catch (RuntimeException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/** Chama este estoque diretamente, sem passar pelo proxy de resiliência de quem o injetou. */
+	private final class Assincrono implements IEstoqueExternalAssincrono
+	{
+		@Override
+		public CompletableFuture<ReservaEstoqueDTO> reservar(List<Long> produtosIds, List<Long> produtosQuantidades,
+				Duration validade)
+		{
+			return completar(() -> EstoqueSimulado.this.reservar(produtosIds, produtosQuantidades, validade));
+		}
+
+		@Override
+		public CompletableFuture<EstoqueBaixaDTO> confirmarReserva(Long reservaId)
+		{
+			return completar(() -> EstoqueSimulado.this.confirmarReserva(reservaId));
+		}
+
+		@Override
+		public CompletableFuture<Void> liberarReserva(Long reservaId)
+		{
+			return completar(() -> {
+				EstoqueSimulado.this.liberarReserva(reservaId);
+				return null;
+			});
+		}
+	}
+
+	public record Estatisticas(long travamentos, long travamentosContendidos, long esperaNanos, long recusas,
+			int reservasAtivas)
+	{
+	}
+
+	private record Pedido(int[] indices, long[] quantidades, Long[] produtosIds, int[] listras,
+			List<Long> desconhecidos)
+	{
+	}
+
+	private record Reserva(Pedido pedido, long expiraEmNanos)
+	{
+		boolean expirada(long agora)
+		{
+			return agora - expiraEmNanos > 0;
+		}
 	}
 }
@@ -1,25 +1,231 @@
 package ecommerce.external.fake;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import ecommerce.dto.PagamentoDTO;
 import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.IPagamentoExternalAssincrono;
+import ecommerce.external.TempoEsgotadoException;
 
+/**
+ * Gateway de pagamento em memória para testes locais e de carga. Cada chamada espera uma latência
+ * sorteada da {@link DistribuicaoLatencia} configurada; se a latência passar do tempo limite, a
+ * chamada espera só o limite e lança {@link TempoEsgotadoException} sem efeito no livro. Uma fração
+ * {@code taxaRecusa} das autorizações é recusada.
+ *
+ * O livro guarda toda autorização e cancelamento, para que testes confiram que nenhuma autorização
+ * ficou sem compra concluída ou sem cancelamento.
+ *
+ * {@link #assincrono()} usa o mesmo livro pelo {@link IPagamentoExternalAssincrono}: a latência é
+ * um atraso agendado em vez de uma thread dormindo.
+ */
 @Service
 public class PagamentoSimulado implements IPagamentoExternal
 {
+	private final DistribuicaoLatencia distribuicao;
+	private final long mediaNanos;
+	private final long desvioNanos;
+	private final double taxaRecusa;
+	private final long timeoutNanos;
+
+	// Parâmetros da log-normal com a média e o desvio configurados
+	private final double mu;
+	private final double sigma;
+
+	private final AtomicLong proximaTransacao = new AtomicLong();
+	private final ConcurrentHashMap<Long, Transacao> livro = new ConcurrentHashMap<>();
+	private final LongAdder recusas = new LongAdder();
+	private final LongAdder temposEsgotados = new LongAdder();
+
+	private final IPagamentoExternalAssincrono assincrono = new Assincrono();
+
+	public PagamentoSimulado()
+	{
+		this(DistribuicaoLatencia.FIXA, Duration.ZERO, Duration.ZERO, 0, Duration.ZERO);
+	}
+
+	/** @param timeout tempo limite por chamada; zero desliga o limite */
+	@Autowired
+	public PagamentoSimulado(@Value("${pagamento.simulado.latencia.distribuicao:FIXA}") DistribuicaoLatencia distribuicao,
+			@Value("${pagamento.simulado.latencia.media:0ms}") Duration media,
+			@Value("${pagamento.simulado.latencia.desvio:0ms}") Duration desvio,
+			@Value("${pagamento.simulado.taxa-recusa:0}") double taxaRecusa,
+			@Value("${pagamento.simulado.timeout:0ms}") Duration timeout)
+	{
+		if (media.isNegative() || desvio.isNegative() || timeout.isNegative() || taxaRecusa < 0 || taxaRecusa > 1)
+		{
+			throw new IllegalArgumentException("Configuração inválida do pagamento simulado.");
+		}
+
+		this.distribuicao = distribuicao;
+		this.mediaNanos = media.toNanos();
+		this.desvioNanos = desvio.toNanos();
+		this.taxaRecusa = taxaRecusa;
+		this.timeoutNanos = timeout.toNanos();
+
+		double variacao = mediaNanos == 0 ? 0 : (double) desvioNanos / mediaNanos;
+		this.sigma = Math.sqrt(Math.log1p(variacao * variacao));
+		this.mu = Math.log(Math.max(1, mediaNanos)) - sigma * sigma / 2;
+	}
 
 	@Override
 	public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		aguardarLatencia("autorizarPagamento");
+		return autorizar(clienteId, custoTotal);
 	}
 
+	/** Cancelar uma transação já cancelada não tem efeito; transação inexistente ou de outro cliente é erro. */
 	@Override
 	public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId)
 	{
-		// TODO Auto-generated method stub
+		aguardarLatencia("cancelarPagamento");
+		cancelar(clienteId, pagamentoTransacaoId);
+	}
+
+	public IPagamentoExternalAssincrono assincrono()
+	{
+		return assincrono;
+	}
+
+	private PagamentoDTO autorizar(Long clienteId, Double custoTotal)
+	{
+		if (taxaRecusa > 0 && ThreadLocalRandom.current().nextDouble() < taxaRecusa)
+		{
+			recusas.increment();
+			return new PagamentoDTO(false, null);
+		}
+
+		Long transacaoId = proximaTransacao.incrementAndGet();
+		livro.put(transacaoId, new Transacao(transacaoId, clienteId, custoTotal, SituacaoTransacao.AUTORIZADA));
+		return new PagamentoDTO(true, transacaoId);
+	}
+
+	private void cancelar(Long clienteId, Long pagamentoTransacaoId)
+	{
+		Transacao transacao = pagamentoTransacaoId == null ? null : livro.get(pagamentoTransacaoId);
+		if (transacao == null || !Objects.equals(transacao.clienteId(), clienteId))
+		{
+			throw new IllegalArgumentException("Transação " + pagamentoTransacaoId + " não encontrada para o cliente.");
+		}
+		livro.replace(pagamentoTransacaoId, transacao, transacao.cancelada());
+	}
 
+	public List<Transacao> livro()
+	{
+		return List.copyOf(livro.values());
+	}
+
+	public List<Long> transacoes(SituacaoTransacao situacao)
+	{
+		return livro.values().stream().filter(t -> t.situacao() == situacao).map(Transacao::transacaoId).sorted()
+				.toList();
+	}
+
+	public long recusas()
+	{
+		return recusas.sum();
+	}
+
+	public long temposEsgotados()
+	{
+		return temposEsgotados.sum();
+	}
+
+	/** Latência da próxima chamada, em nanossegundos, segundo a distribuição configurada. */
+	long sortearLatenciaNanos()
+	{
+		ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+		return switch (distribuicao)
+		{
+			case FIXA -> mediaNanos;
+			case NORMAL -> Math.max(0, Math.round(mediaNanos + desvioNanos * aleatorio.nextGaussian()));
+			case CAUDA_LONGA -> mediaNanos == 0 ? 0 : Math.round(Math.exp(mu + sigma * aleatorio.nextGaussian()));
+		};
+	}
+
+	private void aguardarLatencia(String operacao)
+	{
+		long latencia = sortearLatenciaNanos();
+		boolean esgotado = timeoutNanos > 0 && latencia > timeoutNanos;
+
+		try
+		{
+			TimeUnit.NANOSECONDS.sleep(esgotado ? timeoutNanos : latencia);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new TempoEsgotadoException("Pagamento interrompido em " + operacao + ".");
+		}
+
+		if (esgotado)
+		{
+			temposEsgotados.increment();
+			throw new TempoEsgotadoException("Tempo esgotado em " + operacao + ".");
+		}
+	}
+
+	/** Completa com {@code operacao} depois da latência sorteada, sem ocupar thread enquanto espera. */
+	private <T> CompletableFuture<T> depoisDaLatencia(String operacao, Supplier<T> chamada)
+	{
+		long latencia = sortearLatenciaNanos();
+		boolean esgotado = timeoutNanos > 0 && latencia > timeoutNanos;
+		Executor atrasado = CompletableFuture.delayedExecutor(esgotado ? timeoutNanos : latencia, TimeUnit.NANOSECONDS,
+				Runnable::run);
+
+		return CompletableFuture.supplyAsync(() -> {
+			if (esgotado)
+			{
+				temposEsgotados.increment();
+				throw new TempoEsgotadoException("Tempo esgotado em " + operacao + ".");
+			}
+			return chamada.get();
+		}, atrasado);
+	}
+
+	private final class Assincrono implements IPagamentoExternalAssincrono
+	{
+		@Override
+		public CompletableFuture<PagamentoDTO> autorizarPagamento(Long clienteId, Double custoTotal)
+		{
+			return depoisDaLatencia("autorizarPagamento", () -> autorizar(clienteId, custoTotal));
+		}
+
+		@Override
+		public CompletableFuture<Void> cancelarPagamento(Long clienteId, Long pagamentoTransacaoId)
+		{
+			return depoisDaLatencia("cancelarPagamento", () -> {
+				cancelar(clienteId, pagamentoTransacaoId);
+				return null;
+			});
+		}
+	}
+
+	public enum SituacaoTransacao
+	{
+		AUTORIZADA, CANCELADA
+	}
+
+	public record Transacao(Long transacaoId, Long clienteId, Double valor, SituacaoTransacao situacao)
+	{
+		Transacao cancelada()
+		{
+			return new Transacao(transacaoId, clienteId, valor, SituacaoTransacao.CANCELADA);
+		}
 	}
 }
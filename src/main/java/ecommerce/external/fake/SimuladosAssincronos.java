@@ -0,0 +1,28 @@
+package ecommerce.external.fake;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import ecommerce.external.IEstoqueExternalAssincrono;
+import ecommerce.external.IPagamentoExternalAssincrono;
+
+/**
+ * Versões assíncronas do estoque e do pagamento simulados, sobre o mesmo saldo e o mesmo livro. O
+ * método {@code assincrono()} não é da interface protegida, então atravessa o proxy de resiliência
+ * e devolve a visão do objeto real; a visão recebe o seu próprio proxy.
+ */
+@Configuration
+public class SimuladosAssincronos
+{
+	@Bean
+	public IEstoqueExternalAssincrono estoqueSimuladoAssincrono(EstoqueSimulado estoque)
+	{
+		return estoque.assincrono();
+	}
+
+	@Bean
+	public IPagamentoExternalAssincrono pagamentoSimuladoAssincrono(PagamentoSimulado pagamento)
+	{
+		return pagamento.assincrono();
+	}
+}
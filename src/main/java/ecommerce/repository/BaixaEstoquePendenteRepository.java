@@ -0,0 +1,10 @@
+package ecommerce.repository;
+
+import org.springframework.stereotype.Repository;
+
+import ecommerce.entity.BaixaEstoquePendente;
+
+@Repository
+public interface BaixaEstoquePendenteRepository extends RegistroPendenteRepository<BaixaEstoquePendente>
+{
+}
@@ -0,0 +1,12 @@
+package ecommerce.repository;
+
+import org.springframework.stereotype.Repository;
+
+import ecommerce.entity.CancelamentoPendente;
+
+@Repository
+public interface CancelamentoPendenteRepository extends RegistroPendenteRepository<CancelamentoPendente>
+{
+
+	boolean existsByTransacaoPagamentoId(Long transacaoPagamentoId);
+}
@@ -1,10 +1,15 @@
 package ecommerce.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import ecommerce.dto.ItemCheckoutDTO;
 import ecommerce.entity.CarrinhoDeCompras;
 import ecommerce.entity.Cliente;
 
@@ -13,4 +18,21 @@ public interface CarrinhoDeComprasRepository extends JpaRepository<CarrinhoDeCom
 {
 
 	Optional<CarrinhoDeCompras> findByIdAndCliente(Long id, Cliente cliente);
+
+	/**
+	 * Projeção somente leitura dos itens do carrinho, se ele pertence ao cliente (nenhuma linha se
+	 * não pertence). Cliente e produtos não entram na consulta, só os ids: região, tipo, preço e
+	 * peso vêm dos caches em memória.
+	 */
+	@Query("select new ecommerce.dto.ItemCheckoutDTO(c.cliente.id, c.id, i.id, i.produto.id, i.quantidade)"
+			+ " from CarrinhoDeCompras c left join c.itens i"
+			+ " where c.id = :carrinhoId and c.cliente.id = :clienteId order by i.id")
+	List<ItemCheckoutDTO> findItensCheckout(@Param("carrinhoId") Long carrinhoId, @Param("clienteId") Long clienteId);
+
+	/** Versão em lote de {@link #findItensCheckout}: itens dos carrinhos que pertencem a algum dos clientes. */
+	@Query("select new ecommerce.dto.ItemCheckoutDTO(c.cliente.id, c.id, i.id, i.produto.id, i.quantidade)"
+			+ " from CarrinhoDeCompras c left join c.itens i"
+			+ " where c.id in :carrinhoIds and c.cliente.id in :clienteIds order by c.id, i.id")
+	List<ItemCheckoutDTO> findItensCheckoutEmLote(@Param("carrinhoIds") Collection<Long> carrinhoIds,
+			@Param("clienteIds") Collection<Long> clienteIds);
 }
@@ -1,11 +1,21 @@
 package ecommerce.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import ecommerce.dto.ClientePrecificacaoDTO;
 import ecommerce.entity.Cliente;
 
 @Repository
 public interface ClienteRepository extends JpaRepository<Cliente, Long>
 {
-}
\ No newline at end of file
+
+	/** Região e tipo dos clientes pedidos, sem entidades gerenciadas; ids inexistentes não geram linha. */
+	@Query("select new ecommerce.dto.ClientePrecificacaoDTO(c.id, c.regiao, c.tipo) from Cliente c where c.id in :ids")
+	List<ClientePrecificacaoDTO> findPrecificacao(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,19 @@
+package ecommerce.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import ecommerce.entity.Compra;
+import ecommerce.entity.SituacaoCompra;
+
+@Repository
+public interface CompraRepository extends JpaRepository<Compra, Long>
+{
+
+	@Modifying
+	@Query("update Compra c set c.situacao = :situacao where c.id = :id")
+	int atualizarSituacao(@Param("id") Long id, @Param("situacao") SituacaoCompra situacao);
+}
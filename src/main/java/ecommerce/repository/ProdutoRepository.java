@@ -1,11 +1,31 @@
 package ecommerce.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import ecommerce.dto.ProdutoPrecificacaoDTO;
 import ecommerce.entity.Produto;
 
 @Repository
 public interface ProdutoRepository extends JpaRepository<Produto, Long>
 {
+
+	/** Produtos gravados antes do campo peso tributável existir e que já podem ser calculados. */
+	@Query("select p from Produto p where p.pesoTributavel is null and p.pesoFisico is not null"
+			+ " and p.comprimento is not null and p.largura is not null and p.altura is not null order by p.id")
+	List<Produto> findSemPesoTributavel(Pageable pageable);
+
+	/**
+	 * Atributos de preço dos produtos pedidos, sem entidades gerenciadas; ids inexistentes não geram
+	 * linha. Peso tributável nulo é calculado das dimensões.
+	 */
+	@Query("select new ecommerce.dto.ProdutoPrecificacaoDTO(p.id, p.preco, p.pesoTributavel, p.pesoFisico,"
+			+ " p.comprimento, p.largura, p.altura, p.fragil, p.tipo) from Produto p where p.id in :ids")
+	List<ProdutoPrecificacaoDTO> findPrecificacao(@Param("ids") Collection<Long> ids);
 }
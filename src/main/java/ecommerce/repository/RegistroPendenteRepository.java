@@ -0,0 +1,55 @@
+package ecommerce.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.data.repository.query.Param;
+
+import ecommerce.entity.RegistroPendente;
+
+/** Consultas de reivindicação comuns às tabelas de {@link RegistroPendente}. */
+@NoRepositoryBean
+public interface RegistroPendenteRepository<T extends RegistroPendente> extends JpaRepository<T, Long>
+{
+
+	/** Ids dos registros cuja próxima tentativa já chegou, os mais atrasados primeiro. */
+	@Query("select r.id from #{#entityName} r where r.proximaTentativa <= :agora order by r.proximaTentativa")
+	List<Long> findIdsVencidos(@Param("agora") Instant agora, Pageable pageable);
+
+	/**
+	 * Reivindica os registros ainda vencidos entre {@code ids}, adiando a próxima tentativa para
+	 * {@code prazo}; quem perdeu a disputa por um registro não o encontra em
+	 * {@link #findByReivindicacao}.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update #{#entityName} r set r.proximaTentativa = :prazo, r.reivindicacao = :reivindicacao"
+			+ " where r.id in :ids and r.proximaTentativa <= :agora")
+	int reivindicar(@Param("ids") Collection<Long> ids, @Param("agora") Instant agora, @Param("prazo") Instant prazo,
+			@Param("reivindicacao") String reivindicacao);
+
+	List<T> findByReivindicacao(String reivindicacao);
+
+	/**
+	 * Conta a falha e adia a próxima tentativa, se o registro ainda é de {@code reivindicacao}; zero
+	 * se o prazo venceu e outro processo o reivindicou.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update #{#entityName} r set r.tentativas = :tentativas, r.proximaTentativa = :proximaTentativa"
+			+ " where r.id = :id and r.reivindicacao = :reivindicacao")
+	int reagendar(@Param("id") Long id, @Param("reivindicacao") String reivindicacao,
+			@Param("tentativas") int tentativas, @Param("proximaTentativa") Instant proximaTentativa);
+
+	/** Remove o registro, se ele ainda é de {@code reivindicacao}; zero se outro processo o reivindicou. */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("delete from #{#entityName} r where r.id = :id and r.reivindicacao = :reivindicacao")
+	int concluir(@Param("id") Long id, @Param("reivindicacao") String reivindicacao);
+
+	@Query("select min(r.criadaEm) from #{#entityName} r")
+	Instant findCriacaoMaisAntiga();
+}
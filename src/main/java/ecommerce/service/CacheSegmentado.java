@@ -0,0 +1,235 @@
+package ecommerce.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * LRU em memória dividido em {@value #SEGMENTOS} segmentos pelo hash da chave, com capacidade total
+ * limitada; usado pelo {@link CatalogoProdutos}, pelo {@link ClienteService} e pelo
+ * {@link CotacaoService}. Quem usa sincroniza no {@link Segmento} da chave e pode combinar várias
+ * operações dele sob o mesmo lock.
+ *
+ * Com {@code protegido}, cada segmento é um LRU segmentado: chave nova entra no trecho de prova, e um
+ * segundo acesso a leva ao trecho protegido (80% da capacidade), cujo menos recente volta para a
+ * prova. Assim uma leva de chaves acessadas uma vez só despeja outras da prova.
+ *
+ * Publica {@code <metrica>.taxa.acerto}, {@code .entradas} e {@code .despejos}; os contadores
+ * {@code <metrica>} por resultado são criados por quem usa, com {@link #resultado}.
+ */
+final class CacheSegmentado<K, V>
+{
+	static final int SEGMENTOS = 16;
+
+	private final String metrica;
+	private final MeterRegistry registry;
+	private final List<Segmento<K, V>> segmentos = new ArrayList<>(SEGMENTOS);
+
+	private final List<Counter> acertos = new ArrayList<>();
+	private final List<Counter> resultados = new ArrayList<>();
+
+	/** @param nome usado na mensagem de capacidade inválida, como em "cache de clientes" */
+	CacheSegmentado(String nome, String metrica, int capacidade, boolean protegido, MeterRegistry registry)
+	{
+		if (capacidade < SEGMENTOS)
+		{
+			throw new IllegalArgumentException("Capacidade do " + nome + " deve ser ao menos " + SEGMENTOS + ".");
+		}
+
+		this.metrica = metrica;
+		this.registry = registry;
+		for (int i = 0; i < SEGMENTOS; i++)
+		{
+			segmentos.add(new Segmento<>(capacidade / SEGMENTOS, protegido));
+		}
+
+		Gauge.builder(metrica + ".taxa.acerto", this, CacheSegmentado::taxaAcerto)
+				.description("Fração dos acessos servidos sem carregar o valor").register(registry);
+		Gauge.builder(metrica + ".entradas", this, CacheSegmentado::tamanho).register(registry);
+		FunctionCounter.builder(metrica + ".despejos", segmentos, CacheSegmentado::despejos).register(registry);
+	}
+
+	/**
+	 * Contador {@code <metrica>} com a tag {@code resultado}; os de {@code acerto} contam a favor da
+	 * taxa de acerto, e todos contam no total.
+	 */
+	synchronized Counter resultado(String resultado, boolean acerto, String descricao)
+	{
+		Counter contador = Counter.builder(metrica).tag("resultado", resultado).description(descricao)
+				.register(registry);
+		resultados.add(contador);
+		if (acerto)
+		{
+			acertos.add(contador);
+		}
+		return contador;
+	}
+
+	Segmento<K, V> segmento(K chave)
+	{
+		return segmentos.get(chave.hashCode() & (SEGMENTOS - 1));
+	}
+
+	/** Remove, segmento a segmento, os valores que atendem a {@code condicao}. */
+	void removerSe(Predicate<V> condicao)
+	{
+		for (Segmento<K, V> segmento : segmentos)
+		{
+			synchronized (segmento)
+			{
+				segmento.removerSe(condicao);
+			}
+		}
+	}
+
+	int tamanho()
+	{
+		int tamanho = 0;
+		for (Segmento<K, V> segmento : segmentos)
+		{
+			synchronized (segmento)
+			{
+				tamanho += segmento.tamanho();
+			}
+		}
+		return tamanho;
+	}
+
+	private synchronized double taxaAcerto()
+	{
+		double total = soma(resultados);
+		return total == 0 ? 0 : soma(acertos) / total;
+	}
+
+	private static double soma(List<Counter> contadores)
+	{
+		double soma = 0;
+		for (Counter contador : contadores)
+		{
+			soma += contador.count();
+		}
+		return soma;
+	}
+
+	private static double despejos(List<? extends Segmento<?, ?>> segmentos)
+	{
+		long despejos = 0;
+		for (Segmento<?, ?> segmento : segmentos)
+		{
+			despejos += segmento.despejos();
+		}
+		return despejos;
+	}
+
+	/**
+	 * Prova e, se houver, protegido, ambos em ordem de acesso (o mais antigo primeiro). Só com o lock
+	 * do próprio segmento.
+	 */
+	static final class Segmento<K, V>
+	{
+		private final LinkedHashMap<K, V> prova = new LinkedHashMap<>(16, 0.75f, true);
+		private final LinkedHashMap<K, V> protegido;
+		private final int capacidade;
+		private final int capacidadeProtegido;
+		private long despejos;
+
+		private Segmento(int capacidade, boolean protegido)
+		{
+			this.protegido = protegido ? new LinkedHashMap<>(16, 0.75f, true) : null;
+			this.capacidade = capacidade;
+			this.capacidadeProtegido = Math.max(1, capacidade * 4 / 5);
+		}
+
+		/** Registra o acesso: da prova, o valor sobe para o protegido. */
+		V buscar(K chave)
+		{
+			if (protegido == null)
+			{
+				return prova.get(chave);
+			}
+
+			V valor = protegido.get(chave);
+			if (valor != null)
+			{
+				return valor;
+			}
+
+			valor = prova.remove(chave);
+			if (valor != null)
+			{
+				protegido.put(chave, valor);
+				if (protegido.size() > capacidadeProtegido)
+				{
+					Iterator<Map.Entry<K, V>> maisAntigo = protegido.entrySet().iterator();
+					Map.Entry<K, V> rebaixado = maisAntigo.next();
+					maisAntigo.remove();
+					prova.put(rebaixado.getKey(), rebaixado.getValue());
+				}
+			}
+			return valor;
+		}
+
+		void colocar(K chave, V valor)
+		{
+			if (protegido != null && protegido.containsKey(chave))
+			{
+				protegido.put(chave, valor);
+				return;
+			}
+
+			prova.put(chave, valor);
+			while (tamanho() > capacidade)
+			{
+				Map<K, V> origem = prova.isEmpty() ? protegido : prova;
+				Iterator<K> maisAntiga = origem.keySet().iterator();
+				maisAntiga.next();
+				maisAntiga.remove();
+				despejos++;
+			}
+		}
+
+		void remover(K chave)
+		{
+			if (protegido == null || protegido.remove(chave) == null)
+			{
+				prova.remove(chave);
+			}
+		}
+
+		/** Só se {@code chave} ainda está associada a {@code valor}. */
+		void remover(K chave, V valor)
+		{
+			if (protegido == null || !protegido.remove(chave, valor))
+			{
+				prova.remove(chave, valor);
+			}
+		}
+
+		private void removerSe(Predicate<V> condicao)
+		{
+			prova.values().removeIf(condicao);
+			if (protegido != null)
+			{
+				protegido.values().removeIf(condicao);
+			}
+		}
+
+		int tamanho()
+		{
+			return prova.size() + (protegido == null ? 0 : protegido.size());
+		}
+
+		private synchronized long despejos()
+		{
+			return despejos;
+		}
+	}
+}
@@ -1,26 +1,166 @@
 package ecommerce.service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import ecommerce.entity.CarrinhoDeCompras;
-import ecommerce.entity.Cliente;
+import ecommerce.dto.ClientePrecificacaoDTO;
+import ecommerce.dto.ItemCheckoutDTO;
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.dto.PedidoCheckoutDTO;
+import ecommerce.dto.ProdutoPrecificacaoDTO;
 import ecommerce.repository.CarrinhoDeComprasRepository;
 
 @Service
 public class CarrinhoDeComprasService
 {
 	private final CarrinhoDeComprasRepository repository;
+	private final ClienteService clienteService;
+	private final CatalogoProdutos catalogo;
 
 	@Autowired
-	public CarrinhoDeComprasService(CarrinhoDeComprasRepository repository)
+	public CarrinhoDeComprasService(CarrinhoDeComprasRepository repository, ClienteService clienteService,
+			CatalogoProdutos catalogo)
 	{
 		this.repository = repository;
+		this.clienteService = clienteService;
+		this.catalogo = catalogo;
+	}
+
+	/**
+	 * Itens do carrinho em uma única consulta de projeção, sem entidades gerenciadas; os atributos de
+	 * preço do cliente vêm do {@link ClienteService} e os dos produtos, do {@link CatalogoProdutos}.
+	 */
+	@Transactional(readOnly = true)
+	public ContextoCheckout buscarContextoCheckout(Long carrinhoId, Long clienteId)
+	{
+		return ContextoCheckout.deLinhas(clienteId, buscarLinhasCheckout(carrinhoId, clienteId));
+	}
+
+	/**
+	 * Linhas de checkout cruas, para quem precisa do conteúdo além do contexto: nenhuma linha se o
+	 * cliente não existe; uma linha com {@code carrinhoId} nulo se o carrinho não pertence a ele.
+	 */
+	@Transactional(readOnly = true)
+	public List<LinhaCheckoutDTO> buscarLinhasCheckout(Long carrinhoId, Long clienteId)
+	{
+		ClientePrecificacaoDTO cliente = clienteService.buscarPrecificacao(Collections.singletonList(clienteId))
+				.get(clienteId);
+		if (cliente == null)
+		{
+			return List.of();
+		}
+
+		List<ItemCheckoutDTO> itens = repository.findItensCheckout(carrinhoId, clienteId);
+		if (itens.isEmpty())
+		{
+			return List.of(semCarrinho(cliente));
+		}
+		return linhas(cliente, itens, buscarProdutos(itens));
+	}
+
+	/**
+	 * Linhas de checkout de vários pedidos com uma consulta de itens. Cada pedido recebe as linhas no
+	 * mesmo formato de {@link #buscarLinhasCheckout}, prontas para {@link ContextoCheckout#deLinhas}.
+	 */
+	@Transactional(readOnly = true)
+	public Map<PedidoCheckoutDTO, List<LinhaCheckoutDTO>> buscarLinhasCheckoutEmLote(List<PedidoCheckoutDTO> pedidos)
+	{
+		Set<Long> carrinhoIds = new HashSet<>();
+		Set<Long> clienteIds = new HashSet<>();
+		for (PedidoCheckoutDTO pedido : pedidos)
+		{
+			carrinhoIds.add(pedido.carrinhoId());
+			clienteIds.add(pedido.clienteId());
+		}
+
+		Map<Long, ClientePrecificacaoDTO> clientes = clienteService.buscarPrecificacao(clienteIds);
+		List<ItemCheckoutDTO> itens = clientes.isEmpty() ? List.of()
+				: repository.findItensCheckoutEmLote(carrinhoIds, clientes.keySet());
+		Map<Long, ProdutoPrecificacaoDTO> produtos = buscarProdutos(itens);
+
+		Map<Long, Map<Long, List<ItemCheckoutDTO>>> porClienteECarrinho = new HashMap<>();
+		for (ItemCheckoutDTO item : itens)
+		{
+			porClienteECarrinho.computeIfAbsent(item.clienteId(), id -> new HashMap<>())
+					.computeIfAbsent(item.carrinhoId(), id -> new ArrayList<>()).add(item);
+		}
+
+		Map<PedidoCheckoutDTO, List<LinhaCheckoutDTO>> resultado = new HashMap<>();
+		for (PedidoCheckoutDTO pedido : pedidos)
+		{
+			ClientePrecificacaoDTO cliente = clientes.get(pedido.clienteId());
+			if (cliente == null)
+			{
+				resultado.put(pedido, List.of());
+				continue;
+			}
+
+			List<ItemCheckoutDTO> doCarrinho = porClienteECarrinho.getOrDefault(pedido.clienteId(), Map.of())
+					.get(pedido.carrinhoId());
+			resultado.put(pedido, doCarrinho == null ? List.of(semCarrinho(cliente))
+					: linhas(cliente, doCarrinho, produtos));
+		}
+		return resultado;
 	}
 
-	public CarrinhoDeCompras buscarPorCarrinhoIdEClienteId(Long carrinhoId, Cliente cliente)
+	/** Mesma linha da consulta unitária quando o cliente existe, mas o carrinho não é dele. */
+	private static LinhaCheckoutDTO semCarrinho(ClientePrecificacaoDTO cliente)
 	{
-		return repository.findByIdAndCliente(carrinhoId, cliente)
-				.orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+		return new LinhaCheckoutDTO(cliente.id(), cliente.regiao(), cliente.tipo(), null, null, null, null, null, null,
+				null, null);
+	}
+
+	private Map<Long, ProdutoPrecificacaoDTO> buscarProdutos(List<ItemCheckoutDTO> itens)
+	{
+		List<Long> produtosIds = new ArrayList<>(itens.size());
+		for (ItemCheckoutDTO item : itens)
+		{
+			if (item.produtoId() != null)
+			{
+				produtosIds.add(item.produtoId());
+			}
+		}
+		return produtosIds.isEmpty() ? Map.of() : catalogo.buscar(produtosIds);
+	}
+
+	/**
+	 * Completa cada item com o cliente e o produto.
+	 *
+	 * @throws IllegalArgumentException se um produto foi removido entre a leitura dos itens e a do
+	 *             catálogo.
+	 */
+	private static List<LinhaCheckoutDTO> linhas(ClientePrecificacaoDTO cliente, List<ItemCheckoutDTO> itens,
+			Map<Long, ProdutoPrecificacaoDTO> produtos)
+	{
+		List<LinhaCheckoutDTO> linhas = new ArrayList<>(itens.size());
+		for (ItemCheckoutDTO item : itens)
+		{
+			if (item.itemId() == null)
+			{
+				// Carrinho sem itens
+				linhas.add(new LinhaCheckoutDTO(cliente.id(), cliente.regiao(), cliente.tipo(), item.carrinhoId(), null,
+						null, null, null, null, null, null));
+				continue;
+			}
+
+			ProdutoPrecificacaoDTO produto = produtos.get(item.produtoId());
+			if (produto == null)
+			{
+				throw new IllegalArgumentException("Produto " + item.produtoId() + " não encontrado.");
+			}
+			linhas.add(new LinhaCheckoutDTO(cliente.id(), cliente.regiao(), cliente.tipo(), item.carrinhoId(),
+					item.itemId(), item.produtoId(), produto.preco(), produto.pesoTributavel(), produto.fragil(),
+					produto.tipo(), item.quantidade()));
+		}
+		return linhas;
 	}
 }
@@ -0,0 +1,219 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+
+/**
+ * Resumo imutável de um carrinho, montado em uma única passada pelos itens: ids e quantidades
+ * para o serviço de estoque e os acumulados que o cálculo do custo total precisa (subtotal e
+ * quantidade por {@link TipoProduto}, peso tributável total e quantidade de itens frágeis).
+ *
+ * Os acumulados são mantidos em {@code long} (centavos e gramas) enquanto os valores couberem
+ * nessas unidades; caso contrário o resumo passa a acumular em {@link BigDecimal}.
+ */
+public final class CarrinhoPrecificado
+{
+	private static final int TIPOS = TipoProduto.values().length;
+
+	private final List<Long> produtosIds;
+	private final List<Long> produtosQuantidades;
+
+	private final long[] quantidadePorTipo;
+	private final long quantidadeFragil;
+
+	/** Acumulados em ponto fixo; {@code null} quando {@link #isPontoFixo()} é falso. */
+	private final long[] subtotalCentavosPorTipo;
+	private final long pesoTotalGramas;
+
+	/** Acumulados em BigDecimal; {@code null} quando {@link #isPontoFixo()} é verdadeiro. */
+	private final BigDecimal[] subtotalPorTipo;
+	private final BigDecimal pesoTotal;
+
+	private CarrinhoPrecificado(Acumulador acumulador)
+	{
+		this.produtosIds = Collections.unmodifiableList(Arrays.asList(ajustado(acumulador.ids, acumulador.itens)));
+		this.produtosQuantidades = Collections
+				.unmodifiableList(Arrays.asList(ajustado(acumulador.quantidades, acumulador.itens)));
+		this.quantidadePorTipo = acumulador.quantidadePorTipo;
+		this.quantidadeFragil = acumulador.quantidadeFragil;
+		this.subtotalCentavosPorTipo = acumulador.subtotalCentavosPorTipo;
+		this.pesoTotalGramas = acumulador.pesoTotalGramas;
+		this.subtotalPorTipo = acumulador.subtotalPorTipo;
+		this.pesoTotal = acumulador.pesoTotal;
+	}
+
+	public static CarrinhoPrecificado de(List<ItemCompra> itens)
+	{
+		Acumulador acumulador = new Acumulador(itens.size());
+		for (ItemCompra item : itens)
+		{
+			Produto produto = item.getProduto();
+			acumulador.adicionar(produto.getId(), produto.getTipo(), produto.getPreco(), produto.getPesoTributavel(),
+					produto.isFragil(), item.getQuantidade());
+		}
+		return acumulador.construir();
+	}
+
+	public List<Long> getProdutosIds()
+	{
+		return produtosIds;
+	}
+
+	public List<Long> getProdutosQuantidades()
+	{
+		return produtosQuantidades;
+	}
+
+	public boolean isVazio()
+	{
+		return produtosIds.isEmpty();
+	}
+
+	public long getQuantidade(TipoProduto tipo)
+	{
+		return quantidadePorTipo[tipo.ordinal()];
+	}
+
+	public long getQuantidadeFragil()
+	{
+		return quantidadeFragil;
+	}
+
+	/** Indica se os acumulados estão em centavos/gramas ({@code long}). */
+	public boolean isPontoFixo()
+	{
+		return subtotalCentavosPorTipo != null;
+	}
+
+	/** @throws IllegalStateException se {@link #isPontoFixo()} for falso. */
+	public long getSubtotalCentavos(TipoProduto tipo)
+	{
+		exigirPontoFixo();
+		return subtotalCentavosPorTipo[tipo.ordinal()];
+	}
+
+	/** @throws IllegalStateException se {@link #isPontoFixo()} for falso. */
+	public long getPesoTotalGramas()
+	{
+		exigirPontoFixo();
+		return pesoTotalGramas;
+	}
+
+	public BigDecimal getSubtotal(TipoProduto tipo)
+	{
+		return isPontoFixo() ? BigDecimal.valueOf(subtotalCentavosPorTipo[tipo.ordinal()], 2)
+				: subtotalPorTipo[tipo.ordinal()];
+	}
+
+	public BigDecimal getPesoTotal()
+	{
+		return isPontoFixo() ? BigDecimal.valueOf(pesoTotalGramas, 3) : pesoTotal;
+	}
+
+	private static Long[] ajustado(Long[] valores, int tamanho)
+	{
+		return valores.length == tamanho ? valores : Arrays.copyOf(valores, tamanho);
+	}
+
+	private void exigirPontoFixo()
+	{
+		if (!isPontoFixo())
+		{
+			throw new IllegalStateException("Carrinho acumulado em BigDecimal.");
+		}
+	}
+
+	/**
+	 * Acumula os itens de um carrinho. Não é thread-safe e não deve ser reutilizado após
+	 * {@link #construir()}.
+	 */
+	public static final class Acumulador
+	{
+		private Long[] ids;
+		private Long[] quantidades;
+		private int itens;
+
+		private final long[] quantidadePorTipo = new long[TIPOS];
+		private long quantidadeFragil;
+
+		private long[] subtotalCentavosPorTipo = new long[TIPOS];
+		private long pesoTotalGramas;
+
+		private BigDecimal[] subtotalPorTipo;
+		private BigDecimal pesoTotal;
+
+		public Acumulador(int capacidade)
+		{
+			this.ids = new Long[capacidade];
+			this.quantidades = new Long[capacidade];
+		}
+
+		public Acumulador adicionar(Long produtoId, TipoProduto tipo, BigDecimal preco, BigDecimal pesoTributavel,
+				Boolean fragil, Long quantidade)
+		{
+			int t = tipo.ordinal();
+			long qtd = quantidade;
+			// Quantidades não passam para BigDecimal: estouro é erro, e nada muda antes dele
+			long quantidadeTipo = Math.addExact(quantidadePorTipo[t], qtd);
+			long frageis = fragil != null && fragil ? Math.addExact(quantidadeFragil, qtd) : quantidadeFragil;
+
+			if (itens == ids.length)
+			{
+				ids = Arrays.copyOf(ids, Math.max(8, itens * 2));
+				quantidades = Arrays.copyOf(quantidades, ids.length);
+			}
+			ids[itens] = produtoId;
+			quantidades[itens] = quantidade;
+			itens++;
+
+			quantidadePorTipo[t] = quantidadeTipo;
+			quantidadeFragil = frageis;
+
+			if (subtotalCentavosPorTipo != null)
+			{
+				try
+				{
+					long subtotal = Math.addExact(subtotalCentavosPorTipo[t],
+							Math.multiplyExact(preco.movePointRight(2).longValueExact(), qtd));
+					long peso = Math.addExact(pesoTotalGramas,
+							Math.multiplyExact(pesoTributavel.movePointRight(3).longValueExact(), qtd));
+					subtotalCentavosPorTipo[t] = subtotal;
+					pesoTotalGramas = peso;
+					return this;
+				}
+				catch (ArithmeticException e)
+				{
+					// não cabe em centavos/gramas: continua em BigDecimal
+					promoverParaBigDecimal();
+				}
+			}
+
+			BigDecimal q = BigDecimal.valueOf(qtd);
+			subtotalPorTipo[t] = subtotalPorTipo[t].add(preco.multiply(q));
+			pesoTotal = pesoTotal.add(pesoTributavel.multiply(q));
+			return this;
+		}
+
+		public CarrinhoPrecificado construir()
+		{
+			return new CarrinhoPrecificado(this);
+		}
+
+		private void promoverParaBigDecimal()
+		{
+			subtotalPorTipo = new BigDecimal[TIPOS];
+			for (int t = 0; t < TIPOS; t++)
+			{
+				subtotalPorTipo[t] = BigDecimal.valueOf(subtotalCentavosPorTipo[t], 2);
+			}
+			pesoTotal = BigDecimal.valueOf(pesoTotalGramas, 3);
+			subtotalCentavosPorTipo = null;
+		}
+	}
+}
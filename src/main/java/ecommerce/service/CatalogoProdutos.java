@@ -0,0 +1,267 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import ecommerce.dto.ProdutoPrecificacaoDTO;
+import ecommerce.entity.ProdutoAlteradoEvent;
+import ecommerce.repository.ProdutoRepository;
+import ecommerce.service.CacheSegmentado.Segmento;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Atributos de preço dos produtos em memória, na frente do {@link ProdutoRepository}: o que não está
+ * no cache é lido em uma única consulta de projeção por chamada e passa a ficar nele.
+ *
+ * O cache é um {@link CacheSegmentado} com trecho protegido: os poucos produtos que aparecem na
+ * maioria dos carrinhos ficam nele, e uma leva de produtos acessados uma vez só despeja outros da
+ * prova.
+ *
+ * Entradas com mais de {@code ttl} continuam sendo servidas, mas disparam uma recarga em segundo
+ * plano (uma por entrada por vez). Produto alterado ou removido pelo repositório
+ * ({@link ProdutoAlteradoEvent}) sai do cache depois do commit; uma leitura que começou antes disso
+ * não grava o valor antigo.
+ */
+@Service
+public class CatalogoProdutos
+{
+	private static final Logger log = LoggerFactory.getLogger(CatalogoProdutos.class);
+
+	private final ProdutoRepository repository;
+	private final Executor executor;
+	private final long ttlNanos;
+
+	private final CacheSegmentado<Long, Entrada> cache;
+	/** Incrementado a cada invalidação; leituras iniciadas antes dela não entram no cache. */
+	private final AtomicLong invalidacoes = new AtomicLong();
+
+	private final Counter acertos;
+	private final Counter faltas;
+	private final Counter recargas;
+	private final Counter recargasFalhas;
+
+	public CatalogoProdutos(ProdutoRepository repository, @Qualifier("applicationTaskExecutor") Executor executor,
+			@Value("${compra.catalogo.cache.capacidade:10000}") int capacidade,
+			@Value("${compra.catalogo.cache.ttl:PT5M}") Duration ttl, MeterRegistry registry)
+	{
+		if (ttl.isNegative() || ttl.isZero())
+		{
+			throw new IllegalArgumentException("TTL do catálogo deve ser positivo.");
+		}
+
+		this.repository = repository;
+		this.executor = executor;
+		this.ttlNanos = ttl.toNanos();
+
+		this.cache = new CacheSegmentado<>("catálogo", "compra.catalogo.cache", capacidade, true, registry);
+
+		this.acertos = cache.resultado("acerto", true, "Produtos servidos do cache");
+		this.faltas = cache.resultado("falta", false, "Produtos lidos do banco");
+		this.recargas = Counter.builder("compra.catalogo.cache.recargas").tag("resultado", "sucesso")
+				.description("Recargas de entradas vencidas").register(registry);
+		this.recargasFalhas = Counter.builder("compra.catalogo.cache.recargas").tag("resultado", "falha")
+				.description("Recargas de entradas vencidas").register(registry);
+		FunctionCounter.builder("compra.catalogo.cache.invalidacoes", invalidacoes, AtomicLong::get)
+				.register(registry);
+	}
+
+	/**
+	 * Produtos pelos ids; os inexistentes ficam de fora do mapa. Nulos e repetidos são ignorados.
+	 */
+	public Map<Long, ProdutoPrecificacaoDTO> buscar(Collection<Long> ids)
+	{
+		Map<Long, ProdutoPrecificacaoDTO> encontrados = new HashMap<>(ids.size() * 2);
+		Set<Long> faltantes = null;
+		List<Entrada> vencidos = null;
+		long agora = System.nanoTime();
+
+		for (Long id : ids)
+		{
+			if (id == null || encontrados.containsKey(id) || (faltantes != null && faltantes.contains(id)))
+			{
+				continue;
+			}
+
+			Segmento<Long, Entrada> segmento = cache.segmento(id);
+			Entrada entrada;
+			boolean recarregar = false;
+			synchronized (segmento)
+			{
+				entrada = segmento.buscar(id);
+				if (entrada != null && !entrada.recarregando && agora - entrada.carregadaEm >= ttlNanos)
+				{
+					entrada.recarregando = true;
+					recarregar = true;
+				}
+			}
+
+			if (entrada == null)
+			{
+				if (faltantes == null)
+				{
+					faltantes = new HashSet<>();
+				}
+				faltantes.add(id);
+				continue;
+			}
+
+			encontrados.put(id, entrada.produto);
+			if (recarregar)
+			{
+				if (vencidos == null)
+				{
+					vencidos = new ArrayList<>();
+				}
+				vencidos.add(entrada);
+			}
+		}
+
+		acertos.increment(encontrados.size());
+		if (faltantes != null)
+		{
+			faltas.increment(faltantes.size());
+			encontrados.putAll(carregar(faltantes));
+		}
+		if (vencidos != null)
+		{
+			agendarRecarga(vencidos);
+		}
+		return encontrados;
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public void produtoAlterado(ProdutoAlteradoEvent evento)
+	{
+		invalidar(evento.produtoId());
+	}
+
+	public int tamanho()
+	{
+		return cache.tamanho();
+	}
+
+	private void invalidar(Long produtoId)
+	{
+		// Antes da remoção: quem leu antes daqui e ainda não gravou vai encontrar outra contagem
+		invalidacoes.incrementAndGet();
+		Segmento<Long, Entrada> segmento = cache.segmento(produtoId);
+		synchronized (segmento)
+		{
+			segmento.remover(produtoId);
+		}
+	}
+
+	private Map<Long, ProdutoPrecificacaoDTO> carregar(Collection<Long> ids)
+	{
+		long versao = invalidacoes.get();
+		List<ProdutoPrecificacaoDTO> produtos = repository.findPrecificacao(ids);
+		long agora = System.nanoTime();
+
+		Map<Long, ProdutoPrecificacaoDTO> carregados = new HashMap<>(produtos.size() * 2);
+		for (ProdutoPrecificacaoDTO produto : produtos)
+		{
+			carregados.put(produto.id(), produto);
+			guardar(produto, versao, agora);
+		}
+		return carregados;
+	}
+
+	private void agendarRecarga(List<Entrada> vencidas)
+	{
+		try
+		{
+			executor.execute(() -> recarregar(vencidas));
+		}
+		catch (RejectedExecutionException e)
+		{
+			liberar(vencidas);
+		}
+	}
+
+	private void recarregar(List<Entrada> vencidas)
+	{
+		List<Long> ids = vencidas.stream().map(e -> e.produto.id()).toList();
+		try
+		{
+			Map<Long, ProdutoPrecificacaoDTO> carregados = carregar(ids);
+			for (Long id : ids)
+			{
+				if (!carregados.containsKey(id))
+				{
+					// Removido sem passar pelo repositório
+					invalidar(id);
+				}
+			}
+			recargas.increment();
+		}
+		catch (RuntimeException e)
+		{
+			recargasFalhas.increment();
+			log.warn("Recarga de {} produtos do catálogo falhou; os valores atuais continuam valendo: {}",
+					ids.size(), e.toString());
+		}
+		finally
+		{
+			// Também quando uma invalidação impediu a gravação: a entrada antiga segue no cache e
+			// precisa poder ser recarregada de novo. As que foram trocadas já saíram dele.
+			liberar(vencidas);
+		}
+	}
+
+	private void guardar(ProdutoPrecificacaoDTO produto, long versao, long agora)
+	{
+		Segmento<Long, Entrada> segmento = cache.segmento(produto.id());
+		synchronized (segmento)
+		{
+			if (invalidacoes.get() == versao)
+			{
+				segmento.colocar(produto.id(), new Entrada(produto, agora));
+			}
+		}
+	}
+
+	/** Entradas cuja recarga não gravou um valor novo voltam a poder ser recarregadas no próximo acesso. */
+	private void liberar(List<Entrada> vencidas)
+	{
+		for (Entrada entrada : vencidas)
+		{
+			synchronized (cache.segmento(entrada.produto.id()))
+			{
+				entrada.recarregando = false;
+			}
+		}
+	}
+
+	/** Campos mutáveis só com o lock do segmento. */
+	private static final class Entrada
+	{
+		final ProdutoPrecificacaoDTO produto;
+		final long carregadaEm;
+		boolean recarregando;
+
+		Entrada(ProdutoPrecificacaoDTO produto, long carregadaEm)
+		{
+			this.produto = produto;
+			this.carregadaEm = carregadaEm;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package ecommerce.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Evento JFR de um checkout unitário concluído, com o tempo gasto em cada grupo de etapas; os
+ * tempos de cada chamada estão nos {@link EtapaCheckoutEvent} da mesma thread.
+ */
+@Name("ecommerce.Checkout")
+@Label("Checkout")
+@Category({ "eCommerce", "Checkout" })
+@StackTrace(false)
+final class CheckoutEvent extends jdk.jfr.Event
+{
+	@Label("Carrinho")
+	long carrinhoId;
+
+	@Label("Cliente")
+	long clienteId;
+
+	@Label("Produtos")
+	int produtos;
+
+	@Label("Resultado")
+	String resultado;
+
+	@Label("Duração total")
+	@Timespan
+	long duracao;
+
+	@Label("Carregamento")
+	@Timespan
+	long carregamento;
+
+	@Label("Estoque")
+	@Description("Reserva ou verificação de disponibilidade")
+	@Timespan
+	long estoque;
+
+	@Label("Precificação")
+	@Timespan
+	long precificacao;
+
+	@Label("Pagamento")
+	@Timespan
+	long pagamento;
+
+	@Label("Baixa")
+	@Timespan
+	long baixa;
+
+	@Label("Compensação")
+	@Description("Cancelamento do pagamento e liberação da reserva")
+	@Timespan
+	long compensacao;
+}
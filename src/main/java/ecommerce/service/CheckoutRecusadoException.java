@@ -0,0 +1,24 @@
+package ecommerce.service;
+
+/**
+ * Recusa de negócio durante o checkout (sem estoque, pagamento negado, baixa recusada). Continua
+ * sendo uma {@link IllegalStateException} com a mesma mensagem para quem chama; o
+ * {@link ResultadoCheckout} só serve para classificar o pedido nas métricas.
+ */
+final class CheckoutRecusadoException extends IllegalStateException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final ResultadoCheckout resultado;
+
+	CheckoutRecusadoException(ResultadoCheckout resultado, String mensagem)
+	{
+		super(mensagem);
+		this.resultado = resultado;
+	}
+
+	static ResultadoCheckout classificar(RuntimeException e)
+	{
+		return e instanceof CheckoutRecusadoException recusa ? recusa.resultado : ResultadoCheckout.ERRO;
+	}
+}
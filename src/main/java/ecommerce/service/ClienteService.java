@@ -1,21 +1,72 @@
 package ecommerce.service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import ecommerce.dto.ClientePrecificacaoDTO;
 import ecommerce.entity.Cliente;
+import ecommerce.entity.ClienteAlteradoEvent;
 import ecommerce.repository.ClienteRepository;
+import ecommerce.service.CacheSegmentado.Segmento;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
+/**
+ * Clientes do banco e, para o checkout, um near-cache da região e do tipo de cada cliente, que quase
+ * nunca mudam.
+ *
+ * O cache é um {@link CacheSegmentado} com validade {@code ttl}. Cliente alterado ou removido pelo repositório ({@link ClienteAlteradoEvent})
+ * sai do cache depois do commit. A entrada é criada antes da leitura no banco: quem pede o mesmo
+ * cliente enquanto ela está em curso espera por ela em vez de fazer outra, então uma rajada de
+ * checkouts do mesmo cliente gera uma consulta só.
+ */
 @Service
 public class ClienteService
 {
-
 	private final ClienteRepository repository;
+	private final long ttlNanos;
+
+	private final CacheSegmentado<Long, Entrada> cache;
+
+	private final Counter acertos;
+	private final Counter esperas;
+	private final Counter faltas;
+	private final Timer carga;
 
 	@Autowired
-	public ClienteService(ClienteRepository repository)
+	public ClienteService(ClienteRepository repository,
+			@Value("${compra.cliente.cache.capacidade:10000}") int capacidade,
+			@Value("${compra.cliente.cache.ttl:PT10M}") Duration ttl, MeterRegistry registry)
 	{
+		if (ttl.isNegative() || ttl.isZero())
+		{
+			throw new IllegalArgumentException("TTL do cache de clientes deve ser positivo.");
+		}
+
 		this.repository = repository;
+		this.ttlNanos = ttl.toNanos();
+
+		this.cache = new CacheSegmentado<>("cache de clientes", "compra.cliente.cache", capacidade, false, registry);
+
+		this.acertos = cache.resultado("acerto", true, "Clientes servidos do cache");
+		this.esperas = cache.resultado("espera", true, "Clientes servidos por uma leitura já em curso");
+		this.faltas = cache.resultado("falta", false, "Clientes lidos do banco");
+		this.carga = Timer.builder("compra.cliente.cache.carga").description("Duração das leituras de clientes no banco")
+				.publishPercentileHistogram().register(registry);
 	}
 
 	public Cliente buscarPorId(Long clienteId)
@@ -23,4 +74,172 @@ public class ClienteService
 		return repository.findById(clienteId).orElseThrow(() -> new IllegalArgumentException("Cliente não encontrado"));
 	}
 
+	/**
+	 * Região e tipo dos clientes pelos ids; os inexistentes ficam de fora do mapa (e fora do cache).
+	 * Nulos e repetidos são ignorados. As faltas são lidas em uma única consulta.
+	 */
+	public Map<Long, ClientePrecificacaoDTO> buscarPrecificacao(Collection<Long> clienteIds)
+	{
+		Map<Long, Entrada> entradas = new HashMap<>(clienteIds.size() * 2);
+		List<Entrada> carregar = null;
+		long agora = System.nanoTime();
+
+		for (Long id : clienteIds)
+		{
+			if (id == null || entradas.containsKey(id))
+			{
+				continue;
+			}
+
+			Segmento<Long, Entrada> segmento = cache.segmento(id);
+			Entrada entrada;
+			boolean nova = false;
+			synchronized (segmento)
+			{
+				entrada = segmento.buscar(id);
+				if (entrada == null || entrada.vencida(agora, ttlNanos))
+				{
+					entrada = new Entrada(id);
+					segmento.colocar(id, entrada);
+					nova = true;
+				}
+			}
+
+			if (nova)
+			{
+				if (carregar == null)
+				{
+					carregar = new ArrayList<>();
+				}
+				carregar.add(entrada);
+				faltas.increment();
+			}
+			else if (entrada.valor.isDone())
+			{
+				acertos.increment();
+			}
+			else
+			{
+				esperas.increment();
+			}
+			entradas.put(id, entrada);
+		}
+
+		if (carregar != null)
+		{
+			carregar(carregar);
+		}
+
+		Map<Long, ClientePrecificacaoDTO> clientes = new HashMap<>(entradas.size() * 2);
+		for (Entrada entrada : entradas.values())
+		{
+			ClientePrecificacaoDTO cliente = aguardar(entrada);
+			if (cliente != null)
+			{
+				clientes.put(entrada.id, cliente);
+			}
+		}
+		return clientes;
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public void clienteAlterado(ClienteAlteradoEvent evento)
+	{
+		Segmento<Long, Entrada> segmento = cache.segmento(evento.clienteId());
+		synchronized (segmento)
+		{
+			segmento.remover(evento.clienteId());
+		}
+	}
+
+	public int tamanho()
+	{
+		return cache.tamanho();
+	}
+
+	/** Completa todas as entradas, com o cliente, com nulo (inexistente) ou com a falha da leitura. */
+	private void carregar(List<Entrada> entradas)
+	{
+		List<Long> ids = entradas.stream().map(e -> e.id).toList();
+		Map<Long, ClientePrecificacaoDTO> carregados = new HashMap<>(ids.size() * 2);
+		long inicio = System.nanoTime();
+		try
+		{
+			for (ClientePrecificacaoDTO cliente : repository.findPrecificacao(ids))
+			{
+				carregados.put(cliente.id(), cliente);
+			}
+		}
+		catch (RuntimeException | Error e)
+		{
+			for (Entrada entrada : entradas)
+			{
+				remover(entrada);
+				entrada.valor.completeExceptionally(e);
+			}
+			throw e;
+		}
+		finally
+		{
+			carga.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		}
+
+		long agora = System.nanoTime();
+		for (Entrada entrada : entradas)
+		{
+			ClientePrecificacaoDTO cliente = carregados.get(entrada.id);
+			if (cliente == null)
+			{
+				// Cliente inexistente não fica em cache: pode ser cadastrado logo depois
+				remover(entrada);
+			}
+			entrada.carregadaEm = agora;
+			entrada.valor.complete(cliente);
+		}
+	}
+
+	private static ClientePrecificacaoDTO aguardar(Entrada entrada)
+	{
+		try
+		{
+			return entrada.valor.join();
+		}
+		catch (CompletionException e)
+		{
+			if (e.getCause() instanceof RuntimeException causa)
+			{
+				throw causa;
+			}
+			throw e;
+		}
+	}
+
+	/** Só se a entrada ainda é a do cliente; uma invalidação pode já tê-la trocado. */
+	private void remover(Entrada entrada)
+	{
+		Segmento<Long, Entrada> segmento = cache.segmento(entrada.id);
+		synchronized (segmento)
+		{
+			segmento.remover(entrada.id, entrada);
+		}
+	}
+
+	/** Leitura de um cliente, em curso ou concluída. */
+	private static final class Entrada
+	{
+		final Long id;
+		final CompletableFuture<ClientePrecificacaoDTO> valor = new CompletableFuture<>();
+		/** Escrito antes de completar {@code valor}; só é lido depois de {@code isDone()}. */
+		volatile long carregadaEm;
+
+		Entrada(Long id)
+		{
+			this.id = id;
+		}
+
+		boolean vencida(long agora, long ttlNanos)
+		{
+			return valor.isDone() && (valor.isCompletedExceptionally() || agora - carregadaEm >= ttlNanos);
+		}
+	}
 }
@@ -0,0 +1,333 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.external.IEstoqueExternalAssincrono;
+import ecommerce.external.IPagamentoExternalAssincrono;
+import ecommerce.external.ServicoIndisponivelException;
+import ecommerce.service.MetricasCheckout.Etapa;
+import ecommerce.service.MetricasCheckout.Medicao;
+
+/**
+ * O checkout de {@link CompraService#finalizarCompra} sem bloquear threads: mesmas etapas, mesmos
+ * resultados e mesmas exceções (aqui, como falha do future), mas estoque e pagamento são chamados
+ * pelas interfaces assíncronas e nenhuma thread espera por eles. As etapas seguintes rodam em um
+ * pool fixo de {@code compra.assincrono.threads} threads (padrão: uma por núcleo).
+ *
+ * O banco continua sendo JDBC bloqueante: o carregamento do carrinho e as gravações do outbox e da
+ * fila de cancelamentos rodam em um pool separado de {@code compra.assincrono.banco.threads}, do
+ * tamanho do pool de conexões, para não prender as threads das outras etapas. Cliente e produtos
+ * vêm dos caches em memória, então o banco só é consultado para os itens do carrinho.
+ *
+ * Cada pool enfileira no máximo {@code compra.assincrono.fila} tarefas. Com a fila do banco cheia,
+ * o checkout é recusado logo na entrada com {@link ServicoIndisponivelException} (503), sem ter
+ * reservado nem autorizado nada; as etapas de um checkout já aceito não são recusadas, e com a fila
+ * cheia rodam na thread que completou a anterior, para que as compensações sempre aconteçam.
+ *
+ * A reserva do estoque é disparada antes do cálculo do custo e os dois correm juntos, como em
+ * {@link ModoExecucao#CONCORRENTE}, com a mesma ordem de erros.
+ */
+@Service
+public class CompraAssincronaService implements DisposableBean
+{
+	private static final Logger log = LoggerFactory.getLogger(CompraAssincronaService.class);
+
+	private final CarrinhoDeComprasService carrinhoService;
+	private final CompraService compraService;
+	private final IEstoqueExternalAssincrono estoqueExternal;
+	private final IPagamentoExternalAssincrono pagamentoExternal;
+	private final MetricasCheckout metricas;
+	private final Duration validadeReserva;
+	private final ModoBaixa modoBaixa;
+	private final OutboxBaixaEstoque outbox;
+	private final FilaCancelamentoPagamento cancelamentos;
+
+	private final Executor executor;
+	private final Executor banco;
+	private final Executor entrada;
+	private final ExecutorService[] pools;
+
+	@Autowired
+	public CompraAssincronaService(CarrinhoDeComprasService carrinhoService, CompraService compraService,
+			IEstoqueExternalAssincrono estoqueExternal, IPagamentoExternalAssincrono pagamentoExternal,
+			MetricasCheckout metricas, @Value("${compra.estoque.reserva.validade:PT2M}") Duration validadeReserva,
+			@Value("${compra.baixa.modo:SINCRONA}") ModoBaixa modoBaixa, OutboxBaixaEstoque outbox,
+			FilaCancelamentoPagamento cancelamentos, @Value("${compra.assincrono.threads:0}") int threads,
+			@Value("${compra.assincrono.banco.threads:10}") int threadsBanco,
+			@Value("${compra.assincrono.fila:1000}") int fila)
+	{
+		this(carrinhoService, compraService, estoqueExternal, pagamentoExternal, metricas, validadeReserva, modoBaixa,
+				outbox, cancelamentos, pool("checkout-assincrono-",
+						threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), fila),
+				pool("checkout-assincrono-banco-", threadsBanco, fila));
+	}
+
+	/** Com executores de quem chama; {@link #destroy()} não os encerra. */
+	public CompraAssincronaService(CarrinhoDeComprasService carrinhoService, CompraService compraService,
+			IEstoqueExternalAssincrono estoqueExternal, IPagamentoExternalAssincrono pagamentoExternal,
+			MetricasCheckout metricas, Duration validadeReserva, ModoBaixa modoBaixa, OutboxBaixaEstoque outbox,
+			FilaCancelamentoPagamento cancelamentos, Executor executor, Executor banco)
+	{
+		this.carrinhoService = carrinhoService;
+		this.compraService = compraService;
+		this.estoqueExternal = estoqueExternal;
+		this.pagamentoExternal = pagamentoExternal;
+		this.metricas = metricas;
+		this.validadeReserva = validadeReserva;
+		this.modoBaixa = modoBaixa;
+		this.outbox = outbox;
+		this.cancelamentos = cancelamentos;
+		this.executor = semRecusa(executor);
+		this.banco = semRecusa(banco);
+		this.entrada = banco;
+		this.pools = new ExecutorService[] { executor instanceof ExecutorService e ? e : null,
+				banco instanceof ExecutorService b ? b : null };
+	}
+
+	/**
+	 * @return o resultado de {@link CompraService#finalizarCompra}, ou a mesma exceção como falha
+	 *         (envolvida em {@link CompletionException}; veja {@link #causa})
+	 */
+	public CompletableFuture<CompraDTO> finalizarCompra(Long carrinhoId, Long clienteId)
+	{
+		Medicao medicao = metricas.iniciar(carrinhoId, clienteId);
+		CompletableFuture<CompraDTO> compra;
+		try
+		{
+			compra = finalizar(carrinhoId, clienteId, medicao);
+		}
+		catch (RuntimeException e)
+		{
+			compra = CompletableFuture.failedFuture(e);
+		}
+		return compra.whenComplete((dto, erro) -> medicao.concluir(
+				erro == null ? ResultadoCheckout.SUCESSO
+						: causa(erro) instanceof RuntimeException e ? CheckoutRecusadoException.classificar(e)
+								: ResultadoCheckout.ERRO));
+	}
+
+	/** A exceção original de um future que falhou. */
+	public static Throwable causa(Throwable erro)
+	{
+		while ((erro instanceof CompletionException || erro instanceof ExecutionException) && erro.getCause() != null)
+		{
+			erro = erro.getCause();
+		}
+		return erro;
+	}
+
+	@Override
+	public void destroy()
+	{
+		for (ExecutorService pool : pools)
+		{
+			if (pool != null)
+			{
+				pool.shutdownNow();
+			}
+		}
+	}
+
+	private CompletableFuture<CompraDTO> finalizar(Long carrinhoId, Long clienteId, Medicao medicao)
+	{
+		return medicao.medirAssincrono(Etapa.CARREGAMENTO, () -> carregar(carrinhoId, clienteId))
+				.thenComposeAsync(contexto -> {
+					medicao.registrarCarrinho(contexto.carrinho());
+					return reservarEPrecificar(contexto, medicao)
+							.thenComposeAsync(reserva -> pagar(carrinhoId, contexto.clienteId(), reserva, medicao), executor);
+				}, executor);
+	}
+
+	/** A entrada do checkout: com a fila do banco cheia, ele é recusado antes de reservar qualquer coisa. */
+	private CompletableFuture<ContextoCheckout> carregar(Long carrinhoId, Long clienteId)
+	{
+		try
+		{
+			return CompletableFuture.supplyAsync(() -> carrinhoService.buscarContextoCheckout(carrinhoId, clienteId),
+					entrada);
+		}
+		catch (RejectedExecutionException e)
+		{
+			throw new ServicoIndisponivelException("Checkout assíncrono sobrecarregado; tente novamente.", e);
+		}
+	}
+
+	private CompletableFuture<ReservaPrecificada> reservarEPrecificar(ContextoCheckout contexto, Medicao medicao)
+	{
+		CarrinhoPrecificado carrinho = contexto.carrinho();
+		CompletableFuture<Long> reserva = medicao
+				.medirAssincrono(Etapa.RESERVA_ESTOQUE, () -> estoqueExternal.reservar(carrinho.getProdutosIds(),
+						carrinho.getProdutosQuantidades(), validadeReserva))
+				.thenApply(r -> {
+					if (!r.reservada())
+					{
+						throw new CheckoutRecusadoException(ResultadoCheckout.FORA_DE_ESTOQUE, "Itens fora de estoque.");
+					}
+					return r.reservaId();
+				});
+
+		BigDecimal custoTotal;
+		try
+		{
+			custoTotal = medicao.medir(Etapa.PRECIFICACAO, () -> compraService
+					.calcularCustoTotalPrecificado(carrinho, contexto.regiao(), contexto.tipoCliente()));
+		}
+		catch (RuntimeException e)
+		{
+			// Falhas do estoque vêm antes das do cálculo; com a reserva feita, ela é desfeita
+			return reserva.thenCompose(reservaId -> desfazer(liberarReserva(reservaId, medicao), e));
+		}
+		return reserva.thenApply(reservaId -> new ReservaPrecificada(reservaId, custoTotal));
+	}
+
+	private CompletableFuture<CompraDTO> pagar(Long carrinhoId, Long clienteId, ReservaPrecificada reserva,
+			Medicao medicao)
+	{
+		return medicao.medirAssincrono(Etapa.AUTORIZACAO_PAGAMENTO,
+				() -> pagamentoExternal.autorizarPagamento(clienteId, reserva.custoTotal().doubleValue()))
+				.<CompletableFuture<CompraDTO>> handleAsync((pagamento, erro) -> {
+					if (erro != null)
+					{
+						return desfazer(liberarReserva(reserva.reservaId(), medicao), erro);
+					}
+					if (!pagamento.autorizado())
+					{
+						return desfazer(liberarReserva(reserva.reservaId(), medicao), new CheckoutRecusadoException(
+								ResultadoCheckout.PAGAMENTO_RECUSADO, "Pagamento não autorizado."));
+					}
+					return modoBaixa == ModoBaixa.OUTBOX
+							? registrarBaixa(carrinhoId, clienteId, pagamento.transacaoId(), reserva, medicao)
+							: confirmarReserva(clienteId, pagamento.transacaoId(), reserva, medicao);
+				}, executor).thenCompose(Function.identity());
+	}
+
+	private CompletableFuture<CompraDTO> confirmarReserva(Long clienteId, Long transacaoId, ReservaPrecificada reserva,
+			Medicao medicao)
+	{
+		return medicao.medirAssincrono(Etapa.BAIXA_ESTOQUE, () -> estoqueExternal.confirmarReserva(reserva.reservaId()))
+				.<CompletableFuture<CompraDTO>> handleAsync((baixa, erro) -> {
+					if (erro != null)
+					{
+						// Sem confirmação a reserva expira sozinha; o pagamento já autorizado precisa ser desfeito
+						return desfazer(cancelarPagamento(clienteId, transacaoId, medicao), erro);
+					}
+					if (!baixa.sucesso())
+					{
+						return desfazer(cancelarPagamento(clienteId, transacaoId, medicao), new CheckoutRecusadoException(
+								ResultadoCheckout.BAIXA_RECUSADA, "Erro ao dar baixa no estoque."));
+					}
+					return CompletableFuture.completedFuture(sucesso(transacaoId));
+				}, executor).thenCompose(Function.identity());
+	}
+
+	/** Sem o registro no outbox ninguém daria a baixa: o pagamento e a reserva são desfeitos. */
+	private CompletableFuture<CompraDTO> registrarBaixa(Long carrinhoId, Long clienteId, Long transacaoId,
+			ReservaPrecificada reserva, Medicao medicao)
+	{
+		return medicao.medirAssincrono(Etapa.REGISTRO_BAIXA, () -> CompletableFuture.runAsync(
+				() -> outbox.registrar(carrinhoId, clienteId, transacaoId, reserva.custoTotal(), reserva.reservaId()),
+				banco))
+				.<CompletableFuture<CompraDTO>> handleAsync((registro, erro) -> erro == null ? CompletableFuture.completedFuture(sucesso(transacaoId))
+						: desfazer(cancelarPagamento(clienteId, transacaoId, medicao)
+								.thenCompose(v -> liberarReserva(reserva.reservaId(), medicao)), erro),
+						executor)
+				.thenCompose(Function.identity());
+	}
+
+	/** Como em {@link CompraService}: pela fila de cancelamentos e, se ela falhar, na hora. */
+	private CompletableFuture<Void> cancelarPagamento(Long clienteId, Long transacaoId, Medicao medicao)
+	{
+		if (cancelamentos == null)
+		{
+			return cancelarNaHora(clienteId, transacaoId, medicao);
+		}
+		return medicao.medirAssincrono(Etapa.CANCELAMENTO_PAGAMENTO,
+				() -> CompletableFuture.runAsync(() -> cancelamentos.enfileirar(clienteId, transacaoId), banco))
+				.exceptionallyCompose(e -> {
+					log.error("Cancelamento do pagamento {} não pôde ser enfileirado; cancelando na hora: {}", transacaoId,
+							causa(e).toString());
+					return cancelarNaHora(clienteId, transacaoId, medicao);
+				});
+	}
+
+	private CompletableFuture<Void> cancelarNaHora(Long clienteId, Long transacaoId, Medicao medicao)
+	{
+		return medicao.medirAssincrono(Etapa.CANCELAMENTO_PAGAMENTO,
+				() -> pagamentoExternal.cancelarPagamento(clienteId, transacaoId));
+	}
+
+	/** Liberação por boa-fé: se falhar, a reserva expira sozinha ao fim da validade. */
+	private CompletableFuture<Void> liberarReserva(Long reservaId, Medicao medicao)
+	{
+		return medicao.medirAssincrono(Etapa.LIBERACAO_RESERVA, () -> estoqueExternal.liberarReserva(reservaId))
+				.exceptionally(e -> null);
+	}
+
+	/** Falha com {@code erro} depois de {@code compensacao}; a falha da compensação vai suprimida nele. */
+	private static <T> CompletableFuture<T> desfazer(CompletableFuture<Void> compensacao, Throwable erro)
+	{
+		return compensacao.handle((v, falha) -> {
+			Throwable original = causa(erro);
+			if (falha != null && causa(falha) != original)
+			{
+				original.addSuppressed(causa(falha));
+			}
+			return CompletableFuture.<T> failedFuture(original);
+		}).thenCompose(Function.identity());
+	}
+
+	private static CompraDTO sucesso(Long transacaoId)
+	{
+		return new CompraDTO(true, transacaoId, "Compra finalizada com sucesso.");
+	}
+
+	/** Uma etapa recusada pelo pool deixaria o checkout sem compensação: roda na thread de quem a submeteu. */
+	private static Executor semRecusa(Executor executor)
+	{
+		return tarefa -> {
+			try
+			{
+				executor.execute(tarefa);
+			}
+			catch (RejectedExecutionException e)
+			{
+				tarefa.run();
+			}
+		};
+	}
+
+	/** Pool fixo com fila limitada; cheia, recusa com {@link RejectedExecutionException}. */
+	private static ExecutorService pool(String prefixo, int threads, int fila)
+	{
+		AtomicInteger numero = new AtomicInteger();
+		return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(fila), r -> {
+			Thread thread = new Thread(r, prefixo + numero.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private record ReservaPrecificada(Long reservaId, BigDecimal custoTotal)
+	{
+	}
+}
@@ -2,96 +2,186 @@ package ecommerce.service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import ecommerce.dto.CompraDTO;
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.LinhaCheckoutDTO;
 import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.PedidoCheckoutDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
 import ecommerce.entity.CarrinhoDeCompras;
-import ecommerce.entity.Cliente;
-import ecommerce.entity.ItemCompra;
-import ecommerce.entity.Produto;
 import ecommerce.entity.Regiao;
 import ecommerce.entity.TipoCliente;
 import ecommerce.entity.TipoProduto;
 import ecommerce.external.IEstoqueExternal;
 import ecommerce.external.IPagamentoExternal;
+import ecommerce.service.MetricasCheckout.Etapa;
+import ecommerce.service.MetricasCheckout.Medicao;
 import jakarta.transaction.Transactional;
 
 @Service
 public class CompraService
 {
+	private static final Logger log = LoggerFactory.getLogger(CompraService.class);
 
 	private final CarrinhoDeComprasService carrinhoService;
-	private final ClienteService clienteService;
 
 	private final IEstoqueExternal estoqueExternal;
 	private final IPagamentoExternal pagamentoExternal;
 
-	private static final BigDecimal DIVISOR_PESO_CUBICO = BigDecimal.valueOf(6000);
-	private static final BigDecimal TAXA_FRAGIL = BigDecimal.valueOf(5.00);
-	private static final BigDecimal TAXA_MINIMA_FRETE = BigDecimal.valueOf(12.00);
-
-	private static final BigDecimal FRETE_FAIXA_B = BigDecimal.valueOf(2.00);
-	private static final BigDecimal FRETE_FAIXA_C = BigDecimal.valueOf(4.00);
-	private static final BigDecimal FRETE_FAIXA_D = BigDecimal.valueOf(7.00);
-
-    private static final BigDecimal DESCONTO_QTD_3 = BigDecimal.valueOf(0.05);
-    private static final BigDecimal DESCONTO_QTD_5 = BigDecimal.valueOf(0.10);
-    private static final BigDecimal DESCONTO_QTD_8 = BigDecimal.valueOf(0.15);
-
-    private static final BigDecimal DESCONTO_VALOR_500 = BigDecimal.valueOf(0.10);
-    private static final BigDecimal DESCONTO_VALOR_1000 = BigDecimal.valueOf(0.20);
+	private final ModoPrecificacao modoPrecificacao;
+	private final ModoExecucao modoExecucao;
+	private final Executor executor;
+	private final Duration validadeReserva;
+	private final FonteRegrasPrecificacao regras;
+	private final MetricasCheckout metricas;
+	private final ModoBaixa modoBaixa;
+	private final OutboxBaixaEstoque outbox;
+	private final FilaCancelamentoPagamento cancelamentos;
+
+	private static final TipoProduto[] TIPOS_PRODUTO = TipoProduto.values();
+
+	private static final Duration VALIDADE_RESERVA_PADRAO = Duration.ofMinutes(2);
+
+	/**
+	 * Com os padrões da configuração: checkout sequencial, baixa síncrona, regras padrão e sem
+	 * métricas nem fila de cancelamentos. {@code modoPrecificacao} nulo é
+	 * {@link ModoPrecificacao#BIG_DECIMAL}.
+	 */
+	public CompraService(CarrinhoDeComprasService carrinhoService,
+			IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal, ModoPrecificacao modoPrecificacao)
+	{
+		this(carrinhoService, estoqueExternal, pagamentoExternal,
+				modoPrecificacao == null ? ModoPrecificacao.BIG_DECIMAL : modoPrecificacao, ModoExecucao.SEQUENCIAL,
+				null, VALIDADE_RESERVA_PADRAO, new FonteRegrasPrecificacao(RegrasPrecificacao.padrao()),
+				MetricasCheckout.desligadas(), ModoBaixa.SINCRONA, null, null);
+	}
 
 	@Autowired
-	public CompraService(CarrinhoDeComprasService carrinhoService, ClienteService clienteService,
-			IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal)
+	public CompraService(CarrinhoDeComprasService carrinhoService,
+			IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal,
+			@Value("${compra.precificacao.modo:BIG_DECIMAL}") ModoPrecificacao modoPrecificacao,
+			@Value("${compra.execucao.modo:SEQUENCIAL}") ModoExecucao modoExecucao,
+			@Qualifier("applicationTaskExecutor") Executor executor,
+			@Value("${compra.estoque.reserva.validade:PT2M}") Duration validadeReserva,
+			FonteRegrasPrecificacao regras, MetricasCheckout metricas,
+			@Value("${compra.baixa.modo:SINCRONA}") ModoBaixa modoBaixa, OutboxBaixaEstoque outbox,
+			FilaCancelamentoPagamento cancelamentos)
 	{
 		this.carrinhoService = carrinhoService;
-		this.clienteService = clienteService;
 
 		this.estoqueExternal = estoqueExternal;
 		this.pagamentoExternal = pagamentoExternal;
+
+		this.modoPrecificacao = modoPrecificacao;
+		this.modoExecucao = modoExecucao;
+		this.executor = executor;
+		this.validadeReserva = validadeReserva;
+		this.regras = regras;
+		this.metricas = metricas;
+		this.modoBaixa = modoBaixa;
+		this.outbox = outbox;
+		this.cancelamentos = cancelamentos;
 	}
 
+	/**
+	 * Reserva o estoque antes do pagamento e confirma a reserva depois dele: duas chamadas ao
+	 * estoque no caminho feliz e nenhuma janela em que outro checkout leve os itens entre a
+	 * verificação e a baixa. Se o cálculo ou o pagamento falham, a reserva é liberada; o
+	 * pagamento só é cancelado quando a confirmação falha (reserva expirada, por exemplo).
+	 *
+	 * Numa só transação, como a leitura do carrinho e a gravação da compra no outbox: uma falha
+	 * desfaz tudo. Por isso o cancelamento de um pagamento já autorizado é pedido em transação
+	 * própria, que sobrevive a esse rollback.
+	 */
 	@Transactional
 	public CompraDTO finalizarCompra(Long carrinhoId, Long clienteId)
 	{
-		Cliente cliente = clienteService.buscarPorId(clienteId);
-		CarrinhoDeCompras carrinho = carrinhoService.buscarPorCarrinhoIdEClienteId(carrinhoId, cliente);
+		Medicao medicao = metricas.iniciar(carrinhoId, clienteId);
+		ResultadoCheckout resultado = ResultadoCheckout.SUCESSO;
+		try
+		{
+			return finalizar(carrinhoId, clienteId, medicao);
+		}
+		catch (RuntimeException e)
+		{
+			resultado = CheckoutRecusadoException.classificar(e);
+			throw e;
+		}
+		finally
+		{
+			medicao.concluir(resultado);
+		}
+	}
 
-		List<Long> produtosIds = carrinho.getItens().stream().map(i -> i.getProduto().getId())
-				.collect(Collectors.toList());
-		List<Long> produtosQtds = carrinho.getItens().stream().map(i -> i.getQuantidade()).collect(Collectors.toList());
+	private CompraDTO finalizar(Long carrinhoId, Long clienteId, Medicao medicao)
+	{
+		ContextoCheckout contexto = medicao.medir(Etapa.CARREGAMENTO,
+				() -> carrinhoService.buscarContextoCheckout(carrinhoId, clienteId));
+		medicao.registrarCarrinho(contexto.carrinho());
 
-		DisponibilidadeDTO disponibilidade = estoqueExternal.verificarDisponibilidade(produtosIds, produtosQtds);
+		ReservaPrecificada reserva = modoExecucao == ModoExecucao.CONCORRENTE
+				? reservarEPrecificarConcorrente(contexto, medicao)
+				: reservarEPrecificar(contexto, medicao);
 
-		if (!disponibilidade.disponivel())
+		PagamentoDTO pagamento;
+		try
 		{
-			throw new IllegalStateException("Itens fora de estoque.");
+			pagamento = autorizarPagamento(contexto.clienteId(), reserva.custoTotal(), medicao);
+		}
+		catch (RuntimeException e)
+		{
+			liberarReserva(reserva.reservaId(), medicao);
+			throw e;
 		}
-
-		BigDecimal custoTotal = calcularCustoTotal(carrinho, cliente.getRegiao(), cliente.getTipo());
-
-		PagamentoDTO pagamento = pagamentoExternal.autorizarPagamento(cliente.getId(), custoTotal.doubleValue());
 
 		if (!pagamento.autorizado())
 		{
-			throw new IllegalStateException("Pagamento não autorizado.");
+			liberarReserva(reserva.reservaId(), medicao);
+			throw new CheckoutRecusadoException(ResultadoCheckout.PAGAMENTO_RECUSADO, "Pagamento não autorizado.");
 		}
 
-		EstoqueBaixaDTO baixaDTO = estoqueExternal.darBaixa(produtosIds, produtosQtds);
+		if (modoBaixa == ModoBaixa.OUTBOX)
+		{
+			registrarBaixa(carrinhoId, contexto.clienteId(), pagamento.transacaoId(), reserva, medicao);
+			return new CompraDTO(true, pagamento.transacaoId(), "Compra finalizada com sucesso.");
+		}
+
+		EstoqueBaixaDTO baixaDTO;
+		try
+		{
+			baixaDTO = medicao.medir(Etapa.BAIXA_ESTOQUE, () -> estoqueExternal.confirmarReserva(reserva.reservaId()));
+		}
+		catch (RuntimeException e)
+		{
+			// Sem confirmação a reserva expira sozinha; o pagamento já autorizado precisa ser desfeito
+			compensar(e, () -> cancelarPagamento(contexto.clienteId(), pagamento.transacaoId(), medicao));
+			throw e;
+		}
 
 		if (!baixaDTO.sucesso())
 		{
-			pagamentoExternal.cancelarPagamento(cliente.getId(), pagamento.transacaoId());
-			throw new IllegalStateException("Erro ao dar baixa no estoque.");
+			CheckoutRecusadoException recusa = new CheckoutRecusadoException(ResultadoCheckout.BAIXA_RECUSADA,
+					"Erro ao dar baixa no estoque.");
+			compensar(recusa, () -> cancelarPagamento(contexto.clienteId(), pagamento.transacaoId(), medicao));
+			throw recusa;
 		}
 
 		CompraDTO compraDTO = new CompraDTO(true, pagamento.transacaoId(), "Compra finalizada com sucesso.");
@@ -99,129 +189,461 @@ public class CompraService
 		return compraDTO;
 	} 
 
-	public BigDecimal calcularCustoTotal(CarrinhoDeCompras carrinho, Regiao regiao, TipoCliente tipoCliente) {
-		
-		if (carrinho == null || carrinho.getItens() == null || carrinho.getItens().isEmpty()) {
-			throw new IllegalArgumentException("Carrinho não pode ser nulo ou vazio.");
+	private ReservaPrecificada reservarEPrecificar(ContextoCheckout contexto, Medicao medicao)
+	{
+		CarrinhoPrecificado carrinho = contexto.carrinho();
+		Long reservaId = reservar(carrinho, medicao);
+
+		try
+		{
+			return new ReservaPrecificada(reservaId, precificar(contexto, medicao));
 		}
-		if (regiao == null) {
-			throw new IllegalArgumentException("Região não pode ser nula.");
+		catch (RuntimeException e)
+		{
+			liberarReserva(reservaId, medicao);
+			throw e;
 		}
-		if (tipoCliente == null) {
-			throw new IllegalArgumentException("Tipo de cliente não pode ser nulo.");
+	}
+
+	/**
+	 * Mesmo resultado de {@link #reservarEPrecificar}, mas o cálculo roda nesta thread enquanto a
+	 * reserva de estoque roda no {@link Executor}. Os erros seguem a ordem do modo sequencial:
+	 * primeiro falhas do estoque, depois indisponibilidade e só então erros do cálculo. A tarefa
+	 * assíncrona só chama o serviço externo; todo acesso a banco continua na transação desta thread.
+	 */
+	private ReservaPrecificada reservarEPrecificarConcorrente(ContextoCheckout contexto, Medicao medicao)
+	{
+		CarrinhoPrecificado carrinho = contexto.carrinho();
+		CompletableFuture<Long> reservaFutura = CompletableFuture.supplyAsync(() -> reservar(carrinho, medicao),
+				executor);
+
+		BigDecimal custoTotal = null;
+		RuntimeException erroCalculo = null;
+		try
+		{
+			custoTotal = precificar(contexto, medicao);
+		}
+		catch (RuntimeException e)
+		{
+			erroCalculo = e;
 		}
 
-		BigDecimal subtotalComDescontoTipo = calcularSubtotalComDescontoPorTipo(carrinho);
-		BigDecimal subtotalComDescontoValor = aplicarDescontoPorValorCarrinho(subtotalComDescontoTipo);
-		BigDecimal frete = calcularFrete(carrinho, regiao, tipoCliente);
+		Long reservaId;
+		try
+		{
+			reservaId = reservaFutura.join();
+		}
+		catch (CompletionException e)
+		{
+			if (e.getCause() instanceof RuntimeException causa)
+			{
+				throw causa;
+			}
+			throw e;
+		}
 
-		BigDecimal total = subtotalComDescontoValor.add(frete);
-		return total.setScale(2, RoundingMode.HALF_UP);
+		if (erroCalculo != null)
+		{
+			liberarReserva(reservaId, medicao);
+			throw erroCalculo;
+		}
+
+		return new ReservaPrecificada(reservaId, custoTotal);
 	}
 
-	private BigDecimal calcularSubtotalComDescontoPorTipo(CarrinhoDeCompras carrinho) {
-		Map<TipoProduto, List<ItemCompra>> itensPorTipo = carrinho.getItens().stream()
-				.collect(Collectors.groupingBy(item -> item.getProduto().getTipo()));
+	private Long reservar(CarrinhoPrecificado carrinho, Medicao medicao)
+	{
+		ReservaEstoqueDTO reserva = medicao.medir(Etapa.RESERVA_ESTOQUE, () -> estoqueExternal
+				.reservar(carrinho.getProdutosIds(), carrinho.getProdutosQuantidades(), validadeReserva));
 
-		BigDecimal subtotalGeral = BigDecimal.ZERO;
+		if (!reserva.reservada())
+		{
+			throw new CheckoutRecusadoException(ResultadoCheckout.FORA_DE_ESTOQUE, "Itens fora de estoque.");
+		}
+		return reserva.reservaId();
+	}
 
-		for (Map.Entry<TipoProduto, List<ItemCompra>> entry : itensPorTipo.entrySet()) {
-			List<ItemCompra> itens = entry.getValue();
+	private BigDecimal precificar(ContextoCheckout contexto, Medicao medicao)
+	{
+		return medicao.medir(Etapa.PRECIFICACAO, () -> calcularCustoTotalPrecificado(contexto.carrinho(),
+				contexto.regiao(), contexto.tipoCliente()));
+	}
+
+	private PagamentoDTO autorizarPagamento(Long clienteId, BigDecimal custoTotal, Medicao medicao)
+	{
+		return medicao.medir(Etapa.AUTORIZACAO_PAGAMENTO,
+				() -> pagamentoExternal.autorizarPagamento(clienteId, custoTotal.doubleValue()));
+	}
+
+	/** Sem o registro no outbox ninguém daria a baixa: o pagamento e a reserva são desfeitos. */
+	private void registrarBaixa(Long carrinhoId, Long clienteId, Long transacaoId, ReservaPrecificada reserva,
+			Medicao medicao)
+	{
+		try
+		{
+			medicao.medir(Etapa.REGISTRO_BAIXA,
+					() -> outbox.registrar(carrinhoId, clienteId, transacaoId, reserva.custoTotal(), reserva.reservaId()));
+		}
+		catch (RuntimeException e)
+		{
+			compensar(e, () -> cancelarPagamento(clienteId, transacaoId, medicao));
+			liberarReserva(reserva.reservaId(), medicao);
+			throw e;
+		}
+	}
 
-			BigDecimal subtotalTipo = BigDecimal.ZERO;
-			int quantidadeTotalTipo = 0;
+	/** Roda a compensação de {@code erro}; se ela falhar, a falha vai suprimida em {@code erro}. */
+	private static void compensar(RuntimeException erro, Runnable compensacao)
+	{
+		try
+		{
+			compensacao.run();
+		}
+		catch (RuntimeException e)
+		{
+			erro.addSuppressed(e);
+		}
+	}
 
-			for (ItemCompra item : itens) {
-				BigDecimal preco = item.getProduto().getPreco();
-				BigDecimal qtd = BigDecimal.valueOf(item.getQuantidade());
-				subtotalTipo = subtotalTipo.add(preco.multiply(qtd));
-				quantidadeTotalTipo += item.getQuantidade();
+	/**
+	 * Com a {@link FilaCancelamentoPagamento}, só grava o pedido, em transação própria para não ser
+	 * desfeito com o checkout: o checkout não espera o serviço de pagamento e uma falha dele não se
+	 * perde. Sem a fila (ou com o banco fora), cancela na hora.
+	 */
+	private void cancelarPagamento(Long clienteId, Long transacaoId, Medicao medicao)
+	{
+		if (cancelamentos != null)
+		{
+			try
+			{
+				medicao.medir(Etapa.CANCELAMENTO_PAGAMENTO, () -> cancelamentos
+						.enfileirarEmTransacaoPropria(clienteId, transacaoId));
+				return;
 			}
+			catch (RuntimeException e)
+			{
+				log.error("Cancelamento do pagamento {} não pôde ser enfileirado; cancelando na hora: {}", transacaoId,
+						e.toString());
+			}
+		}
+		medicao.medir(Etapa.CANCELAMENTO_PAGAMENTO,
+				() -> pagamentoExternal.cancelarPagamento(clienteId, transacaoId));
+	}
 
-			BigDecimal desconto = obterDescontoPorQuantidade(quantidadeTotalTipo);
-			BigDecimal subtotalComDesconto = subtotalTipo.multiply(BigDecimal.ONE.subtract(desconto));
+	/** Liberação por boa-fé: se falhar, a reserva expira sozinha ao fim da validade. */
+	private void liberarReserva(Long reservaId, Medicao medicao)
+	{
+		try
+		{
+			medicao.medir(Etapa.LIBERACAO_RESERVA, () -> estoqueExternal.liberarReserva(reservaId));
+		}
+		catch (RuntimeException e)
+		{
+			// ignorada: o erro original é o que importa para quem chamou
+		}
+	}
 
-			subtotalGeral = subtotalGeral.add(subtotalComDesconto);
+	private record ReservaPrecificada(Long reservaId, BigDecimal custoTotal)
+	{
+	}
+
+	/**
+	 * Finaliza vários carrinhos de uma vez: uma consulta para carregar todos, uma chamada de
+	 * verificação e uma de baixa no estoque para o lote inteiro. Cada pedido tem o próprio
+	 * resultado, na mesma ordem de entrada; a falha de um carrinho não afeta os demais.
+	 */
+	@Transactional
+	public List<CompraDTO> finalizarCompras(List<PedidoCheckoutDTO> pedidos)
+	{
+		Medicao medicao = metricas.iniciarLote();
+		List<PedidoCheckoutDTO> validos = pedidos.stream()
+				.filter(p -> p != null && p.carrinhoId() != null && p.clienteId() != null).toList();
+		Map<PedidoCheckoutDTO, List<LinhaCheckoutDTO>> linhas = medicao.medir(Etapa.CARREGAMENTO,
+				() -> carrinhoService.buscarLinhasCheckoutEmLote(validos));
+
+		List<CheckoutEmLote> checkouts = new ArrayList<>(pedidos.size());
+		for (PedidoCheckoutDTO pedido : pedidos)
+		{
+			CheckoutEmLote checkout = new CheckoutEmLote();
+			checkouts.add(checkout);
+
+			if (pedido == null || pedido.carrinhoId() == null || pedido.clienteId() == null)
+			{
+				checkout.falhar(new IllegalArgumentException("Carrinho e cliente são obrigatórios."));
+				continue;
+			}
+			executar(checkout, () -> {
+				checkout.contexto = ContextoCheckout.deLinhas(pedido.clienteId(), linhas.get(pedido));
+				medicao.registrarCarrinho(checkout.contexto.carrinho());
+			});
 		}
 
-		return subtotalGeral;
+		verificarDisponibilidadeEmLote(pendentes(checkouts), medicao);
+
+		// O lote inteiro é precificado com as mesmas regras, mesmo que elas sejam trocadas no meio
+		RegrasPrecificacao regrasLote = regras.atuais();
+		for (CheckoutEmLote checkout : pendentes(checkouts))
+		{
+			executar(checkout, () -> {
+				ContextoCheckout contexto = checkout.contexto;
+				BigDecimal custoTotal = medicao.medir(Etapa.PRECIFICACAO, () -> calcularCustoTotalPrecificado(
+						contexto.carrinho(), contexto.regiao(), contexto.tipoCliente(), regrasLote));
+				PagamentoDTO pagamento = autorizarPagamento(contexto.clienteId(), custoTotal, medicao);
+
+				if (!pagamento.autorizado())
+				{
+					throw new CheckoutRecusadoException(ResultadoCheckout.PAGAMENTO_RECUSADO,
+							"Pagamento não autorizado.");
+				}
+				checkout.pagamento = pagamento;
+			});
+		}
+
+		darBaixaEmLote(pendentes(checkouts), medicao);
+
+		checkouts.forEach(c -> metricas.registrarResultado(c.classificacao));
+		return checkouts.stream().map(c -> c.resultado).toList();
 	}
 
-	private BigDecimal obterDescontoPorQuantidade(int quantidade) {
-		if (quantidade >= 8)
-			return DESCONTO_QTD_8;
-		if (quantidade >= 5)
-			return DESCONTO_QTD_5;
-		if (quantidade >= 3)
-			return DESCONTO_QTD_3;
-		return BigDecimal.ZERO;
+	private void verificarDisponibilidadeEmLote(List<CheckoutEmLote> checkouts, Medicao medicao)
+	{
+		if (checkouts.isEmpty())
+		{
+			return;
+		}
+
+		DisponibilidadeDTO disponibilidade;
+		try
+		{
+			disponibilidade = medicao.medir(Etapa.DISPONIBILIDADE_ESTOQUE, () -> estoqueExternal
+					.verificarDisponibilidade(concatenarIds(checkouts), concatenarQuantidades(checkouts)));
+		}
+		catch (RuntimeException e)
+		{
+			disponibilidade = null;
+		}
+
+		if (disponibilidade != null && disponibilidade.disponivel())
+		{
+			return;
+		}
+
+		// O lote soma a demanda de todos os carrinhos, então um produto em falta para o lote pode bastar
+		// para cada carrinho sozinho: só os carrinhos com produtos em falta são verificados de novo,
+		// um a um. Se a resposta não diz quais faltam, todos são.
+		List<CheckoutEmLote> suspeitos = checkouts;
+		if (disponibilidade != null && disponibilidade.idsProdutosIndisponiveis() != null
+				&& !disponibilidade.idsProdutosIndisponiveis().isEmpty())
+		{
+			Set<Long> indisponiveis = new HashSet<>(disponibilidade.idsProdutosIndisponiveis());
+			suspeitos = checkouts.stream()
+					.filter(c -> c.contexto.carrinho().getProdutosIds().stream().anyMatch(indisponiveis::contains))
+					.toList();
+		}
+
+		for (CheckoutEmLote checkout : suspeitos)
+		{
+			executar(checkout, () -> {
+				CarrinhoPrecificado carrinho = checkout.contexto.carrinho();
+				if (!medicao.medir(Etapa.DISPONIBILIDADE_ESTOQUE, () -> estoqueExternal
+						.verificarDisponibilidade(carrinho.getProdutosIds(), carrinho.getProdutosQuantidades()))
+						.disponivel())
+				{
+					throw new CheckoutRecusadoException(ResultadoCheckout.FORA_DE_ESTOQUE, "Itens fora de estoque.");
+				}
+			});
+		}
 	}
 
-	private BigDecimal aplicarDescontoPorValorCarrinho(BigDecimal subtotal) {
-		if (subtotal.compareTo(BigDecimal.valueOf(1000)) > 0) {
-			return subtotal.multiply(BigDecimal.ONE.subtract(DESCONTO_VALOR_1000));
-		} else if (subtotal.compareTo(BigDecimal.valueOf(500)) > 0) {
-			return subtotal.multiply(BigDecimal.ONE.subtract(DESCONTO_VALOR_500));
-		} else {
-			return subtotal;
+	private void darBaixaEmLote(List<CheckoutEmLote> checkouts, Medicao medicao)
+	{
+		if (checkouts.isEmpty())
+		{
+			return;
+		}
+
+		EstoqueBaixaDTO baixaLote;
+		try
+		{
+			baixaLote = medicao.medir(Etapa.BAIXA_ESTOQUE,
+					() -> estoqueExternal.darBaixa(concatenarIds(checkouts), concatenarQuantidades(checkouts)));
+		}
+		catch (RuntimeException e)
+		{
+			// Como no fluxo unitário: sem a baixa, o pagamento já autorizado de cada carrinho é desfeito,
+			// e a baixa não é repetida por carrinho
+			for (CheckoutEmLote checkout : checkouts)
+			{
+				desfazerPagamento(checkout, e, medicao);
+				checkout.falhar(e);
+			}
+			return;
+		}
+
+		if (baixaLote.sucesso())
+		{
+			checkouts.forEach(CheckoutEmLote::concluir);
+			return;
+		}
+
+		// Baixa do lote recusada: repete carrinho a carrinho para isolar quem não tem estoque
+		for (CheckoutEmLote checkout : checkouts)
+		{
+			executar(checkout, () -> {
+				CarrinhoPrecificado carrinho = checkout.contexto.carrinho();
+				EstoqueBaixaDTO baixa;
+				try
+				{
+					baixa = medicao.medir(Etapa.BAIXA_ESTOQUE, () -> estoqueExternal.darBaixa(carrinho.getProdutosIds(),
+							carrinho.getProdutosQuantidades()));
+				}
+				catch (RuntimeException e)
+				{
+					desfazerPagamento(checkout, e, medicao);
+					throw e;
+				}
+
+				if (!baixa.sucesso())
+				{
+					CheckoutRecusadoException recusa = new CheckoutRecusadoException(ResultadoCheckout.BAIXA_RECUSADA,
+							"Erro ao dar baixa no estoque.");
+					desfazerPagamento(checkout, recusa, medicao);
+					throw recusa;
+				}
+				checkout.concluir();
+			});
 		}
 	}
 
-	private BigDecimal calcularPesoTributavel(Produto produto) {
-		BigDecimal pesoCubico = produto.getComprimento()
-				.multiply(produto.getLargura())
-				.multiply(produto.getAltura())
-				.divide(DIVISOR_PESO_CUBICO, 2, RoundingMode.HALF_UP);
-		return produto.getPesoFisico().max(pesoCubico);
+	/** Cancela o pagamento já autorizado de {@code checkout}; se falhar, a falha vai suprimida em {@code erro}. */
+	private void desfazerPagamento(CheckoutEmLote checkout, RuntimeException erro, Medicao medicao)
+	{
+		compensar(erro, () -> cancelarPagamento(checkout.contexto.clienteId(), checkout.pagamento.transacaoId(),
+				medicao));
 	}
 
-	private BigDecimal calcularFrete(CarrinhoDeCompras carrinho, Regiao regiao, TipoCliente tipoCliente) {
-		BigDecimal pesoTotal = BigDecimal.ZERO;
-		BigDecimal taxaFragilTotal = BigDecimal.ZERO;
+	private static List<CheckoutEmLote> pendentes(List<CheckoutEmLote> checkouts)
+	{
+		return checkouts.stream().filter(c -> c.resultado == null).toList();
+	}
 
-		for (ItemCompra item : carrinho.getItens()) {
-			BigDecimal qtd = BigDecimal.valueOf(item.getQuantidade());
-			BigDecimal pesoItem = calcularPesoTributavel(item.getProduto()).multiply(qtd);
-			pesoTotal = pesoTotal.add(pesoItem);
+	private static List<Long> concatenarIds(List<CheckoutEmLote> checkouts)
+	{
+		List<Long> ids = new ArrayList<>();
+		checkouts.forEach(c -> ids.addAll(c.contexto.carrinho().getProdutosIds()));
+		return ids;
+	}
 
-			if (item.getProduto().isFragil() != null && item.getProduto().isFragil()) {
-				taxaFragilTotal = taxaFragilTotal.add(TAXA_FRAGIL.multiply(qtd));
-			}
+	private static List<Long> concatenarQuantidades(List<CheckoutEmLote> checkouts)
+	{
+		List<Long> quantidades = new ArrayList<>();
+		checkouts.forEach(c -> quantidades.addAll(c.contexto.carrinho().getProdutosQuantidades()));
+		return quantidades;
+	}
+
+	private static void executar(CheckoutEmLote checkout, Runnable etapa)
+	{
+		try
+		{
+			etapa.run();
+		}
+		catch (RuntimeException e)
+		{
+			checkout.falhar(e);
 		}
+	}
 
-		BigDecimal valorPorKg = BigDecimal.ZERO;
-		boolean temTaxaMinima = false;
+	/** Estado de um pedido dentro de {@link #finalizarCompras}; {@code resultado} nulo = pendente. */
+	private static final class CheckoutEmLote
+	{
+		private ContextoCheckout contexto;
+		private PagamentoDTO pagamento;
+		private CompraDTO resultado;
+		private ResultadoCheckout classificacao;
 
-		if (pesoTotal.compareTo(BigDecimal.valueOf(5)) <= 0) {
-			valorPorKg = BigDecimal.ZERO;
-		} else if (pesoTotal.compareTo(BigDecimal.valueOf(10)) <= 0) {
-			valorPorKg = FRETE_FAIXA_B;
-			temTaxaMinima = true;
-		} else if (pesoTotal.compareTo(BigDecimal.valueOf(50)) <= 0) {
-			valorPorKg = FRETE_FAIXA_C;
-			temTaxaMinima = true;
-		} else {
-			valorPorKg = FRETE_FAIXA_D;
-			temTaxaMinima = true;
+		void concluir()
+		{
+			resultado = new CompraDTO(true, pagamento.transacaoId(), "Compra finalizada com sucesso.");
+			classificacao = ResultadoCheckout.SUCESSO;
 		}
 
-		BigDecimal freteBase = valorPorKg.multiply(pesoTotal);
+		void falhar(RuntimeException e)
+		{
+			classificacao = CheckoutRecusadoException.classificar(e);
+			String mensagem = e instanceof IllegalArgumentException || e instanceof IllegalStateException
+					? e.getMessage()
+					: "Erro ao processar compra.";
+			resultado = new CompraDTO(false, null, mensagem);
+		}
+	}
+
+	public BigDecimal calcularCustoTotal(CarrinhoDeCompras carrinho, Regiao regiao, TipoCliente tipoCliente) {
+		
+		if (carrinho == null || carrinho.getItens() == null || carrinho.getItens().isEmpty()) {
+			throw new IllegalArgumentException("Carrinho não pode ser nulo ou vazio.");
+		}
+
+		return calcularCustoTotalPrecificado(CarrinhoPrecificado.de(carrinho.getItens()), regiao, tipoCliente);
+	}
+
+	public BigDecimal calcularCustoTotalPrecificado(CarrinhoPrecificado carrinho, Regiao regiao, TipoCliente tipoCliente) {
+		return calcularCustoTotalPrecificado(carrinho, regiao, tipoCliente, regras.atuais());
+	}
+
+	/** Regras atualmente em vigor; um cálculo iniciado com elas não vê trocas posteriores. */
+	public RegrasPrecificacao getRegrasPrecificacao() {
+		return regras.atuais();
+	}
+
+	/** Com as regras dadas, para que vários cálculos usem as mesmas mesmo que elas sejam trocadas no meio. */
+	public BigDecimal calcularCustoTotalPrecificado(CarrinhoPrecificado carrinho, Regiao regiao,
+			TipoCliente tipoCliente, RegrasPrecificacao regras) {
 
-		if (temTaxaMinima) {
-			freteBase = freteBase.add(TAXA_MINIMA_FRETE);
+		if (carrinho == null || carrinho.isVazio()) {
+			throw new IllegalArgumentException("Carrinho não pode ser nulo ou vazio.");
+		}
+		if (regiao == null) {
+			throw new IllegalArgumentException("Região não pode ser nula.");
+		}
+		if (tipoCliente == null) {
+			throw new IllegalArgumentException("Tipo de cliente não pode ser nulo.");
 		}
 
-		freteBase = freteBase.add(taxaFragilTotal);
+		if (modoPrecificacao == ModoPrecificacao.PONTO_FIXO && carrinho.isPontoFixo()) {
+			try {
+				return PrecificacaoPontoFixo.calcularCustoTotal(carrinho, regiao, tipoCliente, regras);
+			} catch (ArithmeticException e) {
+				// estouro de long ou regras fora da escala: segue pelo caminho BigDecimal
+			}
+		}
+		return calcularCustoTotalBigDecimal(carrinho, regiao, tipoCliente, regras);
+	}
+
+	private BigDecimal calcularCustoTotalBigDecimal(CarrinhoPrecificado carrinho, Regiao regiao,
+			TipoCliente tipoCliente, RegrasPrecificacao regras) {
+		BigDecimal subtotalComDescontoTipo = calcularSubtotalComDescontoPorTipo(carrinho, regras);
+		BigDecimal subtotalComDescontoValor = regras.aplicarDescontoPorValor(subtotalComDescontoTipo);
+		BigDecimal frete = regras.getFrete().calcular(carrinho, regiao, tipoCliente);
 
-		freteBase = freteBase.multiply(regiao.getMultiplicador());
+		BigDecimal total = subtotalComDescontoValor.add(frete);
+		return total.setScale(2, RoundingMode.HALF_UP);
+	}
 
-		switch (tipoCliente) {
-			case OURO -> freteBase = BigDecimal.ZERO;
-			case PRATA -> freteBase = freteBase.multiply(BigDecimal.valueOf(0.5));
-			case BRONZE -> {
+	private BigDecimal calcularSubtotalComDescontoPorTipo(CarrinhoPrecificado carrinho, RegrasPrecificacao regras) {
+		BigDecimal subtotalGeral = BigDecimal.ZERO;
+
+		for (TipoProduto tipo : TIPOS_PRODUTO) {
+			long quantidadeTotalTipo = carrinho.getQuantidade(tipo);
+			if (quantidadeTotalTipo == 0) {
+				continue;
 			}
+
+			BigDecimal subtotalComDesconto = carrinho.getSubtotal(tipo)
+					.multiply(regras.fatorDescontoPorQuantidade(quantidadeTotalTipo));
+
+			subtotalGeral = subtotalGeral.add(subtotalComDesconto);
 		}
 
-		return freteBase;
+		return subtotalGeral;
 	}
 }
@@ -0,0 +1,53 @@
+package ecommerce.service;
+
+import java.util.List;
+
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+
+/**
+ * Tudo o que {@link CompraService#finalizarCompra} precisa do banco: atributos de preço do
+ * cliente e o carrinho já resumido.
+ */
+public record ContextoCheckout(Long clienteId, Regiao regiao, TipoCliente tipoCliente, CarrinhoPrecificado carrinho)
+{
+
+	/**
+	 * Monta o contexto a partir das linhas de {@link CarrinhoDeComprasService#buscarLinhasCheckout}.
+	 *
+	 * @throws IllegalArgumentException se o cliente ou o carrinho não existirem.
+	 */
+	public static ContextoCheckout deLinhas(Long clienteId, List<LinhaCheckoutDTO> linhas)
+	{
+		validarLinhas(linhas);
+		LinhaCheckoutDTO primeira = linhas.get(0);
+
+		CarrinhoPrecificado.Acumulador acumulador = new CarrinhoPrecificado.Acumulador(linhas.size());
+		for (LinhaCheckoutDTO linha : linhas)
+		{
+			if (linha.itemId() != null)
+			{
+				acumulador.adicionar(linha.produtoId(), linha.tipoProduto(), linha.preco(), linha.pesoTributavel(),
+						linha.fragil(), linha.quantidade());
+			}
+		}
+
+		return new ContextoCheckout(clienteId, primeira.regiao(), primeira.tipoCliente(), acumulador.construir());
+	}
+
+	/**
+	 * @throws IllegalArgumentException se as linhas indicam que o cliente ou o carrinho não existem.
+	 */
+	static void validarLinhas(List<LinhaCheckoutDTO> linhas)
+	{
+		if (linhas.isEmpty())
+		{
+			throw new IllegalArgumentException("Cliente não encontrado");
+		}
+		if (linhas.get(0).carrinhoId() == null)
+		{
+			throw new IllegalArgumentException("Carrinho não encontrado.");
+		}
+	}
+}
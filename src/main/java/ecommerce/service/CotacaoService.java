@@ -0,0 +1,167 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import ecommerce.dto.CotacaoDTO;
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.entity.ProdutoAlteradoEvent;
+import ecommerce.service.CacheSegmentado.Segmento;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cotação do carrinho para a vitrine, sem efeitos no estoque ou no pagamento. O custo fica em cache
+ * sob um hash (SHA-256, 128 bits) do conteúdo que o determina: região, tipo de cliente e, por
+ * item, produto, quantidade, preço, peso tributável, fragilidade e tipo. Carrinho ou preço alterado
+ * gera outro hash, então uma cotação desatualizada nunca é servida; a consulta de projeção continua
+ * a cada chamada, mas o cálculo só roda na falta.
+ *
+ * O cache é um {@link CacheSegmentado}. Entradas com um produto alterado saem na hora ({@link ProdutoAlteradoEvent}); as de carrinhos
+ * alterados deixam de ser alcançadas e saem pelo LRU. Cada entrada guarda as
+ * {@link RegrasPrecificacao} com que foi calculada; depois de uma troca de regras ela conta como
+ * falta e é recalculada.
+ */
+@Service
+public class CotacaoService
+{
+	private final CarrinhoDeComprasService carrinhoService;
+	private final CompraService compraService;
+
+	private final CacheSegmentado<ChaveConteudo, Cotacao> cache;
+
+	private final Counter acertos;
+	private final Counter faltas;
+
+	public CotacaoService(CarrinhoDeComprasService carrinhoService, CompraService compraService,
+			@Value("${compra.cotacao.cache.capacidade:10000}") int capacidade, MeterRegistry registry)
+	{
+		this.carrinhoService = carrinhoService;
+		this.compraService = compraService;
+
+		this.cache = new CacheSegmentado<>("cache de cotação", "compra.cotacao.cache", capacidade, false, registry);
+
+		this.acertos = cache.resultado("acerto", true, "Cotações servidas do cache");
+		this.faltas = cache.resultado("falta", false, "Cotações calculadas");
+	}
+
+	public CotacaoDTO cotar(Long carrinhoId, Long clienteId)
+	{
+		List<LinhaCheckoutDTO> linhas = carrinhoService.buscarLinhasCheckout(carrinhoId, clienteId);
+		ContextoCheckout.validarLinhas(linhas);
+
+		// Lidas antes do cálculo: se as regras forem trocadas durante ele, a entrada nasce vencida
+		RegrasPrecificacao regras = compraService.getRegrasPrecificacao();
+		ChaveConteudo chave = ChaveConteudo.de(linhas);
+		Segmento<ChaveConteudo, Cotacao> segmento = cache.segmento(chave);
+
+		Cotacao cotacao;
+		synchronized (segmento)
+		{
+			cotacao = segmento.buscar(chave);
+		}
+		if (cotacao != null && cotacao.regras() == regras)
+		{
+			acertos.increment();
+			return new CotacaoDTO(carrinhoId, cotacao.custoTotal());
+		}
+
+		faltas.increment();
+		ContextoCheckout contexto = ContextoCheckout.deLinhas(clienteId, linhas);
+		BigDecimal custoTotal = compraService.calcularCustoTotalPrecificado(contexto.carrinho(), contexto.regiao(),
+				contexto.tipoCliente());
+
+		long[] produtosIds = linhas.stream().filter(l -> l.produtoId() != null).mapToLong(LinhaCheckoutDTO::produtoId)
+				.toArray();
+		synchronized (segmento)
+		{
+			segmento.colocar(chave, new Cotacao(custoTotal, produtosIds, regras));
+		}
+		return new CotacaoDTO(carrinhoId, custoTotal);
+	}
+
+	@EventListener
+	public void produtoAlterado(ProdutoAlteradoEvent evento)
+	{
+		long produtoId = evento.produtoId();
+		cache.removerSe(c -> c.contemProduto(produtoId));
+	}
+
+	public int tamanho()
+	{
+		return cache.tamanho();
+	}
+
+	/** Primeiros 128 bits do SHA-256 do conteúdo canônico (itens ordenados por produto). */
+	record ChaveConteudo(long alto, long baixo)
+	{
+		private static final Comparator<LinhaCheckoutDTO> ORDEM = Comparator
+				.comparing(LinhaCheckoutDTO::produtoId, Comparator.nullsFirst(Comparator.naturalOrder()))
+				.thenComparing(LinhaCheckoutDTO::quantidade, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+		static ChaveConteudo de(List<LinhaCheckoutDTO> linhas)
+		{
+			List<LinhaCheckoutDTO> ordenadas = new ArrayList<>(linhas);
+			ordenadas.sort(ORDEM);
+
+			LinhaCheckoutDTO primeira = ordenadas.get(0);
+			StringBuilder conteudo = new StringBuilder(64 + 64 * linhas.size());
+			conteudo.append(primeira.regiao()).append('|').append(primeira.tipoCliente());
+			for (LinhaCheckoutDTO linha : ordenadas)
+			{
+				if (linha.itemId() == null)
+				{
+					continue;
+				}
+				conteudo.append('|').append(linha.produtoId()).append(';').append(linha.quantidade()).append(';')
+						.append(normalizar(linha.preco())).append(';').append(normalizar(linha.pesoTributavel()))
+						.append(';').append(linha.fragil()).append(';').append(linha.tipoProduto());
+			}
+
+			ByteBuffer hash = ByteBuffer.wrap(sha256().digest(conteudo.toString().getBytes(StandardCharsets.UTF_8)));
+			return new ChaveConteudo(hash.getLong(), hash.getLong());
+		}
+
+		private static String normalizar(BigDecimal valor)
+		{
+			return valor == null ? "null" : valor.stripTrailingZeros().toPlainString();
+		}
+
+		private static MessageDigest sha256()
+		{
+			try
+			{
+				return MessageDigest.getInstance("SHA-256");
+			}
+			catch (NoSuchAlgorithmException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private record Cotacao(BigDecimal custoTotal, long[] produtosIds, RegrasPrecificacao regras)
+	{
+		boolean contemProduto(long produtoId)
+		{
+			for (long id : produtosIds)
+			{
+				if (id == produtoId)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package ecommerce.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR de uma etapa do checkout, com a duração da chamada. Sem gravação ativa, criar e
+ * encerrar o evento não custa nada além da alocação, que o JIT normalmente elimina.
+ */
+@Name("ecommerce.CheckoutEtapa")
+@Label("Etapa do checkout")
+@Category({ "eCommerce", "Checkout" })
+@StackTrace(false)
+final class EtapaCheckoutEvent extends jdk.jfr.Event
+{
+	@Label("Etapa")
+	String etapa;
+
+	@Label("Carrinho")
+	@Description("Zero nas etapas do checkout em lote")
+	long carrinhoId;
+}
@@ -0,0 +1,194 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ecommerce.entity.CancelamentoPendente;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.repository.CancelamentoPendenteRepository;
+import ecommerce.service.ProcessadorPendentes.Espera;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Fila persistente dos cancelamentos de pagamento que desfazem um checkout. Quem compensa só grava o
+ * pedido ({@link #enfileirar}, na transação de quem chama, se houver) e segue; um
+ * {@link ProcessadorPendentes} reivindica os vencidos em lotes e chama o {@link IPagamentoExternal}.
+ *
+ * Há no máximo um pedido por transação de pagamento: pedir de novo o cancelamento de uma transação
+ * ainda na fila não faz nada. Cancelamento que falha é tentado de novo, sem limite, com espera
+ * exponencial ({@code espera-inicial} dobrando até {@code espera-maxima}) sorteada entre a metade e
+ * o total, para que falhas simultâneas não voltem todas juntas.
+ */
+@Component
+public class FilaCancelamentoPagamento implements DisposableBean
+{
+	private static final Logger log = LoggerFactory.getLogger(FilaCancelamentoPagamento.class);
+	private static final String METRICA = "compra.cancelamentos";
+
+	private final CancelamentoPendenteRepository pendentes;
+	private final IPagamentoExternal pagamentoExternal;
+	private final TransactionTemplate transacao;
+	private final TransactionTemplate transacaoPropria;
+	private final Espera espera;
+
+	private final Counter enfileirados;
+	private final Counter duplicados;
+	private final Counter cancelados;
+	private final Counter novasTentativas;
+
+	private final ProcessadorPendentes<CancelamentoPendente> processador;
+
+	/** {@code intervalo} zero desliga o agendador: a fila só é processada por {@link #processarLote}. */
+	public FilaCancelamentoPagamento(CancelamentoPendenteRepository pendentes, IPagamentoExternal pagamentoExternal,
+			PlatformTransactionManager transactionManager,
+			@Value("${compra.cancelamentos.intervalo:PT1S}") Duration intervalo,
+			@Value("${compra.cancelamentos.lote:20}") int lote,
+			@Value("${compra.cancelamentos.espera-inicial:PT1S}") Duration esperaInicial,
+			@Value("${compra.cancelamentos.espera-maxima:PT5M}") Duration esperaMaxima,
+			@Value("${compra.cancelamentos.prazo:PT2M}") Duration prazo, MeterRegistry registry)
+	{
+		this.pendentes = pendentes;
+		this.pagamentoExternal = pagamentoExternal;
+		this.transacao = new TransactionTemplate(transactionManager);
+		this.transacaoPropria = new TransactionTemplate(transactionManager);
+		transacaoPropria.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.espera = new Espera(esperaInicial, esperaMaxima, true);
+
+		this.enfileirados = ProcessadorPendentes.resultado(registry, METRICA, "enfileirado");
+		this.duplicados = ProcessadorPendentes.resultado(registry, METRICA, "duplicado");
+		this.cancelados = ProcessadorPendentes.resultado(registry, METRICA, "cancelado");
+		this.novasTentativas = ProcessadorPendentes.resultado(registry, METRICA, "nova-tentativa");
+
+		this.processador = new ProcessadorPendentes<>("cancelamento-pagamento", METRICA, pendentes, transacao,
+				this::cancelar, 0, lote, intervalo, prazo, espera, registry);
+	}
+
+	/**
+	 * Grava o pedido de cancelamento, se a transação ainda não está na fila, e adianta o agendador.
+	 * Participa da transação de quem chama, se houver, sem ocupar outra conexão: o pedido só vale se
+	 * ela for confirmada, então quem chama não deve desfazê-la por causa da falha que está
+	 * compensando. Um pedido concorrente para a mesma transação de pagamento só é ignorado fora de
+	 * transação; dentro de uma, o erro segue para quem chama.
+	 */
+	public void enfileirar(Long clienteId, Long transacaoPagamentoId)
+	{
+		enfileirar(transacao, clienteId, transacaoPagamentoId);
+	}
+
+	/**
+	 * Como {@link #enfileirar}, mas em transação própria, confirmada antes de voltar: para quem vai
+	 * desfazer a sua por causa da falha que está compensando, como o checkout. Ocupa outra conexão
+	 * enquanto grava.
+	 */
+	public void enfileirarEmTransacaoPropria(Long clienteId, Long transacaoPagamentoId)
+	{
+		enfileirar(transacaoPropria, clienteId, transacaoPagamentoId);
+	}
+
+	private void enfileirar(TransactionTemplate template, Long clienteId, Long transacaoPagamentoId)
+	{
+		boolean participa = template == transacao && TransactionSynchronizationManager.isActualTransactionActive();
+		boolean novo;
+		try
+		{
+			novo = template.execute(s -> {
+				if (pendentes.existsByTransacaoPagamentoId(transacaoPagamentoId))
+				{
+					return false;
+				}
+				pendentes.save(new CancelamentoPendente(clienteId, transacaoPagamentoId, Instant.now()));
+				// Na transação que gravou: o agendador só é adiantado depois do commit dela
+				processador.adiantar();
+				return true;
+			});
+		}
+		catch (DataIntegrityViolationException e)
+		{
+			if (participa)
+			{
+				// A transação de quem chama já ficou só para rollback; ao repeti-la, o pedido do outro é encontrado
+				throw e;
+			}
+			// Outro pedido para a mesma transação entrou ao mesmo tempo
+			novo = false;
+		}
+
+		if (!novo)
+		{
+			duplicados.increment();
+			return;
+		}
+		enfileirados.increment();
+	}
+
+	/** Começa o agendador, se houver, só depois da construção. */
+	@PostConstruct
+	public void iniciar()
+	{
+		processador.iniciar();
+	}
+
+	@Override
+	public void destroy()
+	{
+		processador.encerrar();
+	}
+
+	void drenar()
+	{
+		processador.drenar();
+	}
+
+	/**
+	 * Reivindica até {@code lote} cancelamentos vencidos e os tenta, um a um.
+	 *
+	 * @return quantos registros foram reivindicados
+	 */
+	int processarLote()
+	{
+		return processador.processarLote();
+	}
+
+	void atualizarMetricas()
+	{
+		processador.atualizarMetricas();
+	}
+
+	private void cancelar(CancelamentoPendente cancelamento)
+	{
+		try
+		{
+			pagamentoExternal.cancelarPagamento(cancelamento.getClienteId(), cancelamento.getTransacaoPagamentoId());
+		}
+		catch (RuntimeException e)
+		{
+			novasTentativas.increment();
+			processador.reagendar(cancelamento);
+			log.warn("Cancelamento do pagamento {} falhou ({}ª tentativa); será tentado de novo: {}",
+					cancelamento.getTransacaoPagamentoId(), cancelamento.getTentativas(), e.toString());
+			return;
+		}
+
+		processador.concluir(cancelamento);
+		cancelados.increment();
+	}
+
+	/** Entre a metade e o total de {@code espera-inicial} dobrando a cada falha, até {@code espera-maxima}. */
+	Duration espera(int falhas)
+	{
+		return espera.apos(falhas);
+	}
+}
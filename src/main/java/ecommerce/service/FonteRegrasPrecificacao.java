@@ -0,0 +1,212 @@
+package ecommerce.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Regras de precificação em vigor. Na subida são compiladas de {@code application.properties}
+ * (chaves {@code desconto.*} e {@code frete.*}) e, se {@code compra.precificacao.regras.arquivo}
+ * aponta um arquivo, das chaves desse arquivo, que prevalecem. O arquivo é verificado a cada
+ * {@code intervalo}, a partir de {@link #iniciar()}; quando muda, as regras são lidas, validadas e compiladas de novo e só então
+ * trocadas de uma vez. Regras inválidas são recusadas e as anteriores continuam valendo.
+ *
+ * Quem calcula lê {@link #atuais()} uma vez e usa a mesma instância até o fim: um cálculo em
+ * andamento não vê a troca.
+ */
+@Component
+public class FonteRegrasPrecificacao implements DisposableBean
+{
+	private static final Logger log = LoggerFactory.getLogger(FonteRegrasPrecificacao.class);
+
+	private final Environment ambiente;
+	private final Path arquivo;
+	private final Duration intervalo;
+	private ScheduledExecutorService agendador;
+
+	private volatile RegrasPrecificacao atuais;
+	private final AtomicLong versao = new AtomicLong(1);
+	private String assinaturaArquivo;
+
+	private final Counter recargas;
+	private final Counter recusas;
+
+	/** Regras fixas, sem arquivo nem recarga. */
+	public FonteRegrasPrecificacao(RegrasPrecificacao regras)
+	{
+		this.ambiente = null;
+		this.arquivo = null;
+		this.intervalo = Duration.ZERO;
+		this.atuais = Objects.requireNonNull(regras);
+		this.recargas = null;
+		this.recusas = null;
+	}
+
+	/**
+	 * @param arquivo   arquivo de propriedades com as regras; vazio usa só a configuração da aplicação
+	 * @param intervalo intervalo entre verificações do arquivo, iniciadas por {@link #iniciar()}; zero
+	 *                  desliga a verificação
+	 * @throws IllegalArgumentException se as regras iniciais são inválidas
+	 */
+	@Autowired
+	public FonteRegrasPrecificacao(Environment ambiente,
+			@Value("${compra.precificacao.regras.arquivo:}") String arquivo,
+			@Value("${compra.precificacao.regras.intervalo:PT5S}") Duration intervalo, MeterRegistry registry)
+	{
+		this.ambiente = ambiente;
+		this.arquivo = arquivo.isBlank() ? null : Path.of(arquivo);
+		this.intervalo = intervalo;
+
+		this.recargas = Counter.builder("compra.precificacao.regras.recargas").tag("resultado", "sucesso")
+				.description("Recargas das regras de precificação").register(registry);
+		this.recusas = Counter.builder("compra.precificacao.regras.recargas").tag("resultado", "recusa")
+				.description("Recargas das regras de precificação").register(registry);
+		Gauge.builder("compra.precificacao.regras.versao", versao, AtomicLong::get)
+				.description("Versão das regras de precificação em vigor").register(registry);
+
+		if (this.arquivo == null)
+		{
+			this.atuais = RegrasPrecificacao.compilar(ambiente::getProperty);
+			return;
+		}
+
+		this.assinaturaArquivo = assinatura();
+		this.atuais = ler();
+		log.info("Regras de precificação carregadas de {}.", this.arquivo);
+	}
+
+	/** Começa a verificar o arquivo; chamado pelo Spring depois da construção, parado por {@link #destroy()}. */
+	@PostConstruct
+	public synchronized void iniciar()
+	{
+		if (arquivo == null || intervalo.isZero() || intervalo.isNegative() || agendador != null)
+		{
+			return;
+		}
+		agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "regras-precificacao-recarga");
+			thread.setDaemon(true);
+			return thread;
+		});
+		agendador.scheduleWithFixedDelay(this::verificarArquivo, intervalo.toMillis(), intervalo.toMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	public RegrasPrecificacao atuais()
+	{
+		return atuais;
+	}
+
+	public long versao()
+	{
+		return versao.get();
+	}
+
+	/**
+	 * Relê o arquivo e troca as regras se forem válidas.
+	 *
+	 * @return {@code true} se as regras foram trocadas
+	 */
+	public synchronized boolean recarregar()
+	{
+		if (arquivo == null)
+		{
+			return false;
+		}
+
+		try
+		{
+			assinaturaArquivo = assinatura();
+			RegrasPrecificacao novas = ler();
+			atuais = novas;
+			long versaoAtual = versao.incrementAndGet();
+			recargas.increment();
+			log.info("Regras de precificação recarregadas de {} (versão {}).", arquivo, versaoAtual);
+			return true;
+		}
+		catch (IllegalArgumentException | UncheckedIOException e)
+		{
+			recusas.increment();
+			log.warn("Regras de precificação em {} recusadas; as anteriores continuam valendo: {}", arquivo,
+					e.getMessage());
+			return false;
+		}
+	}
+
+	synchronized void verificarArquivo()
+	{
+		try
+		{
+			if (!Objects.equals(assinaturaArquivo, assinatura()))
+			{
+				recarregar();
+			}
+		}
+		catch (UncheckedIOException e)
+		{
+			// Arquivo removido ou ilegível no momento: tenta de novo na próxima verificação
+		}
+	}
+
+	private RegrasPrecificacao ler()
+	{
+		Properties propriedades = new Properties();
+		try (Reader leitor = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8))
+		{
+			propriedades.load(leitor);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Erro ao ler regras de precificação de " + arquivo + ".", e);
+		}
+		return RegrasPrecificacao.compilar(chave -> propriedades.getProperty(chave, ambiente.getProperty(chave)));
+	}
+
+	/** Data de modificação e tamanho: muda a cada gravação do arquivo. */
+	private String assinatura()
+	{
+		try
+		{
+			BasicFileAttributes atributos = Files.readAttributes(arquivo, BasicFileAttributes.class);
+			return atributos.lastModifiedTime().toMillis() + ":" + atributos.size();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Erro ao ler regras de precificação de " + arquivo + ".", e);
+		}
+	}
+
+	@Override
+	public synchronized void destroy()
+	{
+		if (agendador != null)
+		{
+			agendador.shutdownNow();
+			agendador = null;
+		}
+	}
+}
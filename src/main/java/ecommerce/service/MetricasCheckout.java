@@ -0,0 +1,241 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Métricas de {@link CompraService#finalizarCompra} e {@link CompraService#finalizarCompras}:
+ * <ul>
+ * <li>{@code compra.checkout.etapa} (tag {@code etapa}): duração de cada chamada ao banco, ao
+ * estoque, ao pagamento e do cálculo do custo, com ou sem sucesso;</li>
+ * <li>{@code compra.checkout.duracao}: duração total do checkout unitário;</li>
+ * <li>{@code compra.checkout.resultados} (tag {@code resultado}): pedidos por
+ * {@link ResultadoCheckout}, nos dois fluxos;</li>
+ * <li>{@code compra.checkout.carrinho.produtos}: produtos distintos por carrinho finalizado.</li>
+ * </ul>
+ *
+ * Os medidores são registrados uma vez e indexados pelo ordinal, então medir não consulta o
+ * registry. Timers e o resumo publicam o histograma de percentis, que é barato e agregável entre
+ * instâncias. Os percentis calculados localmente (p50/p95/p99 em {@code /actuator/metrics}) custam
+ * mais por medição e vêm de {@code management.metrics.distribution.percentiles.compra.checkout},
+ * que pode ser esvaziado sem mexer no código.
+ *
+ * Cada checkout é acompanhado por uma {@link Medicao}, que também acumula o tempo por etapa do
+ * pedido: checkouts unitários acima do limiar vão para o {@link RegistroCheckoutsLentos}, e cada
+ * etapa e cada checkout geram eventos JFR ({@link EtapaCheckoutEvent}, {@link CheckoutEvent})
+ * quando há uma gravação ativa.
+ */
+@Component
+public class MetricasCheckout
+{
+	/** Etapas medidas; a tag é o nome em minúsculas com hífens. */
+	public enum Etapa
+	{
+		CARREGAMENTO, RESERVA_ESTOQUE, DISPONIBILIDADE_ESTOQUE, PRECIFICACAO, AUTORIZACAO_PAGAMENTO, BAIXA_ESTOQUE,
+		REGISTRO_BAIXA, CANCELAMENTO_PAGAMENTO, LIBERACAO_RESERVA;
+
+		private final String tag = name().toLowerCase().replace('_', '-');
+
+		String tag()
+		{
+			return tag;
+		}
+	}
+
+	private static final Etapa[] ETAPAS = Etapa.values();
+
+	private final Timer[] etapas = new Timer[ETAPAS.length];
+	private final Timer duracao;
+	private final Counter[] resultados = new Counter[ResultadoCheckout.values().length];
+	private final DistributionSummary produtosPorCarrinho;
+	private final RegistroCheckoutsLentos lentos;
+
+	public MetricasCheckout(MeterRegistry registry)
+	{
+		this(registry, RegistroCheckoutsLentos.desligado());
+	}
+
+	@Autowired
+	public MetricasCheckout(MeterRegistry registry, RegistroCheckoutsLentos lentos)
+	{
+		this.lentos = lentos;
+		for (Etapa etapa : ETAPAS)
+		{
+			etapas[etapa.ordinal()] = timer("compra.checkout.etapa").tag("etapa", etapa.tag)
+					.description("Duração de cada etapa do checkout").register(registry);
+		}
+		this.duracao = timer("compra.checkout.duracao").description("Duração total do checkout unitário")
+				.register(registry);
+
+		for (ResultadoCheckout resultado : ResultadoCheckout.values())
+		{
+			resultados[resultado.ordinal()] = Counter.builder("compra.checkout.resultados")
+					.tag("resultado", resultado.tag()).description("Pedidos de checkout por resultado")
+					.register(registry);
+		}
+
+		this.produtosPorCarrinho = DistributionSummary.builder("compra.checkout.carrinho.produtos")
+				.baseUnit("produtos").description("Produtos distintos por carrinho finalizado")
+				.publishPercentileHistogram().maximumExpectedValue(10_000.0)
+				.register(registry);
+	}
+
+	/** Sem registry: as medições são descartadas. Para quem constrói o serviço fora do Spring. */
+	public static MetricasCheckout desligadas()
+	{
+		return new MetricasCheckout(new CompositeMeterRegistry());
+	}
+
+	/** Checkout unitário: além das métricas, pode entrar no registro de checkouts lentos. */
+	Medicao iniciar(Long carrinhoId, Long clienteId)
+	{
+		return new Medicao(carrinhoId, clienteId, new long[ETAPAS.length]);
+	}
+
+	/** Checkout em lote: só as métricas de cada etapa; os resultados vão em {@link #registrarResultado}. */
+	Medicao iniciarLote()
+	{
+		return new Medicao(null, null, null);
+	}
+
+	void registrarResultado(ResultadoCheckout resultado)
+	{
+		resultados[resultado.ordinal()].increment();
+	}
+
+	/**
+	 * Medições de um checkout. As etapas podem rodar em threads diferentes, mas cada uma em uma só
+	 * (ou, nas assíncronas, encadeadas umas nas outras).
+	 */
+	final class Medicao
+	{
+		private final long inicio = System.nanoTime();
+		private final Long carrinhoId;
+		private final Long clienteId;
+		private final long[] nanosPorEtapa;
+		private int produtos;
+
+		private Medicao(Long carrinhoId, Long clienteId, long[] nanosPorEtapa)
+		{
+			this.carrinhoId = carrinhoId;
+			this.clienteId = clienteId;
+			this.nanosPorEtapa = nanosPorEtapa;
+		}
+
+		<T> T medir(Etapa etapa, Supplier<T> chamada)
+		{
+			EtapaCheckoutEvent evento = new EtapaCheckoutEvent();
+			evento.begin();
+			long inicioEtapa = System.nanoTime();
+			try
+			{
+				return chamada.get();
+			}
+			finally
+			{
+				registrar(etapa, evento, System.nanoTime() - inicioEtapa);
+			}
+		}
+
+		/** Mede do início da chamada até o future completar, com ou sem sucesso. */
+		<T> CompletableFuture<T> medirAssincrono(Etapa etapa, Supplier<? extends CompletionStage<T>> chamada)
+		{
+			EtapaCheckoutEvent evento = new EtapaCheckoutEvent();
+			evento.begin();
+			long inicioEtapa = System.nanoTime();
+			CompletableFuture<T> resultado;
+			try
+			{
+				resultado = chamada.get().toCompletableFuture();
+			}
+			catch (RuntimeException e)
+			{
+				resultado = CompletableFuture.failedFuture(e);
+			}
+			return resultado.whenComplete((valor, erro) -> registrar(etapa, evento, System.nanoTime() - inicioEtapa));
+		}
+
+		private void registrar(Etapa etapa, EtapaCheckoutEvent evento, long nanos)
+		{
+			etapas[etapa.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+			if (nanosPorEtapa != null)
+			{
+				nanosPorEtapa[etapa.ordinal()] += nanos;
+			}
+			if (evento.shouldCommit())
+			{
+				evento.etapa = etapa.tag;
+				evento.carrinhoId = carrinhoId == null ? 0 : carrinhoId;
+				evento.commit();
+			}
+		}
+
+		void medir(Etapa etapa, Runnable chamada)
+		{
+			medir(etapa, () -> {
+				chamada.run();
+				return null;
+			});
+		}
+
+		void registrarCarrinho(CarrinhoPrecificado carrinho)
+		{
+			produtos = carrinho.getProdutosIds().size();
+			produtosPorCarrinho.record(produtos);
+		}
+
+		/** Fim do checkout unitário. */
+		void concluir(ResultadoCheckout resultado)
+		{
+			long total = System.nanoTime() - inicio;
+			duracao.record(total, TimeUnit.NANOSECONDS);
+			registrarResultado(resultado);
+
+			CheckoutEvent evento = new CheckoutEvent();
+			if (evento.isEnabled())
+			{
+				// Ids ausentes (checkout recusado antes de validá-los) viram zero, como nas etapas
+				evento.carrinhoId = carrinhoId == null ? 0L : carrinhoId;
+				evento.clienteId = clienteId == null ? 0L : clienteId;
+				evento.produtos = produtos;
+				evento.resultado = resultado.tag();
+				evento.duracao = total;
+				evento.carregamento = nanos(Etapa.CARREGAMENTO);
+				evento.estoque = nanos(Etapa.RESERVA_ESTOQUE) + nanos(Etapa.DISPONIBILIDADE_ESTOQUE);
+				evento.precificacao = nanos(Etapa.PRECIFICACAO);
+				evento.pagamento = nanos(Etapa.AUTORIZACAO_PAGAMENTO);
+				evento.baixa = nanos(Etapa.BAIXA_ESTOQUE) + nanos(Etapa.REGISTRO_BAIXA);
+				evento.compensacao = nanos(Etapa.CANCELAMENTO_PAGAMENTO) + nanos(Etapa.LIBERACAO_RESERVA);
+				evento.commit();
+			}
+
+			if (lentos.isLento(total))
+			{
+				lentos.registrar(carrinhoId, clienteId, produtos, resultado, total, nanosPorEtapa);
+			}
+		}
+
+		private long nanos(Etapa etapa)
+		{
+			return nanosPorEtapa[etapa.ordinal()];
+		}
+	}
+
+	private static Timer.Builder timer(String nome)
+	{
+		return Timer.builder(nome).publishPercentileHistogram().minimumExpectedValue(Duration.ofNanos(1_000))
+				.maximumExpectedValue(Duration.ofSeconds(30));
+	}
+}
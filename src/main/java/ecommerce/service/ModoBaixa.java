@@ -0,0 +1,17 @@
+package ecommerce.service;
+
+/**
+ * Quando {@link CompraService#finalizarCompra} dá baixa no estoque depois do pagamento autorizado.
+ * Configurável por {@code compra.baixa.modo}.
+ */
+public enum ModoBaixa
+{
+	/** Confirma a reserva antes de responder; se falhar, o pagamento é cancelado pela fila (padrão). */
+	SINCRONA,
+
+	/**
+	 * Grava a compra e a baixa pendente na transação do checkout e responde; a baixa é feita pelo
+	 * {@link OutboxBaixaEstoque}, com novas tentativas e compensação.
+	 */
+	OUTBOX
+}
@@ -0,0 +1,14 @@
+package ecommerce.service;
+
+/**
+ * Ordem das etapas de {@link CompraService#finalizarCompra} antes do pagamento.
+ * Configurável por {@code compra.execucao.modo}.
+ */
+public enum ModoExecucao
+{
+	/** Verifica o estoque e depois calcula o custo (padrão). */
+	SEQUENCIAL,
+
+	/** Verifica o estoque em outra thread enquanto calcula o custo e junta os dois antes do pagamento. */
+	CONCORRENTE
+}
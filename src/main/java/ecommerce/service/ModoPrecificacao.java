@@ -0,0 +1,14 @@
+package ecommerce.service;
+
+/**
+ * Implementação usada por {@link CompraService#calcularCustoTotal}.
+ * Configurável por {@code compra.precificacao.modo}.
+ */
+public enum ModoPrecificacao
+{
+	/** Aritmética em {@link java.math.BigDecimal} (padrão). */
+	BIG_DECIMAL,
+
+	/** Aritmética em {@code long}: centavos, gramas e pontos-base. */
+	PONTO_FIXO
+}
@@ -0,0 +1,228 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.entity.BaixaEstoquePendente;
+import ecommerce.entity.Compra;
+import ecommerce.entity.SituacaoCompra;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.repository.BaixaEstoquePendenteRepository;
+import ecommerce.repository.CompraRepository;
+import ecommerce.service.ProcessadorPendentes.Espera;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Outbox das baixas de estoque de {@link ModoBaixa#OUTBOX}. O checkout grava a {@link Compra} e a
+ * {@link BaixaEstoquePendente} na própria transação ({@link #registrar}); depois do commit, um
+ * {@link ProcessadorPendentes} reivindica lotes de registros vencidos e os distribui entre os
+ * trabalhadores, que confirmam cada reserva no {@link IEstoqueExternal}.
+ *
+ * Falha na chamada reagenda o registro com espera exponencial ({@code espera-inicial} dobrando até
+ * {@code espera-maxima}). Só depois de {@code tentativas} falhas, ou de uma recusa do estoque (a
+ * reserva não existe mais, e tentar de novo não muda isso), a compra é compensada: a reserva é
+ * liberada e o cancelamento do pagamento entra na {@link FilaCancelamentoPagamento}, na mesma
+ * transação que marca a compra como cancelada. A compra também
+ * é compensada, sem esperar as tentativas, quando a próxima tentativa somada ao {@code prazo} dela
+ * passaria da validade da reserva: depois disso o estoque já não reconhece a confirmação, nem a
+ * repetida de uma chamada que estourou o tempo mas foi aplicada.
+ */
+@Component
+public class OutboxBaixaEstoque implements DisposableBean
+{
+	private static final Logger log = LoggerFactory.getLogger(OutboxBaixaEstoque.class);
+	private static final String METRICA = "compra.baixa.outbox";
+
+	private final BaixaEstoquePendenteRepository pendentes;
+	private final CompraRepository compras;
+	private final IEstoqueExternal estoqueExternal;
+	private final FilaCancelamentoPagamento cancelamentos;
+	private final TransactionTemplate transacao;
+
+	private final int tentativas;
+	private final Espera espera;
+	private final Duration prazo;
+	private final Duration validadeReserva;
+
+	private final Counter baixadas;
+	private final Counter recusadas;
+	private final Counter esgotadas;
+	private final Counter novasTentativas;
+	private final Counter compensadas;
+
+	private final ProcessadorPendentes<BaixaEstoquePendente> processador;
+
+	public OutboxBaixaEstoque(BaixaEstoquePendenteRepository pendentes, CompraRepository compras,
+			IEstoqueExternal estoqueExternal, FilaCancelamentoPagamento cancelamentos,
+			PlatformTransactionManager transactionManager,
+			@Value("${compra.baixa.modo:SINCRONA}") ModoBaixa modo,
+			@Value("${compra.baixa.outbox.trabalhadores:4}") int trabalhadores,
+			@Value("${compra.baixa.outbox.lote:50}") int lote,
+			@Value("${compra.baixa.outbox.intervalo:PT0.5S}") Duration intervalo,
+			@Value("${compra.baixa.outbox.tentativas:5}") int tentativas,
+			@Value("${compra.baixa.outbox.espera-inicial:PT1S}") Duration esperaInicial,
+			@Value("${compra.baixa.outbox.espera-maxima:PT1M}") Duration esperaMaxima,
+			@Value("${compra.baixa.outbox.prazo:PT1M}") Duration prazo,
+			@Value("${compra.estoque.reserva.validade:PT2M}") Duration validadeReserva, MeterRegistry registry)
+	{
+		if (trabalhadores <= 0 || lote <= 0 || tentativas <= 0)
+		{
+			throw new IllegalArgumentException("Trabalhadores, lote e tentativas do outbox de baixas devem ser positivos.");
+		}
+		if (prazo.compareTo(validadeReserva) >= 0)
+		{
+			throw new IllegalArgumentException("O prazo do outbox de baixas (" + prazo
+					+ ") deve ser menor que a validade da reserva (" + validadeReserva + ").");
+		}
+
+		this.pendentes = pendentes;
+		this.compras = compras;
+		this.estoqueExternal = estoqueExternal;
+		this.cancelamentos = cancelamentos;
+		this.transacao = new TransactionTemplate(transactionManager);
+		this.tentativas = tentativas;
+		this.espera = new Espera(esperaInicial, esperaMaxima, false);
+		this.prazo = prazo;
+		this.validadeReserva = validadeReserva;
+
+		this.baixadas = ProcessadorPendentes.resultado(registry, METRICA, "baixada");
+		this.recusadas = ProcessadorPendentes.resultado(registry, METRICA, "recusada");
+		this.esgotadas = ProcessadorPendentes.resultado(registry, METRICA, "tentativas-esgotadas");
+		this.novasTentativas = ProcessadorPendentes.resultado(registry, METRICA, "nova-tentativa");
+		this.compensadas = ProcessadorPendentes.resultado(registry, METRICA, "compensada");
+
+		this.processador = new ProcessadorPendentes<>("baixa-estoque-outbox", METRICA, pendentes, transacao,
+				this::processar, trabalhadores, lote, modo == ModoBaixa.OUTBOX ? intervalo : Duration.ZERO, prazo,
+				espera, registry);
+	}
+
+	/** Grava a compra confirmada e a baixa pendente; na transação de quem chama, se houver. */
+	@Transactional
+	public void registrar(Long carrinhoId, Long clienteId, Long transacaoPagamentoId, BigDecimal custoTotal,
+			Long reservaId)
+	{
+		Instant agora = Instant.now();
+		Compra compra = compras.save(new Compra(carrinhoId, clienteId, transacaoPagamentoId, custoTotal, agora));
+		pendentes.save(new BaixaEstoquePendente(compra.getId(), reservaId, clienteId, transacaoPagamentoId, agora));
+	}
+
+	/** Começa o agendador, se houver, só depois da construção. */
+	@PostConstruct
+	public void iniciar()
+	{
+		processador.iniciar();
+	}
+
+	@Override
+	public void destroy()
+	{
+		processador.encerrar();
+	}
+
+	void drenar()
+	{
+		processador.drenar();
+	}
+
+	/**
+	 * Reivindica até {@code lote} registros vencidos e processa cada um, nos trabalhadores se houver.
+	 *
+	 * @return quantos registros foram reivindicados
+	 */
+	int processarLote()
+	{
+		return processador.processarLote();
+	}
+
+	void atualizarMetricas()
+	{
+		processador.atualizarMetricas();
+	}
+
+	private void processar(BaixaEstoquePendente baixa)
+	{
+		EstoqueBaixaDTO resultado;
+		try
+		{
+			resultado = estoqueExternal.confirmarReserva(baixa.getReservaId());
+		}
+		catch (RuntimeException e)
+		{
+			int falhas = baixa.getTentativas() + 1;
+			if (falhas >= tentativas || !cabeNaValidade(baixa, Instant.now().plus(espera.apos(falhas))))
+			{
+				esgotadas.increment();
+				log.warn("Baixa da compra {} sem sucesso após {} tentativas; pagamento será cancelado: {}",
+						baixa.getCompraId(), falhas, e.toString());
+				compensar(baixa);
+			}
+			else
+			{
+				novasTentativas.increment();
+				processador.reagendar(baixa);
+			}
+			return;
+		}
+
+		if (resultado.sucesso())
+		{
+			processador.concluir(baixa,
+					() -> compras.atualizarSituacao(baixa.getCompraId(), SituacaoCompra.CONCLUIDA));
+			baixadas.increment();
+		}
+		else
+		{
+			recusadas.increment();
+			compensar(baixa);
+		}
+	}
+
+	private void compensar(BaixaEstoquePendente baixa)
+	{
+		try
+		{
+			estoqueExternal.liberarReserva(baixa.getReservaId());
+		}
+		catch (RuntimeException e)
+		{
+			// ignorada: a reserva expira sozinha ao fim da validade
+		}
+
+		// Pedido de cancelamento e compra cancelada entram juntos; se a transação falhar, o registro
+		// volta ao fim do prazo e é compensado de novo
+		processador.concluir(baixa, () -> {
+			cancelamentos.enfileirar(baixa.getClienteId(), baixa.getTransacaoPagamentoId());
+			compras.atualizarSituacao(baixa.getCompraId(), SituacaoCompra.CANCELADA);
+		});
+		compensadas.increment();
+	}
+
+	/**
+	 * Se uma tentativa que começa em {@code inicio} e dura até o {@code prazo} da reivindicação termina
+	 * antes de a reserva vencer. A reserva é feita pouco antes do registro (o tempo de autorizar o
+	 * pagamento), diferença coberta pelo {@code prazo}, bem maior que uma chamada.
+	 */
+	private boolean cabeNaValidade(BaixaEstoquePendente baixa, Instant inicio)
+	{
+		return inicio.plus(prazo).isBefore(baixa.getCriadaEm().plus(validadeReserva));
+	}
+
+	/** {@code espera-inicial} dobrando a cada falha, até {@code espera-maxima}. */
+	Duration espera(int falhas)
+	{
+		return espera.apos(falhas);
+	}
+}
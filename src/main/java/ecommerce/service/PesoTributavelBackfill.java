@@ -0,0 +1,37 @@
+package ecommerce.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backfill do peso tributável na subida da aplicação, habilitado por
+ * {@code produto.peso-tributavel.backfill.habilitado=true}.
+ */
+@Component
+@ConditionalOnProperty(name = "produto.peso-tributavel.backfill.habilitado", havingValue = "true")
+public class PesoTributavelBackfill implements ApplicationRunner
+{
+	private static final Logger log = LoggerFactory.getLogger(PesoTributavelBackfill.class);
+
+	private final ProdutoService produtoService;
+	private final int tamanhoLote;
+
+	public PesoTributavelBackfill(ProdutoService produtoService,
+			@Value("${produto.peso-tributavel.backfill.tamanho-lote:500}") int tamanhoLote)
+	{
+		this.produtoService = produtoService;
+		this.tamanhoLote = tamanhoLote;
+	}
+
+	@Override
+	public void run(ApplicationArguments args)
+	{
+		int atualizados = produtoService.preencherPesoTributavel(tamanhoLote);
+		log.info("Peso tributável preenchido em {} produtos.", atualizados);
+	}
+}
@@ -0,0 +1,411 @@
+package ecommerce.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import ecommerce.dto.CustoCarrinhoDTO;
+import ecommerce.dto.ItemPrecificacaoDTO;
+import ecommerce.dto.PrecificacaoCarrinhoDTO;
+import ecommerce.dto.ProdutoPrecificacaoDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Custo total de carrinhos avulsos lidos de um fluxo NDJSON ({@link PrecificacaoCarrinhoDTO} por
+ * linha), escrito em outro fluxo NDJSON ({@link CustoCarrinhoDTO} por linha, na ordem de entrada).
+ * Linhas em branco são ignoradas; uma linha inválida gera uma resposta com {@code erro} e não
+ * interrompe as demais.
+ *
+ * As linhas são agrupadas em blocos de {@code bloco} e precificadas em {@code threads} threads; cada
+ * bloco busca os produtos de todas as suas linhas de uma vez no {@link CatalogoProdutos}. Quem chama
+ * lê a entrada e escreve os blocos prontos em ordem, com no máximo {@code blocos-pendentes} blocos
+ * em andamento: se a saída não acompanha, a leitura para. A memória fica limitada a esses blocos,
+ * com linhas de até {@code linha-maxima} caracteres, qualquer que seja o tamanho da entrada.
+ *
+ * O fluxo inteiro é precificado com as regras em vigor no início.
+ */
+@Service
+public class PrecificacaoEmLote implements DisposableBean
+{
+	private static final Logger log = LoggerFactory.getLogger(PrecificacaoEmLote.class);
+
+	private final CompraService compraService;
+	private final CatalogoProdutos catalogo;
+	private final ObjectReader leitorJson;
+	private final ObjectWriter escritorJson;
+
+	private final int tamanhoBloco;
+	private final int blocosPendentes;
+	private final int linhaMaxima;
+	private final ExecutorService executor;
+
+	private final Counter sucessos;
+	private final Counter erros;
+
+	/** {@code threads} zero: uma por núcleo; {@code blocosPendentes} zero: o dobro das threads. */
+	public PrecificacaoEmLote(CompraService compraService, CatalogoProdutos catalogo, ObjectMapper mapper,
+			@Value("${compra.precificacao.lote.threads:0}") int threads,
+			@Value("${compra.precificacao.lote.bloco:200}") int tamanhoBloco,
+			@Value("${compra.precificacao.lote.blocos-pendentes:0}") int blocosPendentes,
+			@Value("${compra.precificacao.lote.linha-maxima:65536}") int linhaMaxima, MeterRegistry registry)
+	{
+		if (threads < 0 || tamanhoBloco <= 0 || blocosPendentes < 0 || linhaMaxima <= 0)
+		{
+			throw new IllegalArgumentException("Configuração da precificação em lote inválida.");
+		}
+
+		int numeroThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		this.compraService = compraService;
+		this.catalogo = catalogo;
+		this.leitorJson = mapper.readerFor(PrecificacaoCarrinhoDTO.class);
+		this.escritorJson = mapper.writerFor(CustoCarrinhoDTO.class);
+		this.tamanhoBloco = tamanhoBloco;
+		this.blocosPendentes = blocosPendentes > 0 ? blocosPendentes : 2 * numeroThreads;
+		this.linhaMaxima = linhaMaxima;
+
+		AtomicInteger numero = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(numeroThreads, r -> {
+			Thread thread = new Thread(r, "precificacao-lote-" + numero.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		this.sucessos = linhas(registry, "sucesso");
+		this.erros = linhas(registry, "erro");
+	}
+
+	/**
+	 * Lê {@code entrada} até o fim e escreve uma resposta por carrinho em {@code saida}, que é
+	 * descarregada sempre que a próxima resposta ainda não está pronta.
+	 *
+	 * @throws IOException se a entrada ou a saída falharem; os blocos em andamento são cancelados
+	 */
+	public void precificar(InputStream entrada, OutputStream saida) throws IOException
+	{
+		RegrasPrecificacao regras = compraService.getRegrasPrecificacao();
+		LeitorLinhas leitor = new LeitorLinhas(new InputStreamReader(entrada, StandardCharsets.UTF_8), linhaMaxima);
+		ArrayDeque<Future<byte[]>> pendentes = new ArrayDeque<>(blocosPendentes);
+
+		try
+		{
+			List<String> bloco = new ArrayList<>(tamanhoBloco);
+			while (leitor.proxima())
+			{
+				String linha = leitor.linha();
+				if (linha != null && linha.isBlank())
+				{
+					continue;
+				}
+				bloco.add(linha);
+				if (bloco.size() == tamanhoBloco)
+				{
+					enviar(bloco, regras, pendentes, saida);
+					bloco = new ArrayList<>(tamanhoBloco);
+				}
+			}
+			if (!bloco.isEmpty())
+			{
+				enviar(bloco, regras, pendentes, saida);
+			}
+
+			while (!pendentes.isEmpty())
+			{
+				escrever(pendentes.poll(), saida);
+			}
+			saida.flush();
+		}
+		finally
+		{
+			pendentes.forEach(f -> f.cancel(true));
+		}
+	}
+
+	@Override
+	public void destroy()
+	{
+		executor.shutdownNow();
+	}
+
+	private void enviar(List<String> bloco, RegrasPrecificacao regras, ArrayDeque<Future<byte[]>> pendentes,
+			OutputStream saida) throws IOException
+	{
+		if (pendentes.size() == blocosPendentes)
+		{
+			escrever(pendentes.poll(), saida);
+		}
+		pendentes.add(executor.submit(() -> precificarBloco(bloco, regras)));
+	}
+
+	private static void escrever(Future<byte[]> bloco, OutputStream saida) throws IOException
+	{
+		if (!bloco.isDone())
+		{
+			// O que já está pronto segue para o cliente enquanto o próximo bloco termina
+			saida.flush();
+		}
+		try
+		{
+			saida.write(bloco.get());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Precificação em lote interrompida.");
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Falha ao precificar bloco.", e.getCause());
+		}
+	}
+
+	/** As respostas do bloco, já em NDJSON; {@code null} na lista é uma linha longa demais. */
+	byte[] precificarBloco(List<String> linhas, RegrasPrecificacao regras)
+	{
+		PrecificacaoCarrinhoDTO[] carrinhos = new PrecificacaoCarrinhoDTO[linhas.size()];
+		String[] falhas = new String[linhas.size()];
+		Set<Long> produtosIds = new HashSet<>();
+
+		for (int i = 0; i < carrinhos.length; i++)
+		{
+			String linha = linhas.get(i);
+			if (linha == null)
+			{
+				falhas[i] = "Linha com mais de " + linhaMaxima + " caracteres.";
+				continue;
+			}
+			try
+			{
+				carrinhos[i] = leitorJson.readValue(linha);
+			}
+			catch (JsonProcessingException e)
+			{
+				falhas[i] = "JSON inválido.";
+				continue;
+			}
+			if (carrinhos[i] == null)
+			{
+				falhas[i] = "JSON inválido.";
+			}
+			else if (carrinhos[i].itens() != null)
+			{
+				carrinhos[i].itens().stream().filter(item -> item != null && item.produtoId() != null)
+						.forEach(item -> produtosIds.add(item.produtoId()));
+			}
+		}
+
+		Map<Long, ProdutoPrecificacaoDTO> produtos;
+		try
+		{
+			produtos = produtosIds.isEmpty() ? Map.of() : catalogo.buscar(produtosIds);
+		}
+		catch (RuntimeException e)
+		{
+			log.warn("Produtos de um bloco da precificação em lote não puderam ser lidos: {}", e.toString());
+			produtos = null;
+		}
+
+		ByteArrayOutputStream respostas = new ByteArrayOutputStream(64 * carrinhos.length);
+		int precificados = 0;
+		for (int i = 0; i < carrinhos.length; i++)
+		{
+			PrecificacaoCarrinhoDTO carrinho = carrinhos[i];
+			CustoCarrinhoDTO custo;
+			if (falhas[i] != null)
+			{
+				custo = new CustoCarrinhoDTO(null, null, falhas[i]);
+			}
+			else if (produtos == null)
+			{
+				custo = new CustoCarrinhoDTO(carrinho.id(), null, "Erro ao precificar.");
+			}
+			else
+			{
+				custo = precificar(carrinho, produtos, regras);
+			}
+
+			if (custo.erro() == null)
+			{
+				precificados++;
+			}
+			respostas.writeBytes(json(custo));
+			respostas.write('\n');
+		}
+
+		sucessos.increment(precificados);
+		erros.increment(carrinhos.length - precificados);
+		return respostas.toByteArray();
+	}
+
+	private CustoCarrinhoDTO precificar(PrecificacaoCarrinhoDTO carrinho, Map<Long, ProdutoPrecificacaoDTO> produtos,
+			RegrasPrecificacao regras)
+	{
+		List<ItemPrecificacaoDTO> itens = carrinho.itens();
+		try
+		{
+			if (itens == null || itens.isEmpty())
+			{
+				throw new IllegalArgumentException("Carrinho não pode ser nulo ou vazio.");
+			}
+
+			CarrinhoPrecificado.Acumulador acumulador = new CarrinhoPrecificado.Acumulador(itens.size());
+			for (ItemPrecificacaoDTO item : itens)
+			{
+				if (item == null || item.produtoId() == null || item.quantidade() == null || item.quantidade() <= 0)
+				{
+					throw new IllegalArgumentException("Item deve ter produto e quantidade positiva.");
+				}
+				ProdutoPrecificacaoDTO produto = produtos.get(item.produtoId());
+				if (produto == null)
+				{
+					throw new IllegalArgumentException("Produto " + item.produtoId() + " não encontrado.");
+				}
+				acumulador.adicionar(produto.id(), produto.tipo(), produto.preco(), produto.pesoTributavel(),
+						produto.fragil(), item.quantidade());
+			}
+
+			BigDecimal custoTotal = compraService.calcularCustoTotalPrecificado(acumulador.construir(),
+					carrinho.regiao(), carrinho.tipoCliente(), regras);
+			return new CustoCarrinhoDTO(carrinho.id(), custoTotal, null);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return new CustoCarrinhoDTO(carrinho.id(), null, e.getMessage());
+		}
+		catch (RuntimeException e)
+		{
+			return new CustoCarrinhoDTO(carrinho.id(), null, "Erro ao precificar.");
+		}
+	}
+
+	private byte[] json(CustoCarrinhoDTO custo)
+	{
+		try
+		{
+			return escritorJson.writeValueAsBytes(custo);
+		}
+		catch (JsonProcessingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Counter linhas(MeterRegistry registry, String resultado)
+	{
+		return Counter.builder("compra.precificacao.lote.linhas").tag("resultado", resultado)
+				.description("Carrinhos da precificação em lote por resultado").register(registry);
+	}
+
+	/**
+	 * Linhas de um {@link Reader}, sem o {@code \r\n} final, de até {@code maximo} caracteres: uma
+	 * linha maior é descartada até o fim e lida como {@code null}, sem ocupar memória.
+	 */
+	static final class LeitorLinhas
+	{
+		private final Reader reader;
+		private final int maximo;
+		private final char[] buffer = new char[8192];
+		private final StringBuilder atual = new StringBuilder();
+		private int posicao;
+		private int limite;
+		private String linha;
+
+		LeitorLinhas(Reader reader, int maximo)
+		{
+			this.reader = reader;
+			this.maximo = maximo;
+		}
+
+		/** @return {@code false} no fim da entrada */
+		boolean proxima() throws IOException
+		{
+			atual.setLength(0);
+			boolean longa = false;
+			boolean leu = false;
+
+			while (true)
+			{
+				if (posicao == limite)
+				{
+					int lidos = reader.read(buffer, 0, buffer.length);
+					posicao = 0;
+					limite = Math.max(lidos, 0);
+					if (lidos < 0)
+					{
+						if (!leu)
+						{
+							return false;
+						}
+						break;
+					}
+				}
+
+				leu = true;
+				int inicio = posicao;
+				while (posicao < limite && buffer[posicao] != '\n')
+				{
+					posicao++;
+				}
+				if (!longa)
+				{
+					if (atual.length() + posicao - inicio > maximo + 1)
+					{
+						longa = true;
+						atual.setLength(0);
+					}
+					else
+					{
+						atual.append(buffer, inicio, posicao - inicio);
+					}
+				}
+				if (posicao < limite)
+				{
+					posicao++;
+					break;
+				}
+			}
+
+			int tamanho = atual.length();
+			if (tamanho > 0 && atual.charAt(tamanho - 1) == '\r')
+			{
+				tamanho--;
+			}
+			linha = longa || tamanho > maximo ? null : atual.substring(0, tamanho);
+			return true;
+		}
+
+		/** A linha lida por {@link #proxima()}, ou {@code null} se ela passou do máximo. */
+		String linha()
+		{
+			return linha;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+
+/**
+ * Mesmo cálculo de {@link CompraService#calcularCustoTotal} acumulado em {@code long}, sem
+ * criar {@link BigDecimal}s intermediários a cada soma ou multiplicação.
+ *
+ * Unidades: preços em centavos, pesos em gramas e percentuais em pontos-base (1/10000). Todos
+ * os produtos intermediários são exatos e o único arredondamento (HALF_UP para centavos)
+ * acontece no total, como no caminho BigDecimal. Descontos e frete vêm das
+ * {@link RegrasPrecificacao} recebidas, já convertidos para essas unidades.
+ *
+ * Lança {@link ArithmeticException} quando o {@link CarrinhoPrecificado} não pôde ser acumulado
+ * nessas unidades (ex.: preço com três casas decimais), quando as regras não cabem nelas ou
+ * quando há estouro de {@code long}; nesses casos o chamador deve usar o caminho BigDecimal.
+ */
+final class PrecificacaoPontoFixo
+{
+	private static final TipoProduto[] TIPOS = TipoProduto.values();
+
+	private PrecificacaoPontoFixo()
+	{
+	}
+
+	/**
+	 * @throws ArithmeticException se o carrinho não estiver em ponto fixo ou houver estouro.
+	 */
+	static BigDecimal calcularCustoTotal(CarrinhoPrecificado carrinho, Regiao regiao, TipoCliente tipoCliente,
+			RegrasPrecificacao regras)
+	{
+		if (!carrinho.isPontoFixo())
+		{
+			throw new ArithmeticException("Carrinho acumulado em BigDecimal.");
+		}
+		if (!regras.isPontoFixo())
+		{
+			throw new ArithmeticException("Regras de desconto fora da escala de ponto fixo.");
+		}
+
+		// 10^-6 reais; com o desconto por valor, 10^-10 reais
+		long subtotal = subtotalComDescontoPorTipo(carrinho, regras);
+		subtotal = Math.multiplyExact(subtotal, regras.fatorPorValorPontosBase(subtotal));
+		long frete = regras.getFrete().calcularPontoFixo(carrinho.getPesoTotalGramas(), carrinho.getQuantidadeFragil(),
+				regiao, tipoCliente);
+
+		return BigDecimal.valueOf(arredondarParaCentavos(Math.addExact(subtotal, frete)), 2);
+	}
+
+	/** @return subtotal em 10^-6 reais. */
+	private static long subtotalComDescontoPorTipo(CarrinhoPrecificado carrinho, RegrasPrecificacao regras)
+	{
+		long subtotal = 0;
+		for (TipoProduto tipo : TIPOS)
+		{
+			long fator = regras.fatorPorQuantidadePontosBase(carrinho.getQuantidade(tipo));
+			subtotal = Math.addExact(subtotal, Math.multiplyExact(carrinho.getSubtotalCentavos(tipo), fator));
+		}
+		return subtotal;
+	}
+
+	/** Arredonda um valor em 10^-10 reais para centavos, HALF_UP. */
+	private static long arredondarParaCentavos(long valor)
+	{
+		long divisor = 100_000_000L;
+		long meio = divisor / 2;
+		return valor >= 0 ? (valor + meio) / divisor : -((-valor + meio) / divisor);
+	}
+}
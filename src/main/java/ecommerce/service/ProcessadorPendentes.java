@@ -0,0 +1,322 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ecommerce.entity.RegistroPendente;
+import ecommerce.repository.RegistroPendenteRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Processa em segundo plano uma tabela de {@link RegistroPendente}; usado pelo
+ * {@link OutboxBaixaEstoque} e pela {@link FilaCancelamentoPagamento}. Depois de {@link #iniciar()},
+ * a cada {@code intervalo}, um agendador reivindica lotes de registros vencidos e entrega cada um a {@code processar}, nos
+ * trabalhadores se houver ou na própria thread do agendador. Quem processa {@link #concluir conclui}
+ * o registro (ele sai da tabela) ou o {@link #reagendar reagenda} com espera exponencial.
+ *
+ * A reivindicação é um update condicional que adia a próxima tentativa para {@code prazo}, então
+ * instâncias diferentes não processam o mesmo registro, e um registro de quem parou no meio volta a
+ * ficar disponível ao fim do prazo. Concluir e reagendar também exigem a mesma reivindicação, então
+ * quem passou do prazo não sobrescreve o novo dono. Publica {@code <metrica>.profundidade}, {@code .atraso} e
+ * {@code .conclusao}; {@link #resultado} cria os contadores {@code <metrica>.resultados}.
+ */
+final class ProcessadorPendentes<T extends RegistroPendente>
+{
+	private static final Logger log = LoggerFactory.getLogger(ProcessadorPendentes.class);
+
+	private final String nome;
+	private final RegistroPendenteRepository<T> pendentes;
+	private final TransactionTemplate transacao;
+	private final Consumer<T> processar;
+	private final int lote;
+	private final Duration prazo;
+	private final Duration intervalo;
+	private final Espera espera;
+
+	private final ScheduledExecutorService agendador;
+	private final ExecutorService trabalhadores;
+	private final AtomicBoolean drenagemPedida = new AtomicBoolean();
+
+	private final AtomicLong profundidade = new AtomicLong();
+	private final AtomicLong atrasoMillis = new AtomicLong();
+	private final Timer conclusao;
+
+	/**
+	 * @param nome prefixo das threads e nome nos logs
+	 * @param trabalhadores threads que processam os registros; zero processa na thread do agendador
+	 * @param intervalo zero desliga o agendador: os registros só são processados por
+	 *            {@link #processarLote}
+	 */
+	ProcessadorPendentes(String nome, String metrica, RegistroPendenteRepository<T> pendentes,
+			TransactionTemplate transacao, Consumer<T> processar, int trabalhadores, int lote, Duration intervalo,
+			Duration prazo, Espera espera, MeterRegistry registry)
+	{
+		if (lote <= 0 || trabalhadores < 0)
+		{
+			throw new IllegalArgumentException("Lote e trabalhadores de " + nome + " inválidos.");
+		}
+
+		this.nome = nome;
+		this.pendentes = pendentes;
+		this.transacao = transacao;
+		this.processar = processar;
+		this.lote = lote;
+		this.prazo = prazo;
+		this.intervalo = intervalo;
+		this.espera = espera;
+
+		Gauge.builder(metrica + ".profundidade", profundidade, AtomicLong::get)
+				.description("Registros pendentes").register(registry);
+		Gauge.builder(metrica + ".atraso", atrasoMillis, a -> a.get() / 1000.0).baseUnit("seconds")
+				.description("Idade do registro pendente mais antigo").register(registry);
+		this.conclusao = Timer.builder(metrica + ".conclusao").publishPercentileHistogram()
+				.description("Tempo entre a criação do registro e a conclusão").register(registry);
+
+		if (intervalo.isZero())
+		{
+			this.agendador = null;
+			this.trabalhadores = null;
+			return;
+		}
+
+		AtomicInteger numero = new AtomicInteger();
+		this.trabalhadores = trabalhadores == 0 ? null : Executors.newFixedThreadPool(trabalhadores, r -> {
+			Thread thread = new Thread(r, nome + "-" + numero.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, nome + "-agendador");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/** Começa as drenagens periódicas; chamado por quem usa depois de construído, nunca no construtor. */
+	void iniciar()
+	{
+		if (agendador != null)
+		{
+			agendador.scheduleWithFixedDelay(this::drenar, intervalo.toMillis(), intervalo.toMillis(),
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	static Counter resultado(MeterRegistry registry, String metrica, String resultado)
+	{
+		return Counter.builder(metrica + ".resultados").tag("resultado", resultado)
+				.description("Registros pendentes por resultado").register(registry);
+	}
+
+	/**
+	 * Pede uma drenagem antes do próximo intervalo; dentro de uma transação, só depois do commit,
+	 * quando o registro novo já é visível.
+	 */
+	void adiantar()
+	{
+		if (agendador == null)
+		{
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+		{
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+			{
+				@Override
+				public void afterCommit()
+				{
+					pedirDrenagem();
+				}
+			});
+			return;
+		}
+		pedirDrenagem();
+	}
+
+	void encerrar()
+	{
+		if (agendador != null)
+		{
+			agendador.shutdownNow();
+		}
+		if (trabalhadores != null)
+		{
+			trabalhadores.shutdownNow();
+		}
+	}
+
+	/** Processa lotes enquanto vierem cheios e atualiza profundidade e atraso. */
+	void drenar()
+	{
+		try
+		{
+			while (processarLote() == lote)
+			{
+				// lote cheio: pode haver mais vencidos
+			}
+			atualizarMetricas();
+		}
+		catch (RuntimeException e)
+		{
+			// Banco indisponível, por exemplo: tenta de novo no próximo intervalo
+			log.warn("Registros de {} não puderam ser processados: {}", nome, e.toString());
+		}
+	}
+
+	/**
+	 * Reivindica até {@code lote} registros vencidos e processa cada um.
+	 *
+	 * @return quantos registros foram reivindicados
+	 */
+	int processarLote()
+	{
+		Instant agora = Instant.now();
+		List<Long> ids = pendentes.findIdsVencidos(agora, PageRequest.of(0, lote));
+		if (ids.isEmpty())
+		{
+			return 0;
+		}
+
+		String reivindicacao = UUID.randomUUID().toString();
+		transacao.executeWithoutResult(s -> pendentes.reivindicar(ids, agora, agora.plus(prazo), reivindicacao));
+		List<T> reivindicados = pendentes.findByReivindicacao(reivindicacao);
+
+		if (trabalhadores == null)
+		{
+			reivindicados.forEach(processar);
+			return reivindicados.size();
+		}
+
+		List<Future<?>> execucoes = new ArrayList<>(reivindicados.size());
+		for (T registro : reivindicados)
+		{
+			execucoes.add(trabalhadores.submit(() -> processar.accept(registro)));
+		}
+		for (Future<?> execucao : execucoes)
+		{
+			try
+			{
+				execucao.get();
+			}
+			catch (ExecutionException e)
+			{
+				log.warn("Registro de {} não processado; volta ao fim do prazo: {}", nome, e.getCause().toString());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return reivindicados.size();
+	}
+
+	void atualizarMetricas()
+	{
+		profundidade.set(pendentes.count());
+		Instant maisAntigo = pendentes.findCriacaoMaisAntiga();
+		atrasoMillis.set(maisAntigo == null ? 0 : Math.max(0, Duration.between(maisAntigo, Instant.now()).toMillis()));
+	}
+
+	void concluir(T registro)
+	{
+		concluir(registro, () -> {
+		});
+	}
+
+	/**
+	 * Remove o registro junto com {@code naMesmaTransacao}. Se o prazo venceu e outro processo o
+	 * reivindicou, nada é feito: o registro agora é dele.
+	 */
+	void concluir(T registro, Runnable naMesmaTransacao)
+	{
+		boolean concluido = transacao.execute(s -> {
+			if (pendentes.concluir(registro.getId(), registro.getReivindicacao()) == 0)
+			{
+				return false;
+			}
+			naMesmaTransacao.run();
+			return true;
+		});
+		if (!concluido)
+		{
+			log.warn("Registro {} de {} reivindicado por outro processo; conclusão descartada.", registro.getId(), nome);
+			return;
+		}
+		conclusao.record(Duration.between(registro.getCriadaEm(), Instant.now()));
+	}
+
+	/**
+	 * Conta mais uma falha e adia a próxima tentativa pela {@link Espera}, com um update condicional à
+	 * reivindicação: se outro processo já reivindicou o registro, a falha não é contada.
+	 */
+	void reagendar(T registro)
+	{
+		int tentativas = registro.getTentativas() + 1;
+		Instant proximaTentativa = Instant.now().plus(espera.apos(tentativas));
+		int atualizados = transacao.execute(s -> pendentes.reagendar(registro.getId(), registro.getReivindicacao(),
+				tentativas, proximaTentativa));
+		if (atualizados == 0)
+		{
+			log.warn("Registro {} de {} reivindicado por outro processo; nova tentativa descartada.", registro.getId(),
+					nome);
+			return;
+		}
+		registro.setTentativas(tentativas);
+		registro.setProximaTentativa(proximaTentativa);
+	}
+
+	/**
+	 * {@code inicial} dobrando a cada falha, até {@code maxima}; se {@code sorteada}, entre a metade
+	 * e esse total, para que falhas simultâneas não voltem todas juntas.
+	 */
+	record Espera(Duration inicial, Duration maxima, boolean sorteada)
+	{
+		Duration apos(int falhas)
+		{
+			Duration teto = inicial.multipliedBy(1L << Math.min(falhas - 1, 20));
+			if (teto.compareTo(maxima) > 0 || teto.isNegative())
+			{
+				teto = maxima;
+			}
+			long millis = teto.toMillis();
+			return !sorteada || millis < 2 ? teto
+					: Duration.ofMillis(millis / 2 + ThreadLocalRandom.current().nextLong(millis / 2 + 1));
+		}
+	}
+
+	private void pedirDrenagem()
+	{
+		if (drenagemPedida.compareAndSet(false, true))
+		{
+			agendador.execute(() -> {
+				drenagemPedida.set(false);
+				drenar();
+			});
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package ecommerce.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import ecommerce.entity.Produto;
+import ecommerce.repository.ProdutoRepository;
+
+@Service
+public class ProdutoService
+{
+
+	private final ProdutoRepository repository;
+
+	@Autowired
+	public ProdutoService(ProdutoRepository repository)
+	{
+		this.repository = repository;
+	}
+
+	/**
+	 * Preenche o peso tributável dos produtos que ainda não o têm, em lotes.
+	 *
+	 * @return quantidade de produtos atualizados.
+	 */
+	public int preencherPesoTributavel(int tamanhoLote)
+	{
+		int atualizados = 0;
+		List<Produto> lote = repository.findSemPesoTributavel(PageRequest.of(0, tamanhoLote));
+
+		// Sempre a primeira página: os produtos salvos deixam de satisfazer a consulta
+		while (!lote.isEmpty())
+		{
+			lote.forEach(Produto::recalcularPesoTributavel);
+			repository.saveAll(lote);
+			atualizados += lote.size();
+			lote = repository.findSemPesoTributavel(PageRequest.of(0, tamanhoLote));
+		}
+
+		return atualizados;
+	}
+}
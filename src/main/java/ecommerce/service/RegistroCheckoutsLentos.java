@@ -0,0 +1,110 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import ecommerce.dto.CheckoutLentoDTO;
+import ecommerce.service.MetricasCheckout.Etapa;
+
+/**
+ * Últimos checkouts unitários que levaram ao menos {@code compra.checkout.lentos.limiar}, com
+ * carrinho, cliente, produtos e o tempo de cada etapa. É um buffer circular de
+ * {@code compra.checkout.lentos.capacidade} posições: cada registro ocupa a próxima posição e
+ * sobrescreve o mais antigo, sem trava. Checkouts abaixo do limiar custam só uma comparação.
+ */
+@Component
+public class RegistroCheckoutsLentos
+{
+	private static final Etapa[] ETAPAS = Etapa.values();
+
+	private final Duration limiar;
+	private final long limiarNanos;
+	private final AtomicReferenceArray<CheckoutLentoDTO> buffer;
+	private final AtomicLong sequencia = new AtomicLong();
+
+	public RegistroCheckoutsLentos(@Value("${compra.checkout.lentos.limiar:PT0.5S}") Duration limiar,
+			@Value("${compra.checkout.lentos.capacidade:100}") int capacidade)
+	{
+		if (limiar.isNegative() || capacidade <= 0)
+		{
+			throw new IllegalArgumentException("Limiar e capacidade do registro de checkouts lentos devem ser positivos.");
+		}
+
+		this.limiar = limiar;
+		this.limiarNanos = limiar.toNanos();
+		this.buffer = new AtomicReferenceArray<>(capacidade);
+	}
+
+	/** Nenhum checkout é lento o bastante. Para quem constrói o serviço fora do Spring. */
+	public static RegistroCheckoutsLentos desligado()
+	{
+		return new RegistroCheckoutsLentos(Duration.ofNanos(Long.MAX_VALUE), 1);
+	}
+
+	boolean isLento(long duracaoNanos)
+	{
+		return duracaoNanos >= limiarNanos;
+	}
+
+	/** @param nanosPorEtapa tempo acumulado em cada {@link Etapa}, indexado pelo ordinal */
+	void registrar(Long carrinhoId, Long clienteId, int produtos, ResultadoCheckout resultado, long duracaoNanos,
+			long[] nanosPorEtapa)
+	{
+		Map<String, Double> etapasMs = new LinkedHashMap<>();
+		for (Etapa etapa : ETAPAS)
+		{
+			etapasMs.put(etapa.tag(), milissegundos(nanosPorEtapa[etapa.ordinal()]));
+		}
+
+		long numero = sequencia.getAndIncrement();
+		buffer.set((int) (numero % buffer.length()), new CheckoutLentoDTO(numero, Instant.now(), carrinhoId,
+				clienteId, produtos, resultado.tag(), milissegundos(duracaoNanos), etapasMs));
+	}
+
+	/** Checkouts lentos ainda no buffer, do mais recente para o mais antigo. */
+	public List<CheckoutLentoDTO> listar()
+	{
+		List<CheckoutLentoDTO> checkouts = new ArrayList<>(buffer.length());
+		for (int i = 0; i < buffer.length(); i++)
+		{
+			CheckoutLentoDTO checkout = buffer.get(i);
+			if (checkout != null)
+			{
+				checkouts.add(checkout);
+			}
+		}
+		checkouts.sort(Comparator.comparingLong(CheckoutLentoDTO::sequencia).reversed());
+		return checkouts;
+	}
+
+	public Duration getLimiar()
+	{
+		return limiar;
+	}
+
+	public int getCapacidade()
+	{
+		return buffer.length();
+	}
+
+	/** Checkouts lentos registrados desde a subida, inclusive os já sobrescritos. */
+	public long getRegistrados()
+	{
+		return sequencia.get();
+	}
+
+	private static double milissegundos(long nanos)
+	{
+		return nanos / 1_000_000.0;
+	}
+}
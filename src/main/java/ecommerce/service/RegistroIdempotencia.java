@@ -0,0 +1,290 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Resultados por chave de idempotência. A primeira requisição com uma chave executa a operação;
+ * repetições enquanto ela roda esperam e recebem o mesmo resultado, e repetições posteriores
+ * recebem o resultado guardado sem executar nada. Falhas (exceções) não são guardadas.
+ *
+ * Toda entrada tem a mesma validade, então a ordem de inserção é também a ordem de expiração: cada
+ * inserção remove do início da fila as entradas vencidas e as mais antigas além da
+ * {@code capacidade}, mantendo a memória limitada mesmo com muitas chaves distintas (nesse caso
+ * uma repetição tardia pode executar de novo). Só saem entradas concluídas: esquecer uma execução
+ * em andamento deixaria a repetição executar em paralelo. Se todas as vagas estão com execuções em
+ * andamento, a chave nova é recusada com {@link RegistroCheioException}.
+ */
+@Component
+public class RegistroIdempotencia
+{
+	private final Map<String, Entrada> entradas = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedQueue<Entrada> ordemInsercao = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger tamanhoFila = new AtomicInteger();
+
+	private final long validadeNanos;
+	private final int capacidade;
+
+	private final Counter acertos;
+	private final Counter compartilhados;
+	private final Counter faltas;
+	private final Counter recusados;
+
+	public RegistroIdempotencia(@Value("${compra.idempotencia.validade:PT10M}") Duration validade,
+			@Value("${compra.idempotencia.capacidade:10000}") int capacidade, MeterRegistry registry)
+	{
+		if (validade.isNegative() || validade.isZero() || capacidade <= 0)
+		{
+			throw new IllegalArgumentException("Validade e capacidade do registro de idempotência devem ser positivas.");
+		}
+
+		this.validadeNanos = validade.toNanos();
+		this.capacidade = capacidade;
+
+		this.acertos = contador(registry, "acerto");
+		this.compartilhados = contador(registry, "em-andamento");
+		this.faltas = contador(registry, "falta");
+		this.recusados = contador(registry, "recusada");
+		Gauge.builder("compra.idempotencia.entradas", entradas, Map::size)
+				.description("Resultados guardados por chave de idempotência").register(registry);
+	}
+
+	/**
+	 * Executa {@code operacao} uma única vez por {@code chave} dentro da validade.
+	 *
+	 * @param impressao identifica o pedido feito com a chave; reutilizar a chave com outro pedido é erro
+	 * @throws ChaveReutilizadaException se a chave já foi usada com outra impressão
+	 * @throws RegistroCheioException se a chave é nova e não há vaga
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T executar(String chave, String impressao, Supplier<T> operacao)
+	{
+		while (true)
+		{
+			Reivindicacao reivindicacao = reivindicar(chave, impressao);
+			if (reivindicacao.nova())
+			{
+				return executarComo(reivindicacao.entrada(), operacao);
+			}
+			try
+			{
+				return (T) reivindicacao.entrada().resultado.join();
+			}
+			catch (CompletionException e)
+			{
+				// A execução original falhou e saiu do registro: esta repetição tenta de novo
+			}
+		}
+	}
+
+	/**
+	 * Como {@link #executar}, para operações que terminam depois de voltar: nenhuma thread espera
+	 * pela execução em andamento, a repetição é completada junto com ela. A chave sai do registro se
+	 * o future de {@code operacao} falhar.
+	 *
+	 * @throws ChaveReutilizadaException se a chave já foi usada com outra impressão
+	 * @throws RegistroCheioException se a chave é nova e não há vaga
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> executarAssincrono(String chave, String impressao,
+			Supplier<? extends CompletableFuture<T>> operacao)
+	{
+		Reivindicacao reivindicacao = reivindicar(chave, impressao);
+		Entrada entrada = reivindicacao.entrada();
+		if (!reivindicacao.nova())
+		{
+			return entrada.resultado.handle((resultado, erro) -> erro == null
+					? CompletableFuture.completedFuture((T) resultado)
+					: executarAssincrono(chave, impressao, operacao)).thenCompose(Function.identity());
+		}
+
+		CompletableFuture<T> execucao;
+		try
+		{
+			execucao = operacao.get();
+		}
+		catch (RuntimeException | Error e)
+		{
+			execucao = CompletableFuture.failedFuture(e);
+		}
+		return execucao.whenComplete((resultado, erro) -> {
+			if (erro == null)
+			{
+				entrada.resultado.complete(resultado);
+				return;
+			}
+			entradas.remove(entrada.chave, entrada);
+			entrada.resultado.completeExceptionally(erro);
+		});
+	}
+
+	public int tamanho()
+	{
+		return entradas.size();
+	}
+
+	/** A entrada da chave: uma nova, que quem chama deve executar, ou a da execução anterior. */
+	private Reivindicacao reivindicar(String chave, String impressao)
+	{
+		while (true)
+		{
+			long agora = System.nanoTime();
+			Entrada nova = new Entrada(chave, impressao, agora + validadeNanos);
+			Entrada existente = entradas.putIfAbsent(chave, nova);
+
+			if (existente != null && existente.expirada(agora))
+			{
+				if (!entradas.replace(chave, existente, nova))
+				{
+					continue;
+				}
+				existente = null;
+			}
+
+			if (existente != null)
+			{
+				if (!Objects.equals(existente.impressao, impressao))
+				{
+					throw new ChaveReutilizadaException();
+				}
+				(existente.resultado.isDone() ? acertos : compartilhados).increment();
+				return new Reivindicacao(existente, false);
+			}
+
+			ordemInsercao.add(nova);
+			tamanhoFila.incrementAndGet();
+			despejar(agora);
+			if (tamanhoFila.get() > capacidade)
+			{
+				recusar(nova);
+			}
+			faltas.increment();
+			return new Reivindicacao(nova, true);
+		}
+	}
+
+	private <T> T executarComo(Entrada entrada, Supplier<T> operacao)
+	{
+		try
+		{
+			T resultado = operacao.get();
+			entrada.resultado.complete(resultado);
+			return resultado;
+		}
+		catch (RuntimeException | Error e)
+		{
+			entradas.remove(entrada.chave, entrada);
+			entrada.resultado.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Toda entrada do mapa está na fila, então limitar a fila limita o mapa. Entradas que já saíram
+	 * do mapa (falharam ou foram substituídas) saem da fila quando chegam ao início. Uma execução em
+	 * andamento no início da fila vai para o fim, já que ainda não expira; a volta para depois de
+	 * passar uma vez pela fila inteira.
+	 */
+	private void despejar(long agora)
+	{
+		int restantes = tamanhoFila.get();
+		Entrada maisAntiga;
+		while (restantes-- > 0 && (maisAntiga = ordemInsercao.peek()) != null
+				&& (maisAntiga.expirada(agora) || tamanhoFila.get() > capacidade))
+		{
+			if (!ordemInsercao.remove(maisAntiga))
+			{
+				continue;
+			}
+			if (!maisAntiga.resultado.isDone())
+			{
+				ordemInsercao.add(maisAntiga);
+				continue;
+			}
+			tamanhoFila.decrementAndGet();
+			entradas.remove(maisAntiga.chave, maisAntiga);
+		}
+	}
+
+	/** Desiste da entrada nova; quem já esperava por ela tenta de novo. */
+	private void recusar(Entrada nova)
+	{
+		if (ordemInsercao.remove(nova))
+		{
+			tamanhoFila.decrementAndGet();
+		}
+		entradas.remove(nova.chave, nova);
+		RegistroCheioException recusa = new RegistroCheioException();
+		nova.resultado.completeExceptionally(recusa);
+		recusados.increment();
+		throw recusa;
+	}
+
+	private static Counter contador(MeterRegistry registry, String resultado)
+	{
+		return Counter.builder("compra.idempotencia.requisicoes").tag("resultado", resultado)
+				.description("Requisições com chave de idempotência por resultado").register(registry);
+	}
+
+	/** Todas as vagas do registro estão com execuções em andamento; a chave nova pode ser tentada depois. */
+	public static class RegistroCheioException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		public RegistroCheioException()
+		{
+			super("Muitos checkouts em andamento; tente novamente.");
+		}
+	}
+
+	/** A chave de idempotência já foi usada com um pedido diferente. */
+	public static class ChaveReutilizadaException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		public ChaveReutilizadaException()
+		{
+			super("Chave de idempotência já usada com outro pedido.");
+		}
+	}
+
+	private record Reivindicacao(Entrada entrada, boolean nova)
+	{
+	}
+
+	private static final class Entrada
+	{
+		final String chave;
+		final String impressao;
+		final long expiraEmNanos;
+		final CompletableFuture<Object> resultado = new CompletableFuture<>();
+
+		Entrada(String chave, String impressao, long expiraEmNanos)
+		{
+			this.chave = chave;
+			this.impressao = impressao;
+			this.expiraEmNanos = expiraEmNanos;
+		}
+
+		/** Uma execução em andamento não expira: a repetição ainda deve esperar por ela. */
+		boolean expirada(long agora)
+		{
+			return agora - expiraEmNanos > 0 && resultado.isDone();
+		}
+	}
+}
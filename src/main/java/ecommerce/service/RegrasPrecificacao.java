@@ -0,0 +1,338 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+
+/**
+ * Regras comerciais do custo total, validadas e compiladas: desconto por quantidade de um mesmo
+ * tipo de produto, desconto por valor do subtotal e a {@link TabelaFrete}. Uma instância nunca
+ * muda; regras novas geram outra instância, trocada inteira por {@link FonteRegrasPrecificacao}.
+ *
+ * O desconto por quantidade vira uma tabela indexada pela própria quantidade (até a maior
+ * quantidade mínima) e o desconto por valor, uma lista curta de limiares em ordem decrescente.
+ * Avaliar as regras não aloca nada além dos {@link BigDecimal}s do próprio cálculo, e nada no
+ * caminho de ponto fixo, cujas tabelas já guardam o fator {@code 10000 - desconto} em pontos-base.
+ *
+ * As regras são lidas de chaves de propriedades (listas separadas por vírgula):
+ * <ul>
+ * <li>{@code desconto.quantidade}: pares {@code quantidadeMinima=desconto}, ex. {@code 3=0.05,5=0.10}</li>
+ * <li>{@code desconto.valor}: pares {@code subtotalAcimaDe=desconto}, ex. {@code 500=0.10,1000=0.20}</li>
+ * <li>{@code frete.faixas.limites-kg}, {@code frete.faixas.valor-kg}, {@code frete.faixas.taxa-minima},
+ * {@code frete.taxa-fragil}, {@code frete.regiao.multiplicadores} ({@code REGIAO=valor}) e
+ * {@code frete.cliente.fatores} ({@code TIPO=fator})</li>
+ * </ul>
+ * Chaves ausentes usam as regras originais; chaves vazias significam lista vazia.
+ */
+public final class RegrasPrecificacao
+{
+	/** Maior quantidade mínima aceita: limita o tamanho da tabela de desconto por quantidade. */
+	static final int QUANTIDADE_MINIMA_MAXIMA = 10_000;
+
+	/** Fator sem desconto em ponto fixo: 1 em pontos-base. */
+	static final long PONTOS_BASE = 10_000L;
+
+	private static final Map<String, String> PADRAO = Map.of(
+			"desconto.quantidade", "3=0.05,5=0.10,8=0.15",
+			"desconto.valor", "500=0.10,1000=0.20",
+			"frete.faixas.limites-kg", "5,10,50",
+			"frete.faixas.valor-kg", "0,2.00,4.00,7.00",
+			"frete.faixas.taxa-minima", "0,12.00,12.00,12.00",
+			"frete.taxa-fragil", "5.00",
+			"frete.regiao.multiplicadores", "",
+			"frete.cliente.fatores", "BRONZE=1,PRATA=0.5,OURO=0");
+
+	private static final RegrasPrecificacao REGRAS_PADRAO = compilar(chave -> null);
+
+	private final Map<Long, BigDecimal> descontosQuantidade;
+	private final Map<BigDecimal, BigDecimal> descontosValor;
+
+	/** Fator (1 - desconto) indexado pela quantidade, saturado na última posição. */
+	private final BigDecimal[] fatorPorQuantidade;
+	/** Limiares de valor em ordem decrescente e o fator (1 - desconto) de cada um. */
+	private final BigDecimal[] limiaresValor;
+	private final BigDecimal[] fatoresValor;
+	private final TabelaFrete frete;
+
+	/** Equivalentes em ponto fixo, como fatores em pontos-base; {@code null} se algum valor não cabe na escala. */
+	private final long[] fatorPorQuantidadePontosBase;
+	private final long[] limiaresValorPontoFixo;
+	private final long[] fatoresValorPontosBase;
+	private final int ultimaQuantidade;
+
+	/**
+	 * @param descontosQuantidade desconto por quantidade mínima de itens de um mesmo tipo
+	 * @param descontosValor      desconto aplicado ao subtotal estritamente acima de cada limiar
+	 */
+	public RegrasPrecificacao(Map<Long, BigDecimal> descontosQuantidade, Map<BigDecimal, BigDecimal> descontosValor,
+			TabelaFrete frete)
+	{
+		TreeMap<Long, BigDecimal> porQuantidade = new TreeMap<>(descontosQuantidade);
+		TreeMap<BigDecimal, BigDecimal> porValor = new TreeMap<>(descontosValor);
+		validar(porQuantidade, porValor);
+		this.descontosQuantidade = porQuantidade;
+		this.descontosValor = porValor;
+
+		int tamanho = porQuantidade.isEmpty() ? 1 : porQuantidade.lastKey().intValue() + 1;
+		this.fatorPorQuantidade = new BigDecimal[tamanho];
+		long[] fatorPorQuantidadePontosBase = new long[tamanho];
+		boolean pontoFixo = true;
+		for (int quantidade = 0; quantidade < tamanho; quantidade++)
+		{
+			Map.Entry<Long, BigDecimal> faixa = porQuantidade.floorEntry((long) quantidade);
+			BigDecimal desconto = faixa == null ? BigDecimal.ZERO : faixa.getValue();
+			fatorPorQuantidade[quantidade] = desconto.signum() == 0 ? BigDecimal.ONE : BigDecimal.ONE.subtract(desconto);
+			pontoFixo &= (fatorPorQuantidadePontosBase[quantidade] = fatorEmPontosBase(desconto)) >= 0;
+		}
+
+		int limiares = porValor.size();
+		this.limiaresValor = new BigDecimal[limiares];
+		this.fatoresValor = new BigDecimal[limiares];
+		long[] limiaresValorPontoFixo = new long[limiares];
+		long[] fatoresValorPontosBase = new long[limiares];
+		int i = 0;
+		for (Map.Entry<BigDecimal, BigDecimal> limiar : porValor.descendingMap().entrySet())
+		{
+			limiaresValor[i] = limiar.getKey();
+			fatoresValor[i] = BigDecimal.ONE.subtract(limiar.getValue());
+			// Limiar em 10^-6 reais (centavos x pontos-base), a escala do subtotal em ponto fixo
+			pontoFixo &= (limiaresValorPontoFixo[i] = exato(limiar.getKey().movePointRight(6))) >= 0;
+			pontoFixo &= (fatoresValorPontosBase[i] = fatorEmPontosBase(limiar.getValue())) >= 0;
+			i++;
+		}
+
+		this.frete = frete;
+		this.fatorPorQuantidadePontosBase = pontoFixo ? fatorPorQuantidadePontosBase : null;
+		this.limiaresValorPontoFixo = pontoFixo ? limiaresValorPontoFixo : null;
+		this.fatoresValorPontosBase = pontoFixo ? fatoresValorPontosBase : null;
+		this.ultimaQuantidade = tamanho - 1;
+	}
+
+	/**
+	 * Lê e compila as regras. {@code propriedades} devolve o valor de uma chave ou {@code null} se
+	 * ausente.
+	 *
+	 * @throws IllegalArgumentException se algum valor é inválido
+	 */
+	public static RegrasPrecificacao compilar(Function<String, String> propriedades)
+	{
+		Function<String, String> lidas = chave -> {
+			String valor = propriedades.apply(chave);
+			return valor != null ? valor : PADRAO.get(chave);
+		};
+
+		Map<Long, BigDecimal> descontosQuantidade = new TreeMap<>();
+		pares(lidas, "desconto.quantidade").forEach((chave, valor) -> {
+			try
+			{
+				descontosQuantidade.put(Long.valueOf(chave), valor);
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException(
+						"Regras de precificação: quantidade inválida \"" + chave + "\" em desconto.quantidade.", e);
+			}
+		});
+
+		Map<BigDecimal, BigDecimal> descontosValor = new TreeMap<>();
+		pares(lidas, "desconto.valor").forEach((chave, valor) -> {
+			if (descontosValor.put(numero(chave), valor) != null)
+			{
+				throw new IllegalArgumentException("Regras de precificação: limiar repetido \"" + chave + "\" em desconto.valor.");
+			}
+		});
+
+		TabelaFrete frete = new TabelaFrete(numeros(lidas, "frete.faixas.limites-kg"),
+				numeros(lidas, "frete.faixas.valor-kg"), numeros(lidas, "frete.faixas.taxa-minima"),
+				numero(lidas.apply("frete.taxa-fragil")), enums(lidas, "frete.regiao.multiplicadores", Regiao.class),
+				enums(lidas, "frete.cliente.fatores", TipoCliente.class));
+
+		return new RegrasPrecificacao(descontosQuantidade, descontosValor, frete);
+	}
+
+	/** Regras originais, usadas quando não há configuração. */
+	public static RegrasPrecificacao padrao()
+	{
+		return REGRAS_PADRAO;
+	}
+
+	/** Mesmos descontos com outra tabela de frete. */
+	public RegrasPrecificacao comFrete(TabelaFrete frete)
+	{
+		return new RegrasPrecificacao(descontosQuantidade, descontosValor, frete);
+	}
+
+	public TabelaFrete getFrete()
+	{
+		return frete;
+	}
+
+	/** Indica se os descontos cabem em ponto fixo (pontos-base e 10^-6 reais). */
+	public boolean isPontoFixo()
+	{
+		return fatorPorQuantidadePontosBase != null;
+	}
+
+	BigDecimal fatorDescontoPorQuantidade(long quantidade)
+	{
+		return fatorPorQuantidade[indice(quantidade)];
+	}
+
+	BigDecimal aplicarDescontoPorValor(BigDecimal subtotal)
+	{
+		for (int i = 0; i < limiaresValor.length; i++)
+		{
+			if (subtotal.compareTo(limiaresValor[i]) > 0)
+			{
+				return subtotal.multiply(fatoresValor[i]);
+			}
+		}
+		return subtotal;
+	}
+
+	/** @return fator (1 - desconto) em pontos-base; exige {@link #isPontoFixo()} */
+	long fatorPorQuantidadePontosBase(long quantidade)
+	{
+		return fatorPorQuantidadePontosBase[indice(quantidade)];
+	}
+
+	/**
+	 * @param subtotal subtotal em 10^-6 reais
+	 * @return fator (1 - desconto) em pontos-base; exige {@link #isPontoFixo()}
+	 */
+	long fatorPorValorPontosBase(long subtotal)
+	{
+		long[] limiares = limiaresValorPontoFixo;
+		for (int i = 0; i < limiares.length; i++)
+		{
+			if (subtotal > limiares[i])
+			{
+				return fatoresValorPontosBase[i];
+			}
+		}
+		return PONTOS_BASE;
+	}
+
+	private int indice(long quantidade)
+	{
+		return quantidade >= ultimaQuantidade ? ultimaQuantidade : quantidade <= 0 ? 0 : (int) quantidade;
+	}
+
+	private static void validar(TreeMap<Long, BigDecimal> porQuantidade, TreeMap<BigDecimal, BigDecimal> porValor)
+	{
+		if (!porQuantidade.isEmpty()
+				&& (porQuantidade.firstKey() < 1 || porQuantidade.lastKey() > QUANTIDADE_MINIMA_MAXIMA))
+		{
+			throw new IllegalArgumentException("Regras de precificação: quantidades mínimas devem estar entre 1 e "
+					+ QUANTIDADE_MINIMA_MAXIMA + ".");
+		}
+		if (!porValor.isEmpty() && porValor.firstKey().signum() < 0)
+		{
+			throw new IllegalArgumentException("Regras de precificação: limiares de valor não podem ser negativos.");
+		}
+		List<BigDecimal> descontos = new ArrayList<>(porQuantidade.values());
+		descontos.addAll(porValor.values());
+		for (BigDecimal desconto : descontos)
+		{
+			if (desconto.signum() < 0 || desconto.compareTo(BigDecimal.ONE) >= 0)
+			{
+				throw new IllegalArgumentException("Regras de precificação: desconto " + desconto.toPlainString()
+						+ " fora do intervalo [0, 1).");
+			}
+		}
+	}
+
+	/** @return o fator (1 - desconto) em pontos-base, ou -1 se não couber */
+	private static long fatorEmPontosBase(BigDecimal desconto)
+	{
+		long pontosBase = exato(desconto.movePointRight(4));
+		return pontosBase < 0 ? -1 : PONTOS_BASE - pontosBase;
+	}
+
+	/** @return o valor inteiro, ou -1 se tiver casas decimais ou não couber em {@code long} */
+	private static long exato(BigDecimal valor)
+	{
+		try
+		{
+			return valor.longValueExact();
+		}
+		catch (ArithmeticException e)
+		{
+			return -1;
+		}
+	}
+
+	private static List<String> itens(Function<String, String> propriedades, String chave)
+	{
+		List<String> itens = new ArrayList<>();
+		for (String item : propriedades.apply(chave).split(","))
+		{
+			if (!item.isBlank())
+			{
+				itens.add(item.trim());
+			}
+		}
+		return itens;
+	}
+
+	private static Map<String, BigDecimal> pares(Function<String, String> propriedades, String chave)
+	{
+		Map<String, BigDecimal> pares = new TreeMap<>();
+		for (String par : itens(propriedades, chave))
+		{
+			int separador = par.indexOf('=');
+			if (separador < 0)
+			{
+				throw new IllegalArgumentException(
+						"Regras de precificação: esperado chave=valor em \"" + par + "\" (" + chave + ").");
+			}
+			if (pares.put(par.substring(0, separador).trim(), numero(par.substring(separador + 1))) != null)
+			{
+				throw new IllegalArgumentException("Regras de precificação: \"" + par + "\" repetido em " + chave + ".");
+			}
+		}
+		return pares;
+	}
+
+	private static <E extends Enum<E>> Map<E, BigDecimal> enums(Function<String, String> propriedades, String chave,
+			Class<E> tipo)
+	{
+		Map<E, BigDecimal> valores = new EnumMap<>(tipo);
+		pares(propriedades, chave).forEach((nome, valor) -> {
+			try
+			{
+				valores.put(Enum.valueOf(tipo, nome), valor);
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException(
+						"Regras de precificação: \"" + nome + "\" não é " + tipo.getSimpleName() + " (" + chave + ").", e);
+			}
+		});
+		return valores;
+	}
+
+	private static BigDecimal[] numeros(Function<String, String> propriedades, String chave)
+	{
+		return itens(propriedades, chave).stream().map(RegrasPrecificacao::numero).toArray(BigDecimal[]::new);
+	}
+
+	private static BigDecimal numero(String valor)
+	{
+		try
+		{
+			return new BigDecimal(valor.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Regras de precificação: número inválido \"" + valor + "\".", e);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package ecommerce.service;
+
+/**
+ * Como terminou um pedido de checkout. Tag {@code resultado} de
+ * {@code compra.checkout.resultados}.
+ */
+public enum ResultadoCheckout
+{
+	SUCESSO,
+
+	/** Reserva ou verificação de estoque recusada. */
+	FORA_DE_ESTOQUE,
+
+	/** Pagamento não autorizado. */
+	PAGAMENTO_RECUSADO,
+
+	/** Pagamento autorizado, mas o estoque recusou a baixa e o pagamento foi cancelado. */
+	BAIXA_RECUSADA,
+
+	/** Dados inválidos, serviço externo indisponível ou erro inesperado. */
+	ERRO;
+
+	private final String tag = name().toLowerCase().replace('_', '-');
+
+	String tag()
+	{
+		return tag;
+	}
+}
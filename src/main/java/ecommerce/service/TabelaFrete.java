@@ -0,0 +1,240 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+
+/**
+ * Regras de frete compiladas em tabelas indexadas por {@link Regiao#ordinal()},
+ * {@link TipoCliente#ordinal()} e faixa de peso. Cada célula já traz o multiplicador regional e o
+ * fator do tipo de cliente aplicados ao valor por kg, à taxa mínima e à taxa de frágil, então o
+ * frete de um carrinho é {@code peso x valorKg + fixo + frageis x taxaFragil}: a busca da faixa,
+ * três leituras e as multiplicações. Tipos de cliente com fator zero (OURO, no padrão) são isentos
+ * e nem leem o peso.
+ *
+ * As faixas são fechadas à direita ({@code peso <= limite}); a última não tem limite. A tabela faz
+ * parte das {@link RegrasPrecificacao}, lida de {@code frete.*}; {@link #padrao()} reproduz as
+ * regras originais.
+ *
+ * As mesmas tabelas são mantidas em {@code long} para {@link PrecificacaoPontoFixo} (pesos em
+ * gramas, valores em 10^-10 reais) quando todos os valores cabem nessa escala, num único array com
+ * a taxa de frágil e os pares valor por grama e fixo de cada faixa lado a lado por combinação.
+ */
+public final class TabelaFrete
+{
+	private static final int REGIOES = Regiao.values().length;
+	private static final int TIPOS_CLIENTE = TipoCliente.values().length;
+
+	/** Escala dos valores em ponto fixo: 10^-10 reais. */
+	private static final int ESCALA_PONTO_FIXO = 10;
+
+	private static final TabelaFrete PADRAO = new TabelaFrete(
+			new BigDecimal[] { BigDecimal.valueOf(5), BigDecimal.valueOf(10), BigDecimal.valueOf(50) },
+			new BigDecimal[] { BigDecimal.ZERO, BigDecimal.valueOf(2.00), BigDecimal.valueOf(4.00),
+					BigDecimal.valueOf(7.00) },
+			new BigDecimal[] { BigDecimal.ZERO, BigDecimal.valueOf(12.00), BigDecimal.valueOf(12.00),
+					BigDecimal.valueOf(12.00) },
+			BigDecimal.valueOf(5.00), Map.of(),
+			Map.of(TipoCliente.BRONZE, BigDecimal.ONE, TipoCliente.PRATA, BigDecimal.valueOf(0.5), TipoCliente.OURO,
+					BigDecimal.ZERO));
+
+	private final BigDecimal[] limitesKg;
+	private final int faixas;
+	private final boolean[] isento = new boolean[TIPOS_CLIENTE];
+
+	/** Por célula {@code (regiao x TIPOS_CLIENTE + tipoCliente) x faixas + faixa}, em arrays planos. */
+	private final BigDecimal[] valorKg;
+	private final BigDecimal[] fixo;
+	/** Por {@code regiao x TIPOS_CLIENTE + tipoCliente}. */
+	private final BigDecimal[] taxaFragil;
+
+	/** Equivalentes em ponto fixo; {@code null} se algum valor não cabe na escala. */
+	private final long[] limitesGramas;
+	/**
+	 * Por combinação, {@code 1 + 2 x faixas} posições: a taxa de frágil e, para cada faixa, o valor
+	 * por grama e o fixo.
+	 */
+	private final long[] pontoFixo;
+
+	/**
+	 * @param limitesKg       limites superiores das faixas, crescentes; há uma faixa a mais que limites
+	 * @param valoresKg       valor por kg de cada faixa
+	 * @param taxasMinimas    taxa fixa somada ao frete de cada faixa
+	 * @param multiplicadores multiplicador por região; as ausentes usam {@link Regiao#getMultiplicador()}
+	 * @param fatores         fator por tipo de cliente; os ausentes pagam o frete cheio
+	 */
+	public TabelaFrete(BigDecimal[] limitesKg, BigDecimal[] valoresKg, BigDecimal[] taxasMinimas,
+			BigDecimal taxaFragil, Map<Regiao, BigDecimal> multiplicadores, Map<TipoCliente, BigDecimal> fatores)
+	{
+		validar(limitesKg, valoresKg, taxasMinimas, taxaFragil, multiplicadores, fatores);
+
+		this.faixas = valoresKg.length;
+		this.limitesKg = limitesKg.clone();
+		this.valorKg = new BigDecimal[REGIOES * TIPOS_CLIENTE * faixas];
+		this.fixo = new BigDecimal[REGIOES * TIPOS_CLIENTE * faixas];
+		this.taxaFragil = new BigDecimal[REGIOES * TIPOS_CLIENTE];
+
+		for (Regiao regiao : Regiao.values())
+		{
+			BigDecimal multiplicador = multiplicadores.getOrDefault(regiao, regiao.getMultiplicador());
+			for (TipoCliente tipo : TipoCliente.values())
+			{
+				BigDecimal fator = multiplicador.multiply(fatores.getOrDefault(tipo, BigDecimal.ONE));
+				int combinacao = combinacao(regiao, tipo);
+
+				for (int f = 0; f < faixas; f++)
+				{
+					valorKg[combinacao * faixas + f] = valoresKg[f].multiply(fator);
+					fixo[combinacao * faixas + f] = taxasMinimas[f].multiply(fator);
+				}
+				this.taxaFragil[combinacao] = taxaFragil.multiply(fator);
+			}
+		}
+
+		for (TipoCliente tipo : TipoCliente.values())
+		{
+			isento[tipo.ordinal()] = fatores.getOrDefault(tipo, BigDecimal.ONE).signum() == 0;
+		}
+
+		long[] limitesGramas = null;
+		long[] pontoFixo = null;
+		try
+		{
+			limitesGramas = new long[limitesKg.length];
+			for (int f = 0; f < limitesKg.length; f++)
+			{
+				limitesGramas[f] = limitesKg[f].movePointRight(3).longValueExact();
+			}
+
+			pontoFixo = new long[this.taxaFragil.length * (1 + 2 * faixas)];
+			for (int c = 0; c < this.taxaFragil.length; c++)
+			{
+				int linha = c * (1 + 2 * faixas);
+				pontoFixo[linha] = this.taxaFragil[c].movePointRight(ESCALA_PONTO_FIXO).longValueExact();
+				for (int f = 0; f < faixas; f++)
+				{
+					// Valor por kg em reais vira valor por grama em 10^-10 reais
+					pontoFixo[linha + 1 + 2 * f] = valorKg[c * faixas + f].movePointRight(ESCALA_PONTO_FIXO - 3)
+							.longValueExact();
+					pontoFixo[linha + 2 + 2 * f] = fixo[c * faixas + f].movePointRight(ESCALA_PONTO_FIXO).longValueExact();
+				}
+			}
+		}
+		catch (ArithmeticException e)
+		{
+			// Algum valor tem casas demais para a escala: só o caminho BigDecimal usa esta tabela
+			limitesGramas = null;
+			pontoFixo = null;
+		}
+		this.limitesGramas = limitesGramas;
+		this.pontoFixo = pontoFixo;
+	}
+
+	/** Tabela com as regras originais. */
+	public static TabelaFrete padrao()
+	{
+		return PADRAO;
+	}
+
+	public boolean isIsento(TipoCliente tipoCliente)
+	{
+		return isento[tipoCliente.ordinal()];
+	}
+
+	public int getFaixas()
+	{
+		return faixas;
+	}
+
+	/** Frete sem arredondamento; o total é arredondado por quem soma. */
+	public BigDecimal calcular(CarrinhoPrecificado carrinho, Regiao regiao, TipoCliente tipoCliente)
+	{
+		if (isIsento(tipoCliente))
+		{
+			return BigDecimal.ZERO;
+		}
+
+		BigDecimal pesoTotal = carrinho.getPesoTotal();
+		int faixa = limitesKg.length;
+		for (int f = 0; f < limitesKg.length; f++)
+		{
+			if (pesoTotal.compareTo(limitesKg[f]) <= 0)
+			{
+				faixa = f;
+				break;
+			}
+		}
+
+		int combinacao = combinacao(regiao, tipoCliente);
+		int celula = combinacao * faixas + faixa;
+		BigDecimal frete = valorKg[celula].multiply(pesoTotal).add(fixo[celula]);
+
+		long frageis = carrinho.getQuantidadeFragil();
+		if (frageis > 0)
+		{
+			frete = frete.add(taxaFragil[combinacao].multiply(BigDecimal.valueOf(frageis)));
+		}
+		return frete;
+	}
+
+	/**
+	 * @return frete em 10^-10 reais
+	 * @throws ArithmeticException se a tabela não cabe em ponto fixo ou houver estouro
+	 */
+	long calcularPontoFixo(long pesoTotalGramas, long quantidadeFragil, Regiao regiao, TipoCliente tipoCliente)
+	{
+		if (isIsento(tipoCliente))
+		{
+			return 0;
+		}
+		long[] limites = limitesGramas;
+		if (limites == null)
+		{
+			throw new ArithmeticException("Tabela de frete fora da escala de ponto fixo.");
+		}
+
+		int faixa = 0;
+		while (faixa < limites.length && pesoTotalGramas > limites[faixa])
+		{
+			faixa++;
+		}
+
+		int linha = combinacao(regiao, tipoCliente) * (1 + 2 * faixas);
+		int celula = linha + 1 + 2 * faixa;
+		long frete = Math.addExact(Math.multiplyExact(pontoFixo[celula], pesoTotalGramas), pontoFixo[celula + 1]);
+		return Math.addExact(frete, Math.multiplyExact(pontoFixo[linha], quantidadeFragil));
+	}
+
+	private static int combinacao(Regiao regiao, TipoCliente tipoCliente)
+	{
+		return regiao.ordinal() * TIPOS_CLIENTE + tipoCliente.ordinal();
+	}
+
+	private static void validar(BigDecimal[] limitesKg, BigDecimal[] valoresKg, BigDecimal[] taxasMinimas,
+			BigDecimal taxaFragil, Map<Regiao, BigDecimal> multiplicadores, Map<TipoCliente, BigDecimal> fatores)
+	{
+		if (valoresKg.length != limitesKg.length + 1 || taxasMinimas.length != valoresKg.length)
+		{
+			throw new IllegalArgumentException("Tabela de frete: valor por kg e taxa mínima devem ter uma faixa a mais ("
+					+ (limitesKg.length + 1) + ") que os limites.");
+		}
+		for (int f = 0; f < limitesKg.length; f++)
+		{
+			if (limitesKg[f].signum() <= 0 || (f > 0 && limitesKg[f].compareTo(limitesKg[f - 1]) <= 0))
+			{
+				throw new IllegalArgumentException("Tabela de frete: limites das faixas devem ser positivos e crescentes: "
+						+ Arrays.toString(limitesKg) + ".");
+			}
+		}
+		if (Arrays.stream(valoresKg).anyMatch(v -> v.signum() < 0)
+				|| Arrays.stream(taxasMinimas).anyMatch(v -> v.signum() < 0) || taxaFragil.signum() < 0
+				|| multiplicadores.values().stream().anyMatch(v -> v.signum() < 0)
+				|| fatores.values().stream().anyMatch(v -> v.signum() < 0))
+		{
+			throw new IllegalArgumentException("Tabela de frete: valores, taxas, multiplicadores e fatores não podem ser negativos.");
+		}
+	}
+}
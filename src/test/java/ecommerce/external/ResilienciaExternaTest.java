@@ -0,0 +1,307 @@
+package ecommerce.external;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.service.FilaCancelamentoPagamento;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+public class ResilienciaExternaTest {
+
+    private ResilienciaExterna resiliencia;
+    private FilaCancelamentoPagamento fila;
+
+    @AfterEach
+    public void tearDown() {
+        resiliencia.destroy();
+    }
+
+    @Test
+    @DisplayName("Resiliência: chamada lenta falha ao fim do tempo limite")
+    public void chamada_quandoAcimaDoTempoLimite_entaoTempoEsgotado() {
+        IEstoqueExternal estoque = envolver(1, 100, lento(new CountDownLatch(1)));
+
+        long inicio = System.nanoTime();
+        assertThatThrownBy(() -> estoque.verificarDisponibilidade(List.of(1L), List.of(1L)))
+            .as("Tempo esgotado")
+            .isInstanceOf(TempoEsgotadoException.class)
+            .hasMessage("Serviço de estoque indisponível.");
+        assertThat(Duration.ofNanos(System.nanoTime() - inicio)).as("Não espera o serviço").isLessThan(Duration.ofSeconds(1));
+    }
+
+    @Test
+    @DisplayName("Resiliência: circuito aberto falha sem chamar o serviço")
+    public void chamada_quandoCircuitoAberto_entaoFalhaSemChamar() {
+        AtomicInteger chamadas = new AtomicInteger();
+        IEstoqueExternal estoque = envolver(10, 1_000, new EstoqueFixo() {
+            @Override
+            public DisponibilidadeDTO verificarDisponibilidade(List<Long> ids, List<Long> quantidades) {
+                chamadas.incrementAndGet();
+                throw new IllegalStateException("falha no serviço");
+            }
+        });
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> estoque.verificarDisponibilidade(List.of(1L), List.of(1L)))
+                .as("Erro do serviço repassado")
+                .hasMessage("falha no serviço");
+        }
+        assertThatThrownBy(() -> estoque.verificarDisponibilidade(List.of(1L), List.of(1L)))
+            .as("Circuito aberto")
+            .isInstanceOf(ServicoIndisponivelException.class)
+            .hasCauseInstanceOf(CallNotPermittedException.class);
+        assertThat(chamadas.get()).as("Serviço não chamado com o circuito aberto").isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Resiliência: bulkhead cheio rejeita na hora até a chamada lenta terminar")
+    public void chamada_quandoBulkheadCheio_entaoRejeita() throws Exception {
+        CountDownLatch liberar = new CountDownLatch(1);
+        IEstoqueExternal estoque = envolver(1, 5_000, lento(liberar));
+
+        CompletableFuture<DisponibilidadeDTO> ocupante = CompletableFuture
+            .supplyAsync(() -> estoque.verificarDisponibilidade(List.of(1L), List.of(1L)));
+        Thread.sleep(100);
+
+        assertThatThrownBy(() -> estoque.verificarDisponibilidade(List.of(2L), List.of(1L)))
+            .as("Sem vaga no bulkhead")
+            .isInstanceOf(ServicoIndisponivelException.class)
+            .hasCauseInstanceOf(BulkheadFullException.class);
+
+        liberar.countDown();
+        assertThat(ocupante.get(5, TimeUnit.SECONDS).disponivel()).as("Chamada lenta concluída").isTrue();
+        assertThat(estoque.verificarDisponibilidade(List.of(2L), List.of(1L)).disponivel()).as("Vaga devolvida").isTrue();
+    }
+
+    @Test
+    @DisplayName("Resiliência: o proxy mantém a classe concreta e seus outros métodos")
+    public void envolver_quandoClasseConcreta_entaoMantemTipo() {
+        EstoqueSimulado simulado = new EstoqueSimulado(16, 4);
+        simulado.definirSaldo(1L, 2);
+
+        Object envolvido = envolver(10, 1_000, simulado);
+
+        assertThat(envolvido).as("Mesma classe e interfaces").isInstanceOf(EstoqueSimulado.class).isInstanceOf(MeterBinder.class);
+        assertThat(((IEstoqueExternal) envolvido).darBaixa(List.of(1L), List.of(1L)).sucesso()).as("Baixa via proxy").isTrue();
+        assertThat(((EstoqueSimulado) envolvido).saldo(1L)).as("Método próprio passa direto").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Resiliência: chamada assíncrona volta na hora, falha ao fim do tempo limite e ocupa o bulkhead até terminar")
+    public void chamadaAssincrona_quandoLenta_entaoTempoEsgotadoSemBloquear() {
+        CompletableFuture<ReservaEstoqueDTO> lenta = new CompletableFuture<>();
+        EstoqueAssincronoFixo servico = new EstoqueAssincronoFixo(lenta);
+        IEstoqueExternalAssincrono estoque = envolver(1, 100, servico);
+
+        CompletableFuture<ReservaEstoqueDTO> reserva = estoque.reservar(List.of(1L), List.of(1L), Duration.ofMinutes(1));
+
+        assertThat(reserva).as("Devolvida sem esperar").isNotDone();
+        assertThatThrownBy(() -> reserva.get(1, TimeUnit.SECONDS))
+            .as("Tempo esgotado")
+            .isInstanceOf(ExecutionException.class)
+            .cause()
+            .isInstanceOf(TempoEsgotadoException.class)
+            .hasMessage("Serviço de estoque indisponível.");
+        assertThatThrownBy(() -> estoque.reservar(List.of(2L), List.of(1L), Duration.ofMinutes(1)).get(1, TimeUnit.SECONDS))
+            .as("Vaga ainda ocupada pela chamada lenta")
+            .isInstanceOf(ExecutionException.class)
+            .cause()
+            .isInstanceOf(ServicoIndisponivelException.class)
+            .hasCauseInstanceOf(BulkheadFullException.class);
+
+        lenta.complete(new ReservaEstoqueDTO(true, 1L, List.of()));
+        assertThat(servico.liberadas).as("Reserva tardia liberada").containsExactly(1L);
+        servico.resposta = CompletableFuture.completedFuture(new ReservaEstoqueDTO(true, 2L, List.of()));
+        assertThat(estoque.reservar(List.of(2L), List.of(1L), Duration.ofMinutes(1))).as("Vaga devolvida")
+            .succeedsWithin(Duration.ofSeconds(1)).extracting(ReservaEstoqueDTO::reservaId).isEqualTo(2L);
+    }
+
+    @Test
+    @DisplayName("Resiliência: autorização que termina depois do tempo limite é cancelada")
+    public void autorizacao_quandoTerminaAposTempoLimite_entaoCancelada() throws Exception {
+        CountDownLatch liberar = new CountDownLatch(1);
+        CompletableFuture<Long> cancelada = new CompletableFuture<>();
+        IPagamentoExternal pagamento = envolver(1, 100, new IPagamentoExternal() {
+            @Override
+            public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+                try {
+                    liberar.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new PagamentoDTO(true, 99L);
+            }
+
+            @Override
+            public void cancelarPagamento(Long clienteId, Long transacaoId) {
+                cancelada.complete(transacaoId);
+            }
+        });
+
+        assertThatThrownBy(() -> pagamento.autorizarPagamento(1L, 10.0))
+            .as("Tempo esgotado")
+            .isInstanceOf(TempoEsgotadoException.class)
+            .hasMessage("Serviço de pagamento indisponível.");
+        assertThat(cancelada).as("Nada a desfazer ainda").isNotDone();
+
+        liberar.countDown();
+        assertThat(cancelada.get(5, TimeUnit.SECONDS)).as("Autorização tardia cancelada").isEqualTo(99L);
+    }
+
+    @Test
+    @DisplayName("Resiliência: com a fila de cancelamentos, a autorização tardia é cancelada por ela")
+    public void autorizacao_quandoTerminaAposTempoLimiteComFila_entaoEnfileiraCancelamento() {
+        fila = mock(FilaCancelamentoPagamento.class);
+        CountDownLatch liberar = new CountDownLatch(1);
+        IPagamentoExternal servico = mock(IPagamentoExternal.class);
+        when(servico.autorizarPagamento(1L, 10.0)).thenAnswer(i -> {
+            liberar.await(5, TimeUnit.SECONDS);
+            return new PagamentoDTO(true, 99L);
+        });
+        IPagamentoExternal pagamento = envolver(1, 100, servico);
+
+        assertThatThrownBy(() -> pagamento.autorizarPagamento(1L, 10.0))
+            .as("Tempo esgotado")
+            .isInstanceOf(TempoEsgotadoException.class);
+        liberar.countDown();
+
+        verify(fila, timeout(5_000)).enfileirar(1L, 99L);
+        verify(servico, never()).cancelarPagamento(any(), any());
+    }
+
+    @Test
+    @DisplayName("Resiliência: confirmação de reserva, que não tem como ser desfeita, não tem tempo limite")
+    public void confirmacao_quandoAcimaDoTempoLimite_entaoEsperaResposta() {
+        IEstoqueExternal estoque = envolver(1, 50, new EstoqueFixo() {
+            @Override
+            public EstoqueBaixaDTO confirmarReserva(Long reservaId) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.confirmarReserva(reservaId);
+            }
+        });
+
+        assertThat(estoque.confirmarReserva(7L).sucesso()).as("Resposta do serviço").isTrue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T envolver(int chamadasSimultaneas, long tempoLimiteMs, T estoque) {
+        DefaultListableBeanFactory fabrica = new DefaultListableBeanFactory();
+        fabrica.registerSingleton("circuitBreakers", CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+            .slidingWindowSize(2).minimumNumberOfCalls(2).waitDurationInOpenState(Duration.ofMinutes(1))
+            .ignoreExceptions(BulkheadFullException.class).build()));
+        fabrica.registerSingleton("bulkheads", BulkheadRegistry.of(BulkheadConfig.custom()
+            .maxConcurrentCalls(chamadasSimultaneas).maxWaitDuration(Duration.ZERO).build()));
+        fabrica.registerSingleton("timeLimiters", TimeLimiterRegistry.of(TimeLimiterConfig.custom()
+            .timeoutDuration(Duration.ofMillis(tempoLimiteMs)).build()));
+
+        if (fila != null) {
+            fabrica.registerSingleton("fila", fila);
+        }
+
+        resiliencia = new ResilienciaExterna(fabrica.getBeanProvider(CircuitBreakerRegistry.class),
+            fabrica.getBeanProvider(BulkheadRegistry.class), fabrica.getBeanProvider(TimeLimiterRegistry.class),
+            fabrica.getBeanProvider(FilaCancelamentoPagamento.class));
+        return (T) resiliencia.postProcessAfterInitialization(estoque, "estoque");
+    }
+
+    private static IEstoqueExternal lento(CountDownLatch liberar) {
+        return new EstoqueFixo() {
+            @Override
+            public DisponibilidadeDTO verificarDisponibilidade(List<Long> ids, List<Long> quantidades) {
+                try {
+                    liberar.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.verificarDisponibilidade(ids, quantidades);
+            }
+        };
+    }
+
+    private static class EstoqueAssincronoFixo implements IEstoqueExternalAssincrono {
+        volatile CompletableFuture<ReservaEstoqueDTO> resposta;
+        final List<Long> liberadas = new CopyOnWriteArrayList<>();
+
+        EstoqueAssincronoFixo(CompletableFuture<ReservaEstoqueDTO> resposta) {
+            this.resposta = resposta;
+        }
+
+        @Override
+        public CompletableFuture<ReservaEstoqueDTO> reservar(List<Long> ids, List<Long> quantidades, Duration validade) {
+            return resposta;
+        }
+
+        @Override
+        public CompletableFuture<EstoqueBaixaDTO> confirmarReserva(Long reservaId) {
+            return CompletableFuture.completedFuture(new EstoqueBaixaDTO(true));
+        }
+
+        @Override
+        public CompletableFuture<Void> liberarReserva(Long reservaId) {
+            liberadas.add(reservaId);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private static class EstoqueFixo implements IEstoqueExternal {
+        @Override
+        public EstoqueBaixaDTO darBaixa(List<Long> ids, List<Long> quantidades) {
+            return new EstoqueBaixaDTO(true);
+        }
+
+        @Override
+        public DisponibilidadeDTO verificarDisponibilidade(List<Long> ids, List<Long> quantidades) {
+            return new DisponibilidadeDTO(true, List.of());
+        }
+
+        @Override
+        public ReservaEstoqueDTO reservar(List<Long> ids, List<Long> quantidades, Duration validade) {
+            return new ReservaEstoqueDTO(true, 1L, List.of());
+        }
+
+        @Override
+        public EstoqueBaixaDTO confirmarReserva(Long reservaId) {
+            return new EstoqueBaixaDTO(true);
+        }
+
+        @Override
+        public void liberarReserva(Long reservaId) {
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ecommerce.external.fake;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+
+public class EstoqueSimuladoTest {
+
+    @Test
+    @DisplayName("Estoque: baixa é tudo ou nada e informa os ids indisponíveis")
+    public void baixa_quandoUmProdutoSemSaldo_entaoNadaEDescontado() {
+        EstoqueSimulado estoque = new EstoqueSimulado(16, 4);
+        estoque.definirSaldo(1L, 5);
+        estoque.definirSaldo(2L, 1);
+
+        DisponibilidadeDTO disponibilidade = estoque.verificarDisponibilidade(List.of(1L, 2L, 3L), List.of(2L, 2L, 1L));
+
+        assertThat(disponibilidade.disponivel()).as("Falta saldo").isFalse();
+        assertThat(disponibilidade.idsProdutosIndisponiveis()).as("Sem saldo ou desconhecido").containsExactly(3L, 2L);
+        assertThat(estoque.darBaixa(List.of(1L, 2L), List.of(2L, 2L)).sucesso()).as("Baixa recusada").isFalse();
+        assertThat(estoque.saldo(1L)).as("Saldo do produto 1 intacto").isEqualTo(5);
+        assertThat(estoque.darBaixa(List.of(1L, 2L, 1L), List.of(2L, 1L, 3L)).sucesso()).as("Ids repetidos somados").isTrue();
+        assertThat(estoque.saldo(1L)).as("Saldo do produto 1 zerado").isZero();
+    }
+
+    @Test
+    @DisplayName("Estoque: reserva desconta o saldo; liberação e expiração devolvem")
+    public void reserva_quandoLiberadaOuExpirada_entaoSaldoVolta() throws InterruptedException {
+        EstoqueSimulado estoque = new EstoqueSimulado(16, 4);
+        estoque.definirSaldo(1L, 3);
+
+        ReservaEstoqueDTO liberada = estoque.reservar(List.of(1L), List.of(2L), Duration.ofMinutes(1));
+        assertThat(estoque.saldo(1L)).as("Reservado sai do saldo").isEqualTo(1);
+        estoque.liberarReserva(liberada.reservaId());
+        assertThat(estoque.saldo(1L)).as("Liberado volta ao saldo").isEqualTo(3);
+
+        ReservaEstoqueDTO expirada = estoque.reservar(List.of(1L), List.of(3L), Duration.ofMillis(1));
+        Thread.sleep(5);
+        assertThat(estoque.confirmarReserva(expirada.reservaId()).sucesso()).as("Reserva vencida").isFalse();
+        assertThat(estoque.saldo(1L)).as("Vencida volta ao saldo").isEqualTo(3);
+
+        ReservaEstoqueDTO confirmada = estoque.reservar(List.of(1L), List.of(3L), Duration.ofMinutes(1));
+        assertThat(estoque.confirmarReserva(confirmada.reservaId()).sucesso()).as("Reserva confirmada").isTrue();
+        assertThat(estoque.confirmarReserva(confirmada.reservaId()).sucesso()).as("Confirmação repetida").isTrue();
+        estoque.liberarReserva(confirmada.reservaId());
+        assertThat(estoque.saldo(1L)).as("Baixa definitiva").isZero();
+        assertThat(estoque.confirmarReserva(99L).sucesso()).as("Reserva inexistente").isFalse();
+    }
+
+    @Test
+    @DisplayName("Estoque: baixas concorrentes em ordens diferentes não vendem além do saldo nem travam")
+    public void baixa_quandoConcorrente_entaoSemVendaAlemDoSaldo() throws InterruptedException {
+        int produtos = 32;
+        long saldoInicial = 1_000;
+        EstoqueSimulado estoque = new EstoqueSimulado(produtos, 8);
+        for (long id = 1; id <= produtos; id++) {
+            estoque.definirSaldo(id, saldoInicial);
+        }
+
+        long[] vendidos = new long[produtos + 1];
+        AtomicLong concluidas = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        for (int t = 0; t < 16; t++) {
+            executor.submit(() -> {
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                for (int i = 0; i < 2_000; i++) {
+                    List<Long> ids = new ArrayList<>();
+                    List<Long> quantidades = new ArrayList<>();
+                    for (int k = 0; k < 4; k++) {
+                        ids.add(1L + aleatorio.nextInt(produtos));
+                        quantidades.add(1L + aleatorio.nextInt(3));
+                    }
+                    if (estoque.darBaixa(ids, quantidades).sucesso()) {
+                        synchronized (vendidos) {
+                            for (int k = 0; k < ids.size(); k++) {
+                                vendidos[ids.get(k).intValue()] += quantidades.get(k);
+                            }
+                        }
+                        concluidas.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).as("Sem deadlock").isTrue();
+        assertThat(concluidas.get()).as("Houve baixas").isPositive();
+        for (long id = 1; id <= produtos; id++) {
+            assertThat(estoque.saldo(id)).as("Saldo do produto %d", id)
+                .isEqualTo(saldoInicial - vendidos[(int) id])
+                .isNotNegative();
+        }
+        assertThat(estoque.estatisticas().travamentos()).as("Métricas de travamento").isPositive();
+    }
+
+    @Test
+    @DisplayName("Estoque: carga a partir de arquivo valida as linhas")
+    public void carregar_quandoArquivo_entaoDefineSaldos(@TempDir Path dir) throws Exception {
+        Path arquivo = Files.writeString(dir.resolve("estoque.csv"), "# produto;quantidade\n10;7\n\n20,3\n");
+        EstoqueSimulado estoque = new EstoqueSimulado(16, 4);
+
+        assertThat(estoque.carregar(arquivo)).as("Produtos carregados").isEqualTo(2);
+        assertThat(estoque.saldo(10L)).as("Produto 10").isEqualTo(7);
+        assertThat(estoque.saldo(20L)).as("Produto 20").isEqualTo(3);
+
+        Files.writeString(arquivo, "10;sete\n");
+        assertThatThrownBy(() -> estoque.carregar(arquivo))
+            .as("Linha inválida")
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Linha 1");
+    }
+}
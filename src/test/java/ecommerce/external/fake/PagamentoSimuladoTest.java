@@ -0,0 +1,94 @@
+package ecommerce.external.fake;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.TempoEsgotadoException;
+import ecommerce.external.fake.PagamentoSimulado.SituacaoTransacao;
+
+public class PagamentoSimuladoTest {
+
+    @Test
+    @DisplayName("Pagamento: ids de transação únicos entre threads e livro com autorizações e cancelamentos")
+    public void autorizar_quandoConcorrente_entaoIdsUnicosELivroConsistente() throws InterruptedException {
+        PagamentoSimulado pagamento = new PagamentoSimulado();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    ids.add(pagamento.autorizarPagamento(1L, 10.0).transacaoId());
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).as("Execução concluída").isTrue();
+
+        assertThat(ids).as("Um id por autorização").hasSize(8_000);
+        pagamento.cancelarPagamento(1L, 5L);
+        pagamento.cancelarPagamento(1L, 5L);
+        assertThat(pagamento.transacoes(SituacaoTransacao.CANCELADA)).as("Cancelamento idempotente").containsExactly(5L);
+        assertThat(pagamento.transacoes(SituacaoTransacao.AUTORIZADA)).as("Demais autorizadas").hasSize(7_999);
+        assertThatThrownBy(() -> pagamento.cancelarPagamento(2L, 6L))
+            .as("Transação de outro cliente")
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Pagamento: taxa de recusa 1 recusa tudo sem registrar no livro")
+    public void autorizar_quandoTaxaRecusaTotal_entaoRecusa() {
+        PagamentoSimulado pagamento = new PagamentoSimulado(DistribuicaoLatencia.FIXA, Duration.ZERO, Duration.ZERO, 1,
+            Duration.ZERO);
+
+        assertThat(pagamento.autorizarPagamento(1L, 10.0)).as("Recusado").isEqualTo(new PagamentoDTO(false, null));
+        assertThat(pagamento.livro()).as("Livro vazio").isEmpty();
+        assertThat(pagamento.recusas()).as("Recusas contadas").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Pagamento: latência acima do tempo limite lança exceção sem autorizar")
+    public void autorizar_quandoLatenciaAcimaDoLimite_entaoTempoEsgotado() {
+        PagamentoSimulado pagamento = new PagamentoSimulado(DistribuicaoLatencia.FIXA, Duration.ofMillis(200),
+            Duration.ZERO, 0, Duration.ofMillis(5));
+
+        long inicio = System.nanoTime();
+        assertThatThrownBy(() -> pagamento.autorizarPagamento(1L, 10.0))
+            .as("Tempo esgotado")
+            .isInstanceOf(TempoEsgotadoException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - inicio)).as("Espera só o limite").isLessThan(Duration.ofMillis(150));
+        assertThat(pagamento.livro()).as("Nada autorizado").isEmpty();
+        assertThat(pagamento.temposEsgotados()).as("Tempo esgotado contado").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Pagamento: cauda longa tem a mesma média da normal mas p99 maior")
+    public void sortear_quandoCaudaLonga_entaoP99MaiorQueNormal() {
+        Duration media = Duration.ofMillis(20);
+        Duration desvio = Duration.ofMillis(20);
+        long[] normal = amostras(new PagamentoSimulado(DistribuicaoLatencia.NORMAL, media, desvio, 0, Duration.ZERO));
+        long[] cauda = amostras(new PagamentoSimulado(DistribuicaoLatencia.CAUDA_LONGA, media, desvio, 0, Duration.ZERO));
+
+        double mediaCauda = Arrays.stream(cauda).average().orElseThrow();
+        assertThat(mediaCauda).as("Média da log-normal").isBetween(18e6, 22e6);
+        assertThat(cauda[cauda.length / 2]).as("Mediana abaixo da média").isLessThan(normal[normal.length / 2]);
+        assertThat(cauda[cauda.length * 99 / 100]).as("p99 maior na cauda longa")
+            .isGreaterThan(normal[normal.length * 99 / 100]);
+    }
+
+    private static long[] amostras(PagamentoSimulado pagamento) {
+        return LongStream.range(0, 200_000).map(i -> pagamento.sortearLatenciaNanos()).sorted().toArray();
+    }
+}
@@ -0,0 +1,134 @@
+package ecommerce.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import ecommerce.dto.ClientePrecificacaoDTO;
+import ecommerce.dto.ItemCheckoutDTO;
+import ecommerce.dto.ProdutoPrecificacaoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class CarrinhoDeComprasRepositoryTest {
+
+    private static final int ITENS = 50;
+
+    @Autowired
+    private CarrinhoDeComprasRepository repository;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Autowired
+    private TestEntityManager em;
+
+    private Statistics estatisticas;
+    private Cliente cliente;
+    private Long carrinhoId;
+
+    @BeforeEach
+    public void setup() {
+        cliente = em.persist(new Cliente(null, "Cliente", Regiao.SUL, TipoCliente.PRATA));
+
+        List<ItemCompra> itens = new ArrayList<>();
+        for (int i = 0; i < ITENS; i++) {
+            Produto produto = em.persist(new Produto(null, "P" + i, null, BigDecimal.TEN, BigDecimal.ONE,
+                    BigDecimal.TEN, BigDecimal.TEN, BigDecimal.ONE, i % 2 == 0, TipoProduto.LIVRO));
+            itens.add(new ItemCompra(null, produto, 1L));
+        }
+        carrinhoId = em.persist(new CarrinhoDeCompras(null, cliente, itens, LocalDate.now())).getId();
+        em.flush();
+        em.clear();
+
+        estatisticas = em.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        estatisticas.clear();
+    }
+
+    @Test
+    @DisplayName("findItensCheckout: uma linha por item, sem ler o cliente nem os produtos")
+    public void findItensCheckout_retornaItensDoCarrinho() {
+        List<ItemCheckoutDTO> itens = repository.findItensCheckout(carrinhoId, cliente.getId());
+
+        assertThat(itens).as("Uma linha por item").hasSize(ITENS);
+        assertThat(itens).as("Ids do cliente e do produto em todas as linhas")
+                         .allMatch(l -> cliente.getId().equals(l.clienteId()) && l.produtoId() != null);
+        assertThat(estatisticas.getPrepareStatementCount()).as("Consultas SQL").isEqualTo(1);
+        assertThat(estatisticas.getEntityLoadCount()).as("Nenhuma entidade gerenciada").isZero();
+    }
+
+    @Test
+    @DisplayName("findItensCheckout: carrinho de outro cliente ou cliente inexistente não retorna linhas")
+    public void findItensCheckout_quandoCarrinhoDeOutroCliente_entaoVazio() {
+        Cliente outro = em.persist(new Cliente(null, "Outro", Regiao.SUL, TipoCliente.PRATA));
+
+        assertThat(repository.findItensCheckout(carrinhoId, outro.getId())).as("Carrinho de outro cliente").isEmpty();
+        assertThat(repository.findItensCheckout(carrinhoId, -1L)).as("Cliente não encontrado").isEmpty();
+    }
+
+    @Test
+    @DisplayName("findPrecificacao: região e tipo dos clientes pedidos em uma consulta")
+    public void findPrecificacaoCliente_retornaClientesPedidos() {
+        List<ClientePrecificacaoDTO> clientes = clienteRepository.findPrecificacao(List.of(cliente.getId(), -1L));
+
+        assertThat(clientes).as("Só o existente")
+                            .containsExactly(new ClientePrecificacaoDTO(cliente.getId(), Regiao.SUL, TipoCliente.PRATA));
+        assertThat(estatisticas.getEntityLoadCount()).as("Nenhuma entidade gerenciada").isZero();
+    }
+
+    @Test
+    @DisplayName("findPrecificacao: atributos de preço dos produtos pedidos em uma consulta")
+    public void findPrecificacao_retornaProdutosPedidos() {
+        List<Long> produtosIds = repository.findItensCheckout(carrinhoId, cliente.getId()).stream()
+                                           .map(ItemCheckoutDTO::produtoId).toList();
+        estatisticas.clear();
+
+        List<ProdutoPrecificacaoDTO> produtos = produtoRepository.findPrecificacao(
+            List.of(produtosIds.get(0), produtosIds.get(1), -1L));
+
+        assertThat(produtos).as("Só os existentes").extracting(ProdutoPrecificacaoDTO::id)
+                            .containsExactlyInAnyOrder(produtosIds.get(0), produtosIds.get(1));
+        assertThat(produtos.get(0).pesoTributavel()).as("Peso tributável projetado").isEqualByComparingTo("1");
+        assertThat(estatisticas.getPrepareStatementCount()).as("Consultas SQL").isEqualTo(1);
+        assertThat(estatisticas.getEntityLoadCount()).as("Nenhuma entidade gerenciada").isZero();
+    }
+
+    @Test
+    @DisplayName("Peso tributável nulo (produto antigo): projeção e entidade calculam das dimensões")
+    public void findPrecificacao_quandoPesoTributavelNulo_entaoCalculaDasDimensoes() {
+        // 50 x 40 x 30 cm = 10 kg cúbicos, acima do peso físico
+        Long produtoId = em.persist(new Produto(null, "Antigo", null, BigDecimal.TEN, BigDecimal.ONE,
+                new BigDecimal("50"), new BigDecimal("40"), new BigDecimal("30"), false, TipoProduto.MOVEL)).getId();
+        em.flush();
+        em.getEntityManager().createNativeQuery("update produto set peso_tributavel = null where id = :id")
+                             .setParameter("id", produtoId).executeUpdate();
+        em.clear();
+
+        assertThat(produtoRepository.findPrecificacao(List.of(produtoId))).as("Projeção")
+                                                                        .singleElement()
+                                                                        .extracting(ProdutoPrecificacaoDTO::pesoTributavel)
+                                                                        .satisfies(p -> assertThat(p).isEqualByComparingTo("10"));
+        assertThat(produtoRepository.findById(produtoId).orElseThrow().getPesoTributavel()).as("Entidade")
+                                                                                         .isEqualByComparingTo("10");
+    }
+}
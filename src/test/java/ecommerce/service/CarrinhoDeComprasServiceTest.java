@@ -0,0 +1,97 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.ClientePrecificacaoDTO;
+import ecommerce.dto.ItemCheckoutDTO;
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.dto.PedidoCheckoutDTO;
+import ecommerce.dto.ProdutoPrecificacaoDTO;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+
+public class CarrinhoDeComprasServiceTest {
+
+    private static final ClientePrecificacaoDTO CLIENTE = new ClientePrecificacaoDTO(1L, Regiao.NORDESTE, TipoCliente.OURO);
+    private static final ProdutoPrecificacaoDTO PRODUTO = new ProdutoPrecificacaoDTO(100L, new BigDecimal("50.00"),
+        BigDecimal.ONE, true, TipoProduto.ELETRONICO);
+
+    private CarrinhoDeComprasRepository repository;
+    private ClienteService clienteService;
+    private CatalogoProdutos catalogo;
+    private CarrinhoDeComprasService service;
+
+    @BeforeEach
+    public void setup() {
+        repository = mock(CarrinhoDeComprasRepository.class);
+        clienteService = mock(ClienteService.class);
+        catalogo = mock(CatalogoProdutos.class);
+        service = new CarrinhoDeComprasService(repository, clienteService, catalogo);
+
+        when(clienteService.buscarPrecificacao(anyCollection())).thenReturn(Map.of(1L, CLIENTE));
+        when(catalogo.buscar(anyCollection())).thenReturn(Map.of(100L, PRODUTO));
+    }
+
+    @Test
+    @DisplayName("Linhas de checkout: itens completados com o cliente e o produto dos caches")
+    public void buscarLinhasCheckout_completaItensComClienteEProduto() {
+        when(repository.findItensCheckout(10L, 1L)).thenReturn(List.of(new ItemCheckoutDTO(1L, 10L, 5L, 100L, 3L)));
+
+        assertThat(service.buscarLinhasCheckout(10L, 1L)).as("Mesma linha da antiga consulta com join")
+            .containsExactly(new LinhaCheckoutDTO(1L, Regiao.NORDESTE, TipoCliente.OURO, 10L, 5L, 100L,
+                new BigDecimal("50.00"), BigDecimal.ONE, true, TipoProduto.ELETRONICO, 3L));
+        assertThat(service.buscarLinhasCheckout(10L, 2L)).as("Cliente não encontrado").isEmpty();
+        assertThat(service.buscarLinhasCheckout(20L, 1L)).as("Carrinho de outro cliente")
+            .singleElement().satisfies(l -> {
+                assertThat(l.carrinhoId()).isNull();
+                assertThat(l.regiao()).isEqualTo(Regiao.NORDESTE);
+            });
+    }
+
+    @Test
+    @DisplayName("Linhas de checkout em lote: cliente inexistente sem linhas; carrinho alheio com linha sem carrinho")
+    public void buscarLinhasCheckoutEmLote_separaPorPedido() {
+        when(repository.findItensCheckoutEmLote(anyCollection(), anyCollection())).thenReturn(List.of(
+            new ItemCheckoutDTO(1L, 10L, 5L, 100L, 3L), new ItemCheckoutDTO(1L, 11L, null, null, null)));
+        PedidoCheckoutDTO comItens = new PedidoCheckoutDTO(10L, 1L);
+        PedidoCheckoutDTO vazio = new PedidoCheckoutDTO(11L, 1L);
+        PedidoCheckoutDTO alheio = new PedidoCheckoutDTO(12L, 1L);
+        PedidoCheckoutDTO semCliente = new PedidoCheckoutDTO(10L, 2L);
+
+        Map<PedidoCheckoutDTO, List<LinhaCheckoutDTO>> linhas = service
+            .buscarLinhasCheckoutEmLote(List.of(comItens, vazio, alheio, semCliente));
+
+        assertThat(linhas.get(comItens)).as("Com itens").extracting(LinhaCheckoutDTO::preco)
+            .containsExactly(new BigDecimal("50.00"));
+        assertThat(linhas.get(vazio)).as("Carrinho vazio").singleElement()
+            .satisfies(l -> assertThat(l.carrinhoId()).isEqualTo(11L))
+            .satisfies(l -> assertThat(l.itemId()).isNull());
+        assertThat(linhas.get(alheio)).as("Carrinho de outro cliente").singleElement()
+            .satisfies(l -> assertThat(l.carrinhoId()).isNull());
+        assertThat(linhas.get(semCliente)).as("Cliente não encontrado").isEmpty();
+    }
+
+    @Test
+    @DisplayName("Linhas de checkout em lote: sem clientes conhecidos, nenhuma consulta de itens")
+    public void buscarLinhasCheckoutEmLote_quandoSemClientes_entaoNaoConsultaItens() {
+        when(clienteService.buscarPrecificacao(anyCollection())).thenReturn(Map.of());
+
+        assertThat(service.buscarLinhasCheckoutEmLote(List.of(new PedidoCheckoutDTO(10L, 2L))).values())
+            .as("Cliente não encontrado").containsExactly(List.of());
+        verify(repository, never()).findItensCheckoutEmLote(anyCollection(), anyCollection());
+    }
+}
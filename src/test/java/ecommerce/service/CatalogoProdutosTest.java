@@ -0,0 +1,167 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.ProdutoPrecificacaoDTO;
+import ecommerce.entity.ProdutoAlteradoEvent;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.ProdutoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CatalogoProdutosTest {
+
+    private ProdutoRepository repository;
+    private SimpleMeterRegistry metricas;
+    private Map<Long, BigDecimal> precos;
+    private List<Runnable> tarefas;
+
+    @BeforeEach
+    public void setup() {
+        repository = mock(ProdutoRepository.class);
+        metricas = new SimpleMeterRegistry();
+        precos = new HashMap<>();
+        tarefas = new ArrayList<>();
+        when(repository.findPrecificacao(anyCollection())).thenAnswer(i -> banco(i.getArgument(0)));
+    }
+
+    @Test
+    @DisplayName("Catálogo: faltas são lidas em uma consulta; depois vêm do cache")
+    public void buscar_quandoRepetido_entaoLeUmaVez() {
+        precos.put(1L, new BigDecimal("10.00"));
+        precos.put(2L, new BigDecimal("20.00"));
+        precos.put(3L, new BigDecimal("30.00"));
+        CatalogoProdutos catalogo = catalogo(80, Duration.ofMinutes(5));
+
+        assertThat(catalogo.buscar(List.of(1L, 2L, 1L, 99L))).as("Inexistente fica de fora").containsOnlyKeys(1L, 2L);
+        verify(repository).findPrecificacao(Set.of(1L, 2L, 99L));
+        clearInvocations(repository);
+
+        Map<Long, ProdutoPrecificacaoDTO> produtos = catalogo.buscar(List.of(1L, 2L, 3L));
+
+        assertThat(produtos.get(3L).preco()).as("Lido do banco").isEqualByComparingTo("30.00");
+        verify(repository).findPrecificacao(Set.of(3L));
+        assertThat(metricas.get("compra.catalogo.cache").tag("resultado", "acerto").counter().count())
+            .as("Acertos").isEqualTo(2);
+        assertThat(metricas.get("compra.catalogo.cache").tag("resultado", "falta").counter().count())
+            .as("Faltas").isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Catálogo: produto alterado sai do cache, e leitura concorrente com a alteração não grava o valor antigo")
+    public void produtoAlterado_entaoInvalidaELeituraEmCursoNaoGrava() {
+        precos.put(1L, new BigDecimal("10.00"));
+        CatalogoProdutos catalogo = catalogo(80, Duration.ofMinutes(5));
+        catalogo.buscar(List.of(1L));
+
+        precos.put(1L, new BigDecimal("12.00"));
+        catalogo.produtoAlterado(new ProdutoAlteradoEvent(1L));
+        assertThat(catalogo.buscar(List.of(1L)).get(1L).preco()).as("Novo preço").isEqualByComparingTo("12.00");
+
+        // A alteração é confirmada enquanto a leitura anterior a ela ainda não voltou
+        catalogo.produtoAlterado(new ProdutoAlteradoEvent(1L));
+        when(repository.findPrecificacao(anyCollection())).thenAnswer(i -> {
+            List<ProdutoPrecificacaoDTO> antigos = banco(i.getArgument(0));
+            precos.put(1L, new BigDecimal("15.00"));
+            catalogo.produtoAlterado(new ProdutoAlteradoEvent(1L));
+            return antigos;
+        });
+        assertThat(catalogo.buscar(List.of(1L)).get(1L).preco()).as("Leitura em curso").isEqualByComparingTo("12.00");
+        assertThat(catalogo.tamanho()).as("Valor antigo não entrou no cache").isZero();
+    }
+
+    @Test
+    @DisplayName("Catálogo: entrada vencida é servida e recarregada em segundo plano, uma vez")
+    public void buscar_quandoVencida_entaoServeERecarrega() {
+        precos.put(1L, new BigDecimal("10.00"));
+        CatalogoProdutos catalogo = catalogo(80, Duration.ofNanos(1));
+        catalogo.buscar(List.of(1L));
+        precos.put(1L, new BigDecimal("11.00"));
+
+        assertThat(catalogo.buscar(List.of(1L)).get(1L).preco()).as("Valor vencido").isEqualByComparingTo("10.00");
+        assertThat(catalogo.buscar(List.of(1L)).get(1L).preco()).as("Ainda recarregando").isEqualByComparingTo("10.00");
+        assertThat(tarefas).as("Uma recarga por entrada").hasSize(1);
+
+        tarefas.remove(0).run();
+
+        assertThat(catalogo.buscar(List.of(1L)).get(1L).preco()).as("Recarregado").isEqualByComparingTo("11.00");
+        assertThat(metricas.get("compra.catalogo.cache.recargas").tag("resultado", "sucesso").counter().count())
+            .as("Recargas").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Catálogo: recarga que não grava por causa de uma invalidação libera a entrada para a próxima")
+    public void buscar_quandoInvalidacaoDuranteRecarga_entaoRecarregaDeNovo() {
+        precos.put(1L, new BigDecimal("10.00"));
+        precos.put(2L, new BigDecimal("20.00"));
+        CatalogoProdutos catalogo = catalogo(80, Duration.ofNanos(1));
+        catalogo.buscar(List.of(1L, 2L));
+        precos.put(1L, new BigDecimal("11.00"));
+        catalogo.buscar(List.of(1L));
+
+        // Outro produto é alterado enquanto a recarga lê o banco: o valor lido não entra no cache
+        when(repository.findPrecificacao(anyCollection())).thenAnswer(i -> {
+            List<ProdutoPrecificacaoDTO> lidos = banco(i.getArgument(0));
+            catalogo.produtoAlterado(new ProdutoAlteradoEvent(2L));
+            return lidos;
+        });
+        tarefas.remove(0).run();
+        when(repository.findPrecificacao(anyCollection())).thenAnswer(i -> banco(i.getArgument(0)));
+
+        assertThat(catalogo.buscar(List.of(1L)).get(1L).preco()).as("Valor antigo ainda servido")
+            .isEqualByComparingTo("10.00");
+        assertThat(tarefas).as("Nova recarga agendada").hasSize(1);
+        tarefas.remove(0).run();
+        assertThat(catalogo.buscar(List.of(1L)).get(1L).preco()).as("Recarregado").isEqualByComparingTo("11.00");
+    }
+
+    @Test
+    @DisplayName("Catálogo: produtos acessados uma vez não despejam os mais acessados")
+    public void buscar_quandoVarredura_entaoMantemProdutosQuentes() {
+        // Capacidade 5 por segmento; múltiplos de 16 caem todos no mesmo segmento
+        CatalogoProdutos catalogo = catalogo(80, Duration.ofMinutes(5));
+        List<Long> quentes = List.of(16L, 32L, 48L);
+        quentes.forEach(id -> precos.put(id, BigDecimal.TEN));
+        catalogo.buscar(quentes);
+        catalogo.buscar(quentes);
+
+        List<Long> frios = LongStream.rangeClosed(10, 110).map(k -> k * 16).boxed().toList();
+        frios.forEach(id -> precos.put(id, BigDecimal.ONE));
+        frios.forEach(id -> catalogo.buscar(List.of(id)));
+        clearInvocations(repository);
+
+        assertThat(catalogo.buscar(quentes)).as("Quentes").hasSize(3);
+        verify(repository, never()).findPrecificacao(anyCollection());
+        assertThat(catalogo.tamanho()).as("Capacidade respeitada").isEqualTo(5);
+        assertThat(metricas.get("compra.catalogo.cache.despejos").functionCounter().count())
+            .as("Despejos").isEqualTo(frios.size() - 2);
+    }
+
+    private CatalogoProdutos catalogo(int capacidade, Duration ttl) {
+        return new CatalogoProdutos(repository, tarefas::add, capacidade, ttl, metricas);
+    }
+
+    private List<ProdutoPrecificacaoDTO> banco(Collection<Long> ids) {
+        return ids.stream().filter(precos::containsKey)
+                  .map(id -> new ProdutoPrecificacaoDTO(id, precos.get(id), BigDecimal.ONE, false, TipoProduto.LIVRO))
+                  .toList();
+    }
+}
@@ -0,0 +1,121 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.ClientePrecificacaoDTO;
+import ecommerce.entity.ClienteAlteradoEvent;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.repository.ClienteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ClienteServiceTest {
+
+    private static final ClientePrecificacaoDTO BRONZE = new ClientePrecificacaoDTO(1L, Regiao.SUL, TipoCliente.BRONZE);
+    private static final ClientePrecificacaoDTO OURO = new ClientePrecificacaoDTO(1L, Regiao.SUL, TipoCliente.OURO);
+
+    private ClienteRepository repository;
+    private SimpleMeterRegistry metricas;
+
+    @BeforeEach
+    public void setup() {
+        repository = mock(ClienteRepository.class);
+        metricas = new SimpleMeterRegistry();
+    }
+
+    @Test
+    @DisplayName("Clientes: lidos uma vez e servidos do cache até vencer; inexistente não fica em cache")
+    public void buscarPrecificacao_quandoRepetido_entaoLeUmaVezAteVencer() {
+        when(repository.findPrecificacao(anyCollection())).thenReturn(List.of(BRONZE));
+        ClienteService service = new ClienteService(repository, 64, Duration.ofMinutes(5), metricas);
+
+        assertThat(service.buscarPrecificacao(List.of(1L, 2L, 1L))).as("Inexistente fica de fora")
+            .containsExactly(Map.entry(1L, BRONZE));
+        service.buscarPrecificacao(List.of(1L));
+        service.buscarPrecificacao(List.of(2L));
+
+        verify(repository).findPrecificacao(List.of(1L, 2L));
+        verify(repository).findPrecificacao(List.of(2L));
+        assertThat(service.tamanho()).as("Só o existente").isEqualTo(1);
+        assertThat(metricas.get("compra.cliente.cache.taxa.acerto").gauge().value()).as("Taxa de acerto").isEqualTo(0.25);
+        assertThat(metricas.get("compra.cliente.cache.carga").timer().count()).as("Leituras medidas").isEqualTo(2);
+
+        ClienteService vencendo = new ClienteService(repository, 64, Duration.ofNanos(1), new SimpleMeterRegistry());
+        vencendo.buscarPrecificacao(List.of(1L));
+        vencendo.buscarPrecificacao(List.of(1L));
+        verify(repository, times(2)).findPrecificacao(List.of(1L));
+    }
+
+    @Test
+    @DisplayName("Clientes: cliente alterado sai do cache; falha na leitura não fica em cache")
+    public void clienteAlterado_entaoReleDoBanco() {
+        when(repository.findPrecificacao(anyCollection())).thenReturn(List.of(BRONZE))
+            .thenThrow(new IllegalStateException("banco fora"))
+            .thenReturn(List.of(OURO));
+        ClienteService service = new ClienteService(repository, 64, Duration.ofMinutes(5), metricas);
+        service.buscarPrecificacao(List.of(1L));
+
+        service.clienteAlterado(new ClienteAlteradoEvent(1L));
+        assertThatThrownBy(() -> service.buscarPrecificacao(List.of(1L))).as("Falha repassada")
+            .hasMessage("banco fora");
+
+        assertThat(service.buscarPrecificacao(List.of(1L)).get(1L).tipo()).as("Novo tipo").isEqualTo(TipoCliente.OURO);
+    }
+
+    @Test
+    @DisplayName("Clientes: checkouts simultâneos do mesmo cliente fazem uma só leitura")
+    public void buscarPrecificacao_quandoSimultaneos_entaoUmaLeitura() throws Exception {
+        int threads = 8;
+        CountDownLatch liberarBanco = new CountDownLatch(1);
+        when(repository.findPrecificacao(anyCollection())).thenAnswer(i -> {
+            liberarBanco.await(5, TimeUnit.SECONDS);
+            return List.of(BRONZE);
+        });
+        ClienteService service = new ClienteService(repository, 64, Duration.ofMinutes(5), metricas);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Map<Long, ClientePrecificacaoDTO>>> resultados = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                resultados.add(executor.submit(() -> service.buscarPrecificacao(Set.of(1L))));
+            }
+            // Todas as outras esperando a leitura em curso antes de o banco responder
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (metricas.get("compra.cliente.cache").tag("resultado", "espera").counter().count() < threads - 1
+                    && System.nanoTime() < limite) {
+                Thread.sleep(1);
+            }
+            liberarBanco.countDown();
+
+            for (Future<Map<Long, ClientePrecificacaoDTO>> resultado : resultados) {
+                assertThat(resultado.get(5, TimeUnit.SECONDS)).as("Mesmo cliente").containsEntry(1L, BRONZE);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(repository, times(1)).findPrecificacao(anyCollection());
+        assertThat(metricas.get("compra.cliente.cache").tag("resultado", "espera").counter().count())
+            .as("Esperaram a leitura em curso").isEqualTo(threads - 1);
+    }
+}
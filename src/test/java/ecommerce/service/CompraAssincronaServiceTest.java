@@ -0,0 +1,215 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import org.assertj.core.api.AbstractThrowableAssert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IEstoqueExternalAssincrono;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.IPagamentoExternalAssincrono;
+import ecommerce.external.ServicoIndisponivelException;
+
+public class CompraAssincronaServiceTest {
+
+    private static final Duration VALIDADE = Duration.ofMinutes(2);
+    private static final Duration ESPERA = Duration.ofSeconds(5);
+
+    private IEstoqueExternalAssincrono estoque;
+    private IPagamentoExternalAssincrono pagamento;
+    private CarrinhoDeComprasService carrinhoService;
+    private CompraService compraService;
+
+    @BeforeEach
+    public void setup() {
+        carrinhoService = mock(CarrinhoDeComprasService.class);
+        estoque = mock(IEstoqueExternalAssincrono.class);
+        pagamento = mock(IPagamentoExternalAssincrono.class);
+        compraService = new CompraService(carrinhoService, mock(IEstoqueExternal.class),
+            mock(IPagamentoExternal.class), ModoPrecificacao.BIG_DECIMAL);
+
+        when(carrinhoService.buscarContextoCheckout(10L, 1L)).thenReturn(ContextoCheckout.deLinhas(1L, List.of(
+            new LinhaCheckoutDTO(1L, Regiao.SUDESTE, TipoCliente.BRONZE, 10L, 1L, 100L, new BigDecimal("50.00"),
+                BigDecimal.ONE, false, TipoProduto.LIVRO, 2L))));
+        when(estoque.reservar(anyList(), anyList(), any()))
+            .thenReturn(CompletableFuture.completedFuture(new ReservaEstoqueDTO(true, 7L, List.of())));
+        when(estoque.liberarReserva(anyLong())).thenReturn(CompletableFuture.completedFuture(null));
+        when(pagamento.autorizarPagamento(any(), anyDouble()))
+            .thenReturn(CompletableFuture.completedFuture(new PagamentoDTO(true, 99L)));
+        when(pagamento.cancelarPagamento(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    @DisplayName("Assíncrono: o checkout termina quando o estoque responde, sem esperar por ele")
+    public void finalizar_quandoTudoOk_entaoCompletaAoFimDasChamadas() {
+        CompletableFuture<EstoqueBaixaDTO> confirmacao = new CompletableFuture<>();
+        when(estoque.confirmarReserva(7L)).thenReturn(confirmacao);
+
+        CompletableFuture<CompraDTO> resultado = service(ModoBaixa.SINCRONA, null, null).finalizarCompra(10L, 1L);
+
+        assertThat(resultado).as("Aguardando a confirmação").isNotDone();
+        confirmacao.complete(new EstoqueBaixaDTO(true));
+        assertThat(resultado).as("Compra concluída").succeedsWithin(ESPERA)
+            .isEqualTo(new CompraDTO(true, 99L, "Compra finalizada com sucesso."));
+        verify(estoque).reservar(List.of(100L), List.of(2L), VALIDADE);
+        verify(pagamento).autorizarPagamento(1L, 100.0);
+        verify(estoque, never()).liberarReserva(anyLong());
+    }
+
+    @Test
+    @DisplayName("Assíncrono: sem saldo não chega ao pagamento")
+    public void finalizar_quandoReservaRecusada_entaoNaoAutorizaPagamento() {
+        when(estoque.reservar(anyList(), anyList(), any()))
+            .thenReturn(CompletableFuture.completedFuture(new ReservaEstoqueDTO(false, null, List.of(100L))));
+
+        falha(service(ModoBaixa.SINCRONA, null, null).finalizarCompra(10L, 1L))
+            .as("Estoque insuficiente")
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("Itens fora de estoque.");
+        verifyNoInteractions(pagamento);
+    }
+
+    @Test
+    @DisplayName("Assíncrono: pagamento indisponível libera a reserva e repassa o erro")
+    public void finalizar_quandoPagamentoIndisponivel_entaoLiberaReserva() {
+        when(pagamento.autorizarPagamento(any(), anyDouble()))
+            .thenReturn(CompletableFuture.failedFuture(new ServicoIndisponivelException("Serviço de pagamento indisponível.")));
+
+        falha(service(ModoBaixa.SINCRONA, null, null).finalizarCompra(10L, 1L))
+            .as("Falha rápida")
+            .isInstanceOf(ServicoIndisponivelException.class);
+        verify(estoque).liberarReserva(7L);
+        verify(estoque, never()).confirmarReserva(anyLong());
+    }
+
+    @Test
+    @DisplayName("Assíncrono: confirmação recusada cancela o pagamento pela fila")
+    public void finalizar_quandoConfirmacaoFalha_entaoEnfileiraCancelamento() {
+        FilaCancelamentoPagamento fila = mock(FilaCancelamentoPagamento.class);
+        when(estoque.confirmarReserva(7L)).thenReturn(CompletableFuture.completedFuture(new EstoqueBaixaDTO(false)));
+
+        falha(service(ModoBaixa.SINCRONA, null, fila).finalizarCompra(10L, 1L))
+            .as("Reserva não confirmada")
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("Erro ao dar baixa no estoque.");
+        verify(fila).enfileirar(1L, 99L);
+        verify(pagamento, never()).cancelarPagamento(any(), any());
+
+        doThrow(new IllegalStateException("banco fora")).when(fila).enfileirar(any(), any());
+        falha(service(ModoBaixa.SINCRONA, null, fila).finalizarCompra(10L, 1L))
+            .as("Sem a fila, cancela na hora")
+            .hasMessage("Erro ao dar baixa no estoque.");
+        verify(pagamento).cancelarPagamento(1L, 99L);
+    }
+
+    @Test
+    @DisplayName("Assíncrono: com outbox, registra a compra; se o registro falha, cancela e libera")
+    public void finalizar_quandoOutbox_entaoRegistraOuCompensa() {
+        OutboxBaixaEstoque outbox = mock(OutboxBaixaEstoque.class);
+
+        assertThat(service(ModoBaixa.OUTBOX, outbox, null).finalizarCompra(10L, 1L)).as("Compra aceita")
+            .succeedsWithin(ESPERA).isEqualTo(new CompraDTO(true, 99L, "Compra finalizada com sucesso."));
+        verify(outbox).registrar(10L, 1L, 99L, new BigDecimal("100.00"), 7L);
+        verify(estoque, never()).confirmarReserva(anyLong());
+
+        doThrow(new IllegalStateException("banco fora")).when(outbox).registrar(any(), any(), any(), any(), any());
+        falha(service(ModoBaixa.OUTBOX, outbox, null).finalizarCompra(10L, 1L))
+            .as("Falha repassada")
+            .hasMessage("banco fora");
+        verify(pagamento).cancelarPagamento(1L, 99L);
+        verify(estoque).liberarReserva(7L);
+    }
+
+    @Test
+    @DisplayName("Assíncrono: carrinho inexistente falha com a exceção do carregamento")
+    public void finalizar_quandoCarrinhoInexistente_entaoFalha() {
+        when(carrinhoService.buscarContextoCheckout(11L, 1L))
+            .thenThrow(new IllegalArgumentException("Carrinho não encontrado."));
+
+        falha(service(ModoBaixa.SINCRONA, null, null).finalizarCompra(11L, 1L))
+            .as("Carrinho inexistente")
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Carrinho não encontrado.");
+        verifyNoInteractions(estoque, pagamento);
+    }
+
+    @Test
+    @DisplayName("Assíncrono: com a fila do banco cheia, recusa na entrada; checkout aceito não é recusado")
+    public void finalizar_quandoFilaCheia_entaoRecusaSoNaEntrada() {
+        Executor cheio = tarefa -> {
+            throw new RejectedExecutionException("fila cheia");
+        };
+
+        falha(service(ModoBaixa.SINCRONA, null, null, Runnable::run, cheio).finalizarCompra(10L, 1L))
+            .as("Recusado na entrada")
+            .isInstanceOf(ServicoIndisponivelException.class)
+            .hasCauseInstanceOf(RejectedExecutionException.class);
+        verifyNoInteractions(carrinhoService, estoque, pagamento);
+
+        // Só o carregamento é aceito: daí em diante as filas estão cheias
+        AtomicInteger aceitas = new AtomicInteger();
+        Executor banco = tarefa -> {
+            if (aceitas.getAndIncrement() > 0) {
+                throw new RejectedExecutionException("fila cheia");
+            }
+            tarefa.run();
+        };
+        FilaCancelamentoPagamento fila = mock(FilaCancelamentoPagamento.class);
+        when(estoque.confirmarReserva(7L)).thenReturn(CompletableFuture.completedFuture(new EstoqueBaixaDTO(false)));
+
+        falha(service(ModoBaixa.SINCRONA, null, fila, cheio, banco).finalizarCompra(10L, 1L))
+            .as("Etapas seguem na thread de quem as completou")
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("Erro ao dar baixa no estoque.");
+        verify(fila).enfileirar(1L, 99L);
+    }
+
+    private CompraAssincronaService service(ModoBaixa modoBaixa, OutboxBaixaEstoque outbox,
+            FilaCancelamentoPagamento fila) {
+        // Executores de quem chama: cada etapa roda onde a anterior terminou
+        return service(modoBaixa, outbox, fila, Runnable::run, Runnable::run);
+    }
+
+    private CompraAssincronaService service(ModoBaixa modoBaixa, OutboxBaixaEstoque outbox,
+            FilaCancelamentoPagamento fila, Executor executor, Executor banco) {
+        return new CompraAssincronaService(carrinhoService, compraService, estoque, pagamento,
+            MetricasCheckout.desligadas(), VALIDADE, modoBaixa, outbox, fila, executor, banco);
+    }
+
+    private static AbstractThrowableAssert<?, ?> falha(CompletableFuture<CompraDTO> compra) {
+        return assertThatThrownBy(() -> compra.get(ESPERA.toSeconds(), TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .cause();
+    }
+}
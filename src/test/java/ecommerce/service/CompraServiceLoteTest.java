@@ -0,0 +1,183 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.PedidoCheckoutDTO;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.ServicoIndisponivelException;
+import ecommerce.external.fake.EstoqueSimulado;
+
+public class CompraServiceLoteTest {
+
+    private static final PedidoCheckoutDTO PEDIDO_1 = new PedidoCheckoutDTO(10L, 1L);
+    private static final PedidoCheckoutDTO PEDIDO_2 = new PedidoCheckoutDTO(20L, 2L);
+    private static final PedidoCheckoutDTO PEDIDO_3 = new PedidoCheckoutDTO(30L, 3L);
+
+    private CarrinhoDeComprasService carrinhoService;
+    private IEstoqueExternal estoque;
+    private IPagamentoExternal pagamento;
+    private CompraService service;
+
+    @BeforeEach
+    public void setup() {
+        carrinhoService = mock(CarrinhoDeComprasService.class);
+        estoque = mock(IEstoqueExternal.class);
+        pagamento = mock(IPagamentoExternal.class);
+        service = new CompraService(carrinhoService, estoque, pagamento, ModoPrecificacao.BIG_DECIMAL);
+
+        Map<PedidoCheckoutDTO, List<LinhaCheckoutDTO>> linhas = new HashMap<>();
+        linhas.put(PEDIDO_1, List.of(linha(1L, 10L, 100L)));
+        linhas.put(PEDIDO_2, List.of(linha(2L, 20L, 200L)));
+        linhas.put(PEDIDO_3, List.of());
+        when(carrinhoService.buscarLinhasCheckoutEmLote(anyList())).thenReturn(linhas);
+
+        when(pagamento.autorizarPagamento(any(), anyDouble()))
+            .thenAnswer(inv -> new PagamentoDTO(true, (Long) inv.getArgument(0) * 1000));
+    }
+
+    @Test
+    @DisplayName("Lote: uma verificação e uma baixa de estoque para todos os carrinhos")
+    public void lote_quandoTudoDisponivel_entaoChamadasDeEstoqueAgrupadas() {
+        when(estoque.verificarDisponibilidade(anyList(), anyList())).thenReturn(new DisponibilidadeDTO(true, List.of()));
+        when(estoque.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(true));
+
+        List<CompraDTO> resultados = service.finalizarCompras(List.of(PEDIDO_1, PEDIDO_2, PEDIDO_3));
+
+        assertThat(resultados).as("Um resultado por pedido, na ordem").containsExactly(
+            new CompraDTO(true, 1000L, "Compra finalizada com sucesso."),
+            new CompraDTO(true, 2000L, "Compra finalizada com sucesso."),
+            new CompraDTO(false, null, "Cliente não encontrado"));
+        verify(estoque, times(1)).verificarDisponibilidade(List.of(100L, 200L), List.of(1L, 1L));
+        verify(estoque, times(1)).darBaixa(List.of(100L, 200L), List.of(1L, 1L));
+    }
+
+    @Test
+    @DisplayName("Lote: falta de estoque e pagamento recusado afetam apenas o próprio carrinho")
+    public void lote_quandoUmSemEstoqueEOutroRecusado_entaoDemaisConcluem() {
+        Map<PedidoCheckoutDTO, List<LinhaCheckoutDTO>> linhas = new HashMap<>();
+        linhas.put(PEDIDO_1, List.of(linha(1L, 10L, 100L)));
+        linhas.put(PEDIDO_2, List.of(linha(2L, 20L, 200L)));
+        linhas.put(PEDIDO_3, List.of(linha(3L, 30L, 300L)));
+        when(carrinhoService.buscarLinhasCheckoutEmLote(anyList())).thenReturn(linhas);
+
+        when(estoque.verificarDisponibilidade(anyList(), anyList()))
+            .thenReturn(new DisponibilidadeDTO(false, List.of(100L)));
+        when(pagamento.autorizarPagamento(eq(3L), anyDouble())).thenReturn(new PagamentoDTO(false, null));
+        when(estoque.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(true));
+
+        List<CompraDTO> resultados = service.finalizarCompras(List.of(PEDIDO_1, PEDIDO_2, PEDIDO_3));
+
+        assertThat(resultados).as("Falhas isoladas por carrinho").containsExactly(
+            new CompraDTO(false, null, "Itens fora de estoque."),
+            new CompraDTO(true, 2000L, "Compra finalizada com sucesso."),
+            new CompraDTO(false, null, "Pagamento não autorizado."));
+        verify(estoque).darBaixa(List.of(200L), List.of(1L));
+    }
+
+    @Test
+    @DisplayName("Lote: baixa recusada é repetida por carrinho e só o que falhou é cancelado")
+    public void lote_quandoBaixaDoLoteRecusada_entaoRepetePorCarrinho() {
+        when(estoque.verificarDisponibilidade(anyList(), anyList())).thenReturn(new DisponibilidadeDTO(true, List.of()));
+        when(estoque.darBaixa(List.of(100L, 200L), List.of(1L, 1L))).thenReturn(new EstoqueBaixaDTO(false));
+        when(estoque.darBaixa(List.of(100L), List.of(1L))).thenReturn(new EstoqueBaixaDTO(true));
+        when(estoque.darBaixa(List.of(200L), List.of(1L))).thenReturn(new EstoqueBaixaDTO(false));
+
+        List<CompraDTO> resultados = service.finalizarCompras(List.of(PEDIDO_1, PEDIDO_2));
+
+        assertThat(resultados).as("Apenas o carrinho 2 falha na baixa").containsExactly(
+            new CompraDTO(true, 1000L, "Compra finalizada com sucesso."),
+            new CompraDTO(false, null, "Erro ao dar baixa no estoque."));
+        verify(pagamento).cancelarPagamento(2L, 2000L);
+        verify(pagamento, never()).cancelarPagamento(1L, 1000L);
+    }
+
+    @Test
+    @DisplayName("Lote: baixa do lote com erro desfaz o pagamento de cada carrinho")
+    public void lote_quandoBaixaDoLoteFalha_entaoCancelaCadaPagamento() {
+        when(estoque.verificarDisponibilidade(anyList(), anyList())).thenReturn(new DisponibilidadeDTO(true, List.of()));
+        when(estoque.darBaixa(anyList(), anyList()))
+            .thenThrow(new ServicoIndisponivelException("Serviço de estoque indisponível."));
+
+        List<CompraDTO> resultados = service.finalizarCompras(List.of(PEDIDO_1, PEDIDO_2));
+
+        assertThat(resultados).as("Os dois falham").containsExactly(
+            new CompraDTO(false, null, "Erro ao processar compra."),
+            new CompraDTO(false, null, "Erro ao processar compra."));
+        verify(pagamento).cancelarPagamento(1L, 1000L);
+        verify(pagamento).cancelarPagamento(2L, 2000L);
+        verify(estoque, times(1)).darBaixa(anyList(), anyList());
+    }
+
+    @Test
+    @DisplayName("Lote: baixa por carrinho com erro desfaz só o pagamento desse carrinho")
+    public void lote_quandoBaixaDeUmCarrinhoFalha_entaoCancelaSoEle() {
+        when(estoque.verificarDisponibilidade(anyList(), anyList())).thenReturn(new DisponibilidadeDTO(true, List.of()));
+        when(estoque.darBaixa(List.of(100L, 200L), List.of(1L, 1L))).thenReturn(new EstoqueBaixaDTO(false));
+        when(estoque.darBaixa(List.of(100L), List.of(1L))).thenReturn(new EstoqueBaixaDTO(true));
+        when(estoque.darBaixa(List.of(200L), List.of(1L)))
+            .thenThrow(new ServicoIndisponivelException("Serviço de estoque indisponível."));
+
+        List<CompraDTO> resultados = service.finalizarCompras(List.of(PEDIDO_1, PEDIDO_2));
+
+        assertThat(resultados).as("Só o carrinho 2 falha").containsExactly(
+            new CompraDTO(true, 1000L, "Compra finalizada com sucesso."),
+            new CompraDTO(false, null, "Erro ao processar compra."));
+        verify(pagamento).cancelarPagamento(2L, 2000L);
+        verify(pagamento, never()).cancelarPagamento(1L, 1000L);
+    }
+
+    @Test
+    @DisplayName("Lote: produto que falta para o lote mas basta para cada carrinho é verificado carrinho a carrinho")
+    public void lote_quandoProdutoCompartilhadoBastaParaCadaCarrinho_entaoVerificaPorCarrinho() {
+        EstoqueSimulado simulado = new EstoqueSimulado(16, 4);
+        simulado.definirSaldo(100L, 1);
+        simulado.definirSaldo(200L, 5);
+        CompraService comSimulado = new CompraService(carrinhoService, simulado, pagamento, ModoPrecificacao.BIG_DECIMAL);
+        Map<PedidoCheckoutDTO, List<LinhaCheckoutDTO>> linhas = new HashMap<>();
+        linhas.put(PEDIDO_1, List.of(linha(1L, 10L, 100L)));
+        linhas.put(PEDIDO_2, List.of(linha(2L, 20L, 100L)));
+        linhas.put(PEDIDO_3, List.of(linha(3L, 30L, 200L)));
+        when(carrinhoService.buscarLinhasCheckoutEmLote(anyList())).thenReturn(linhas);
+
+        List<CompraDTO> resultados = comSimulado.finalizarCompras(List.of(PEDIDO_1, PEDIDO_2, PEDIDO_3));
+
+        assertThat(resultados).as("Só um dos carrinhos leva o último item").containsExactly(
+            new CompraDTO(true, 1000L, "Compra finalizada com sucesso."),
+            new CompraDTO(false, null, "Erro ao dar baixa no estoque."),
+            new CompraDTO(true, 3000L, "Compra finalizada com sucesso."));
+        verify(pagamento).cancelarPagamento(2L, 2000L);
+        assertThat(simulado.saldo(100L)).as("Último item vendido").isZero();
+        assertThat(simulado.saldo(200L)).as("Carrinho sem produto em falta").isEqualTo(4);
+    }
+
+    private static LinhaCheckoutDTO linha(Long clienteId, Long carrinhoId, Long produtoId) {
+        return new LinhaCheckoutDTO(clienteId, Regiao.SUDESTE, TipoCliente.BRONZE, carrinhoId, produtoId, produtoId,
+            new BigDecimal("50.00"), BigDecimal.ONE, false, TipoProduto.LIVRO, 1L);
+    }
+}
@@ -0,0 +1,92 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+
+public class CompraServicePontoFixoDiferencialTest {
+
+    private static final int CARRINHOS_POR_SEMENTE = 2_000;
+
+    private CompraService bigDecimal;
+    private CompraService pontoFixo;
+
+    @BeforeEach
+    public void setup() {
+        bigDecimal = new CompraService(null, null, null, ModoPrecificacao.BIG_DECIMAL);
+        pontoFixo = new CompraService(null, null, null, ModoPrecificacao.PONTO_FIXO);
+    }
+
+    @ParameterizedTest(name = "semente {0}")
+    @ValueSource(longs = { 1L, 7L, 42L, 2025L, 987654321L })
+    @DisplayName("Diferencial: ponto fixo e BigDecimal produzem o mesmo total em carrinhos aleatórios")
+    public void diferencial_CarrinhosAleatorios(long semente) {
+        Random random = new Random(semente);
+
+        for (int i = 0; i < CARRINHOS_POR_SEMENTE; i++) {
+            CarrinhoDeCompras carrinho = carrinhoAleatorio(random);
+            Regiao regiao = Regiao.values()[random.nextInt(Regiao.values().length)];
+            TipoCliente tipo = TipoCliente.values()[random.nextInt(TipoCliente.values().length)];
+
+            BigDecimal esperado = bigDecimal.calcularCustoTotal(carrinho, regiao, tipo);
+            BigDecimal obtido = pontoFixo.calcularCustoTotal(carrinho, regiao, tipo);
+
+            assertThat(obtido).as("semente %d, carrinho %d, %s/%s", semente, i, regiao, tipo)
+                              .isEqualTo(esperado);
+        }
+    }
+
+    @Test
+    @DisplayName("Diferencial: valores fora da escala de ponto fixo caem no caminho BigDecimal")
+    public void diferencial_PrecoComTresCasas_usaCaminhoBigDecimal() {
+        Produto p = TestHelper.criarProduto("P1", new BigDecimal("33.335"), new BigDecimal("6.0005"), true);
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setItens(Arrays.asList(TestHelper.criarItem(p, 3L)));
+
+        BigDecimal esperado = bigDecimal.calcularCustoTotal(carrinho, Regiao.NORTE, TipoCliente.PRATA);
+        BigDecimal obtido = pontoFixo.calcularCustoTotal(carrinho, Regiao.NORTE, TipoCliente.PRATA);
+
+        assertThat(obtido).as("Preço com 3 casas e peso com 4 casas").isEqualTo(esperado);
+    }
+
+    private static CarrinhoDeCompras carrinhoAleatorio(Random random) {
+        int tamanho = 1 + random.nextInt(12);
+        List<ItemCompra> itens = new ArrayList<>(tamanho);
+
+        for (int i = 0; i < tamanho; i++) {
+            Produto produto = new Produto();
+            produto.setNome("P" + i);
+            produto.setTipo(TipoProduto.values()[random.nextInt(TipoProduto.values().length)]);
+            // Preços concentrados perto dos limiares de 500 e 1000 em parte dos carrinhos
+            produto.setPreco(BigDecimal.valueOf(random.nextInt(random.nextBoolean() ? 60_000 : 120_000), 2));
+            produto.setPesoFisico(BigDecimal.valueOf(random.nextInt(20_000), 1 + random.nextInt(3)));
+            produto.setComprimento(BigDecimal.valueOf(1 + random.nextInt(800), random.nextInt(2)));
+            produto.setLargura(BigDecimal.valueOf(1 + random.nextInt(800), random.nextInt(2)));
+            produto.setAltura(BigDecimal.valueOf(1 + random.nextInt(800), random.nextInt(2)));
+            int fragil = random.nextInt(3);
+            produto.setFragil(fragil == 2 ? null : fragil == 1);
+
+            itens.add(TestHelper.criarItem(produto, 1L + random.nextInt(9)));
+        }
+
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setItens(itens);
+        return carrinho;
+    }
+}
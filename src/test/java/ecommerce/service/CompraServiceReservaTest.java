@@ -0,0 +1,188 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.ServicoIndisponivelException;
+
+public class CompraServiceReservaTest {
+
+    private static final Duration VALIDADE = Duration.ofMinutes(2);
+
+    private IEstoqueExternal estoque;
+    private IPagamentoExternal pagamento;
+    private CarrinhoDeComprasService carrinhoService;
+    private CompraService service;
+
+    @BeforeEach
+    public void setup() {
+        carrinhoService = mock(CarrinhoDeComprasService.class);
+        estoque = mock(IEstoqueExternal.class);
+        pagamento = mock(IPagamentoExternal.class);
+        service = new CompraService(carrinhoService, estoque, pagamento, ModoPrecificacao.BIG_DECIMAL);
+
+        when(carrinhoService.buscarContextoCheckout(10L, 1L)).thenReturn(ContextoCheckout.deLinhas(1L, List.of(
+            new LinhaCheckoutDTO(1L, Regiao.SUDESTE, TipoCliente.BRONZE, 10L, 1L, 100L, new BigDecimal("50.00"),
+                BigDecimal.ONE, false, TipoProduto.LIVRO, 2L))));
+        when(estoque.reservar(anyList(), anyList(), any())).thenReturn(new ReservaEstoqueDTO(true, 7L, List.of()));
+        when(pagamento.autorizarPagamento(any(), anyDouble())).thenReturn(new PagamentoDTO(true, 99L));
+    }
+
+    @Test
+    @DisplayName("Reserva: caminho feliz faz uma reserva antes do pagamento e uma confirmação depois")
+    public void finalizar_quandoTudoOk_entaoReservaEConfirma() {
+        when(estoque.confirmarReserva(7L)).thenReturn(new EstoqueBaixaDTO(true));
+
+        CompraDTO resultado = service.finalizarCompra(10L, 1L);
+
+        assertThat(resultado).as("Compra concluída").isEqualTo(new CompraDTO(true, 99L, "Compra finalizada com sucesso."));
+        verify(estoque).reservar(List.of(100L), List.of(2L), VALIDADE);
+        verify(estoque).confirmarReserva(7L);
+        verify(estoque, never()).verificarDisponibilidade(anyList(), anyList());
+        verify(estoque, never()).darBaixa(anyList(), anyList());
+        verify(estoque, never()).liberarReserva(anyLong());
+    }
+
+    @Test
+    @DisplayName("Reserva: sem saldo não chega ao pagamento")
+    public void finalizar_quandoReservaRecusada_entaoNaoAutorizaPagamento() {
+        when(estoque.reservar(anyList(), anyList(), any())).thenReturn(new ReservaEstoqueDTO(false, null, List.of(100L)));
+
+        assertThatThrownBy(() -> service.finalizarCompra(10L, 1L))
+            .as("Estoque insuficiente")
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("Itens fora de estoque.");
+        verifyNoInteractions(pagamento);
+    }
+
+    @Test
+    @DisplayName("Reserva: pagamento recusado libera a reserva sem cancelar pagamento")
+    public void finalizar_quandoPagamentoRecusado_entaoLiberaReserva() {
+        when(pagamento.autorizarPagamento(any(), anyDouble())).thenReturn(new PagamentoDTO(false, null));
+
+        assertThatThrownBy(() -> service.finalizarCompra(10L, 1L))
+            .as("Pagamento recusado")
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("Pagamento não autorizado.");
+        verify(estoque).liberarReserva(7L);
+        verify(estoque, never()).confirmarReserva(anyLong());
+        verify(pagamento, never()).cancelarPagamento(any(), any());
+    }
+
+    @Test
+    @DisplayName("Reserva: confirmação recusada (reserva expirada) cancela o pagamento")
+    public void finalizar_quandoConfirmacaoFalha_entaoCancelaPagamento() {
+        when(estoque.confirmarReserva(7L)).thenReturn(new EstoqueBaixaDTO(false));
+
+        assertThatThrownBy(() -> service.finalizarCompra(10L, 1L))
+            .as("Reserva não confirmada")
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("Erro ao dar baixa no estoque.");
+        verify(pagamento).cancelarPagamento(1L, 99L);
+    }
+
+    @Test
+    @DisplayName("Reserva: estoque indisponível na confirmação cancela o pagamento e repassa o erro")
+    public void finalizar_quandoEstoqueIndisponivelNaConfirmacao_entaoCancelaPagamento() {
+        when(estoque.confirmarReserva(7L)).thenThrow(new ServicoIndisponivelException("Serviço de estoque indisponível."));
+
+        assertThatThrownBy(() -> service.finalizarCompra(10L, 1L))
+            .as("Falha rápida")
+            .isInstanceOf(ServicoIndisponivelException.class);
+        verify(pagamento).cancelarPagamento(1L, 99L);
+    }
+
+    @Test
+    @DisplayName("Reserva: com outbox, a compra é registrada e a confirmação fica para depois do checkout")
+    public void finalizar_quandoOutbox_entaoRegistraSemConfirmar() {
+        OutboxBaixaEstoque outbox = mock(OutboxBaixaEstoque.class);
+
+        CompraDTO resultado = comOutbox(outbox).finalizarCompra(10L, 1L);
+
+        assertThat(resultado).as("Compra aceita").isEqualTo(new CompraDTO(true, 99L, "Compra finalizada com sucesso."));
+        verify(outbox).registrar(10L, 1L, 99L, new BigDecimal("100.00"), 7L);
+        verify(estoque, never()).confirmarReserva(anyLong());
+    }
+
+    @Test
+    @DisplayName("Reserva: com outbox, falha ao registrar a compra cancela o pagamento e libera a reserva")
+    public void finalizar_quandoOutboxFalha_entaoCompensa() {
+        OutboxBaixaEstoque outbox = mock(OutboxBaixaEstoque.class);
+        doThrow(new IllegalStateException("banco fora")).when(outbox).registrar(any(), any(), any(), any(), any());
+
+        assertThatThrownBy(() -> comOutbox(outbox).finalizarCompra(10L, 1L))
+            .as("Falha repassada")
+            .hasMessage("banco fora");
+        verify(pagamento).cancelarPagamento(1L, 99L);
+        verify(estoque).liberarReserva(7L);
+    }
+
+    private CompraService comOutbox(OutboxBaixaEstoque outbox) {
+        return new CompraService(carrinhoService, estoque, pagamento, ModoPrecificacao.BIG_DECIMAL,
+            ModoExecucao.SEQUENCIAL, null, VALIDADE, new FonteRegrasPrecificacao(RegrasPrecificacao.padrao()),
+            MetricasCheckout.desligadas(), ModoBaixa.OUTBOX, outbox, null);
+    }
+
+    @Test
+    @DisplayName("Reserva: com a fila de cancelamentos, a confirmação recusada só enfileira o cancelamento")
+    public void finalizar_quandoConfirmacaoFalhaComFila_entaoEnfileiraCancelamento() {
+        FilaCancelamentoPagamento fila = mock(FilaCancelamentoPagamento.class);
+        CompraService comFila = new CompraService(carrinhoService, estoque, pagamento, ModoPrecificacao.BIG_DECIMAL,
+            ModoExecucao.SEQUENCIAL, null, VALIDADE, new FonteRegrasPrecificacao(RegrasPrecificacao.padrao()),
+            MetricasCheckout.desligadas(), ModoBaixa.SINCRONA, null, fila);
+        when(estoque.confirmarReserva(7L)).thenReturn(new EstoqueBaixaDTO(false));
+
+        assertThatThrownBy(() -> comFila.finalizarCompra(10L, 1L))
+            .as("Reserva não confirmada")
+            .hasMessage("Erro ao dar baixa no estoque.");
+        verify(fila).enfileirarEmTransacaoPropria(1L, 99L);
+        verify(pagamento, never()).cancelarPagamento(any(), any());
+
+        doThrow(new IllegalStateException("banco fora")).when(fila).enfileirarEmTransacaoPropria(any(), any());
+        assertThatThrownBy(() -> comFila.finalizarCompra(10L, 1L))
+            .as("Sem a fila, cancela na hora")
+            .hasMessage("Erro ao dar baixa no estoque.");
+        verify(pagamento).cancelarPagamento(1L, 99L);
+    }
+
+    @Test
+    @DisplayName("Reserva: se cancelar o pagamento também falha, o erro da confirmação segue sendo o lançado")
+    public void finalizar_quandoCancelamentoFalha_entaoErroOriginalComSuprimido() {
+        when(estoque.confirmarReserva(7L)).thenThrow(new ServicoIndisponivelException("Serviço de estoque indisponível."));
+        doThrow(new ServicoIndisponivelException("Serviço de pagamento indisponível.")).when(pagamento)
+            .cancelarPagamento(1L, 99L);
+
+        assertThatThrownBy(() -> service.finalizarCompra(10L, 1L))
+            .as("Erro original")
+            .hasMessage("Serviço de estoque indisponível.")
+            .satisfies(e -> assertThat(e.getSuppressed()).as("Falha da compensação")
+                .extracting(Throwable::getMessage).containsExactly("Serviço de pagamento indisponível."));
+    }
+}
@@ -105,4 +105,17 @@ public class CompraServiceRobustezTest {
             .as("Não deve adicionar taxa de R$5 se 'fragil' for nulo, cobrindo o '!= null' check")
             .isEqualByComparingTo("74.00");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Deve lançar exceção quando a soma das quantidades estoura long, em vez de ficar negativa")
+    public void robustez_quandoQuantidadesEstouram_entaoLancaArithmeticException() {
+        Produto fragil = TestHelper.criarProduto("Frágil", BigDecimal.ONE, BigDecimal.ONE, true);
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setItens(Arrays.asList(TestHelper.criarItem(fragil, Long.MAX_VALUE),
+            TestHelper.criarItem(fragil, 1L)));
+
+        assertThatThrownBy(() -> service.calcularCustoTotal(carrinho, Regiao.SUDESTE, TipoCliente.BRONZE))
+            .as("Quantidade por tipo e de frágeis acima de Long.MAX_VALUE")
+            .isInstanceOf(ArithmeticException.class);
+    }
+}
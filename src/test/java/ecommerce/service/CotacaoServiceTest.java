@@ -0,0 +1,110 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.entity.ProdutoAlteradoEvent;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CotacaoServiceTest {
+
+    private CarrinhoDeComprasService carrinhoService;
+    private CompraService compraService;
+    private SimpleMeterRegistry metricas;
+    private CotacaoService cotacao;
+
+    @BeforeEach
+    public void setup() {
+        carrinhoService = mock(CarrinhoDeComprasService.class);
+        compraService = spy(new CompraService(null, null, null, ModoPrecificacao.BIG_DECIMAL));
+        metricas = new SimpleMeterRegistry();
+        cotacao = new CotacaoService(carrinhoService, compraService, 64, metricas);
+    }
+
+    @Test
+    @DisplayName("Cotação: carrinho inalterado é calculado uma vez; itens reordenados dão o mesmo hash")
+    public void cotar_quandoCarrinhoInalterado_entaoCalculaUmaVez() {
+        when(carrinhoService.buscarLinhasCheckout(10L, 1L)).thenReturn(
+            List.of(linha(10L, 100L, "50.00", 2L), linha(10L, 200L, "30.00", 1L)),
+            List.of(linha(10L, 200L, "30.0", 1L), linha(10L, 100L, "50", 2L)));
+
+        BigDecimal primeira = cotacao.cotar(10L, 1L).custoTotal();
+        BigDecimal segunda = cotacao.cotar(10L, 1L).custoTotal();
+
+        assertThat(segunda).as("Mesmo custo").isEqualByComparingTo(primeira);
+        verify(compraService, times(1)).calcularCustoTotalPrecificado(any(), any(), any());
+        assertThat(metricas.get("compra.cotacao.cache.taxa.acerto").gauge().value()).as("Taxa de acerto").isEqualTo(0.5);
+    }
+
+    @Test
+    @DisplayName("Cotação: preço alterado gera outro hash e recalcula")
+    public void cotar_quandoPrecoAlterado_entaoRecalcula() {
+        when(carrinhoService.buscarLinhasCheckout(10L, 1L)).thenReturn(
+            List.of(linha(10L, 100L, "50.00", 2L)),
+            List.of(linha(10L, 100L, "60.00", 2L)));
+
+        BigDecimal antes = cotacao.cotar(10L, 1L).custoTotal();
+        BigDecimal depois = cotacao.cotar(10L, 1L).custoTotal();
+
+        assertThat(depois).as("Novo preço").isGreaterThan(antes);
+        verify(compraService, times(2)).calcularCustoTotalPrecificado(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Cotação: produto alterado remove as entradas que o contêm; capacidade é respeitada")
+    public void cotar_quandoProdutoAlteradoOuMuitosCarrinhos_entaoInvalidaELimita() {
+        when(carrinhoService.buscarLinhasCheckout(10L, 1L)).thenReturn(List.of(linha(10L, 100L, "50.00", 1L)));
+        when(carrinhoService.buscarLinhasCheckout(20L, 1L)).thenReturn(List.of(linha(20L, 200L, "50.00", 1L)));
+        cotacao.cotar(10L, 1L);
+        cotacao.cotar(20L, 1L);
+
+        cotacao.produtoAlterado(new ProdutoAlteradoEvent(100L));
+        assertThat(cotacao.tamanho()).as("Só a entrada do produto 200").isEqualTo(1);
+
+        for (long quantidade = 1; quantidade <= 1_000; quantidade++) {
+            when(carrinhoService.buscarLinhasCheckout(30L, 1L)).thenReturn(List.of(linha(30L, 300L, "10.00", quantidade)));
+            cotacao.cotar(30L, 1L);
+        }
+        assertThat(cotacao.tamanho()).as("Limitado à capacidade").isLessThanOrEqualTo(64);
+    }
+
+    @Test
+    @DisplayName("Cotação: troca das regras de precificação invalida as cotações guardadas")
+    public void cotar_quandoRegrasTrocadas_entaoRecalcula() {
+        when(carrinhoService.buscarLinhasCheckout(10L, 1L)).thenReturn(List.of(linha(10L, 100L, "50.00", 3L)));
+        RegrasPrecificacao semDesconto = RegrasPrecificacao.compilar(Map.of("desconto.quantidade", "")::get);
+        doReturn(RegrasPrecificacao.padrao(), RegrasPrecificacao.padrao(), semDesconto).when(compraService)
+            .getRegrasPrecificacao();
+        doReturn(new BigDecimal("142.50"), new BigDecimal("150.00")).when(compraService)
+            .calcularCustoTotalPrecificado(any(), any(), any());
+
+        cotacao.cotar(10L, 1L);
+        cotacao.cotar(10L, 1L);
+        BigDecimal depois = cotacao.cotar(10L, 1L).custoTotal();
+
+        assertThat(depois).as("Calculado com as regras novas").isEqualByComparingTo("150.00");
+        verify(compraService, times(2)).calcularCustoTotalPrecificado(any(), any(), any());
+    }
+
+    private static LinhaCheckoutDTO linha(Long carrinhoId, Long produtoId, String preco, Long quantidade) {
+        return new LinhaCheckoutDTO(1L, Regiao.SUDESTE, TipoCliente.BRONZE, carrinhoId, produtoId, produtoId,
+            new BigDecimal(preco), BigDecimal.ONE, false, TipoProduto.LIVRO, quantidade);
+    }
+}
@@ -0,0 +1,203 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ecommerce.entity.CancelamentoPendente;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.ServicoIndisponivelException;
+import ecommerce.repository.CancelamentoPendenteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class FilaCancelamentoPagamentoTest {
+
+    @Autowired
+    private CancelamentoPendenteRepository pendentes;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private IPagamentoExternal pagamento;
+    private SimpleMeterRegistry metricas;
+
+    @BeforeEach
+    public void setup() {
+        pagamento = mock(IPagamentoExternal.class);
+        metricas = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    public void limpar() {
+        pendentes.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Cancelamentos: um pedido por transação; cancelamento aceito sai da fila")
+    public void enfileirar_quandoRepetido_entaoCancelaUmaVez() {
+        FilaCancelamentoPagamento fila = fila(Duration.ZERO, Duration.ZERO);
+
+        fila.enfileirar(1L, 99L);
+        fila.enfileirar(1L, 99L);
+        fila.enfileirar(2L, 100L);
+        fila.atualizarMetricas();
+
+        assertThat(metricas.get("compra.cancelamentos.profundidade").gauge().value()).as("Profundidade").isEqualTo(2);
+        assertThat(metricas.get("compra.cancelamentos.resultados").tag("resultado", "duplicado").counter().count())
+            .as("Duplicados").isEqualTo(1);
+
+        assertThat(fila.processarLote()).as("Processados").isEqualTo(2);
+        fila.atualizarMetricas();
+
+        verify(pagamento).cancelarPagamento(1L, 99L);
+        verify(pagamento).cancelarPagamento(2L, 100L);
+        assertThat(pendentes.count()).as("Fila vazia").isZero();
+        assertThat(metricas.get("compra.cancelamentos.atraso").gauge().value()).as("Atraso").isZero();
+        assertThat(metricas.get("compra.cancelamentos.conclusao").timer().count()).as("Conclusões").isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Cancelamentos: falha é tentada de novo depois da espera, até dar certo")
+    public void processarLote_quandoFalha_entaoReagendaComEspera() {
+        doThrow(new ServicoIndisponivelException("Serviço de pagamento indisponível.")).doNothing()
+            .when(pagamento).cancelarPagamento(1L, 99L);
+        FilaCancelamentoPagamento fila = fila(Duration.ofMinutes(1), Duration.ofMinutes(5));
+        fila.enfileirar(1L, 99L);
+
+        Instant antes = Instant.now();
+        fila.processarLote();
+
+        CancelamentoPendente reagendado = pendentes.findAll().get(0);
+        assertThat(reagendado.getTentativas()).as("Tentativas").isEqualTo(1);
+        assertThat(reagendado.getProximaTentativa()).as("Espera sorteada entre metade e total")
+            .isBetween(antes.plusSeconds(30), Instant.now().plusSeconds(60));
+        assertThat(fila.processarLote()).as("Ainda esperando").isZero();
+
+        reagendado.setProximaTentativa(Instant.now());
+        pendentes.save(reagendado);
+        fila.processarLote();
+
+        verify(pagamento, times(2)).cancelarPagamento(1L, 99L);
+        assertThat(pendentes.count()).as("Fila vazia").isZero();
+    }
+
+    @Test
+    @DisplayName("Cancelamentos: quem passou do prazo e perdeu o registro não o reagenda nem conclui")
+    public void processarLote_quandoOutroReivindicouNoMeio_entaoNaoSobrescreve() {
+        FilaCancelamentoPagamento fila = fila(Duration.ofMinutes(1), Duration.ofMinutes(5));
+        fila.enfileirar(1L, 99L);
+        fila.enfileirar(2L, 100L);
+        // Outro processo reivindica os registros enquanto este ainda chama o serviço
+        doAnswer(i -> {
+            reivindicarPorOutro();
+            throw new ServicoIndisponivelException("Serviço de pagamento indisponível.");
+        }).when(pagamento).cancelarPagamento(1L, 99L);
+        doAnswer(i -> reivindicarPorOutro()).when(pagamento).cancelarPagamento(2L, 100L);
+
+        fila.processarLote();
+
+        assertThat(pendentes.findAll()).as("Registros do outro processo, intactos").hasSize(2)
+            .allSatisfy(r -> {
+                assertThat(r.getReivindicacao()).isEqualTo("outro");
+                assertThat(r.getTentativas()).isZero();
+            });
+        assertThat(metricas.get("compra.cancelamentos.conclusao").timer().count()).as("Conclusões").isZero();
+    }
+
+    @Test
+    @DisplayName("Cancelamentos: pedido feito dentro de uma transação vale só se ela for confirmada")
+    public void enfileirar_quandoDentroDeTransacao_entaoParticipaDela() {
+        FilaCancelamentoPagamento fila = fila(Duration.ZERO, Duration.ZERO);
+        TransactionTemplate transacao = new TransactionTemplate(transactionManager);
+
+        transacao.executeWithoutResult(s -> {
+            fila.enfileirar(1L, 99L);
+            s.setRollbackOnly();
+        });
+        assertThat(pendentes.count()).as("Desfeito com a transação").isZero();
+
+        transacao.executeWithoutResult(s -> fila.enfileirar(1L, 99L));
+        assertThat(pendentes.count()).as("Confirmado com a transação").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Cancelamentos: pedido em transação própria vale mesmo que a transação de quem pediu seja desfeita")
+    public void enfileirarEmTransacaoPropria_quandoQuemPediuDesfaz_entaoPedidoFica() {
+        FilaCancelamentoPagamento fila = fila(Duration.ZERO, Duration.ZERO);
+        TransactionTemplate transacao = new TransactionTemplate(transactionManager);
+
+        transacao.executeWithoutResult(s -> {
+            fila.enfileirarEmTransacaoPropria(1L, 99L);
+            s.setRollbackOnly();
+        });
+
+        assertThat(pendentes.count()).as("Pedido confirmado").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Cancelamentos: pedido concorrente repetido é ignorado fora de transação e propaga o erro dentro dela")
+    public void enfileirar_quandoDuplicadoConcorrente_entaoSoIgnoraForaDeTransacao() {
+        pendentes.save(new CancelamentoPendente(1L, 99L, Instant.now()));
+        // O outro pedido entra entre a verificação e a gravação: a verificação não o vê
+        CancelamentoPendenteRepository concorrente = mock(CancelamentoPendenteRepository.class, delegatesTo(pendentes));
+        doReturn(false).when(concorrente).existsByTransacaoPagamentoId(99L);
+        FilaCancelamentoPagamento fila = new FilaCancelamentoPagamento(concorrente, pagamento, transactionManager,
+            Duration.ZERO, 10, Duration.ZERO, Duration.ZERO, Duration.ofMinutes(1), metricas);
+
+        fila.enfileirar(1L, 99L);
+        assertThat(metricas.get("compra.cancelamentos.resultados").tag("resultado", "duplicado").counter().count())
+            .as("Duplicado fora de transação").isEqualTo(1);
+
+        TransactionTemplate transacao = new TransactionTemplate(transactionManager);
+        assertThatThrownBy(() -> transacao.executeWithoutResult(s -> fila.enfileirar(1L, 99L)))
+            .as("Dentro de transação").isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(pendentes.count()).as("Só o primeiro pedido").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Cancelamentos: espera dobra a cada falha, com sorteio, até o máximo")
+    public void espera_dobraAteOMaximo() {
+        FilaCancelamentoPagamento fila = fila(Duration.ofSeconds(1), Duration.ofSeconds(10));
+
+        assertThat(fila.espera(1)).as("Primeira falha").isBetween(Duration.ofMillis(500), Duration.ofSeconds(1));
+        assertThat(fila.espera(3)).as("Terceira falha").isBetween(Duration.ofSeconds(2), Duration.ofSeconds(4));
+        assertThat(fila.espera(40)).as("Máximo").isBetween(Duration.ofSeconds(5), Duration.ofSeconds(10));
+    }
+
+    private Object reivindicarPorOutro() {
+        Instant depoisDoPrazo = Instant.now().plus(Duration.ofHours(1));
+        List<Long> ids = pendentes.findAll().stream().map(CancelamentoPendente::getId).toList();
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+            s -> pendentes.reivindicar(ids, depoisDoPrazo, depoisDoPrazo.plus(Duration.ofMinutes(1)), "outro"));
+        return null;
+    }
+
+    private FilaCancelamentoPagamento fila(Duration esperaInicial, Duration esperaMaxima) {
+        // Intervalo zero: sem agendador, a fila é processada por quem chama
+        return new FilaCancelamentoPagamento(pendentes, pagamento, transactionManager, Duration.ZERO, 10, esperaInicial,
+            esperaMaxima, Duration.ofMinutes(1), metricas);
+    }
+}
@@ -0,0 +1,140 @@
+package ecommerce.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Produto;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class FonteRegrasPrecificacaoTest {
+
+    @TempDir
+    Path diretorio;
+
+    private FonteRegrasPrecificacao fonte;
+
+    @AfterEach
+    public void tearDown() {
+        if (fonte != null) {
+            fonte.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Regras: descontos lidos da configuração valem nos dois modos de precificação")
+    public void compilar_quandoDescontosConfigurados_entaoAplica() {
+        RegrasPrecificacao regras = RegrasPrecificacao.compilar(Map.of(
+                "desconto.quantidade", "2=0.25, 4=0.5",
+                "desconto.valor", "100=0.10")::get);
+        CarrinhoDeCompras carrinho = carrinho("40.00", 4L);
+
+        for (ModoPrecificacao modo : ModoPrecificacao.values()) {
+            CompraService service = new CompraService(null, null, null, modo, ModoExecucao.SEQUENCIAL, null,
+                    Duration.ofMinutes(2), new FonteRegrasPrecificacao(regras), MetricasCheckout.desligadas(),
+                    ModoBaixa.SINCRONA, null, null);
+
+            // 160 x 0.5 = 80 (não passa de 100); 3 itens: 120 x 0.75 = 90; 1 item: 40
+            assertThat(service.calcularCustoTotal(carrinho, Regiao.SUDESTE, TipoCliente.OURO))
+                .as("%s: 4 itens", modo).isEqualByComparingTo("80.00");
+            assertThat(service.calcularCustoTotal(carrinho("40.00", 3L), Regiao.SUDESTE, TipoCliente.OURO))
+                .as("%s: 3 itens", modo).isEqualByComparingTo("90.00");
+            assertThat(service.calcularCustoTotal(carrinho("400.00", 1L), Regiao.SUDESTE, TipoCliente.OURO))
+                .as("%s: acima de 100", modo).isEqualByComparingTo("360.00");
+        }
+        assertThatThrownBy(() -> RegrasPrecificacao.compilar(Map.of("desconto.valor", "500=1.5")::get))
+            .as("Desconto acima de 100%")
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Regras: arquivo alterado é recarregado; inválido é recusado e as regras anteriores seguem")
+    public void verificarArquivo_quandoAlterado_entaoTrocaOuRecusa() throws IOException {
+        Path arquivo = diretorio.resolve("regras.properties");
+        gravar(arquivo, "desconto.quantidade=1=0.10\n", 1);
+        MockEnvironment ambiente = new MockEnvironment().withProperty("desconto.valor", "");
+        SimpleMeterRegistry metricas = new SimpleMeterRegistry();
+        fonte = new FonteRegrasPrecificacao(ambiente, arquivo.toString(), Duration.ZERO, metricas);
+        CompraService service = new CompraService(null, null, null, ModoPrecificacao.BIG_DECIMAL,
+                ModoExecucao.SEQUENCIAL, null, Duration.ofMinutes(2), fonte, MetricasCheckout.desligadas(),
+                ModoBaixa.SINCRONA, null, null);
+
+        RegrasPrecificacao iniciais = fonte.atuais();
+        assertThat(total(service)).as("Arquivo inicial").isEqualByComparingTo("900.00");
+
+        gravar(arquivo, "desconto.quantidade=1=0.20\n", 2);
+        fonte.verificarArquivo();
+        assertThat(total(service)).as("Arquivo alterado").isEqualByComparingTo("800.00");
+        assertThat(fonte.versao()).as("Versão").isEqualTo(2);
+
+        gravar(arquivo, "desconto.quantidade=1=abc\n", 3);
+        fonte.verificarArquivo();
+        assertThat(total(service)).as("Arquivo inválido mantém as regras").isEqualByComparingTo("800.00");
+        assertThat(metricas.get("compra.precificacao.regras.recargas").tag("resultado", "recusa").counter().count())
+            .as("Recusas").isEqualTo(1.0);
+
+        // Quem capturou as regras iniciais segue com elas
+        assertThat(iniciais.fatorDescontoPorQuantidade(1)).as("Regras capturadas").isEqualByComparingTo("0.90");
+    }
+
+    @Test
+    @DisplayName("Regras: a verificação periódica só começa em iniciar e para em destroy")
+    public void iniciar_quandoArquivoAlterado_entaoRecarregaNoIntervalo() throws Exception {
+        Path arquivo = diretorio.resolve("regras.properties");
+        gravar(arquivo, "desconto.quantidade=1=0.10\n", 1);
+        MockEnvironment ambiente = new MockEnvironment().withProperty("desconto.valor", "");
+        fonte = new FonteRegrasPrecificacao(ambiente, arquivo.toString(), Duration.ofMillis(10),
+                new SimpleMeterRegistry());
+
+        gravar(arquivo, "desconto.quantidade=1=0.20\n", 2);
+        Thread.sleep(50);
+        assertThat(fonte.versao()).as("Antes de iniciar").isEqualTo(1);
+
+        fonte.iniciar();
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fonte.versao() == 1 && System.nanoTime() < limite) {
+            Thread.sleep(1);
+        }
+        assertThat(fonte.versao()).as("Depois de iniciar").isEqualTo(2);
+
+        fonte.destroy();
+        gravar(arquivo, "desconto.quantidade=1=0.30\n", 3);
+        Thread.sleep(50);
+        assertThat(fonte.versao()).as("Depois de destroy").isEqualTo(2);
+    }
+
+    private static BigDecimal total(CompraService service) {
+        return service.calcularCustoTotal(carrinho("1000.00", 1L), Regiao.SUDESTE, TipoCliente.OURO);
+    }
+
+    /** Grava com data de modificação distinta a cada versão, para não depender da resolução do relógio. */
+    private static void gravar(Path arquivo, String conteudo, int versao) throws IOException {
+        Files.writeString(arquivo, conteudo);
+        Files.setLastModifiedTime(arquivo, FileTime.from(Instant.parse("2025-01-01T00:00:00Z").plusSeconds(versao)));
+    }
+
+    private static CarrinhoDeCompras carrinho(String preco, long quantidade) {
+        Produto p = TestHelper.criarProduto("P1", new BigDecimal(preco), BigDecimal.ONE, false);
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setItens(Arrays.asList(TestHelper.criarItem(p, quantidade)));
+        return carrinho;
+    }
+}
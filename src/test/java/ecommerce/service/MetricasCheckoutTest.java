@@ -0,0 +1,197 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ecommerce.dto.CheckoutLentoDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class MetricasCheckoutTest {
+
+    private SimpleMeterRegistry registry;
+    private RegistroCheckoutsLentos lentos;
+    private CarrinhoDeComprasService carrinhoService;
+    private IEstoqueExternal estoque;
+    private IPagamentoExternal pagamento;
+    private CompraService service;
+
+    @BeforeEach
+    public void setup() {
+        carrinhoService = mock(CarrinhoDeComprasService.class);
+        estoque = mock(IEstoqueExternal.class);
+        pagamento = mock(IPagamentoExternal.class);
+        registry = new SimpleMeterRegistry();
+        lentos = new RegistroCheckoutsLentos(Duration.ZERO, 2);
+        service = new CompraService(carrinhoService, estoque, pagamento, ModoPrecificacao.BIG_DECIMAL,
+                ModoExecucao.SEQUENCIAL, null, Duration.ofMinutes(2),
+                new FonteRegrasPrecificacao(RegrasPrecificacao.padrao()), new MetricasCheckout(registry, lentos),
+                ModoBaixa.SINCRONA, null, null);
+
+        when(carrinhoService.buscarContextoCheckout(10L, 1L)).thenReturn(ContextoCheckout.deLinhas(1L, List.of(
+            new LinhaCheckoutDTO(1L, Regiao.SUDESTE, TipoCliente.BRONZE, 10L, 1L, 100L, new BigDecimal("50.00"),
+                BigDecimal.ONE, false, TipoProduto.LIVRO, 2L),
+            new LinhaCheckoutDTO(1L, Regiao.SUDESTE, TipoCliente.BRONZE, 10L, 2L, 200L, new BigDecimal("10.00"),
+                BigDecimal.ONE, false, TipoProduto.ROUPA, 1L))));
+        when(estoque.reservar(anyList(), anyList(), any())).thenReturn(new ReservaEstoqueDTO(true, 7L, List.of()));
+        when(pagamento.autorizarPagamento(any(), anyDouble())).thenReturn(new PagamentoDTO(true, 99L));
+    }
+
+    @Test
+    @DisplayName("Métricas: checkout concluído mede cada etapa, o total, o resultado e o tamanho do carrinho")
+    public void finalizar_quandoSucesso_entaoMedeEtapasEResultado() {
+        when(estoque.confirmarReserva(7L)).thenReturn(new EstoqueBaixaDTO(true));
+
+        service.finalizarCompra(10L, 1L);
+
+        for (String etapa : List.of("carregamento", "reserva-estoque", "precificacao", "autorizacao-pagamento",
+                "baixa-estoque")) {
+            assertThat(registry.get("compra.checkout.etapa").tag("etapa", etapa).timer().count())
+                .as("Etapa %s", etapa).isEqualTo(1);
+        }
+        assertThat(registry.get("compra.checkout.etapa").tag("etapa", "cancelamento-pagamento").timer().count())
+            .as("Sem compensação").isZero();
+        assertThat(registry.get("compra.checkout.duracao").timer().count()).as("Duração total").isEqualTo(1);
+        assertThat(registry.get("compra.checkout.resultados").tag("resultado", "sucesso").counter().count())
+            .as("Sucesso").isEqualTo(1);
+        assertThat(registry.get("compra.checkout.carrinho.produtos").summary().totalAmount())
+            .as("Produtos distintos").isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Métricas: cada recusa é contada no próprio resultado, e a compensação é medida")
+    public void finalizar_quandoRecusado_entaoClassificaResultado() {
+        when(pagamento.autorizarPagamento(any(), anyDouble())).thenReturn(new PagamentoDTO(false, null));
+        assertThatThrownBy(() -> service.finalizarCompra(10L, 1L)).isInstanceOf(IllegalStateException.class);
+
+        when(pagamento.autorizarPagamento(any(), anyDouble())).thenReturn(new PagamentoDTO(true, 99L));
+        when(estoque.confirmarReserva(7L)).thenReturn(new EstoqueBaixaDTO(false));
+        assertThatThrownBy(() -> service.finalizarCompra(10L, 1L)).isInstanceOf(IllegalStateException.class);
+
+        when(estoque.reservar(anyList(), anyList(), any())).thenReturn(new ReservaEstoqueDTO(false, null, List.of()));
+        assertThatThrownBy(() -> service.finalizarCompra(10L, 1L)).isInstanceOf(IllegalStateException.class);
+
+        assertThatThrownBy(() -> service.finalizarCompra(11L, 1L)).isInstanceOf(RuntimeException.class);
+
+        for (String resultado : List.of("pagamento-recusado", "baixa-recusada", "fora-de-estoque", "erro")) {
+            assertThat(registry.get("compra.checkout.resultados").tag("resultado", resultado).counter().count())
+                .as("Resultado %s", resultado).isEqualTo(1);
+        }
+        assertThat(registry.get("compra.checkout.etapa").tag("etapa", "cancelamento-pagamento").timer().count())
+            .as("Cancelamento após baixa recusada").isEqualTo(1);
+        assertThat(registry.get("compra.checkout.duracao").timer().count()).as("Todos medidos").isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Checkouts lentos: buffer guarda os mais recentes acima do limiar, com o tempo de cada etapa")
+    public void finalizar_quandoAcimaDoLimiar_entaoGuardaNoBufferCircular() {
+        when(estoque.confirmarReserva(7L)).thenReturn(new EstoqueBaixaDTO(true), new EstoqueBaixaDTO(false),
+            new EstoqueBaixaDTO(true));
+
+        service.finalizarCompra(10L, 1L);
+        assertThatThrownBy(() -> service.finalizarCompra(10L, 1L)).isInstanceOf(IllegalStateException.class);
+        service.finalizarCompra(10L, 1L);
+
+        List<CheckoutLentoDTO> checkouts = lentos.listar();
+        assertThat(lentos.getRegistrados()).as("Todos passaram do limiar zero").isEqualTo(3);
+        assertThat(checkouts).as("Capacidade 2: o mais antigo foi sobrescrito")
+            .extracting(CheckoutLentoDTO::sequencia).containsExactly(2L, 1L);
+
+        CheckoutLentoDTO recusado = checkouts.get(1);
+        assertThat(recusado.carrinhoId()).as("Carrinho").isEqualTo(10L);
+        assertThat(recusado.clienteId()).as("Cliente").isEqualTo(1L);
+        assertThat(recusado.produtos()).as("Produtos").isEqualTo(2);
+        assertThat(recusado.resultado()).as("Resultado").isEqualTo("baixa-recusada");
+        assertThat(recusado.etapasMs()).as("Todas as etapas")
+            .containsKeys("carregamento", "reserva-estoque", "precificacao", "autorizacao-pagamento", "baixa-estoque",
+                "cancelamento-pagamento")
+            .allSatisfy((etapa, ms) -> assertThat(ms).isNotNegative());
+        assertThat(recusado.etapasMs().get("precificacao")).as("Etapa executada tem tempo").isPositive();
+        assertThat(recusado.etapasMs().get("liberacao-reserva")).as("Etapa não executada").isZero();
+        assertThat(recusado.duracaoMs()).as("Total cobre as etapas")
+            .isGreaterThanOrEqualTo(recusado.etapasMs().values().stream().mapToDouble(Double::doubleValue).sum());
+    }
+
+    @Test
+    @DisplayName("JFR: com gravação ativa, cada etapa e o checkout geram eventos")
+    public void finalizar_quandoGravacaoJfrAtiva_entaoEmiteEventos(@TempDir Path pasta) throws Exception {
+        when(estoque.confirmarReserva(7L)).thenReturn(new EstoqueBaixaDTO(true));
+        Path arquivo = pasta.resolve("checkout.jfr");
+
+        try (Recording gravacao = new Recording()) {
+            gravacao.enable("ecommerce.CheckoutEtapa");
+            gravacao.enable("ecommerce.Checkout");
+            gravacao.start();
+            service.finalizarCompra(10L, 1L);
+            gravacao.stop();
+            gravacao.dump(arquivo);
+        }
+
+        List<RecordedEvent> eventos = RecordingFile.readAllEvents(arquivo);
+        assertThat(eventos).as("Etapas")
+            .filteredOn(e -> e.getEventType().getName().equals("ecommerce.CheckoutEtapa"))
+            .extracting(e -> e.getString("etapa"))
+            .containsExactly("carregamento", "reserva-estoque", "precificacao", "autorizacao-pagamento",
+                "baixa-estoque");
+        assertThat(eventos).as("Checkout")
+            .filteredOn(e -> e.getEventType().getName().equals("ecommerce.Checkout"))
+            .singleElement()
+            .satisfies(e -> {
+                assertThat(e.getLong("carrinhoId")).isEqualTo(10L);
+                assertThat(e.getString("resultado")).isEqualTo("sucesso");
+                assertThat(e.getLong("duracao")).isGreaterThanOrEqualTo(e.getLong("precificacao"));
+            });
+    }
+
+    @Test
+    @DisplayName("JFR: checkout sem ids, com gravação ativa, repassa o erro original e registra os ids como zero")
+    public void finalizar_quandoIdsNulosComGravacaoJfr_entaoRegistraZero(@TempDir Path pasta) throws Exception {
+        when(carrinhoService.buscarContextoCheckout(null, null))
+            .thenThrow(new IllegalArgumentException("Carrinho e cliente são obrigatórios."));
+        Path arquivo = pasta.resolve("checkout.jfr");
+
+        try (Recording gravacao = new Recording()) {
+            gravacao.enable("ecommerce.Checkout");
+            gravacao.start();
+            assertThatThrownBy(() -> service.finalizarCompra(null, null))
+                .as("Erro original")
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Carrinho e cliente são obrigatórios.");
+            gravacao.stop();
+            gravacao.dump(arquivo);
+        }
+
+        assertThat(RecordingFile.readAllEvents(arquivo)).as("Checkout")
+            .filteredOn(e -> e.getEventType().getName().equals("ecommerce.Checkout"))
+            .singleElement()
+            .satisfies(e -> {
+                assertThat(e.getLong("carrinhoId")).isZero();
+                assertThat(e.getLong("clienteId")).isZero();
+            });
+    }
+}
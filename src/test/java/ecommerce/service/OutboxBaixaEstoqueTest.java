@@ -0,0 +1,182 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.entity.SituacaoCompra;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.ServicoIndisponivelException;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.repository.BaixaEstoquePendenteRepository;
+import ecommerce.repository.CancelamentoPendenteRepository;
+import ecommerce.repository.CompraRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class OutboxBaixaEstoqueTest {
+
+    private static final int TENTATIVAS = 3;
+    private static final Duration VALIDADE = Duration.ofMinutes(2);
+
+    @Autowired
+    private BaixaEstoquePendenteRepository pendentes;
+
+    @Autowired
+    private CompraRepository compras;
+
+    @Autowired
+    private CancelamentoPendenteRepository cancelamentos;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private IEstoqueExternal estoque;
+    private IPagamentoExternal pagamento;
+    private SimpleMeterRegistry metricas;
+    private FilaCancelamentoPagamento fila;
+    private OutboxBaixaEstoque outbox;
+
+    @BeforeEach
+    public void setup() {
+        estoque = mock(IEstoqueExternal.class);
+        pagamento = mock(IPagamentoExternal.class);
+        metricas = new SimpleMeterRegistry();
+        fila = new FilaCancelamentoPagamento(cancelamentos, pagamento, transactionManager, Duration.ZERO, 10,
+            Duration.ZERO, Duration.ZERO, Duration.ofMinutes(1), metricas);
+        // Modo síncrono: sem agendador nem trabalhadores, o lote é processado por quem chama
+        outbox = new OutboxBaixaEstoque(pendentes, compras, estoque, fila, transactionManager, ModoBaixa.SINCRONA,
+            1, 10, Duration.ofSeconds(1), TENTATIVAS, Duration.ZERO, Duration.ZERO, Duration.ofMinutes(1), VALIDADE, metricas);
+        outbox.registrar(10L, 1L, 99L, new BigDecimal("100.00"), 7L);
+    }
+
+    @AfterEach
+    public void limpar() {
+        pendentes.deleteAll();
+        compras.deleteAll();
+        cancelamentos.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Outbox: reserva confirmada conclui a compra e remove o registro")
+    public void processarLote_quandoConfirmada_entaoConclui() {
+        when(estoque.confirmarReserva(7L)).thenReturn(new EstoqueBaixaDTO(true));
+
+        assertThat(outbox.processarLote()).as("Registros processados").isEqualTo(1);
+
+        assertThat(pendentes.count()).as("Outbox vazio").isZero();
+        assertThat(compras.findAll()).singleElement().satisfies(c -> {
+            assertThat(c.getSituacao()).as("Situação").isEqualTo(SituacaoCompra.CONCLUIDA);
+            assertThat(c.getTransacaoPagamentoId()).as("Transação").isEqualTo(99L);
+        });
+        assertThat(outbox.processarLote()).as("Nada a processar").isZero();
+        assertThat(cancelamentos.count()).as("Nada a cancelar").isZero();
+        assertThat(metricas.get("compra.baixa.outbox.conclusao").timer().count()).as("Conclusões").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Outbox: falhas são tentadas de novo e, esgotadas, a compra é compensada")
+    public void processarLote_quandoFalhasEsgotadas_entaoCompensa() {
+        when(estoque.confirmarReserva(7L)).thenThrow(new ServicoIndisponivelException("Serviço de estoque indisponível."));
+
+        for (int i = 1; i < TENTATIVAS; i++) {
+            outbox.processarLote();
+            assertThat(pendentes.findAll()).as("Reagendado").singleElement()
+                .extracting(b -> b.getTentativas()).isEqualTo(i);
+        }
+        outbox.processarLote();
+
+        verify(estoque, times(TENTATIVAS)).confirmarReserva(7L);
+        verify(estoque).liberarReserva(7L);
+        assertThat(cancelamentos.findAll()).as("Cancelamento enfileirado").singleElement()
+            .extracting(c -> c.getTransacaoPagamentoId()).isEqualTo(99L);
+        assertThat(pendentes.count()).as("Outbox vazio").isZero();
+        assertThat(compras.findAll()).singleElement()
+            .satisfies(c -> assertThat(c.getSituacao()).as("Situação").isEqualTo(SituacaoCompra.CANCELADA));
+    }
+
+    @Test
+    @DisplayName("Outbox: confirmação aplicada que estourou o tempo conclui a compra na nova tentativa")
+    public void processarLote_quandoConfirmacaoAplicadaFalha_entaoConcluiNaRepeticao() {
+        EstoqueSimulado simulado = new EstoqueSimulado(16, 4);
+        simulado.definirSaldo(100L, 2);
+        Long reservaId = simulado.reservar(List.of(100L), List.of(2L), VALIDADE).reservaId();
+        when(estoque.confirmarReserva(reservaId)).thenAnswer(invocacao -> {
+            simulado.confirmarReserva(reservaId);
+            throw new ServicoIndisponivelException("Serviço de estoque indisponível.");
+        }).thenAnswer(invocacao -> simulado.confirmarReserva(reservaId));
+        pendentes.deleteAll();
+        compras.deleteAll();
+        outbox.registrar(11L, 1L, 98L, new BigDecimal("100.00"), reservaId);
+
+        outbox.processarLote();
+        outbox.processarLote();
+
+        assertThat(compras.findAll()).singleElement()
+            .satisfies(c -> assertThat(c.getSituacao()).as("Situação").isEqualTo(SituacaoCompra.CONCLUIDA));
+        assertThat(cancelamentos.count()).as("Nada a cancelar").isZero();
+        assertThat(simulado.saldo(100L)).as("Baixa feita uma vez").isZero();
+    }
+
+    @Test
+    @DisplayName("Outbox: nova tentativa que passaria da validade da reserva compensa antes")
+    public void processarLote_quandoTentativaPassariaDaValidade_entaoCompensa() {
+        OutboxBaixaEstoque curto = new OutboxBaixaEstoque(pendentes, compras, estoque, fila, transactionManager,
+            ModoBaixa.SINCRONA, 1, 10, Duration.ofSeconds(1), TENTATIVAS, Duration.ofSeconds(2), Duration.ofSeconds(2),
+            Duration.ofMinutes(1), Duration.ofSeconds(61), metricas);
+        when(estoque.confirmarReserva(7L)).thenThrow(new ServicoIndisponivelException("Serviço de estoque indisponível."));
+
+        curto.processarLote();
+
+        verify(estoque).confirmarReserva(7L);
+        verify(estoque).liberarReserva(7L);
+        assertThat(cancelamentos.count()).as("Cancelamento enfileirado").isEqualTo(1);
+        assertThat(compras.findAll()).singleElement()
+            .satisfies(c -> assertThat(c.getSituacao()).as("Situação").isEqualTo(SituacaoCompra.CANCELADA));
+        assertThatThrownBy(() -> new OutboxBaixaEstoque(pendentes, compras, estoque, fila, transactionManager,
+            ModoBaixa.SINCRONA, 1, 10, Duration.ofSeconds(1), TENTATIVAS, Duration.ZERO, Duration.ZERO,
+            Duration.ofMinutes(2), VALIDADE, metricas))
+            .as("Prazo maior que a validade")
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Outbox: reserva recusada compensa sem novas tentativas, pela fila de cancelamentos")
+    public void processarLote_quandoRecusada_entaoCompensaPelaFila() {
+        when(estoque.confirmarReserva(7L)).thenReturn(new EstoqueBaixaDTO(false));
+
+        outbox.processarLote();
+
+        verify(estoque).confirmarReserva(7L);
+        verify(estoque).liberarReserva(7L);
+        verify(pagamento, never()).cancelarPagamento(1L, 99L);
+        assertThat(pendentes.count()).as("Outbox vazio").isZero();
+        assertThat(compras.findAll()).singleElement()
+            .satisfies(c -> assertThat(c.getSituacao()).as("Situação").isEqualTo(SituacaoCompra.CANCELADA));
+        assertThat(metricas.get("compra.baixa.outbox.resultados").tag("resultado", "recusada").counter().count())
+            .as("Recusadas").isEqualTo(1);
+
+        assertThat(fila.processarLote()).as("Cancelamentos processados").isEqualTo(1);
+        verify(pagamento).cancelarPagamento(1L, 99L);
+    }
+}
@@ -0,0 +1,125 @@
+package ecommerce.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ecommerce.dto.CustoCarrinhoDTO;
+import ecommerce.dto.ProdutoPrecificacaoDTO;
+import ecommerce.entity.TipoProduto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PrecificacaoEmLoteTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private CatalogoProdutos catalogo;
+    private SimpleMeterRegistry metricas;
+    private PrecificacaoEmLote precificacao;
+
+    @BeforeEach
+    public void setup() {
+        catalogo = mock(CatalogoProdutos.class);
+        metricas = new SimpleMeterRegistry();
+        // Catálogo com os produtos 1 a 100: R$ 50,00, 1 kg, livro
+        when(catalogo.buscar(anyCollection())).thenAnswer(invocacao -> {
+            Map<Long, ProdutoPrecificacaoDTO> produtos = new HashMap<>();
+            for (Long id : invocacao.<Collection<Long>>getArgument(0)) {
+                if (id <= 100) {
+                    produtos.put(id, new ProdutoPrecificacaoDTO(id, new BigDecimal("50.00"), BigDecimal.ONE, false,
+                        TipoProduto.LIVRO));
+                }
+            }
+            return produtos;
+        });
+        precificacao = new PrecificacaoEmLote(new CompraService(null, null, null, ModoPrecificacao.BIG_DECIMAL), catalogo, mapper, 4, 7, 2, 200,
+            metricas);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        precificacao.destroy();
+    }
+
+    @Test
+    @DisplayName("Lote: uma resposta por linha, na ordem da entrada, com uma busca de produtos por bloco")
+    public void precificar_quandoMuitasLinhas_entaoMantemOrdem() throws IOException {
+        StringBuilder entrada = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            entrada.append(carrinho("c" + i, 1 + i % 100, 2)).append('\n');
+        }
+
+        List<CustoCarrinhoDTO> respostas = precificar(entrada.toString());
+
+        assertThat(respostas).as("Uma por linha").hasSize(1000);
+        assertThat(respostas).extracting(CustoCarrinhoDTO::id).as("Mesma ordem")
+            .containsExactlyElementsOf(IntStream.range(0, 1000).mapToObj(i -> "c" + i).toList());
+        assertThat(respostas.get(0).custoTotal()).as("Custo").isEqualByComparingTo("100.00");
+        verify(catalogo, times(143)).buscar(anyCollection());
+        assertThat(metricas.get("compra.precificacao.lote.linhas").tag("resultado", "sucesso").counter().count())
+            .as("Precificados").isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("Lote: linha inválida responde com erro sem interromper as demais; linhas em branco são ignoradas")
+    public void precificar_quandoLinhasInvalidas_entaoErroPorLinha() throws IOException {
+        String entrada = carrinho("a", 1, 2) + "\n"
+            + "{nao e json\n"
+            + "\n"
+            + carrinho("b", 999, 1) + "\n"
+            + carrinho("c", 1, 0) + "\n"
+            + "{\"id\":\"" + "x".repeat(300) + "\"}\n"
+            + "{\"id\":\"d\",\"regiao\":\"SUDESTE\",\"tipoCliente\":\"BRONZE\",\"itens\":[]}\n"
+            + carrinho("e", 2, 2) + "\r\n";
+
+        List<CustoCarrinhoDTO> respostas = precificar(entrada);
+
+        assertThat(respostas).as("Respostas").containsExactly(
+            new CustoCarrinhoDTO("a", new BigDecimal("100.00"), null),
+            new CustoCarrinhoDTO(null, null, "JSON inválido."),
+            new CustoCarrinhoDTO("b", null, "Produto 999 não encontrado."),
+            new CustoCarrinhoDTO("c", null, "Item deve ter produto e quantidade positiva."),
+            new CustoCarrinhoDTO(null, null, "Linha com mais de 200 caracteres."),
+            new CustoCarrinhoDTO("d", null, "Carrinho não pode ser nulo ou vazio."),
+            new CustoCarrinhoDTO("e", new BigDecimal("100.00"), null));
+        assertThat(metricas.get("compra.precificacao.lote.linhas").tag("resultado", "erro").counter().count())
+            .as("Erros").isEqualTo(5);
+    }
+
+    private List<CustoCarrinhoDTO> precificar(String entrada) throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        precificacao.precificar(new ByteArrayInputStream(entrada.getBytes(StandardCharsets.UTF_8)), saida);
+
+        List<CustoCarrinhoDTO> respostas = new ArrayList<>();
+        for (String linha : saida.toString(StandardCharsets.UTF_8).split("\n")) {
+            respostas.add(mapper.readValue(linha, CustoCarrinhoDTO.class));
+        }
+        return respostas;
+    }
+
+    private static String carrinho(String id, long produtoId, long quantidade) {
+        return "{\"id\":\"" + id + "\",\"regiao\":\"SUDESTE\",\"tipoCliente\":\"BRONZE\",\"itens\":[{\"produtoId\":"
+            + produtoId + ",\"quantidade\":" + quantidade + "}]}";
+    }
+}
@@ -0,0 +1,157 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.service.RegistroIdempotencia.ChaveReutilizadaException;
+import ecommerce.service.RegistroIdempotencia.RegistroCheioException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RegistroIdempotenciaTest {
+
+    private SimpleMeterRegistry metricas;
+    private AtomicInteger execucoes;
+
+    @BeforeEach
+    public void setup() {
+        metricas = new SimpleMeterRegistry();
+        execucoes = new AtomicInteger();
+    }
+
+    @Test
+    @DisplayName("Idempotência: repetição posterior recebe o resultado guardado sem executar")
+    public void executar_quandoRepetida_entaoNaoExecutaDeNovo() {
+        RegistroIdempotencia registro = new RegistroIdempotencia(Duration.ofMinutes(1), 10, metricas);
+
+        assertThat(registro.executar("k1", "10:1", this::operacao)).as("Primeira execução").isEqualTo(1);
+        assertThat(registro.executar("k1", "10:1", this::operacao)).as("Resultado guardado").isEqualTo(1);
+        assertThat(execucoes.get()).as("Executou uma vez").isEqualTo(1);
+        assertThat(contador("acerto")).as("Acertos").isEqualTo(1);
+        assertThat(contador("falta")).as("Faltas").isEqualTo(1);
+        assertThatThrownBy(() -> registro.executar("k1", "20:1", this::operacao))
+            .as("Mesma chave, outro pedido")
+            .isInstanceOf(ChaveReutilizadaException.class);
+    }
+
+    @Test
+    @DisplayName("Idempotência: repetição durante a execução espera e compartilha o resultado")
+    public void executar_quandoRepetidaEmAndamento_entaoCompartilha() throws Exception {
+        RegistroIdempotencia registro = new RegistroIdempotencia(Duration.ofMinutes(1), 10, metricas);
+        CountDownLatch iniciou = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+
+        CompletableFuture<Integer> primeira = CompletableFuture.supplyAsync(() -> registro.executar("k1", "10:1", () -> {
+            iniciou.countDown();
+            aguardar(liberar);
+            return operacao();
+        }));
+        assertThat(iniciou.await(5, TimeUnit.SECONDS)).as("Primeira em andamento").isTrue();
+        CompletableFuture<Integer> repeticao = CompletableFuture.supplyAsync(() -> registro.executar("k1", "10:1", this::operacao));
+
+        Thread.sleep(50);
+        assertThat(repeticao).as("Repetição esperando").isNotDone();
+        liberar.countDown();
+
+        assertThat(primeira.get(5, TimeUnit.SECONDS)).as("Primeira").isEqualTo(1);
+        assertThat(repeticao.get(5, TimeUnit.SECONDS)).as("Mesmo resultado").isEqualTo(1);
+        assertThat(execucoes.get()).as("Executou uma vez").isEqualTo(1);
+        assertThat(contador("em-andamento")).as("Compartilhadas").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Idempotência: falha não é guardada e a repetição executa de novo")
+    public void executar_quandoFalha_entaoNaoGuarda() {
+        RegistroIdempotencia registro = new RegistroIdempotencia(Duration.ofMinutes(1), 10, metricas);
+
+        assertThatThrownBy(() -> registro.executar("k1", "10:1", () -> {
+            throw new IllegalStateException("falhou");
+        })).as("Falha repassada").hasMessage("falhou");
+        assertThat(registro.executar("k1", "10:1", this::operacao)).as("Nova execução").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Idempotência: muitas chaves distintas e validade vencida não passam da capacidade")
+    public void executar_quandoMuitasChaves_entaoMemoriaLimitada() throws InterruptedException {
+        RegistroIdempotencia registro = new RegistroIdempotencia(Duration.ofMinutes(1), 100, metricas);
+        for (int i = 0; i < 10_000; i++) {
+            registro.executar("k" + i, "10:1", this::operacao);
+        }
+        assertThat(registro.tamanho()).as("Limitado à capacidade").isEqualTo(100);
+        assertThat(registro.executar("k0", "10:1", this::operacao)).as("Chave antiga despejada executa de novo").isEqualTo(10_001);
+
+        RegistroIdempotencia curto = new RegistroIdempotencia(Duration.ofMillis(1), 100, metricas);
+        curto.executar("k1", "10:1", this::operacao);
+        Thread.sleep(5);
+        assertThat(curto.executar("k1", "10:1", this::operacao)).as("Validade vencida executa de novo").isEqualTo(10_003);
+    }
+
+    @Test
+    @DisplayName("Idempotência: execuções em andamento não são despejadas; sem vaga, a chave nova é recusada")
+    public void executar_quandoCheioDeExecucoesEmAndamento_entaoRecusaChaveNova() throws Exception {
+        RegistroIdempotencia registro = new RegistroIdempotencia(Duration.ofMinutes(1), 2, metricas);
+        CompletableFuture<Integer> primeira = new CompletableFuture<>();
+        CompletableFuture<Integer> segunda = new CompletableFuture<>();
+        registro.executarAssincrono("k1", "10:1", () -> primeira);
+        registro.executarAssincrono("k2", "10:1", () -> segunda);
+
+        assertThatThrownBy(() -> registro.executar("k3", "10:1", this::operacao))
+            .as("Sem vaga")
+            .isInstanceOf(RegistroCheioException.class);
+        assertThat(execucoes.get()).as("Chave nova não executada").isZero();
+        CompletableFuture<Integer> repeticao = registro.executarAssincrono("k1", "10:1",
+            () -> CompletableFuture.completedFuture(operacao()));
+        assertThat(repeticao).as("Repetição ainda espera a primeira").isNotDone();
+
+        primeira.complete(7);
+        assertThat(repeticao.get(5, TimeUnit.SECONDS)).as("Resultado da primeira").isEqualTo(7);
+        assertThat(registro.executar("k3", "10:1", this::operacao)).as("Vaga da concluída").isEqualTo(1);
+        assertThat(registro.tamanho()).as("Limitado à capacidade").isEqualTo(2);
+        assertThat(contador("recusada")).as("Recusadas").isEqualTo(1);
+        assertThat(registro.executarAssincrono("k2", "10:1", () -> CompletableFuture.completedFuture(operacao())))
+            .as("Em andamento continua registrada").isNotDone();
+    }
+
+    @Test
+    @DisplayName("Idempotência: assíncrona compartilha a execução em andamento e não guarda falhas")
+    public void executarAssincrono_quandoRepetida_entaoCompartilhaSemGuardarFalha() throws Exception {
+        RegistroIdempotencia registro = new RegistroIdempotencia(Duration.ofMinutes(1), 10, metricas);
+        CompletableFuture<Integer> execucao = new CompletableFuture<>();
+
+        CompletableFuture<Integer> primeira = registro.executarAssincrono("k1", "10:1", () -> execucao);
+        CompletableFuture<Integer> repeticao = registro.executarAssincrono("k1", "10:1",
+            () -> CompletableFuture.completedFuture(operacao()));
+        assertThat(repeticao).as("Repetição esperando sem executar").isNotDone();
+
+        execucao.completeExceptionally(new IllegalStateException("falhou"));
+        assertThatThrownBy(() -> primeira.get(5, TimeUnit.SECONDS)).as("Falha repassada").hasRootCauseMessage("falhou");
+        assertThat(repeticao.get(5, TimeUnit.SECONDS)).as("Repetição executa de novo").isEqualTo(1);
+        assertThat(registro.executarAssincrono("k1", "10:1", () -> CompletableFuture.completedFuture(operacao())).get())
+            .as("Resultado guardado").isEqualTo(1);
+        assertThat(contador("em-andamento")).as("Compartilhadas").isEqualTo(1);
+    }
+
+    private int operacao() {
+        return execucoes.incrementAndGet();
+    }
+
+    private double contador(String resultado) {
+        return metricas.get("compra.idempotencia.requisicoes").tag("resultado", resultado).counter().count();
+    }
+
+    private static void aguardar(CountDownLatch trava) {
+        try {
+            trava.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Produto;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+
+public class TabelaFreteTest {
+
+    @Test
+    @DisplayName("Frete: tabela lida da configuração vale nos dois modos de precificação")
+    public void calcular_quandoTabelaConfigurada_entaoUsaFaixasMultiplicadoresEFatores() {
+        RegrasPrecificacao regras = RegrasPrecificacao.compilar(Map.of(
+                "frete.faixas.limites-kg", "1, 20",
+                "frete.faixas.valor-kg", "1.00,3.00,5.00",
+                "frete.faixas.taxa-minima", "0,10.00,10.00",
+                "frete.taxa-fragil", "2.00",
+                "frete.regiao.multiplicadores", "NORTE=2",
+                "frete.cliente.fatores", "BRONZE=1,PRATA=0.25,OURO=0")::get);
+        CarrinhoDeCompras carrinho = carrinho(new BigDecimal("4.0"), true);
+
+        for (ModoPrecificacao modo : ModoPrecificacao.values()) {
+            CompraService service = new CompraService(null, null, null, modo, ModoExecucao.SEQUENCIAL, null,
+                    Duration.ofMinutes(2), new FonteRegrasPrecificacao(regras), MetricasCheckout.desligadas(),
+                    ModoBaixa.SINCRONA, null, null);
+
+            // Faixa 2 (4kg): (3 x 4 + 10 + 2 frágil) = 24, x2 no Norte = 48
+            assertThat(service.calcularCustoTotal(carrinho, Regiao.NORTE, TipoCliente.BRONZE))
+                .as("%s: Bronze no Norte", modo).isEqualByComparingTo("148.00");
+            assertThat(service.calcularCustoTotal(carrinho, Regiao.NORTE, TipoCliente.PRATA))
+                .as("%s: Prata paga um quarto", modo).isEqualByComparingTo("112.00");
+            assertThat(service.calcularCustoTotal(carrinho, Regiao.SUL, TipoCliente.BRONZE))
+                .as("%s: região ausente usa o multiplicador da Regiao", modo).isEqualByComparingTo("125.20");
+            assertThat(service.calcularCustoTotal(carrinho, Regiao.NORTE, TipoCliente.OURO))
+                .as("%s: Ouro isento", modo).isEqualByComparingTo("100.00");
+        }
+    }
+
+    @Test
+    @DisplayName("Frete: valores fora da escala de ponto fixo caem no caminho BigDecimal")
+    public void calcular_quandoTabelaForaDaEscala_entaoPontoFixoIgualBigDecimal() {
+        TabelaFrete tabela = new TabelaFrete(new BigDecimal[] { new BigDecimal("5.0001") },
+                new BigDecimal[] { BigDecimal.ZERO, new BigDecimal("2.123456789") },
+                new BigDecimal[] { BigDecimal.ZERO, new BigDecimal("12") }, new BigDecimal("5"), Map.of(), Map.of());
+        CarrinhoDeCompras carrinho = carrinho(new BigDecimal("7.5"), false);
+
+        FonteRegrasPrecificacao regras = new FonteRegrasPrecificacao(RegrasPrecificacao.padrao().comFrete(tabela));
+        BigDecimal esperado = new CompraService(null, null, null, ModoPrecificacao.BIG_DECIMAL,
+                ModoExecucao.SEQUENCIAL, null, Duration.ofMinutes(2), regras, MetricasCheckout.desligadas(),
+                ModoBaixa.SINCRONA, null, null)
+            .calcularCustoTotal(carrinho, Regiao.NORDESTE, TipoCliente.BRONZE);
+        BigDecimal obtido = new CompraService(null, null, null, ModoPrecificacao.PONTO_FIXO,
+                ModoExecucao.SEQUENCIAL, null, Duration.ofMinutes(2), regras, MetricasCheckout.desligadas(),
+                ModoBaixa.SINCRONA, null, null)
+            .calcularCustoTotal(carrinho, Regiao.NORDESTE, TipoCliente.BRONZE);
+
+        // 100 + (2.123456789 x 7.5 + 12) x 1.10 = 130.7185...
+        assertThat(esperado).as("BigDecimal").isEqualByComparingTo("130.72");
+        assertThat(obtido).as("Ponto fixo recorre ao BigDecimal").isEqualTo(esperado);
+    }
+
+    @Test
+    @DisplayName("Frete: tipo de cliente isento não lê o peso do carrinho")
+    public void calcular_quandoIsento_entaoNaoLePeso() {
+        CarrinhoPrecificado carrinho = mock(CarrinhoPrecificado.class);
+        when(carrinho.getPesoTotal()).thenReturn(BigDecimal.TEN);
+
+        assertThat(TabelaFrete.padrao().calcular(carrinho, Regiao.NORTE, TipoCliente.OURO))
+            .as("Ouro").isEqualByComparingTo("0");
+        verify(carrinho, never()).getPesoTotal();
+        verify(carrinho, never()).getPesoTotalGramas();
+    }
+
+    @Test
+    @DisplayName("Frete: configuração inválida é recusada na subida")
+    public void criar_quandoConfiguracaoInvalida_entaoRecusa() {
+        List<Map<String, String>> invalidas = List.of(
+            Map.of("frete.faixas.limites-kg", "5,10", "frete.faixas.valor-kg", "0,2"),
+            Map.of("frete.faixas.limites-kg", "10,5,50"),
+            Map.of("frete.faixas.valor-kg", "0,-2,4,7"),
+            Map.of("frete.regiao.multiplicadores", "LESTE=1"),
+            Map.of("frete.taxa-fragil", "dois"));
+
+        for (int i = 0; i < invalidas.size(); i++) {
+            Map<String, String> propriedades = invalidas.get(i);
+            assertThatThrownBy(() -> RegrasPrecificacao.compilar(propriedades::get)).as("Configuração %d", i)
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private static CarrinhoDeCompras carrinho(BigDecimal peso, boolean fragil) {
+        Produto p = TestHelper.criarProduto("P1", new BigDecimal("100.00"), peso, fragil);
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setItens(Arrays.asList(TestHelper.criarItem(p, 1L)));
+        return carrinho;
+    }
+}